@@ -15,17 +15,20 @@
 */
 package nl.nn.adapterframework.compression;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.util.FileUtils;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.Misc;
 
@@ -35,6 +38,9 @@ import org.apache.log4j.Logger;
 /**
  * Helper class to create Zip archives.
  * 
+ * Contents of entries are streamed into the archive using a buffer of <code>bufferSize</code> bytes,
+ * and are never read into memory as a whole, not even when the file header must be completed.
+ * 
  * @author  Gerrit van Brakel
  * @since   4.9.10
  */
@@ -44,11 +50,14 @@ public class ZipWriter {
 	private ZipOutputStream zipoutput;
 	private boolean entryOpen=false;
 	private boolean closeOnExit;
+	private int bufferSize;
 
-	private ZipWriter(OutputStream resultStream, boolean closeOnExit) {
+	private ZipWriter(OutputStream resultStream, boolean closeOnExit, int bufferSize) {
 		super();
 		this.closeOnExit=closeOnExit;
-		zipoutput=new ZipOutputStream(resultStream);
+		this.bufferSize=bufferSize;
+		// the deflater writes in small chunks, buffer them before they reach the result stream
+		zipoutput=new ZipOutputStream(new BufferedOutputStream(resultStream, bufferSize));
 	}
 
 	public static ZipWriter getZipWriter(IPipeLineSession session, String handlekey) {
@@ -56,7 +65,11 @@ public class ZipWriter {
 	}
 
 	public static ZipWriter createZipWriter(IPipeLineSession session, String handlekey, OutputStream resultStream, boolean closeOnExit) {
-		ZipWriter handle=new ZipWriter(resultStream,closeOnExit);
+		return createZipWriter(session, handlekey, resultStream, closeOnExit, Misc.BUFFERSIZE);
+	}
+
+	public static ZipWriter createZipWriter(IPipeLineSession session, String handlekey, OutputStream resultStream, boolean closeOnExit, int bufferSize) {
+		ZipWriter handle=new ZipWriter(resultStream,closeOnExit,bufferSize);
 		session.put(handlekey,handle);
 		if (handle.log.isDebugEnabled()) handle.log.debug(handle.getLogPrefix(handlekey)+"opened new zipstream");
 		return handle;
@@ -92,6 +105,7 @@ public class ZipWriter {
 				zipoutput.close();
 			} else {
 				zipoutput.finish();
+				zipoutput.flush();
 			}
 		} catch (IOException e) {
 			throw new CompressionException("Cannot close ZipStream",e);
@@ -109,12 +123,16 @@ public class ZipWriter {
 			} else if (contents instanceof InputStream) {
 				InputStream is = (InputStream)contents;
 				try {
-					Misc.streamToStream(is,getZipoutput());
+					Misc.streamToStream(is,getZipoutput(),false,bufferSize);
 				} finally {
 					if (close) {
 						is.close();
 					}
 				}
+			} else if (contents instanceof File) {
+				try (InputStream is = new FileInputStream((File)contents)) {
+					Misc.streamToStream(is,getZipoutput(),false,bufferSize);
+				}
 			} else {
 				getZipoutput().write(contents.toString().getBytes(charset));
 			}
@@ -124,56 +142,82 @@ public class ZipWriter {
 		closeEntry();
 	}
 
+	/**
+	 * Writes a stored (uncompressed) entry, with crc and size set in the header. Streamed contents are first
+	 * spooled to a temporary file, to determine crc and size without keeping the contents in memory.
+	 */
 	public void writeEntryWithCompletedHeader(String filename, Object contents, boolean close, String charset) throws CompressionException, IOException {
 		if (StringUtils.isEmpty(filename)) {
 			throw new CompressionException("filename cannot be empty");		
 		}
-		
-		byte[] contentBytes = null;
-		BufferedInputStream bis = null;
-		long size = 0;
-		if (contents!=null) {
-			if (contents instanceof byte[]) {
-				contentBytes = (byte[])contents;
-			} else if (contents instanceof InputStream) {
-				contentBytes = Misc.streamToBytes((InputStream)contents);
-			} else {
-				contentBytes = contents.toString().getBytes(charset);
-			}
-			bis = new BufferedInputStream(new ByteArrayInputStream(contentBytes));
-			size = bis.available();
-		} else { 
+		closeEntry();
+		if (contents==null) {
 			log.warn("contents of zip entry ["+filename+"] is null");
+			writeStoredEntry(filename, new byte[0]);
+		} else if (contents instanceof byte[]) {
+			writeStoredEntry(filename, (byte[])contents);
+		} else if (contents instanceof File) {
+			writeStoredEntry(filename, (File)contents, crc((File)contents));
+		} else if (contents instanceof InputStream) {
+			InputStream is = (InputStream)contents;
+			File spoolFile = FileUtils.createTempFile("zip", ".tmp");
+			try {
+				CheckedInputStream checkedInputStream = new CheckedInputStream(is, new CRC32());
+				try (OutputStream out = new FileOutputStream(spoolFile)) {
+					Misc.streamToStream(checkedInputStream, out, false, bufferSize);
+				} finally {
+					if (close) {
+						is.close();
+					}
+				}
+				writeStoredEntry(filename, spoolFile, checkedInputStream.getChecksum().getValue());
+			} finally {
+				if (!spoolFile.delete()) {
+					log.warn("could not delete temporary file ["+spoolFile.getPath()+"]");
+				}
+			}
+		} else {
+			writeStoredEntry(filename, contents.toString().getBytes(charset));
 		}
-		
-		int bytesRead;
-		byte[] buffer = new byte[1024];
+	}
+
+	private long crc(File file) throws IOException {
 		CRC32 crc = new CRC32();
-		crc.reset();
-		if (bis!=null) {
-			while ((bytesRead = bis.read(buffer)) != -1) {
+		byte[] buffer = new byte[bufferSize];
+		try (InputStream is = new FileInputStream(file)) {
+			int bytesRead;
+			while ((bytesRead = is.read(buffer)) != -1) {
 				crc.update(buffer, 0, bytesRead);
 			}
-			bis.close();
 		}
-		if (contents!=null) {
-			bis = new BufferedInputStream(new ByteArrayInputStream(contentBytes));
+		return crc.getValue();
+	}
+
+	private void writeStoredEntry(String filename, byte[] contents) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(contents);
+		getZipoutput().putNextEntry(createStoredEntry(filename, contents.length, crc.getValue()));
+		getZipoutput().write(contents);
+		getZipoutput().closeEntry();
+	}
+
+	private void writeStoredEntry(String filename, File contents, long crc) throws IOException {
+		getZipoutput().putNextEntry(createStoredEntry(filename, contents.length(), crc));
+		try (InputStream is = new FileInputStream(contents)) {
+			Misc.streamToStream(is, getZipoutput(), false, bufferSize);
 		}
+		getZipoutput().closeEntry();
+	}
+
+	private ZipEntry createStoredEntry(String filename, long size, long crc) {
 		ZipEntry entry = new ZipEntry(filename);
 		entry.setMethod(ZipEntry.STORED);
 		entry.setCompressedSize(size);
 		entry.setSize(size);
-		entry.setCrc(crc.getValue());
-		getZipoutput().putNextEntry(entry);
-		if (bis!=null) {
-			while ((bytesRead = bis.read(buffer)) != -1) {
-				getZipoutput().write(buffer, 0, bytesRead);
-			}
-			bis.close();
-		}
-		getZipoutput().closeEntry();
+		entry.setCrc(crc);
+		return entry;
 	}
-		
+
 	public String getLogPrefix(String handlekey) {
 		return "ZipWriterHandle ["+handlekey+"] ";
 	}
@@ -185,6 +229,10 @@ public class ZipWriter {
 		return closeOnExit;
 	}
 
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
 	public ZipOutputStream getZipoutput() {
 		return zipoutput;
 	}
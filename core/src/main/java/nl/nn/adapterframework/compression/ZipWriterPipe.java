@@ -35,6 +35,7 @@ import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.parameters.ParameterValue;
 import nl.nn.adapterframework.parameters.ParameterValueList;
 import nl.nn.adapterframework.pipes.FixedForwardPipe;
+import nl.nn.adapterframework.util.Misc;
 import nl.nn.adapterframework.util.StreamUtil;
 
 import org.apache.commons.lang.StringUtils;
@@ -47,6 +48,8 @@ import org.apache.commons.lang.StringUtils;
  * <li>OutputStream</li>
  * <li>HttpResponse</li>
  * </ul>
+ * For action=write, the input can be a String, a byte array, an InputStream or a File. Streams and files are copied
+ * into the zip without reading them into memory.
  * The parameter 'filename' is used to specify the filename if the input is a HttpResponse.
  *
  * <table border="1">
@@ -80,6 +83,7 @@ public class ZipWriterPipe extends FixedForwardPipe {
 	private boolean closeOutputstreamOnExit=true;
 	private String charset=StreamUtil.DEFAULT_INPUT_STREAM_ENCODING;
 	private boolean completeFileHeader=false;
+	private int bufferSize=Misc.BUFFERSIZE;
 
 	private Parameter filenameParameter=null; //used for with action=open for main filename, with action=write for entryfilename
 
@@ -104,6 +108,9 @@ public class ZipWriterPipe extends FixedForwardPipe {
 				throw new ConfigurationException(getLogPrefix(null)+"with action ["+getAction()+"] parameter '"+PARAMETER_FILENAME+"' cannot not be configured");
 			}
 		}
+		if (getBufferSize()<=0) {
+			throw new ConfigurationException(getLogPrefix(null)+"bufferSize ["+getBufferSize()+"] must be a positive number");
+		}
 	}
 
 
@@ -146,7 +153,7 @@ public class ZipWriterPipe extends FixedForwardPipe {
 		if (resultStream==null) {
 			throw new PipeRunException(this,getLogPrefix(session)+"Dit not find OutputStream or HttpResponse, and could not find filename");
 		}
-		ZipWriter sessionData=ZipWriter.createZipWriter(session,getZipWriterHandle(),resultStream,isCloseOutputstreamOnExit());
+		ZipWriter sessionData=ZipWriter.createZipWriter(session,getZipWriterHandle(),resultStream,isCloseOutputstreamOnExit(),getBufferSize());
 		return sessionData;
 	}
 
@@ -281,4 +288,12 @@ public class ZipWriterPipe extends FixedForwardPipe {
 	public boolean isCompleteFileHeader() {
 		return completeFileHeader;
 	}
+
+	@IbisDoc({"only for action='open': size in bytes of the buffer used to copy the contents of entries into the zip and to write the zip to its destination", "20000"})
+	public void setBufferSize(int i) {
+		bufferSize = i;
+	}
+	public int getBufferSize() {
+		return bufferSize;
+	}
 }
@@ -239,6 +239,7 @@ public class ClassLoaderManager {
 		if (classLoader instanceof ReloadAware) {
 			((ReloadAware)classLoader).reload();
 		}
+		AppConstants.removeInstance(classLoader);
 	}
 
 	public boolean contains(String currentConfigurationName) {
@@ -81,10 +81,7 @@ public class Configuration {
 		Object root = hski.start(now,mainMark,detailMark);
 		try {
 			Object groupData=hski.openGroup(root,AppConstants.getInstance().getString("instance.name",""),"instance");
-			for (Map.Entry<String, IAdapter> entry : adapterService.getAdapters().entrySet()) {
-				IAdapter adapter = entry.getValue();
-				adapter.forEachStatisticsKeeperBody(hski,groupData,action);
-			}
+			forEachStatisticsKeeperBody(hski,groupData,action);
 			IbisCacheManager.iterateOverStatistics(hski, groupData, action);
 			hski.closeGroup(groupData);
 		} finally {
@@ -92,6 +89,16 @@ public class Configuration {
 		}
 	}
 
+	/**
+	 * Iterates over the statistics of the adapters of this configuration, in the group of the caller.
+	 */
+	public void forEachStatisticsKeeperBody(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		for (Map.Entry<String, IAdapter> entry : adapterService.getAdapters().entrySet()) {
+			IAdapter adapter = entry.getValue();
+			adapter.forEachStatisticsKeeperBody(hski,data,action);
+		}
+	}
+
 	public void dumpStatistics(int action) {
 		Date now = new Date();
 		boolean showDetails=(action == HasStatistics.STATISTICS_ACTION_FULL ||
@@ -89,6 +89,7 @@ public class IbisContext extends IbisApplicationContext {
 				configWarnings.add(LOG, msg);
 				System.setProperty(APPLICATION_SERVER_TYPE_PROPERTY, "TOMCAT");
 			}
+			AppConstants.getInstance().refresh();
 		}
 		if(!Boolean.parseBoolean(AppConstants.getInstance().getProperty("jdbc.convertFieldnamesToUppercase")))
 			ConfigurationWarnings.getInstance().add(LOG, "DEPRECATED: jdbc.convertFieldnamesToUppercase is set to false, please set to true. XML field definitions of SQL senders will be uppercased!");
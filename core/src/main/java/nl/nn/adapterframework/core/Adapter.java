@@ -23,6 +23,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import nl.nn.adapterframework.cache.ICacheAdapter;
 import nl.nn.adapterframework.configuration.Configuration;
@@ -95,8 +97,8 @@ public class Adapter implements IAdapter, NamedBean {
 	private boolean active=true;
 
 	private ArrayList<IReceiver> receivers = new ArrayList<IReceiver>();
-	private long lastMessageDate = 0;
-	private String lastMessageProcessingState; //"OK" or "ERROR"
+	private volatile long lastMessageDate = 0;
+	private volatile String lastMessageProcessingState; //"OK" or "ERROR"
 	private PipeLine pipeline;
 
 	private Map<String, SenderLastExitState> sendersLastExitState = new HashMap<String, SenderLastExitState>();
@@ -111,15 +113,42 @@ public class Adapter implements IAdapter, NamedBean {
 		}
 	}
 	
-	private int numOfMessagesInProcess = 0;
+	private final AtomicInteger numOfMessagesInProcess = new AtomicInteger();
+	private final AtomicInteger waitersForNoMessagesInProcess = new AtomicInteger();
+	private final Object noMessagesInProcessMonitor = new Object();
    
 	private CounterStatistic numOfMessagesProcessed = new CounterStatistic(0);
 	private CounterStatistic numOfMessagesInError = new CounterStatistic(0);
 	
-	private long[] numOfMessagesStartProcessingByHour = new long[24];
+	private final AtomicLongArray numOfMessagesStartProcessingByHour = new AtomicLongArray(24);
+	private volatile HourBucket currentHourBucket = new HourBucket(0);
 	
 	private StatisticsKeeper statsMessageProcessingDuration = null;
 
+	/**
+	 * The hour of the day of an interval of one hour, to count messages by hour without a Calendar per message.
+	 */
+	private static class HourBucket {
+		final long start;
+		final long end;
+		final int hour;
+
+		HourBucket(long time) {
+			Calendar cal = Calendar.getInstance();
+			cal.setTimeInMillis(time);
+			hour = cal.get(Calendar.HOUR_OF_DAY);
+			cal.set(Calendar.MINUTE, 0);
+			cal.set(Calendar.SECOND, 0);
+			cal.set(Calendar.MILLISECOND, 0);
+			start = cal.getTimeInMillis();
+			end = start + 3600000L;
+		}
+
+		boolean contains(long time) {
+			return time >= start && time < end;
+		}
+	}
+
 	private long statsUpSince = System.currentTimeMillis();
 	private IErrorMessageFormatter errorMessageFormatter;
 	
@@ -241,38 +270,41 @@ public class Adapter implements IAdapter, NamedBean {
 	 * Increase the number of messages in process
 	 */
 	private void incNumOfMessagesInProcess(long startTime) {
-		synchronized (statsMessageProcessingDuration) {
-			numOfMessagesInProcess++;
-			lastMessageDate = startTime;
-			Calendar cal = Calendar.getInstance();
-			cal.setTimeInMillis(startTime);
-			int hour = cal.get(Calendar.HOUR_OF_DAY);
-			numOfMessagesStartProcessingByHour[hour]++;
+		numOfMessagesInProcess.incrementAndGet();
+		lastMessageDate = startTime;
+		HourBucket bucket = currentHourBucket;
+		if (!bucket.contains(startTime)) {
+			bucket = new HourBucket(startTime);
+			currentHourBucket = bucket;
 		}
+		numOfMessagesStartProcessingByHour.incrementAndGet(bucket.hour);
 	}
 	/**
 	 * Decrease the number of messages in process
 	 */
-	private synchronized void decNumOfMessagesInProcess(long duration, boolean processingSuccess) {
+	private void decNumOfMessagesInProcess(long duration, boolean processingSuccess) {
+		numOfMessagesProcessed.increase();
+		// the StatisticsKeeper is not thread safe, it is only locked to add the value
 		synchronized (statsMessageProcessingDuration) {
-			numOfMessagesInProcess--;
-			numOfMessagesProcessed.increase();
 			statsMessageProcessingDuration.addValue(duration);
-			if (processingSuccess) {
-				lastMessageProcessingState = PROCESS_STATE_OK;
-			} else {
-				lastMessageProcessingState = PROCESS_STATE_ERROR;
+		}
+		if (processingSuccess) {
+			lastMessageProcessingState = PROCESS_STATE_OK;
+		} else {
+			lastMessageProcessingState = PROCESS_STATE_ERROR;
+		}
+		// only threads waiting for the adapter to stop are notified, when the last message is done
+		if (numOfMessagesInProcess.decrementAndGet() == 0 && waitersForNoMessagesInProcess.get() > 0) {
+			synchronized (noMessagesInProcessMonitor) {
+				noMessagesInProcessMonitor.notifyAll();
 			}
-			notifyAll();
 		}
 	}
 	/**
 	 * The number of messages for which processing ended unsuccessfully.
 	 */
 	private void incNumOfMessagesInError() {
-		synchronized (statsMessageProcessingDuration) {
-			numOfMessagesInError.increase();
-		}
+		numOfMessagesInError.increase();
 	}
 
 	public void setLastExitState(String pipeName, long lastExitStateDate, String lastExitState) {
@@ -294,13 +326,11 @@ public class Adapter implements IAdapter, NamedBean {
 	}
 
 	@Override
-	public synchronized String formatErrorMessage(String errorMessage, Throwable t, String originalMessage, String messageID, INamedObject objectInError, long receivedTime) {
-		if (errorMessageFormatter == null) {
-			errorMessageFormatter = new ErrorMessageFormatter();
-		}
+	public String formatErrorMessage(String errorMessage, Throwable t, String originalMessage, String messageID, INamedObject objectInError, long receivedTime) {
+		IErrorMessageFormatter formatter = getErrorMessageFormatter();
 		// you never can trust an implementation, so try/catch!
 		try {
-			String formattedErrorMessage= errorMessageFormatter.format(
+			String formattedErrorMessage= formatter.format(
 				errorMessage,
 				t,
 				objectInError,
@@ -378,14 +408,15 @@ public class Adapter implements IAdapter, NamedBean {
 		numOfMessagesInError.performAction(action);
 
 		Object hourData=hski.openGroup(adapterData,getName(),"processing by hour");
-		for (int i=0; i<getNumOfMessagesStartProcessingByHour().length; i++) {
+		long[] numOfMessagesStartProcessingByHour = getNumOfMessagesStartProcessingByHour();
+		for (int i=0; i<numOfMessagesStartProcessingByHour.length; i++) {
 			String startTime;
 			if (i<10) {
 				startTime = "0" + i + ":00";
 			} else {
 				startTime = i + ":00";
 			}
-			hski.handleScalar(hourData, startTime, getNumOfMessagesStartProcessingByHour()[i]);
+			hski.handleScalar(hourData, startTime, numOfMessagesStartProcessingByHour[i]);
 		}
 		hski.closeGroup(hourData);
 
@@ -445,29 +476,25 @@ public class Adapter implements IAdapter, NamedBean {
 	 * The number of messages for which processing ended unsuccessfully.
 	 */
 	public long getNumOfMessagesInError() {
-		synchronized (statsMessageProcessingDuration) {
-			return numOfMessagesInError.getValue();
-		}
+		return numOfMessagesInError.getValue();
 	}
 	public int getNumOfMessagesInProcess() {
-		synchronized (statsMessageProcessingDuration) {
-			return numOfMessagesInProcess;
-		}
+		return numOfMessagesInProcess.get();
 	}
 
 	public long[] getNumOfMessagesStartProcessingByHour() {
-		synchronized (statsMessageProcessingDuration) {
-			return numOfMessagesStartProcessingByHour;
+		long[] result = new long[numOfMessagesStartProcessingByHour.length()];
+		for (int i=0; i<result.length; i++) {
+			result[i] = numOfMessagesStartProcessingByHour.get(i);
 		}
+		return result;
 	}
 	/**
 	 * Total of messages processed
 	 * @return long total messages processed
 	 */
 	public long getNumOfMessagesProcessed() {
-		synchronized (statsMessageProcessingDuration) {
-			return numOfMessagesProcessed.getValue();
-		}
+		return numOfMessagesProcessed.getValue();
 	}
 
 	@Override
@@ -753,6 +780,12 @@ public class Adapter implements IAdapter, NamedBean {
 	public void setErrorMessageFormatter(IErrorMessageFormatter errorMessageFormatter) {
 		this.errorMessageFormatter = errorMessageFormatter;
 	}
+	private IErrorMessageFormatter getErrorMessageFormatter() {
+		if (errorMessageFormatter == null) {
+			errorMessageFormatter = new ErrorMessageFormatter();
+		}
+		return errorMessageFormatter;
+	}
 	/**
 	 * state to put in PipeLineResult when a PipeRunException occurs
 	 * @see PipeLineResult
@@ -981,10 +1014,15 @@ public class Adapter implements IAdapter, NamedBean {
 	}
 	
 	public void waitForNoMessagesInProcess() throws InterruptedException {
-		synchronized (statsMessageProcessingDuration) {
-			while (getNumOfMessagesInProcess() > 0) {
-				wait();
+		waitersForNoMessagesInProcess.incrementAndGet();
+		try {
+			synchronized (noMessagesInProcessMonitor) {
+				while (getNumOfMessagesInProcess() > 0) {
+					noMessagesInProcessMonitor.wait();
+				}
 			}
+		} finally {
+			waitersForNoMessagesInProcess.decrementAndGet();
 		}
 	}
 
@@ -0,0 +1,30 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.core;
+
+import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.stream.Message;
+
+/**
+ * Allows senders to accept a {@link Message} as input, next to the String based {@link ISenderWithParameters#sendMessage(String, String, ParameterResolutionContext)},
+ * so that binary and large messages need not be converted to a String first.
+ * 
+ * @since 7.5
+ */
+public interface IMessageSender extends ISenderWithParameters {
+
+	public String sendMessage(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException;
+}
@@ -0,0 +1,38 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.core;
+
+/**
+ * MessageBrowser that can return a page of messages, filtered by the storage itself, starting after the last
+ * message of the previous page (keyset pagination). Unlike skipping messages, the cost of retrieving a page does not
+ * depend on its position in the storage.
+ *
+ * @since 7.5
+ */
+public interface IPagedMessageBrowser extends IMessageBrowser {
+
+	/**
+	 * Returns the messages that match the criteria, in order of insert date and id, starting after the
+	 * {@link MessageBrowsingCriteria#setContinuation(String) continuation} of the criteria, at most
+	 * {@link MessageBrowsingCriteria#getMaxMessages() maxMessages}.
+	 */
+	IMessageBrowsingIterator getPage(MessageBrowsingCriteria criteria) throws ListenerException;
+
+	/**
+	 * Returns an estimate of the number of messages, that is cheap to obtain, or -1 when it is not known.
+	 */
+	int getApproximateMessageCount() throws ListenerException;
+}
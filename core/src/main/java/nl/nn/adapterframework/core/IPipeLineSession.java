@@ -48,6 +48,12 @@ public interface IPipeLineSession extends Map<String,Object> {
 
 	public static final String API_PRINCIPAL_KEY   = "apiPrincipal";
 
+	/**
+	 * Key of a {@link nl.nn.adapterframework.stream.MessageOutputStream} provided by the caller of the pipeline, that
+	 * streaming pipes at the end of the pipeline write their output to instead of returning it as the result.
+	 */
+	public static final String PIPELINE_OUTPUT_STREAM_KEY = "pipeLineOutputStream";
+
 	/**
 	 * @return the messageId that was passed to the <code>PipeLine</code> which
 	 *         should be stored under <code>originalMessageKey</code>
@@ -0,0 +1,144 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.core;
+
+import java.util.Date;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Selection of the messages to be returned by {@link IPagedMessageBrowser#getPage(MessageBrowsingCriteria)}.
+ * Text criteria are prefixes, except for the comment, that must be contained in the comment of a message.
+ * <p>
+ * The position of a page is kept in a continuation, an opaque token that is obtained from the last message of the
+ * previous page by {@link #getContinuation(IMessageBrowsingIteratorItem)}.
+ *
+ * @since 7.5
+ */
+public class MessageBrowsingCriteria {
+
+	private Date startDate;
+	private Date endDate;
+	private String messageIdPrefix;
+	private String correlationIdPrefix;
+	private String labelPrefix;
+	private String hostPrefix;
+	private String commentSubstring;
+	private boolean sortDescending;
+	private int maxMessages;
+
+	private Date afterDate;
+	private String afterId;
+
+	public MessageBrowsingCriteria(int maxMessages) {
+		this.maxMessages = maxMessages;
+	}
+
+	/**
+	 * Returns the continuation for the page that starts after the given message.
+	 */
+	public static String getContinuation(IMessageBrowsingIteratorItem item) throws ListenerException {
+		return item.getInsertDate().getTime()+"_"+item.getId();
+	}
+
+	/**
+	 * Sets the position after which the page starts, as obtained from {@link #getContinuation(IMessageBrowsingIteratorItem)}.
+	 */
+	public void setContinuation(String continuation) throws ListenerException {
+		if (StringUtils.isEmpty(continuation)) {
+			afterDate = null;
+			afterId = null;
+			return;
+		}
+		int separator = continuation.indexOf('_');
+		if (separator<=0 || separator==continuation.length()-1) {
+			throw new ListenerException("invalid continuation ["+continuation+"]");
+		}
+		try {
+			afterDate = new Date(Long.parseLong(continuation.substring(0, separator)));
+		} catch (NumberFormatException e) {
+			throw new ListenerException("invalid continuation ["+continuation+"]", e);
+		}
+		afterId = continuation.substring(separator+1);
+	}
+
+	public Date getAfterDate() {
+		return afterDate;
+	}
+	public String getAfterId() {
+		return afterId;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setEndDate(Date endDate) {
+		this.endDate = endDate;
+	}
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	public void setMessageIdPrefix(String messageIdPrefix) {
+		this.messageIdPrefix = messageIdPrefix;
+	}
+	public String getMessageIdPrefix() {
+		return messageIdPrefix;
+	}
+
+	public void setCorrelationIdPrefix(String correlationIdPrefix) {
+		this.correlationIdPrefix = correlationIdPrefix;
+	}
+	public String getCorrelationIdPrefix() {
+		return correlationIdPrefix;
+	}
+
+	public void setLabelPrefix(String labelPrefix) {
+		this.labelPrefix = labelPrefix;
+	}
+	public String getLabelPrefix() {
+		return labelPrefix;
+	}
+
+	public void setHostPrefix(String hostPrefix) {
+		this.hostPrefix = hostPrefix;
+	}
+	public String getHostPrefix() {
+		return hostPrefix;
+	}
+
+	public void setCommentSubstring(String commentSubstring) {
+		this.commentSubstring = commentSubstring;
+	}
+	public String getCommentSubstring() {
+		return commentSubstring;
+	}
+
+	public void setSortDescending(boolean sortDescending) {
+		this.sortDescending = sortDescending;
+	}
+	public boolean isSortDescending() {
+		return sortDescending;
+	}
+
+	public int getMaxMessages() {
+		return maxMessages;
+	}
+}
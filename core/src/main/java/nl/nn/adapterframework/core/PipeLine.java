@@ -438,12 +438,18 @@ public class PipeLine implements ICacheEnabled, HasStatistics {
 	@Override
 	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
 		Object pipeStatsData = hski.openGroup(data, null, "pipeStats");
+		if (getLocker() != null) {
+			getLocker().iterateOverStatistics(hski, pipeStatsData, action);
+		}
 		handlePipeStat(getInputValidator(),pipeStatistics,pipeStatsData, hski, true, action);
 		handlePipeStat(getOutputValidator(),pipeStatistics,pipeStatsData, hski, true, action);
 		handlePipeStat(getInputWrapper(),pipeStatistics,pipeStatsData, hski, true, action);
 		handlePipeStat(getOutputWrapper(),pipeStatistics,pipeStatsData, hski, true, action);
 		for (IPipe pipe : adapter.getPipeLine().getPipes()) {
 			handlePipeStat(pipe, pipeStatistics, pipeStatsData, hski, true, action);
+			if (pipe instanceof IExtendedPipe && ((IExtendedPipe)pipe).getLocker() != null) {
+				((IExtendedPipe)pipe).getLocker().iterateOverStatistics(hski, pipeStatsData, action);
+			}
 			if (pipe instanceof MessageSendingPipe) {
 				MessageSendingPipe messageSendingPipe = (MessageSendingPipe) pipe;
 				if (messageSendingPipe.getInputValidator() != null) {
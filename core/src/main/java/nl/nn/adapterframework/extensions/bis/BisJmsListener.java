@@ -25,6 +25,7 @@ import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.configuration.ConfigurationWarnings;
 import nl.nn.adapterframework.core.ListenerException;
 import nl.nn.adapterframework.jms.JmsListener;
+import nl.nn.adapterframework.soap.SoapEnvelopeParts;
 import nl.nn.adapterframework.soap.SoapWrapper;
 import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.TransformerPool;
@@ -186,6 +187,11 @@ public class BisJmsListener extends JmsListener {
 		}
 	}
 
+	@Override
+	protected String extractMessageBody(String rawMessageText, SoapEnvelopeParts soapMessage, Map context, SoapWrapper soapWrapper) throws DomBuilderException, TransformerException, IOException {
+		return extractMessageBody(rawMessageText, context, soapWrapper);
+	}
+
 	public String extractMessageBody(String rawMessageText, Map context, SoapWrapper soapWrapper) throws DomBuilderException, TransformerException, IOException {
 		context.put(MESSAGETEXT_KEY, rawMessageText);
 		log.debug("extract messageBody from message [" + rawMessageText + "]");
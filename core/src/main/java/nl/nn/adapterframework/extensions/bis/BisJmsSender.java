@@ -27,6 +27,7 @@ import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.jms.JmsSender;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.soap.SoapEnvelopeParts;
 import nl.nn.adapterframework.soap.SoapWrapper;
 import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.TransformerPool;
@@ -104,6 +105,11 @@ public class BisJmsSender extends JmsSender {
 		}
 	}
 
+	@Override
+	protected String extractMessageBody(String rawMessageText, SoapEnvelopeParts soapMessage, Map context, SoapWrapper soapWrapper) throws DomBuilderException, TransformerException, IOException {
+		return extractMessageBody(rawMessageText, context, soapWrapper);
+	}
+
 	public String extractMessageBody(String rawMessageText, Map context, SoapWrapper soapWrapper) throws DomBuilderException, TransformerException, IOException {
 		return rawMessageText;
 	}
@@ -0,0 +1,137 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.ftp;
+
+import java.io.IOException;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.log4j.Logger;
+
+import com.sshtools.j2ssh.SftpClient;
+import com.sshtools.j2ssh.SshClient;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Connected and authenticated ftp or sftp client, that can be kept in the {@link FtpConnectionPool} to be reused.
+ *
+ * @since 7.5
+ */
+class FtpConnection {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private String route;
+	private SshClient sshClient;
+	private SftpClient sftpClient;
+	private FTPClient ftpClient;
+	private String homeDirectory;
+	private long lastUsed;
+	private int useCount;
+
+	FtpConnection(String route, SshClient sshClient, SftpClient sftpClient) throws IOException {
+		this.route = route;
+		this.sshClient = sshClient;
+		this.sftpClient = sftpClient;
+		homeDirectory = sftpClient.pwd();
+	}
+
+	FtpConnection(String route, FTPClient ftpClient) throws IOException {
+		this.route = route;
+		this.ftpClient = ftpClient;
+		homeDirectory = ftpClient.printWorkingDirectory();
+	}
+
+	/**
+	 * Checks that the connection is still open, for ftp by sending a NOOP command.
+	 */
+	boolean validate() {
+		if (sftpClient != null) {
+			return !sftpClient.isClosed() && sshClient.isConnected();
+		}
+		try {
+			return ftpClient.isConnected() && ftpClient.sendNoOp();
+		} catch (IOException e) {
+			log.debug("ftp connection to route [" + FtpConnectionPool.displayRoute(route) + "] is not valid anymore: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Changes to the remote directory relative to the directory the connection started in, as a previous user of
+	 * the connection may have left it in another directory.
+	 */
+	void changeDirectory(String remoteDirectory) throws IOException {
+		if (sftpClient != null) {
+			if (StringUtils.isNotEmpty(homeDirectory)) {
+				sftpClient.cd(homeDirectory);
+			}
+			if (StringUtils.isNotEmpty(remoteDirectory)) {
+				sftpClient.cd(remoteDirectory);
+			}
+			return;
+		}
+		if (StringUtils.isNotEmpty(homeDirectory) && !ftpClient.changeWorkingDirectory(homeDirectory)) {
+			throw new IOException("Command [changeWorkingDirectory " + homeDirectory + "] returned error [" + ftpClient.getReplyCode() + "]: " + ftpClient.getReplyString());
+		}
+		if (StringUtils.isNotEmpty(remoteDirectory) && !ftpClient.changeWorkingDirectory(remoteDirectory)) {
+			throw new IOException("Command [changeWorkingDirectory " + remoteDirectory + "] returned error [" + ftpClient.getReplyCode() + "]: " + ftpClient.getReplyString());
+		}
+	}
+
+	void close() {
+		if (log.isDebugEnabled()) log.debug("closing ftp connection to route [" + FtpConnectionPool.displayRoute(route) + "] after [" + useCount + "] uses");
+		if (sshClient != null) {
+			if (sshClient.isConnected()) {
+				sshClient.disconnect();
+			}
+			return;
+		}
+		if (ftpClient.isConnected()) {
+			try {
+				ftpClient.quit();
+				log.debug(ftpClient.getReplyString());
+				ftpClient.disconnect();
+			} catch (Exception e) {
+				log.error("Error while closeing FtpClient", e);
+			}
+		}
+	}
+
+	void markUsed() {
+		useCount++;
+		lastUsed = System.currentTimeMillis();
+	}
+
+	String getRoute() {
+		return route;
+	}
+	SshClient getSshClient() {
+		return sshClient;
+	}
+	SftpClient getSftpClient() {
+		return sftpClient;
+	}
+	FTPClient getFtpClient() {
+		return ftpClient;
+	}
+	long getLastUsed() {
+		return lastUsed;
+	}
+	int getUseCount() {
+		return useCount;
+	}
+}
@@ -0,0 +1,240 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.ftp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Pool of ftp and sftp connections, shared by all {@link FtpSession FtpSessions}. Connections are kept per route,
+ * the combination of protocol, host, port, user and other settings that determine the connection. Connections are
+ * checked before they are reused, and closed when they have not been used for a while.
+ *
+ * The number of connections per route, idle or in use, can be limited. When the limit is reached, a session waits
+ * for a connection to be returned.
+ *
+ * @since 7.5
+ */
+public class FtpConnectionPool {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private static final FtpConnectionPool INSTANCE = new FtpConnectionPool();
+
+	/**
+	 * Separates the part of a route that can be logged from the digest of the credentials.
+	 */
+	static final String CREDENTIALS_SEPARATOR = "#";
+
+	private static final long EVICTION_INTERVAL = 10000;
+
+	private Map<String, Route> routes = new HashMap<String, Route>();
+	private Timer evictionTimer;
+
+	private static class Route {
+		Deque<FtpConnection> idle = new ArrayDeque<FtpConnection>();
+		int open;
+		long maxIdleTime;
+	}
+
+	public static FtpConnectionPool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns a valid idle connection for the route, or <code>null</code> when a new connection must be created.
+	 * In the latter case, the new connection is counted for the route, so the caller must either {@link #release(FtpConnection, int, long) release}
+	 * the connection it created, or {@link #cancel(String) cancel} when it could not create one.
+	 */
+	FtpConnection borrow(String routeKey, int maxConnectionsPerRoute, long maxWaitTime) throws FtpConnectException {
+		long deadline = System.currentTimeMillis() + maxWaitTime;
+		while (true) {
+			FtpConnection candidate;
+			boolean expired = false;
+			synchronized (this) {
+				Route route = routes.get(routeKey);
+				if (route == null) {
+					route = new Route();
+					routes.put(routeKey, route);
+				}
+				candidate = route.idle.pollFirst();
+				if (candidate == null) {
+					if (maxConnectionsPerRoute <= 0 || route.open < maxConnectionsPerRoute) {
+						route.open++;
+						return null;
+					}
+					long waitTime = deadline - System.currentTimeMillis();
+					if (waitTime <= 0) {
+						throw new FtpConnectException("no connection to [" + displayRoute(routeKey) + "] became available within [" + maxWaitTime + "] ms, maxConnectionsPerRoute [" + maxConnectionsPerRoute + "]");
+					}
+					try {
+						wait(waitTime);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new FtpConnectException("interrupted while waiting for a connection to [" + displayRoute(routeKey) + "]", e);
+					}
+					continue;
+				}
+				if (System.currentTimeMillis() - candidate.getLastUsed() > route.maxIdleTime) {
+					route.open--;
+					notifyAll();
+					expired = true;
+				}
+			}
+			if (expired) {
+				candidate.close();
+				continue;
+			}
+			// validated outside the lock, as it requires a roundtrip to the server
+			if (candidate.validate()) {
+				return candidate;
+			}
+			discard(candidate);
+		}
+	}
+
+	/**
+	 * Returns a connection to the pool, or closes it when the route has <code>maxIdleConnections</code> idle connections already.
+	 */
+	void release(FtpConnection connection, int maxIdleConnections, long maxIdleTime) {
+		synchronized (this) {
+			Route route = routes.get(connection.getRoute());
+			if (route == null) {
+				// the route has been evicted while the connection was in use, it is not counted anymore
+				log.debug("route [" + displayRoute(connection.getRoute()) + "] of released connection is not in the pool anymore, closing connection");
+			} else if (route.idle.size() < maxIdleConnections) {
+				route.maxIdleTime = maxIdleTime;
+				connection.markUsed();
+				route.idle.offerFirst(connection);
+				scheduleEviction();
+				notifyAll();
+				return;
+			} else {
+				route.open--;
+				notifyAll();
+			}
+		}
+		connection.close();
+	}
+
+	/**
+	 * Closes a connection that is broken or in an unknown state.
+	 */
+	void discard(FtpConnection connection) {
+		cancel(connection.getRoute());
+		connection.close();
+	}
+
+	/**
+	 * Frees the place of a connection that could not be created.
+	 */
+	synchronized void cancel(String routeKey) {
+		Route route = routes.get(routeKey);
+		if (route != null) {
+			route.open--;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of connections for the route, idle or in use.
+	 */
+	synchronized int getOpenConnections(String routeKey) {
+		Route route = routes.get(routeKey);
+		return route == null ? 0 : route.open;
+	}
+
+	synchronized int getIdleConnections(String routeKey) {
+		Route route = routes.get(routeKey);
+		return route == null ? 0 : route.idle.size();
+	}
+
+	synchronized boolean isEvictionTimerActive() {
+		return evictionTimer != null;
+	}
+
+	static String displayRoute(String route) {
+		return StringUtils.substringBefore(route, CREDENTIALS_SEPARATOR);
+	}
+
+	/**
+	 * Starts the eviction timer when it is not running. The timer is stopped when no idle connections are left, so its
+	 * thread does not keep the classloader of a stopped application alive.
+	 */
+	private void scheduleEviction() {
+		if (evictionTimer == null) {
+			evictionTimer = new Timer("FtpConnectionPool-evictor", true);
+			evictionTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					evictIdleConnections();
+				}
+			}, EVICTION_INTERVAL, EVICTION_INTERVAL);
+		}
+	}
+
+	void evictIdleConnections() {
+		evictIdleConnections(false);
+	}
+
+	/**
+	 * Closes all idle connections, regardless of their idle time.
+	 */
+	void closeIdleConnections() {
+		evictIdleConnections(true);
+	}
+
+	private void evictIdleConnections(boolean all) {
+		List<FtpConnection> expired = new ArrayList<FtpConnection>();
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			boolean idleLeft = false;
+			for (Iterator<Route> it = routes.values().iterator(); it.hasNext();) {
+				Route route = it.next();
+				// the least recently used connections are at the end
+				while (!route.idle.isEmpty() && (all || now - route.idle.peekLast().getLastUsed() > route.maxIdleTime)) {
+					expired.add(route.idle.pollLast());
+					route.open--;
+				}
+				if (route.open <= 0) {
+					it.remove();
+				}
+				idleLeft |= !route.idle.isEmpty();
+			}
+			if (!idleLeft && evictionTimer != null) {
+				evictionTimer.cancel();
+				evictionTimer = null;
+			}
+			if (!expired.isEmpty()) {
+				notifyAll();
+			}
+		}
+		for (FtpConnection connection : expired) {
+			connection.close();
+		}
+	}
+}
@@ -330,4 +330,24 @@ public class FtpFileRetrieverPipe extends FixedForwardPipe {
 		ftpSession.setKeyboardInteractive(keyboardInteractive);
 	}
 
+	@IbisDoc({"number of connections to the same host, with the same user and settings, that are kept open to be reused. use 0 to close the connection after every operation", "2"})
+	public void setMaxIdleConnections(int maxIdleConnections) {
+		ftpSession.setMaxIdleConnections(maxIdleConnections);
+	}
+
+	@IbisDoc({"time (in milliseconds) after which a connection that is not used is closed", "60000"})
+	public void setMaxIdleTime(int maxIdleTime) {
+		ftpSession.setMaxIdleTime(maxIdleTime);
+	}
+
+	@IbisDoc({"maximum number of connections to the same host, with the same user and settings, in use or idle. when reached, operations wait for a connection to become available. use 0 for no limit", "0"})
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		ftpSession.setMaxConnectionsPerRoute(maxConnectionsPerRoute);
+	}
+
+	@IbisDoc({"time (in milliseconds) to wait for a connection to become available when <code>maxConnectionsPerRoute</code> is reached", "60000"})
+	public void setMaxConnectionWaitTime(int maxConnectionWaitTime) {
+		ftpSession.setMaxConnectionWaitTime(maxConnectionWaitTime);
+	}
+
 }
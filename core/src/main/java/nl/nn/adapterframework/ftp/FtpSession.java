@@ -38,6 +38,7 @@ import nl.nn.adapterframework.util.CredentialFactory;
 import nl.nn.adapterframework.util.FileUtils;
 import nl.nn.adapterframework.util.LogUtil;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPReply;
@@ -61,8 +62,10 @@ import com.sshtools.j2ssh.transport.publickey.SshPrivateKeyFile;
 
 /**
  * Helper class for sftp and ftp.
- * 
- *
+ * <p>
+ * Connections are taken from the shared {@link FtpConnectionPool} and returned to it when the client is closed,
+ * so subsequent operations, also of other sessions with the same host, user and settings, do not need to connect and
+ * authenticate again. Set <code>maxIdleConnections</code> to 0 to close the connection every time.
  * 
  * @author John Dekker
  */
@@ -95,6 +98,10 @@ public class FtpSession {
 	private boolean messageIsContent=false;
 	private boolean passive=true;
 	private boolean keyboardInteractive=false;
+	private int maxIdleConnections=2;
+	private int maxIdleTime=60000;
+	private int maxConnectionsPerRoute=0;
+	private int maxConnectionWaitTime=60000;
 	
 	// configuration property for sftp
 	private int proxyTransportType = SshConnectionProperties.USE_SOCKS5_PROXY;
@@ -125,6 +132,8 @@ public class FtpSession {
 	private SshClient sshClient;
 	private SftpClient sftpClient;
 	public FTPClient ftpClient;
+	private FtpConnection connection;
+	private String route;
 	
 	public void configure() throws ConfigurationException {
 		if (StringUtils.isEmpty(ftpTypeDescription)) {
@@ -178,16 +187,65 @@ public class FtpSession {
 		log.debug("Open ftp client");
 		if (ftpType == SFTP) {
 			if (sftpClient == null || sftpClient.isClosed()) {
-				openSftpClient(remoteDirectory);
+				if (!borrowClient(remoteDirectory)) {
+					openSftpClient(remoteDirectory);
+				}
 			}
 		}
 		else {
 			if (ftpClient == null || ! ftpClient.isConnected()) {
-				openFtpClient(remoteDirectory);
+				if (!borrowClient(remoteDirectory)) {
+					openFtpClient(remoteDirectory);
+				}
 			}
 		}
 	}
 
+	/**
+	 * Takes a connection from the pool. Returns <code>false</code> when a new connection must be opened.
+	 */
+	private boolean borrowClient(String remoteDirectory) throws FtpConnectException {
+		if (connection != null) {
+			// the connection that was held has been closed by the server
+			FtpConnectionPool.getInstance().discard(connection);
+			clearClient();
+		}
+		FtpConnection pooledConnection = FtpConnectionPool.getInstance().borrow(getRoute(), getMaxConnectionsPerRoute(), getMaxConnectionWaitTime());
+		if (pooledConnection == null) {
+			return false;
+		}
+		try {
+			pooledConnection.changeDirectory(remoteDirectory);
+		}
+		catch(IOException e) {
+			FtpConnectionPool.getInstance().release(pooledConnection, getMaxIdleConnections(), getMaxIdleTime());
+			throw new FtpConnectException(e);
+		}
+		connection = pooledConnection;
+		sshClient = connection.getSshClient();
+		sftpClient = connection.getSftpClient();
+		ftpClient = connection.getFtpClient();
+		return true;
+	}
+
+	/**
+	 * Identifies the connections that can be shared: the combination of all settings that are used to connect.
+	 * The credentials are included as a digest.
+	 */
+	protected String getRoute() {
+		if (route == null) {
+			CredentialFactory usercf = new CredentialFactory(getAuthAlias(), getUsername(), getPassword());
+			CredentialFactory pkcf = new CredentialFactory(getPrivateKeyAuthAlias(), getUsername(), getPrivateKeyPassword());
+			String credentials = usercf.getUsername() + ":" + usercf.getPassword() + ":" + pkcf.getPassword() + ":" + getPrivateKeyFilePath() + ":" + getCertificate() + ":" + getCertificateAuthAlias();
+			route = ftpTypeDescription + "://" + usercf.getUsername() + "@" + host + ":" + port
+					+ ";fileType=" + fileType + ";passive=" + passive + ";keyboardInteractive=" + keyboardInteractive
+					+ ";proxy=" + proxyHost + ":" + proxyPort + ";knownHosts=" + knownHostsPath
+					+ ";truststore=" + truststore + ";protP=" + protP
+					+ FtpConnectionPool.CREDENTIALS_SEPARATOR + DigestUtils.sha256Hex(credentials);
+		}
+		return route;
+	}
+
 	private void openSftpClient(String remoteDirectory) throws FtpConnectException {
 		try {
 			// Set the connection properties and if necessary the proxy properties
@@ -262,12 +320,16 @@ public class FtpSession {
 			
 			// use the connection for sftp
 			sftpClient = sshClient.openSftpClient();
+			connection = new FtpConnection(getRoute(), sshClient, sftpClient);
 			
 			if (! StringUtils.isEmpty(remoteDirectory)) {
 				sftpClient.cd(remoteDirectory);
 			}
 		}
 		catch(Exception e) {
+			if (connection == null) {
+				FtpConnectionPool.getInstance().cancel(getRoute());
+			}
 			closeSftpClient();
 			throw new FtpConnectException(e);
 		}
@@ -319,6 +381,7 @@ public class FtpSession {
 			}
 			CredentialFactory usercf = new CredentialFactory(getAuthAlias(), getUsername(), getPassword());
 			ftpClient.login(usercf.getUsername(), usercf.getPassword());
+			connection = new FtpConnection(getRoute(), ftpClient);
 	
 			if (! StringUtils.isEmpty(remoteDirectory)) {
 				ftpClient.changeWorkingDirectory(remoteDirectory);
@@ -331,6 +394,9 @@ public class FtpSession {
 			}
 		}
 		catch(Exception e) {
+			if (connection == null) {
+				FtpConnectionPool.getInstance().cancel(getRoute());
+			}
 			closeFtpClient();
 			throw new FtpConnectException(e);
 		}
@@ -355,8 +421,17 @@ public class FtpSession {
 		return new FTPsClient(this);
 	}
 
+	/**
+	 * Returns the connection to the pool.
+	 */
 	public void closeClient() {
 		log.debug("Close ftp client");
+		if (connection != null) {
+			FtpConnection pooledConnection = connection;
+			clearClient();
+			FtpConnectionPool.getInstance().release(pooledConnection, getMaxIdleConnections(), getMaxIdleTime());
+			return;
+		}
 		if (ftpType == SFTP) {
 			closeSftpClient();
 		}
@@ -364,8 +439,33 @@ public class FtpSession {
 			closeFtpClient();
 		}
 	}
+
+	/**
+	 * Closes the connection after an error, instead of returning it to the pool, as its state is unknown.
+	 */
+	protected void invalidateClient() {
+		if (connection != null) {
+			FtpConnection pooledConnection = connection;
+			clearClient();
+			FtpConnectionPool.getInstance().discard(pooledConnection);
+			return;
+		}
+		closeClient();
+	}
+
+	private void clearClient() {
+		connection = null;
+		sshClient = null;
+		sftpClient = null;
+		ftpClient = null;
+	}
 	
 	private void closeSftpClient() {
+		if (connection != null) {
+			FtpConnectionPool.getInstance().discard(connection);
+			clearClient();
+			return;
+		}
 		if (sshClient != null) {
 			if (sshClient.isConnected()) {
 				sshClient.disconnect();
@@ -376,6 +476,11 @@ public class FtpSession {
 	}
 	
 	private void closeFtpClient() {
+		if (connection != null) {
+			FtpConnectionPool.getInstance().discard(connection);
+			clearClient();
+			return;
+		}
 		if (ftpClient != null) {
 			if (ftpClient.isConnected()) {
 				try {
@@ -420,6 +525,10 @@ public class FtpSession {
 				checkReply("storeFile "+remoteFilename);
 			}
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			is.close();
 
@@ -469,6 +578,10 @@ public class FtpSession {
 			}
 			return remoteFilenames;
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			if (closeAfterSend) {
 				closeClient();
@@ -496,6 +609,10 @@ public class FtpSession {
 			}
 			return FileUtils.getListFromNames(ftpClient.listNames());
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			if (closeAfterSend) {
 				closeClient();
@@ -527,6 +644,10 @@ public class FtpSession {
 				ftpClient.deleteFile(filename);
 			}
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			if (closeAfterDelete) {
 				closeClient();
@@ -565,6 +686,10 @@ public class FtpSession {
 			}
 			return result.toString();
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			if (closeAfterGet) {
 				closeClient();
@@ -614,6 +739,10 @@ public class FtpSession {
 			}
 			return remoteFilenames;
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			if (closeAfterGet) {
 				closeClient();
@@ -952,4 +1081,36 @@ public class FtpSession {
 	public void setKeyboardInteractive(boolean keyboardInteractive) {
 		this.keyboardInteractive = keyboardInteractive;
 	}
+
+	@IbisDoc({"number of connections to the same host, with the same user and settings, that are kept open to be reused. use 0 to close the connection after every operation", "2"})
+	public void setMaxIdleConnections(int maxIdleConnections) {
+		this.maxIdleConnections = maxIdleConnections;
+	}
+	public int getMaxIdleConnections() {
+		return maxIdleConnections;
+	}
+
+	@IbisDoc({"time (in milliseconds) after which a connection that is not used is closed", "60000"})
+	public void setMaxIdleTime(int maxIdleTime) {
+		this.maxIdleTime = maxIdleTime;
+	}
+	public int getMaxIdleTime() {
+		return maxIdleTime;
+	}
+
+	@IbisDoc({"maximum number of connections to the same host, with the same user and settings, in use or idle. when reached, operations wait for a connection to become available. use 0 for no limit", "0"})
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	@IbisDoc({"time (in milliseconds) to wait for a connection to become available when <code>maxConnectionsPerRoute</code> is reached", "60000"})
+	public void setMaxConnectionWaitTime(int maxConnectionWaitTime) {
+		this.maxConnectionWaitTime = maxConnectionWaitTime;
+	}
+	public int getMaxConnectionWaitTime() {
+		return maxConnectionWaitTime;
+	}
 }
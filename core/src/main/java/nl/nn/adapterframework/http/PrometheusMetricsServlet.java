@@ -0,0 +1,109 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.http;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Date;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import nl.nn.adapterframework.cache.IbisCacheManager;
+import nl.nn.adapterframework.configuration.Configuration;
+import nl.nn.adapterframework.configuration.IbisContext;
+import nl.nn.adapterframework.configuration.IbisManager;
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.lifecycle.IbisInitializer;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperPrometheusExporter;
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.webcontrol.ConfigurationServlet;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Serves the statistics of all adapters, receivers, pipes and senders in the Prometheus text format, to be scraped
+ * by a monitoring system. See {@link StatisticsKeeperPrometheusExporter} for the metrics that are exposed.
+ * <p>
+ * Statistics are read without marking or resetting them, so scraping does not interfere with the periodic
+ * statistics dumps. The servlet is registered at <code>/metrics</code>; use the <code>servlet.PrometheusMetricsServlet.*</code>
+ * properties to change the url, the security roles, or to disable it.
+ * 
+ * @since   7.5
+ */
+@IbisInitializer
+public class PrometheusMetricsServlet extends HttpServletBase {
+
+	private static final long serialVersionUID = 1L;
+
+	protected Logger log = LogUtil.getLogger(this);
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		IbisManager ibisManager = getIbisManager();
+		if (ibisManager == null) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "IBIS is not started");
+			return;
+		}
+		StatisticsKeeperPrometheusExporter exporter = new StatisticsKeeperPrometheusExporter();
+		Date now = new Date();
+		Object root = exporter.start(now, now, null);
+		try {
+			Object instance = exporter.openGroup(root, AppConstants.getInstance().getString("instance.name", ""), "instance");
+			for (Configuration configuration : ibisManager.getConfigurations()) {
+				Object configurationGroup = exporter.openGroup(instance, configuration.getName(), "configuration");
+				configuration.forEachStatisticsKeeperBody(exporter, configurationGroup, HasStatistics.STATISTICS_ACTION_FULL);
+				exporter.closeGroup(configurationGroup);
+			}
+			// the caches are shared by all configurations
+			IbisCacheManager.iterateOverStatistics(exporter, instance, HasStatistics.STATISTICS_ACTION_FULL);
+			exporter.closeGroup(instance);
+		} catch (SenderException e) {
+			log.warn("cannot collect statistics", e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+			return;
+		} finally {
+			exporter.end(root);
+		}
+		response.setContentType(StatisticsKeeperPrometheusExporter.CONTENT_TYPE);
+		Writer writer = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+		exporter.write(writer);
+		writer.flush();
+	}
+
+	private IbisManager getIbisManager() {
+		String attributeKey = AppConstants.getInstance().getProperty(ConfigurationServlet.KEY_CONTEXT);
+		IbisContext ibisContext = (IbisContext) getServletContext().getAttribute(attributeKey);
+		if (ibisContext == null) {
+			return null;
+		}
+		return ibisContext.getIbisManager();
+	}
+
+	@Override
+	public String[] getRoles() {
+		return new String[] { "IbisObserver", "IbisAdmin", "IbisDataAdmin", "IbisTester" };
+	}
+
+	@Override
+	public String getUrlMapping() {
+		return "/metrics";
+	}
+}
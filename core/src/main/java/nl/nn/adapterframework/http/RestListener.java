@@ -15,11 +15,13 @@
 */
 package nl.nn.adapterframework.http;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import nl.nn.adapterframework.doc.IbisDoc;
 import org.apache.commons.lang.StringUtils;
@@ -33,6 +35,8 @@ import nl.nn.adapterframework.core.PipeLineSessionBase;
 import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.pipes.JsonPipe;
+import nl.nn.adapterframework.stream.MessageOutputStream;
+import nl.nn.adapterframework.util.StreamUtil;
 
 /**
  * Implementation of a {@link nl.nn.adapterframework.core.IPushingListener IPushingListener} that enables a {@link nl.nn.adapterframework.receivers.GenericReceiver}
@@ -65,6 +69,9 @@ public class RestListener extends PushingListenerAdapter implements HasPhysicalD
 	private boolean validateEtag = false;
 	private boolean generateEtag = false;
 
+	private String requestBodySessionKey = null;
+	private boolean streamResponse = false;
+
 	/**
 	 * initialize listener and register <code>this</code> to the JNDI
 	 */
@@ -78,6 +85,12 @@ public class RestListener extends PushingListenerAdapter implements HasPhysicalD
 				setView(false);
 			}
 		}
+		if (getRequestBodySessionKey()!=null && getConsumes().equalsIgnoreCase("JSON")) {
+			throw new ConfigurationException("cannot set requestBodySessionKey when consumes is [JSON], the request body can only be converted to XML when it is the pipeline input");
+		}
+		if (isStreamResponse() && getProduces().equalsIgnoreCase("JSON")) {
+			throw new ConfigurationException("cannot set streamResponse when produces is [JSON], the response can only be converted to JSON when it is the pipeline result");
+		}
 	}
 
 	@Override
@@ -126,6 +139,7 @@ public class RestListener extends PushingListenerAdapter implements HasPhysicalD
 			if(getProduces().equalsIgnoreCase("TEXT"))
 				requestContext.put("contentType", "text/plain");
 
+			prepareStreamResponse(requestContext);
 			response = super.processRequest(correlationId, message, requestContext);
 			if(response != null && !response.isEmpty())
 				eTag = response.hashCode();
@@ -139,6 +153,7 @@ public class RestListener extends PushingListenerAdapter implements HasPhysicalD
 			}
 		}
 		else {
+			prepareStreamResponse(requestContext);
 			response = super.processRequest(correlationId, message, requestContext);
 			if(response != null && !response.isEmpty())
 				eTag = response.hashCode();
@@ -151,6 +166,29 @@ public class RestListener extends PushingListenerAdapter implements HasPhysicalD
 		return response;
 	}
 
+	/**
+	 * When the response is streamed, the content type must be set before the pipeline starts writing to the response.
+	 */
+	private void prepareStreamResponse(IPipeLineSession requestContext) throws ListenerException {
+		if (!isStreamResponse()) {
+			return;
+		}
+		HttpServletResponse httpServletResponse = (HttpServletResponse) requestContext.get(IPipeLineSession.HTTP_RESPONSE_KEY);
+		if (httpServletResponse == null) {
+			return;
+		}
+		String contentType = (String) requestContext.get("contentType");
+		if (StringUtils.isNotEmpty(contentType)) {
+			httpServletResponse.setContentType(contentType);
+		}
+		httpServletResponse.setCharacterEncoding(StreamUtil.DEFAULT_INPUT_STREAM_ENCODING);
+		try {
+			requestContext.put(IPipeLineSession.PIPELINE_OUTPUT_STREAM_KEY, new MessageOutputStream(httpServletResponse.getOutputStream(), null));
+		} catch (IOException e) {
+			throw new ListenerException("cannot obtain outputstream of the response", e);
+		}
+	}
+
 	public String transformToJson(String message) throws PipeRunException {
 		JsonPipe pipe = new JsonPipe();
 		pipe.setDirection("xml2json");
@@ -306,4 +344,23 @@ public class RestListener extends PushingListenerAdapter implements HasPhysicalD
 	public boolean getGenerateEtag() {
 		return generateEtag;
 	}
+
+	@IbisDoc({"when set, the request body is not read into the pipeline input, but put as a stream in this session key. The pipeline input is then empty", ""})
+	public void setRequestBodySessionKey(String requestBodySessionKey) {
+		this.requestBodySessionKey = requestBodySessionKey;
+	}
+
+	public String getRequestBodySessionKey() {
+		return requestBodySessionKey;
+	}
+
+	@IbisDoc({"when set to true, streaming pipes at the end of the pipeline write their output directly to the response, using chunked transfer encoding. "
+			+ "The status code and headers other than the content type cannot be changed by the pipeline anymore once it starts writing", "false"})
+	public void setStreamResponse(boolean streamResponse) {
+		this.streamResponse = streamResponse;
+	}
+
+	public boolean isStreamResponse() {
+		return streamResponse;
+	}
 }
@@ -30,9 +30,12 @@ import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.ISecurityHandler;
 import nl.nn.adapterframework.core.ListenerException;
 import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.receivers.ServiceClient;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.Misc;
+import nl.nn.adapterframework.util.StreamUtil;
 
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.lang.StringUtils;
@@ -109,7 +112,14 @@ public class RestListenerServlet extends HttpServlet {
 			messageContext.put(paramname, paramvalue);
 		}
 		if (!ServletFileUpload.isMultipartContent(request)) {
-			body=Misc.streamToString(request.getInputStream(),"\n",false);
+			ServiceClient listener = sd.findListener(path, request.getMethod());
+			String requestBodySessionKey = listener instanceof RestListener ? ((RestListener)listener).getRequestBodySessionKey() : null;
+			if (requestBodySessionKey!=null) {
+				if (log.isTraceEnabled()) log.trace("setting request body as stream in session key ["+requestBodySessionKey+"]");
+				messageContext.put(requestBodySessionKey, new Message(request.getInputStream(), request.getCharacterEncoding()));
+			} else {
+				body=Misc.streamToString(request.getInputStream(),"\n",false);
+			}
 		}
 		try {
 			log.trace("RestListenerServlet calling service ["+path+"]");
@@ -148,7 +158,12 @@ public class RestListenerServlet extends HttpServlet {
 				if (StringUtils.isNotEmpty(allowedMethods)) {
 					response.setHeader("Allow", allowedMethods);
 				}
-				response.getWriter().print(result);
+				if (messageContext.containsKey(IPipeLineSession.PIPELINE_OUTPUT_STREAM_KEY)) {
+					// the outputstream of the response has been obtained to stream the result, the writer cannot be used anymore
+					response.getOutputStream().write(result.getBytes(StreamUtil.DEFAULT_INPUT_STREAM_ENCODING));
+				} else {
+					response.getWriter().print(result);
+				}
 				log.trace("RestListenerServlet finished with result ["+result+"] etag ["+etag+"] contentType ["+contentType+"] contentDisposition ["+contentDisposition+"]");
 			}
 		} catch (ListenerException e) {
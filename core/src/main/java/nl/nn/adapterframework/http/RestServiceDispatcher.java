@@ -123,6 +123,21 @@ public class RestServiceDispatcher  {
 		return methodConfig;
 	}
 	
+	/**
+	 * Returns the listener that handles requests for the uri and method, or <code>null</code> when there is none.
+	 */
+	public ServiceClient findListener(String uri, String method) {
+		String matchingPattern = findMatchingPattern(uri);
+		if (matchingPattern==null) {
+			return null;
+		}
+		Map methodConfig = getMethodConfig(matchingPattern, method);
+		if (methodConfig==null) {
+			return null;
+		}
+		return (ServiceClient)methodConfig.get(KEY_LISTENER);
+	}
+
 	public List getAvailableMethods(String matchingPattern) {
 		Map patternEntry=(Map)patternClients.get(matchingPattern);
 		Iterator it = patternEntry.entrySet().iterator();
@@ -25,8 +25,10 @@ import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.parameters.ParameterValueList;
+import nl.nn.adapterframework.soap.SoapEnvelopeParts;
 import nl.nn.adapterframework.soap.SoapWrapper;
 import nl.nn.adapterframework.util.CredentialFactory;
+import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.Misc;
 
 import org.apache.commons.lang.StringUtils;
@@ -149,18 +151,27 @@ public class WebServiceSender extends HttpSender {
 			throw e;
 		}
 
-		if (isThrowApplicationFaults()) {
-			soapWrapper.checkForSoapFault(httpResult, null);
+		if (!isThrowApplicationFaults() && !isSoap()) {
+			return httpResult;
 		}
+		// the envelope is parsed once, for both the fault check and the body
+		SoapEnvelopeParts soapMessage;
 		try {
+			soapMessage = soapWrapper.split(httpResult);
+		} catch (DomBuilderException e) {
 			if (isSoap()) {
-				return soapWrapper.getBody(httpResult);
-			} else {
-				return httpResult;
+				throw new SenderException("cannot retrieve result message",e);
 			}
-		} catch (Exception e) {
-			throw new SenderException("cannot retrieve result message",e);
+			log.debug(getLogPrefix()+"exception extracting fault message", e);
+			return httpResult;
+		}
+		if (isThrowApplicationFaults()) {
+			soapWrapper.checkForSoapFault(soapMessage, null);
+		}
+		if (isSoap()) {
+			return soapMessage.getBody();
 		}
+		return httpResult;
 	}
 
 	@IbisDoc({"when <code>true</code>, messages sent are put in a soap envelope and the soap envelope is removed from received messages (soap envelope will not be visible to the pipeline)", "<code>true</code>"})
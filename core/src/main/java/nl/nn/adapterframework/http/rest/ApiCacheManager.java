@@ -15,6 +15,16 @@ limitations under the License.
 */
 package nl.nn.adapterframework.http.rest;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.StringUtils;
+
 import nl.nn.adapterframework.util.AppConstants;
 
 public class ApiCacheManager {
@@ -53,6 +63,72 @@ public class ApiCacheManager {
 		return Integer.toOctalString(instanceName.hashCode()) + "_" +Integer.toHexString(uriPattern.hashCode()) + "_" + hash;
 	}
 
+	/**
+	 * Builds a strong etag from a SHA-256 digest of the content, so that different representations practically
+	 * never get the same etag.
+	 */
+	public static String buildEtag(String uriPattern, String content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes("UTF-8"));
+			return Integer.toOctalString(instanceName.hashCode()) + "_" +Integer.toHexString(uriPattern.hashCode()) + "_" + Hex.encodeHexString(digest);
+		} catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+			// both are mandatory for every Java platform
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Checks an If-None-Match header against an etag. The header may contain a list of etags,
+	 * that may be quoted and marked as weak, or <code>*</code> to match any etag.
+	 */
+	public static boolean etagMatches(String header, String etag) {
+		return etagMatches(header, etag, true);
+	}
+
+	/**
+	 * Checks an If-Match or If-None-Match header against an etag. If-Match requires the strong comparison of
+	 * RFC 7232 section 2.3.2, in which weak etags in the header never match.
+	 */
+	public static boolean etagMatches(String header, String etag, boolean weakComparison) {
+		if (header == null || etag == null) {
+			return false;
+		}
+		for (String item : header.split(",")) {
+			String value = item.trim();
+			if (value.equals("*")) {
+				return true;
+			}
+			if (value.startsWith("W/")) {
+				if (!weakComparison) {
+					continue;
+				}
+				value = value.substring(2);
+			}
+			if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+				value = value.substring(1, value.length()-1);
+			}
+			if (value.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Builds the key of a cached response. Next to the uri, the key contains the query string and the values of
+	 * the request headers the response varies on.
+	 */
+	public static String buildResponseCacheKey(String etagCacheKey, HttpServletRequest request, List<String> varyHeaders) {
+		StringBuilder key = new StringBuilder(etagCacheKey).append("_response");
+		if (StringUtils.isNotEmpty(request.getQueryString())) {
+			key.append("?").append(request.getQueryString());
+		}
+		for (String header : varyHeaders) {
+			key.append("|").append(header.toLowerCase()).append("=").append(StringUtils.defaultString(request.getHeader(header)));
+		}
+		return key.toString();
+	}
+
 	public static String getParentCacheKey(ApiListener listener, String uri) {
 		String method = listener.getMethod();
 		String pattern = listener.getCleanPattern();
@@ -0,0 +1,182 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.http.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Response of an {@link ApiListener} that is kept in the {@link IApiCache}, together with the etag it was
+ * calculated with. Bodies larger than {@link #COMPRESSION_THRESHOLD} bytes are stored gzip compressed, and are
+ * sent compressed to clients that accept it. A compressed response is sent with a weak etag, as its bytes differ
+ * from those of the uncompressed response with the same etag.
+ *
+ * @since 7.5
+ */
+public class ApiCachedResponse implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int COMPRESSION_THRESHOLD = 1024;
+
+	private static final String CHARSET = "UTF-8";
+
+	private String etag;
+	private String contentType;
+	private byte[] body;
+	private boolean compressed;
+	private volatile byte[] deflatedBody;
+
+	public ApiCachedResponse(String etag, String contentType, String body) throws IOException {
+		this.etag = etag;
+		this.contentType = contentType;
+		byte[] bytes = body.getBytes(CHARSET);
+		if (bytes.length > COMPRESSION_THRESHOLD) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+			GZIPOutputStream gzip = new GZIPOutputStream(out);
+			gzip.write(bytes);
+			gzip.close();
+			this.body = out.toByteArray();
+			compressed = true;
+		} else {
+			this.body = bytes;
+		}
+	}
+
+	/**
+	 * Writes the response, using the content encoding that the client accepts.
+	 */
+	public void write(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		response.setHeader("Content-Type", contentType);
+		response.addHeader("Vary", "Accept-Encoding");
+
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		byte[] content;
+		if (compressed && accepts(acceptEncoding, "gzip")) {
+			response.setHeader("Content-Encoding", "gzip");
+			response.setHeader("etag", getWeakEtag());
+			content = body;
+		} else if (compressed && accepts(acceptEncoding, "deflate")) {
+			response.setHeader("Content-Encoding", "deflate");
+			response.setHeader("etag", getWeakEtag());
+			content = getDeflatedBody();
+		} else {
+			response.setHeader("etag", etag);
+			content = getBody();
+		}
+		response.setContentLength(content.length);
+		response.getOutputStream().write(content);
+	}
+
+	/**
+	 * Returns the body in deflate encoding. It is compressed at the first request that needs it, and kept from then on.
+	 */
+	private byte[] getDeflatedBody() throws IOException {
+		byte[] result = deflatedBody;
+		if (result == null) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(body.length);
+			OutputStream deflater = new DeflaterOutputStream(out);
+			deflater.write(getBody());
+			deflater.close();
+			result = out.toByteArray();
+			deflatedBody = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the uncompressed body.
+	 */
+	public byte[] getBody() throws IOException {
+		if (!compressed) {
+			return body;
+		}
+		return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(body)));
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	/**
+	 * Returns the etag for a compressed representation of the body. The If-None-Match header of the servlet matches
+	 * it, as weak etags are compared without the <code>W/</code> prefix.
+	 */
+	public String getWeakEtag() {
+		return "W/\""+etag+"\"";
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Checks the Accept header of a request against the content type of this response, like the servlet
+	 * checks it against the content type a listener produces.
+	 */
+	public boolean isAcceptable(String accept) {
+		if(accept == null || accept.isEmpty() || accept.contains("*/*") || contentType == null) {
+			return true;
+		}
+		int semicolon = contentType.indexOf(";");
+		String mimeType = semicolon < 0 ? contentType : contentType.substring(0, semicolon);
+		return accept.contains(mimeType.trim());
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * Returns true when the Accept-Encoding header contains the encoding, and does not exclude it with <code>q=0</code>.
+	 */
+	static boolean accepts(String acceptEncoding, String encoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String item : acceptEncoding.split(",")) {
+			String[] parts = item.split(";");
+			String coding = parts[0].trim();
+			if (coding.equalsIgnoreCase(encoding) || coding.equals("*")) {
+				for (int i = 1; i < parts.length; i++) {
+					String param = parts[i].trim();
+					if (param.startsWith("q=")) {
+						try {
+							if (Float.parseFloat(param.substring(2)) <= 0) {
+								return false;
+							}
+						} catch (NumberFormatException e) {
+							return false;
+						}
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -15,12 +15,14 @@ limitations under the License.
 */
 package nl.nn.adapterframework.http.rest;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.configuration.ConfigurationWarnings;
 import nl.nn.adapterframework.core.HasPhysicalDestination;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.ListenerException;
@@ -46,6 +48,10 @@ public class ApiListener extends PushingListenerAdapter<String> implements HasPh
 	private MediaType consumes = MediaType.ANY;
 	private MediaType produces = MediaType.ANY;
 	private String multipartBodyName = null;
+	private boolean cacheResponse = false;
+	private List<String> varyHeaders = new ArrayList<String>();
+	private String requestBodySessionKey = null;
+	private boolean streamResponse = false;
 
 	/**
 	 * initialize listener and register <code>this</code> to the JNDI
@@ -65,6 +71,19 @@ public class ApiListener extends PushingListenerAdapter<String> implements HasPh
 
 		if(getAuthenticationMethod() != null && !authenticationMethods.contains(getAuthenticationMethod()))
 			throw new ConfigurationException("Unknown authenticationMethod ["+authenticationMethod+"]");
+
+		if(isCacheResponse()) {
+			if(!getMethod().equals("GET") || !getUpdateEtag()) {
+				ConfigurationWarnings.getInstance().add(log, "ApiListener ["+getName()+"] only caches responses of method [GET] with updateEtag=true, cacheResponse is ignored");
+				setCacheResponse(false);
+			} else if(getAuthenticationMethod() != null) {
+				ConfigurationWarnings.getInstance().add(log, "ApiListener ["+getName()+"] does not cache responses that require authentication, cacheResponse is ignored");
+				setCacheResponse(false);
+			} else if(isStreamResponse()) {
+				ConfigurationWarnings.getInstance().add(log, "ApiListener ["+getName()+"] cannot cache streamed responses, cacheResponse is ignored");
+				setCacheResponse(false);
+			}
+		}
 	}
 
 	@Override
@@ -186,12 +205,48 @@ public class ApiListener extends PushingListenerAdapter<String> implements HasPh
 		return updateEtag;
 	}
 
+	@IbisDoc({"when <code>true</code>, the response of a GET request is cached together with its etag, and returned from the cache without invoking the pipeline as long as the etag is valid", "false"})
+	public void setCacheResponse(boolean cacheResponse) {
+		this.cacheResponse = cacheResponse;
+	}
+	public boolean isCacheResponse() {
+		return cacheResponse;
+	}
+
+	@IbisDoc({"comma separated list of request headers the response depends on. Cached responses are kept per value of these headers, and they are returned in the Vary header", ""})
+	public void setVaryHeaders(String varyHeaders) {
+		this.varyHeaders = new ArrayList<String>();
+		if(StringUtils.isNotEmpty(varyHeaders)) {
+			this.varyHeaders.addAll(Arrays.asList(StringUtils.split(varyHeaders, ", ")));
+		}
+	}
+	public List<String> getVaryHeaders() {
+		return varyHeaders;
+	}
+
 	@Override
 	public String toString() {
 		return this.getClass().toString() + "uriPattern["+getUriPattern()+"] produces["+getProduces()+"] consumes["+getConsumes()+"] "
 				+ "contentType["+getContentType()+"] updateEtag["+getUpdateEtag()+"]";
 	}
 
+	@IbisDoc({"when set, the request body (or the selected form-part) is not read into the pipeline input, but put as a stream in this session key. The pipeline input is then empty", ""})
+	public void setRequestBodySessionKey(String requestBodySessionKey) {
+		this.requestBodySessionKey = requestBodySessionKey;
+	}
+	public String getRequestBodySessionKey() {
+		return requestBodySessionKey;
+	}
+
+	@IbisDoc({"when <code>true</code>, streaming pipes at the end of the pipeline write their output directly to the response, using chunked transfer encoding. "
+			+ "Headers and the status code must then be known before the pipeline starts writing, and no etag is calculated over the result", "false"})
+	public void setStreamResponse(boolean streamResponse) {
+		this.streamResponse = streamResponse;
+	}
+	public boolean isStreamResponse() {
+		return streamResponse;
+	}
+
 	@IbisDoc({"specify the form-part you wish to enter the pipeline", "first form-part"})
 	public void setMultipartBodyName(String multipartBodyName) {
 		this.multipartBodyName = multipartBodyName;
@@ -32,6 +32,8 @@ import nl.nn.adapterframework.http.HttpServletBase;
 import nl.nn.adapterframework.http.rest.ApiDispatchConfig;
 import nl.nn.adapterframework.http.rest.ApiServiceDispatcher;
 import nl.nn.adapterframework.lifecycle.IbisInitializer;
+import nl.nn.adapterframework.stream.Message;
+import nl.nn.adapterframework.stream.MessageOutputStream;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.Misc;
@@ -216,21 +218,22 @@ public class ApiListenerServlet extends HttpServletBase {
 
 			String etagCacheKey = ApiCacheManager.buildCacheKey(uri);
 			log.debug("Evaluating preconditions for listener["+listener.getName()+"] etagKey["+etagCacheKey+"]");
-			if(cache.containsKey(etagCacheKey)) {
-				String cachedEtag = (String) cache.get(etagCacheKey);
+			String cachedEtag = (String) cache.get(etagCacheKey);
+			if(cachedEtag != null) {
 				log.debug("found etag value["+cachedEtag+"] for key["+etagCacheKey+"]");
 
 				if(method.equals("GET")) {
 					String ifNoneMatch = request.getHeader("If-None-Match");
-					if(ifNoneMatch != null && ifNoneMatch.equals(cachedEtag)) {
+					if(ApiCacheManager.etagMatches(ifNoneMatch, cachedEtag)) {
 						response.setStatus(304);
+						response.setHeader("etag", cachedEtag);
 						log.trace("Aborting request with status [304], matched if-none-match ["+ifNoneMatch+"]");
 						return;
 					}
 				}
 				else {
 					String ifMatch = request.getHeader("If-Match");
-					if(ifMatch != null && !ifMatch.equals(cachedEtag)) {
+					if(ifMatch != null && !ApiCacheManager.etagMatches(ifMatch, cachedEtag, false)) {
 						response.setStatus(412);
 						log.trace("Aborting request with status [412], matched if-match ["+ifMatch+"] method ["+method+"]");
 						return;
@@ -239,6 +242,26 @@ public class ApiListenerServlet extends HttpServletBase {
 			}
 			messageContext.put("updateEtag", listener.getUpdateEtag());
 
+			/**
+			 * Return the cached response, as long as the etag it was calculated with is valid. When the listener
+			 * produces ANY, the content type is only known from the cached response, and is checked against the
+			 * Accept header here, otherwise the request is processed by the pipeline.
+			 */
+			String responseCacheKey = null;
+			if(method.equals("GET") && listener.isCacheResponse()) {
+				responseCacheKey = ApiCacheManager.buildResponseCacheKey(etagCacheKey, request, listener.getVaryHeaders());
+				if(cachedEtag != null) {
+					Object cachedResponse = cache.get(responseCacheKey);
+					if(cachedResponse instanceof ApiCachedResponse && ((ApiCachedResponse) cachedResponse).getEtag().equals(cachedEtag) && ((ApiCachedResponse) cachedResponse).isAcceptable(accept)) {
+						response.addHeader("Allow", getAllowedMethods(config));
+						addVaryHeaders(response, listener);
+						((ApiCachedResponse) cachedResponse).write(request, response);
+						log.trace("Returning cached response with etag ["+cachedEtag+"] for key ["+responseCacheKey+"]");
+						return;
+					}
+				}
+			}
+
 			/**
 			 * Check authorization
 			 */
@@ -316,8 +339,12 @@ public class ApiListenerServlet extends HttpServletBase {
 					String fieldName = item.getFieldName();
 					//First part -> pipeline input when multipartBodyName=null
 					if((i == 0 && multipartBodyName == null) || fieldName.equalsIgnoreCase(multipartBodyName)) {
-						//TODO this is possible because it's been read from disk multiple times, ideally you want to stream it directly!
-						body = Misc.streamToString(item.getInputStream(),"\n",false);
+						if(listener.getRequestBodySessionKey() != null) {
+							messageContext.put(listener.getRequestBodySessionKey(), new Message(item.getInputStream(), getCharset(item.getContentType())));
+						} else {
+							//TODO this is possible because it's been read from disk multiple times, ideally you want to stream it directly!
+							body = Misc.streamToString(item.getInputStream(),"\n",false);
+						}
 					}
 
 					XmlBuilder attachment = new XmlBuilder("part");
@@ -370,18 +397,28 @@ public class ApiListenerServlet extends HttpServletBase {
 			/**
 			 * Compile Allow header
 			 */
-			StringBuilder methods = new StringBuilder();
-			methods.append("OPTIONS, ");
-			for (String mtd : config.getMethods()) {
-				methods.append(mtd + ", ");
-			}
-			messageContext.put("allowedMethods", methods.substring(0, methods.length()-2));
+			messageContext.put("allowedMethods", getAllowedMethods(config));
 
 			/**
 			 * Process the request through the pipeline
 			 */
 			if (!ServletFileUpload.isMultipartContent(request)) {
-				body = Misc.streamToString(request.getInputStream(),"\n",false);
+				if(listener.getRequestBodySessionKey() != null) {
+					log.trace("setting request body as stream in session key ["+listener.getRequestBodySessionKey()+"]");
+					messageContext.put(listener.getRequestBodySessionKey(), new Message(request.getInputStream(), request.getCharacterEncoding()));
+				} else {
+					body = Misc.streamToString(request.getInputStream(),"\n",false);
+				}
+			}
+
+			String contentType = listener.getContentType() + ";charset="+CHARSET;
+			if(listener.isStreamResponse()) {
+				/**
+				 * Headers must be set before the pipeline starts writing the response
+				 */
+				response.addHeader("Allow", (String) messageContext.get("allowedMethods"));
+				response.setHeader("Content-Type", contentType);
+				messageContext.put(IPipeLineSession.PIPELINE_OUTPUT_STREAM_KEY, new MessageOutputStream(response.getOutputStream(), null));
 			}
 			//TODO: String correlationId = request.getHeader("message-id");
 			String result = listener.processRequest(null, body, messageContext);
@@ -389,11 +426,12 @@ public class ApiListenerServlet extends HttpServletBase {
 			/**
 			 * Calculate an eTag over the processed result and store in cache
 			 */
+			String eTag = null;
 			if(messageContext.get("updateEtag", true)) {
 				log.debug("calculating etags over processed result");
 				String cleanPattern = listener.getCleanPattern();
 				if(result != null && method.equals("GET") && cleanPattern != null) {
-					String eTag = ApiCacheManager.buildEtag(cleanPattern, result.hashCode());
+					eTag = ApiCacheManager.buildEtag(cleanPattern, result);
 					log.debug("adding/overwriting etag with key["+etagCacheKey+"] value["+eTag+"]");
 					cache.put(etagCacheKey, eTag);
 					response.addHeader("etag", eTag);
@@ -412,28 +450,49 @@ public class ApiListenerServlet extends HttpServletBase {
 			}
 
 			/**
-			 * Add headers
+			 * Add headers, a streamed response has them already
 			 */
-			response.addHeader("Allow", (String) messageContext.get("allowedMethods"));
-
-			String contentType = listener.getContentType() + ";charset="+CHARSET;
-			if(listener.getProduces().equals("ANY")) {
-				contentType = messageContext.get("contentType", contentType);
+			if(!response.isCommitted()) {
+				if(!listener.isStreamResponse()) {
+					response.addHeader("Allow", (String) messageContext.get("allowedMethods"));
+				}
+				if(listener.getProduces().equals("ANY")) {
+					contentType = messageContext.get("contentType", contentType);
+				}
+				response.setHeader("Content-Type", contentType);
 			}
-			response.setHeader("Content-Type", contentType);
 
 			/**
 			 * Check if an exitcode has been defined or if a statuscode has been added to the messageContext.
 			 */
 			int statusCode = messageContext.get("exitcode", 0);
-			if(statusCode > 0)
-				response.setStatus(statusCode);
+			if(statusCode > 0) {
+				if(response.isCommitted())
+					log.warn("cannot set statusCode ["+statusCode+"], the response has already been streamed");
+				else
+					response.setStatus(statusCode);
+			}
+
+			/**
+			 * Cache the response of a successful request, when the pipeline has not disabled the etag
+			 */
+			if(responseCacheKey != null) {
+				addVaryHeaders(response, listener);
+				if(eTag != null && (statusCode == 0 || statusCode == 200)) {
+					log.debug("caching response with key["+responseCacheKey+"] etag["+eTag+"]");
+					cache.put(responseCacheKey, new ApiCachedResponse(eTag, contentType, result));
+				}
+			}
 
 			/**
 			 * Finalize the pipeline and write the result to the response
 			 */
-			if(result != null)
-				response.getWriter().print(result);
+			if(result != null) {
+				if(listener.isStreamResponse())
+					response.getOutputStream().write(result.getBytes(CHARSET));
+				else
+					response.getWriter().print(result);
+			}
 			log.trace("ApiListenerServlet finished with statusCode ["+statusCode+"] result ["+result+"]");
 		}
 		catch (Exception e) {
@@ -449,6 +508,31 @@ public class ApiListenerServlet extends HttpServletBase {
 		}
 	}
 
+	private String getCharset(String contentType) {
+		if(contentType != null) {
+			int charsetIndex = contentType.indexOf("charset=");
+			if(charsetIndex >= 0) {
+				return contentType.substring(charsetIndex+8).trim();
+			}
+		}
+		return null;
+	}
+
+	private String getAllowedMethods(ApiDispatchConfig config) {
+		StringBuilder methods = new StringBuilder();
+		methods.append("OPTIONS, ");
+		for (String mtd : config.getMethods()) {
+			methods.append(mtd + ", ");
+		}
+		return methods.substring(0, methods.length()-2);
+	}
+
+	private void addVaryHeaders(HttpServletResponse response, ApiListener listener) {
+		for (String header : listener.getVaryHeaders()) {
+			response.addHeader("Vary", header);
+		}
+	}
+
 	@Override
 	public String getUrlMapping() {
 		return "/api/*";
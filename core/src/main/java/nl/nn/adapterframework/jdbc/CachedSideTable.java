@@ -16,6 +16,9 @@
 package nl.nn.adapterframework.jdbc;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -28,10 +31,12 @@ public class CachedSideTable extends SideTable {
 	
 	private static Map cache=Collections.synchronizedMap(new HashMap());
 	private String mapKey;
+	private String selectAllQuery;
 	
 	public CachedSideTable(String tableName, String keyColumn, String nameColumn, String sequence) {
 		super(tableName, keyColumn, nameColumn, sequence);
 		mapKey=tableName+"/"+keyColumn+"/"+nameColumn;
+		selectAllQuery="SELECT "+keyColumn+","+nameColumn+" FROM "+tableName;
 		synchronized(cache) {
 			Map tableCache=(Map)cache.get(mapKey);
 			if (tableCache==null) {
@@ -52,4 +57,31 @@ public class CachedSideTable extends SideTable {
 		return result.intValue();
 	}
 
+	/**
+	 * Reads all entries of the table into the cache, to avoid a query for each name that is looked up for the first time.
+	 */
+	public void preload(Connection connection) throws JdbcException {
+		Map tableCache=(Map)cache.get(mapKey);
+		try {
+			PreparedStatement stmt = connection.prepareStatement(selectAllQuery);
+			try {
+				ResultSet rs = stmt.executeQuery();
+				try {
+					while (rs.next()) {
+						String name = rs.getString(2);
+						if (name!=null) {
+							tableCache.put(name, new Integer(rs.getInt(1)));
+						}
+					}
+				} finally {
+					rs.close();
+				}
+			} finally {
+				stmt.close();
+			}
+		} catch (SQLException e) {
+			throw new JdbcException("could not execute query ["+selectAllQuery+"]",e);
+		}
+	}
+
 }
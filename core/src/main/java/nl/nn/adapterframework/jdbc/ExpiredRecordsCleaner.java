@@ -0,0 +1,409 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import nl.nn.adapterframework.util.DateUtils;
+import nl.nn.adapterframework.util.MessageKeeper;
+import nl.nn.adapterframework.util.MessageKeeperMessage;
+
+/**
+ * Deletes the expired records of a table in bounded batches, each committed in its own transaction, so that
+ * cleaning up a large table does not hold locks or undo for a long time.
+ * <p>
+ * The expired records are processed in ranges of expiry date, from the oldest to the most recent. Within a range,
+ * the keys of at most batchSize records are selected and these records are deleted by primary key. When a batch takes
+ * longer than throttleThreshold, which is an indication of lock waits, the cleaner pauses and halves the batch size;
+ * it grows back while batches are fast.
+ * <p>
+ * The table can be partitioned by slotId: the partitions are cleaned in parallel, followed by the records of
+ * the remaining slots. As every batch is committed and the next range is determined from the remaining records, a
+ * cleanup that is interrupted, by a restart or by maxDuration, is resumed where it stopped by the next run.
+ * <p>
+ * The range and batch selections are index range scans when there is an index on the expiry date, preceded by the
+ * type and slotId column when these are used.
+ *
+ * @since 7.5
+ */
+public class ExpiredRecordsCleaner extends JdbcFacade {
+
+	private static final int MIN_BATCH_SIZE = 10;
+	private static final int MAX_RETRIES = 3;
+
+	private String tableName;
+	private String keyField;
+	private String expiryDateField;
+	private String typeField;
+	private List<String> types = new ArrayList<String>();
+	private String slotIdField;
+	private int batchSize = 1000;
+	private long rangeSize = 3600000;
+	private long throttleThreshold = 1000;
+	private long maxDuration = 0;
+	private int queryTimeout = 60;
+	private TaskExecutor taskExecutor;
+	private MessageKeeper messageKeeper;
+
+	private final AtomicLong recordsDeleted = new AtomicLong();
+	private final AtomicLong batchesThrottled = new AtomicLong();
+
+	@Override
+	protected String getLogPrefix() {
+		return "ExpiredRecordsCleaner ["+getTableName()+"] ";
+	}
+
+	/**
+	 * Deletes the records that expired before <code>expiryLimit</code>. When slotIds are specified, these slots are
+	 * cleaned first, in parallel when a taskExecutor is set.
+	 * @return the number of records deleted
+	 */
+	public long cleanup(Date expiryLimit, Collection<String> slotIds) throws JdbcException {
+		recordsDeleted.set(0);
+		batchesThrottled.set(0);
+		long deadline = getMaxDuration()>0 ? System.currentTimeMillis()+getMaxDuration() : Long.MAX_VALUE;
+		final List<Exception> errors = new ArrayList<Exception>();
+		if (slotIds!=null && !slotIds.isEmpty() && StringUtils.isNotEmpty(getSlotIdField())) {
+			cleanupSlots(expiryLimit, slotIds, deadline, errors);
+		}
+		if (errors.isEmpty()) {
+			try {
+				cleanupPartition(expiryLimit, null, deadline);
+			} catch (Exception e) {
+				errors.add(e);
+			}
+		}
+		String msg = "deleted ["+recordsDeleted.get()+"] records that expired before ["+DateUtils.format(expiryLimit)+"]"+
+				(batchesThrottled.get()>0 ? ", throttled ["+batchesThrottled.get()+"] times" : "")+
+				(System.currentTimeMillis()>deadline ? ", stopped after maxDuration, remaining records will be deleted by the next run" : "");
+		if (!errors.isEmpty()) {
+			throw new JdbcException(getLogPrefix()+msg+", cleanup failed", errors.get(0));
+		}
+		report(msg, MessageKeeperMessage.INFO_LEVEL);
+		return recordsDeleted.get();
+	}
+
+	private void cleanupSlots(final Date expiryLimit, Collection<String> slotIds, final long deadline, final List<Exception> errors) {
+		final CountDownLatch done = new CountDownLatch(slotIds.size());
+		for (final String slotId:slotIds) {
+			Runnable task = new Runnable() {
+				@Override
+				public void run() {
+					try {
+						cleanupPartition(expiryLimit, slotId, deadline);
+					} catch (Exception e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			};
+			if (getTaskExecutor()==null) {
+				task.run();
+			} else {
+				try {
+					getTaskExecutor().execute(task);
+				} catch (TaskRejectedException e) {
+					task.run();
+				}
+			}
+		}
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			synchronized (errors) {
+				errors.add(e);
+			}
+		}
+	}
+
+	private String getPartitionName(String slotId) {
+		return slotId==null ? "remaining slots" : "slot ["+slotId+"]";
+	}
+
+	private void cleanupPartition(Date expiryLimit, String slotId, long deadline) throws JdbcException, SQLException {
+		Connection conn = getConnection();
+		try {
+			boolean autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			try {
+				Timestamp limit = new Timestamp(expiryLimit.getTime());
+				int currentBatchSize = Math.max(MIN_BATCH_SIZE, getBatchSize());
+				long deleted = 0;
+				Timestamp from = selectOldestExpiryDate(conn, slotId, new Timestamp(0), limit);
+				while (from!=null && System.currentTimeMillis()<deadline && !Thread.currentThread().isInterrupted()) {
+					Timestamp to = new Timestamp(Math.min(from.getTime()+Math.max(1, getRangeSize()), limit.getTime()));
+					int size;
+					int count;
+					do {
+						long start = System.currentTimeMillis();
+						size = currentBatchSize;
+						count = deleteBatch(conn, slotId, from, to, size);
+						long duration = System.currentTimeMillis()-start;
+						deleted += count;
+						recordsDeleted.addAndGet(count);
+						if (duration>getThrottleThreshold()) {
+							batchesThrottled.incrementAndGet();
+							currentBatchSize = Math.max(MIN_BATCH_SIZE, currentBatchSize/2);
+							log.info(getLogPrefix()+getPartitionName(slotId)+" batch took ["+duration+"] ms, pausing and reducing batch size to ["+currentBatchSize+"]");
+							Thread.sleep(duration);
+						} else if (currentBatchSize<getBatchSize()) {
+							currentBatchSize = Math.min(getBatchSize(), currentBatchSize*2);
+						}
+					} while (count>=size && System.currentTimeMillis()<deadline);
+					report(getPartitionName(slotId)+": deleted ["+deleted+"] records that expired before ["+DateUtils.format(to)+"]", MessageKeeperMessage.INFO_LEVEL);
+					// records of the range that were not deleted, e.g. because the batch size was reduced, are found again
+					from = selectOldestExpiryDate(conn, slotId, from, limit);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				log.warn(getLogPrefix()+"cleanup of "+getPartitionName(slotId)+" interrupted");
+			} finally {
+				conn.setAutoCommit(autoCommit);
+			}
+		} finally {
+			conn.close();
+		}
+	}
+
+	private String getWhereClause(String slotId) {
+		String whereClause = "";
+		if (StringUtils.isNotEmpty(getTypeField()) && !getTypes().isEmpty()) {
+			whereClause = getTypeField()+" IN ("+StringUtils.repeat("?", ",", getTypes().size())+") AND ";
+		}
+		if (slotId!=null) {
+			whereClause += getSlotIdField()+"=? AND ";
+		}
+		return " WHERE "+whereClause+getExpiryDateField()+">=? AND "+getExpiryDateField()+"<?";
+	}
+
+	private int applyParameters(PreparedStatement stmt, String slotId, Timestamp from, Timestamp to) throws SQLException {
+		int position = 1;
+		if (StringUtils.isNotEmpty(getTypeField())) {
+			for (String type:getTypes()) {
+				stmt.setString(position++, type);
+			}
+		}
+		if (slotId!=null) {
+			stmt.setString(position++, slotId);
+		}
+		stmt.setTimestamp(position++, from);
+		stmt.setTimestamp(position++, to);
+		return position;
+	}
+
+	/**
+	 * Returns the oldest expiry date from <code>from</code> up to <code>limit</code>, or <code>null</code> if there is none.
+	 */
+	private Timestamp selectOldestExpiryDate(Connection conn, String slotId, Timestamp from, Timestamp limit) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement("SELECT MIN("+getExpiryDateField()+") FROM "+getTableName()+getWhereClause(slotId));
+		try {
+			stmt.setQueryTimeout(getQueryTimeout());
+			applyParameters(stmt, slotId, from, limit);
+			ResultSet rs = stmt.executeQuery();
+			try {
+				return rs.next() ? rs.getTimestamp(1) : null;
+			} finally {
+				rs.close();
+			}
+		} finally {
+			stmt.close();
+			conn.commit();
+		}
+	}
+
+	/**
+	 * Deletes at most <code>batchSize</code> records in the range, and commits. When the delete fails, for instance
+	 * because of a lock timeout, it is retried with smaller batches.
+	 * @return the number of records deleted
+	 */
+	private int deleteBatch(Connection conn, String slotId, Timestamp from, Timestamp to, int batchSize) throws SQLException, InterruptedException {
+		for (int attempt=1; ; attempt++) {
+			try {
+				List<Object> keys = selectKeys(conn, slotId, from, to, batchSize);
+				if (keys.isEmpty()) {
+					return 0;
+				}
+				PreparedStatement stmt = conn.prepareStatement("DELETE FROM "+getTableName()+" WHERE "+getKeyField()+"=?");
+				try {
+					stmt.setQueryTimeout(getQueryTimeout());
+					for (Object key:keys) {
+						stmt.setObject(1, key);
+						stmt.addBatch();
+					}
+					stmt.executeBatch();
+				} finally {
+					stmt.close();
+				}
+				conn.commit();
+				return keys.size();
+			} catch (SQLException e) {
+				conn.rollback();
+				if (attempt>=MAX_RETRIES) {
+					throw e;
+				}
+				batchesThrottled.incrementAndGet();
+				batchSize = Math.max(MIN_BATCH_SIZE, batchSize/2);
+				log.warn(getLogPrefix()+"failed to delete batch of "+getPartitionName(slotId)+", retrying with batch size ["+batchSize+"]: "+e.getMessage());
+				Thread.sleep(getThrottleThreshold());
+			}
+		}
+	}
+
+	private List<Object> selectKeys(Connection conn, String slotId, Timestamp from, Timestamp to, int batchSize) throws SQLException {
+		List<Object> keys = new ArrayList<Object>(batchSize);
+		PreparedStatement stmt = conn.prepareStatement("SELECT "+getKeyField()+" FROM "+getTableName()+getWhereClause(slotId));
+		try {
+			stmt.setQueryTimeout(getQueryTimeout());
+			stmt.setMaxRows(batchSize);
+			stmt.setFetchSize(Math.min(batchSize, 1000));
+			applyParameters(stmt, slotId, from, to);
+			ResultSet rs = stmt.executeQuery();
+			try {
+				while (rs.next() && keys.size()<batchSize) {
+					keys.add(rs.getObject(1));
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			stmt.close();
+		}
+		return keys;
+	}
+
+	private void report(String msg, String level) {
+		log.info(getLogPrefix()+msg);
+		if (getMessageKeeper()!=null) {
+			getMessageKeeper().add("cleanup of table ["+getTableName()+"] "+msg, level);
+		}
+	}
+
+	public void setTableName(String tableName) {
+		this.tableName = tableName;
+	}
+	public String getTableName() {
+		return tableName;
+	}
+
+	public void setKeyField(String keyField) {
+		this.keyField = keyField;
+	}
+	public String getKeyField() {
+		return keyField;
+	}
+
+	public void setExpiryDateField(String expiryDateField) {
+		this.expiryDateField = expiryDateField;
+	}
+	public String getExpiryDateField() {
+		return expiryDateField;
+	}
+
+	/**
+	 * Restricts the cleanup to records of the specified types.
+	 */
+	public void setTypeField(String typeField, String... types) {
+		this.typeField = typeField;
+		this.types = new ArrayList<String>();
+		for (String type:types) {
+			this.types.add(type);
+		}
+	}
+	public String getTypeField() {
+		return typeField;
+	}
+	public List<String> getTypes() {
+		return types;
+	}
+
+	public void setSlotIdField(String slotIdField) {
+		this.slotIdField = slotIdField;
+	}
+	public String getSlotIdField() {
+		return slotIdField;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setRangeSize(long rangeSize) {
+		this.rangeSize = rangeSize;
+	}
+	public long getRangeSize() {
+		return rangeSize;
+	}
+
+	public void setThrottleThreshold(long throttleThreshold) {
+		this.throttleThreshold = throttleThreshold;
+	}
+	public long getThrottleThreshold() {
+		return throttleThreshold;
+	}
+
+	public void setMaxDuration(long maxDuration) {
+		this.maxDuration = maxDuration;
+	}
+	public long getMaxDuration() {
+		return maxDuration;
+	}
+
+	public void setQueryTimeout(int queryTimeout) {
+		this.queryTimeout = queryTimeout;
+	}
+	public int getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+	public TaskExecutor getTaskExecutor() {
+		return taskExecutor;
+	}
+
+	public void setMessageKeeper(MessageKeeper messageKeeper) {
+		this.messageKeeper = messageKeeper;
+	}
+	public MessageKeeper getMessageKeeper() {
+		return messageKeeper;
+	}
+
+	public long getRecordsDeleted() {
+		return recordsDeleted.get();
+	}
+}
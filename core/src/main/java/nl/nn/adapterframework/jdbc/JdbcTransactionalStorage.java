@@ -15,6 +15,7 @@
 */
 package nl.nn.adapterframework.jdbc;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -33,6 +34,8 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipException;
@@ -41,17 +44,22 @@ import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.configuration.ConfigurationWarnings;
 import nl.nn.adapterframework.core.IMessageBrowsingIterator;
 import nl.nn.adapterframework.core.IMessageBrowsingIteratorItem;
+import nl.nn.adapterframework.core.IPagedMessageBrowser;
 import nl.nn.adapterframework.core.ITransactionalStorage;
 import nl.nn.adapterframework.core.ListenerException;
+import nl.nn.adapterframework.core.MessageBrowsingCriteria;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.jdbc.dbms.IDbmsSupport;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.JdbcUtil;
 import nl.nn.adapterframework.util.Misc;
 
 import org.apache.commons.lang.StringUtils;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
@@ -145,13 +153,16 @@ import org.springframework.transaction.support.DefaultTransactionDefinition;
  * @author Jaco de Groot
  * @since 4.1
  */
-public class JdbcTransactionalStorage extends JdbcFacade implements ITransactionalStorage {
+public class JdbcTransactionalStorage extends JdbcFacade implements ITransactionalStorage, IPagedMessageBrowser, HasStatistics {
 
 	public static final String TYPE_ERRORSTORAGE="E";
 	public static final String TYPE_MESSAGESTORAGE="M";
 	public static final String TYPE_MESSAGELOG_PIPE="L";
 	public static final String TYPE_MESSAGELOG_RECEIVER="A";
 
+	public static final String BLOB_FORMAT_SERIALIZED="serialized";
+	public static final String BLOB_FORMAT_COMPACT="compact";
+
 	public final static TransactionDefinition TXREQUIRED = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRED);
 	
 	boolean checkIfTableExists=true;
@@ -182,6 +193,18 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 	private int retention = 30;
 	private String schemaOwner4Check=null;
 	private boolean onlyStoreWhenMessageIdUnique=false;
+	private boolean writeBehind=false;
+	private int writeBehindQueueSize=10000;
+	private int writeBehindBatchSize=100;
+	private int writeBehindFlushInterval=1000;
+	private String writeBehindJournalDirectory=AppConstants.getInstance().getResolvedProperty("log.dir");
+	private String blobFormat=BLOB_FORMAT_SERIALIZED;
+	private Integer blobCompressionLevel=null;
+	private WriteBehindWriter writeBehindWriter;
+	private TaskExecutor taskExecutor;
+	private long messageCountRefreshInterval=60000;
+	private final AtomicLong approximateMessageCount=new AtomicLong(-1);
+	private volatile long approximateMessageCountTime;
 	
 	private String order;
 	private String messagesOrder=AppConstants.getInstance().getString("browse.messages.order","");
@@ -396,6 +419,21 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		if (StringUtils.isNotEmpty(getHostField())) {
 			host=Misc.getHostname();
 		}
+		if (!BLOB_FORMAT_SERIALIZED.equalsIgnoreCase(getBlobFormat()) && !BLOB_FORMAT_COMPACT.equalsIgnoreCase(getBlobFormat())) {
+			throw new ConfigurationException(getLogPrefix()+"illegal value for blobFormat ["+getBlobFormat()+"], must be one of ["+BLOB_FORMAT_SERIALIZED+"] or ["+BLOB_FORMAT_COMPACT+"]");
+		}
+		if (blobCompressionLevel!=null && (getBlobCompressionLevel()<Deflater.DEFAULT_COMPRESSION || getBlobCompressionLevel()>Deflater.BEST_COMPRESSION)) {
+			throw new ConfigurationException(getLogPrefix()+"illegal value for blobCompressionLevel ["+getBlobCompressionLevel()+"], must be between ["+Deflater.DEFAULT_COMPRESSION+"] and ["+Deflater.BEST_COMPRESSION+"]");
+		}
+		if (isWriteBehind()) {
+			if (!type.equalsIgnoreCase(TYPE_MESSAGELOG_PIPE) && !type.equalsIgnoreCase(TYPE_MESSAGELOG_RECEIVER)) {
+				ConfigurationWarnings.getInstance().add(log, getLogPrefix()+"writeBehind is only supported for message logs, messages are stored synchronously");
+				setWriteBehind(false);
+			} else if (isOnlyStoreWhenMessageIdUnique()) {
+				ConfigurationWarnings.getInstance().add(log, getLogPrefix()+"writeBehind cannot be combined with onlyStoreWhenMessageIdUnique, messages are stored synchronously");
+				setWriteBehind(false);
+			}
+		}
 		createQueryTexts(getDbmsSupport());
 		checkDatabase();
 	}
@@ -408,6 +446,38 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		} catch (SQLException e) {
 			throw new SenderException(getLogPrefix()+"exception creating table ["+getTableName()+"]",e);
 		} 
+		if (isWriteBehind() && writeBehindWriter==null) {
+			writeBehindWriter = new WriteBehindWriter(this);
+			writeBehindWriter.start();
+		}
+	}
+
+	/**
+	 * Stops the write-behind writer, if any. Messages that are still queued are written to the database,
+	 * or to the journal when the database cannot be reached.
+	 */
+	@Override
+	public void close() {
+		if (writeBehindWriter!=null) {
+			writeBehindWriter.stop();
+			writeBehindWriter=null;
+		}
+		super.close();
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		WriteBehindWriter writer=writeBehindWriter;
+		if (writer!=null) {
+			Object writerData=hski.openGroup(data, getName(), "writeBehind");
+			hski.handleScalar(writerData, "messagesQueued", writer.getQueueSize());
+			hski.handleScalar(writerData, "messagesWritten", writer.getMessagesWritten());
+			hski.handleScalar(writerData, "messagesDropped", writer.getMessagesDropped());
+			hski.handleScalar(writerData, "messagesJournaled", writer.getMessagesJournaled());
+			hski.handleScalar(writerData, "failedBatches", writer.getFailedBatches());
+			hski.handleScalar(writerData, "lagMillis", writer.getLag());
+			hski.closeGroup(writerData);
+		}
 	}
 
 	/**
@@ -669,6 +739,65 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		}
 	}
 
+	/**
+	 * Sets the parameters of the {@link #insertQuery} up to and including the expiry date, and returns the position of the last parameter set.
+	 */
+	protected int applyInsertParameters(PreparedStatement stmt, String messageId, String correlationId, Timestamp receivedDateTime, String comments, String label) throws SQLException {
+		int parPos=0;
+		
+		if (StringUtils.isNotEmpty(getTypeField())) {
+			stmt.setString(++parPos,type);
+		}
+		if (StringUtils.isNotEmpty(getSlotId())) {
+			stmt.setString(++parPos,getSlotId());
+		}			
+		if (StringUtils.isNotEmpty(getHostField())) {
+			stmt.setString(++parPos,host);
+		}
+		if (StringUtils.isNotEmpty(getLabelField())) {
+			stmt.setString(++parPos,label);
+		}
+		stmt.setString(++parPos,messageId);
+		stmt.setString(++parPos,correlationId);
+		stmt.setTimestamp(++parPos, receivedDateTime);
+		stmt.setString(++parPos, comments);
+		if (type.equalsIgnoreCase(TYPE_MESSAGELOG_PIPE) || type.equalsIgnoreCase(TYPE_MESSAGELOG_RECEIVER)) {
+			if (getRetention()<0) {
+				stmt.setTimestamp(++parPos, null);
+			} else {
+				Date date = new Date();
+				Calendar cal = Calendar.getInstance();
+				cal.setTime(date);
+				cal.add(Calendar.DAY_OF_MONTH, getRetention());
+				stmt.setTimestamp(++parPos, new Timestamp(cal.getTime().getTime()));
+			}
+		} else {
+			stmt.setTimestamp(++parPos, null);
+		}
+		return parPos;
+	}
+
+	/**
+	 * Converts the message to the contents of the message blob, in the format set by {@link #setBlobFormat(String) blobFormat}.
+	 */
+	protected byte[] serializeMessage(Serializable message) throws IOException {
+		if (BLOB_FORMAT_COMPACT.equalsIgnoreCase(getBlobFormat())) {
+			return MessageBlobFormat.encode(message, isBlobsCompressed() ? getBlobCompressionLevel() : 0);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (isBlobsCompressed()) {
+			DeflaterOutputStream dos = new DeflaterOutputStream(out, new Deflater(getBlobCompressionLevel()));
+			ObjectOutputStream oos = new ObjectOutputStream(dos);
+			oos.writeObject(message);
+			oos.close();
+		} else {
+			ObjectOutputStream oos = new ObjectOutputStream(out);
+			oos.writeObject(message);
+			oos.close();
+		}
+		return out.toByteArray();
+	}
+
 	protected String storeMessageInDatabase(Connection conn, String messageId, String correlationId, Timestamp receivedDateTime, String comments, String label, Serializable message) throws IOException, SQLException, JdbcException, SenderException {
 		PreparedStatement stmt = null;
 		try { 
@@ -682,37 +811,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 				stmt = conn.prepareStatement(insertQuery);
 			}
 			stmt.clearParameters();
-			int parPos=0;
-			
-			if (StringUtils.isNotEmpty(getTypeField())) {
-				stmt.setString(++parPos,type);
-			}
-			if (StringUtils.isNotEmpty(getSlotId())) {
-				stmt.setString(++parPos,getSlotId());
-			}			
-			if (StringUtils.isNotEmpty(getHostField())) {
-				stmt.setString(++parPos,host);
-			}
-			if (StringUtils.isNotEmpty(getLabelField())) {
-				stmt.setString(++parPos,label);
-			}
-			stmt.setString(++parPos,messageId);
-			stmt.setString(++parPos,correlationId);
-			stmt.setTimestamp(++parPos, receivedDateTime);
-			stmt.setString(++parPos, comments);
-			if (type.equalsIgnoreCase(TYPE_MESSAGELOG_PIPE) || type.equalsIgnoreCase(TYPE_MESSAGELOG_RECEIVER)) {
-				if (getRetention()<0) {
-					stmt.setTimestamp(++parPos, null);
-				} else {
-					Date date = new Date();
-					Calendar cal = Calendar.getInstance();
-					cal.setTime(date);
-					cal.add(Calendar.DAY_OF_MONTH, getRetention());
-					stmt.setTimestamp(++parPos, new Timestamp(cal.getTime().getTime()));
-				}
-			} else {
-				stmt.setTimestamp(++parPos, null);
-			}
+			int parPos=applyInsertParameters(stmt, messageId, correlationId, receivedDateTime, comments, label);
 	
 			if (!isStoreFullMessage()) {
 				if (isOnlyStoreWhenMessageIdUnique()) {
@@ -723,19 +822,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 				return null;
 			}
 			if (!dbmsSupport.mustInsertEmptyBlobBeforeData()) {
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				
-				if (isBlobsCompressed()) {
-					DeflaterOutputStream dos = new DeflaterOutputStream(out);
-					ObjectOutputStream oos = new ObjectOutputStream(dos);
-					oos.writeObject(message);
-					dos.close();
-				} else {
-					ObjectOutputStream oos = new ObjectOutputStream(out);
-					oos.writeObject(message);
-				}
-				
-				stmt.setBytes(++parPos, out.toByteArray());
+				stmt.setBytes(++parPos, serializeMessage(message));
 				if (isOnlyStoreWhenMessageIdUnique()) {
 					stmt.setString(++parPos, messageId);
 					stmt.setString(++parPos, slotId);
@@ -797,17 +884,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 					}
 					Object blobHandle=dbmsSupport.getBlobUpdateHandle(rs, 1);
 					OutputStream out = dbmsSupport.getBlobOutputStream(rs, 1, blobHandle);
-					if (isBlobsCompressed()) {
-						DeflaterOutputStream dos = new DeflaterOutputStream(out);
-						ObjectOutputStream oos = new ObjectOutputStream(dos);
-						oos.writeObject(message);
-						oos.close();
-						dos.close();
-					} else {
-						ObjectOutputStream oos = new ObjectOutputStream(out);
-						oos.writeObject(message);
-						oos.close();
-					}
+					out.write(serializeMessage(message));
 					out.close();
 					dbmsSupport.updateBlob(rs, 1, blobHandle);
 					return newKey;
@@ -877,6 +954,20 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 	}
 	
 	public String storeMessage(String messageId, String correlationId, Date receivedDate, String comments, String label, Serializable message) throws SenderException {
+		WriteBehindWriter writer=writeBehindWriter;
+		if (writer!=null) {
+			if (messageId==null) {
+				throw new SenderException("messageId cannot be null");
+			}
+			if (correlationId==null) {
+				throw new SenderException("correlationId cannot be null");
+			}
+			if (writer.enqueue(new WriteBehindWriter.PendingMessage(StringUtils.left(messageId,MAXIDLEN), StringUtils.left(correlationId,MAXCIDLEN), new Timestamp(receivedDate.getTime()), StringUtils.left(comments,MAXCOMMENTLEN), StringUtils.left(label,MAXLABELLEN), message))) {
+				adjustApproximateMessageCount(1);
+				return null;
+			}
+			// the writer is stopping, the message is stored synchronously
+		}
 		TransactionStatus txStatus=null;
 		if (txManager!=null) {
 			txStatus = txManager.getTransaction(TXREQUIRED);
@@ -913,6 +1004,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 				if (result==null) {
 					result=retrieveKey(conn,messageId,correlationId,receivedDateTime);
 				}
+				adjustApproximateMessageCount(1);
 				return result;
 			
 			} catch (Exception e) {
@@ -952,6 +1044,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 			if (result==null) {
 				result=retrieveKey(conn,messageId,correlationId,receivedDateTime);
 			}
+			adjustApproximateMessageCount(1);
 			return result;
 		} catch (Exception e) {
 			throw new SenderException("cannot serialize message",e);
@@ -1048,6 +1141,109 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		}
 	}
 
+	/**
+	 * Returns a page of messages, using a query that seeks to the position after the last message of the previous
+	 * page, on (date, key). With the index on (slotId, date) this reads only the rows of the page itself.
+	 */
+	public IMessageBrowsingIterator getPage(MessageBrowsingCriteria criteria) throws ListenerException {
+		String descending=criteria.isSortDescending()?" DESC":"";
+		String whereClause=null;
+		List<Object> parameters=new ArrayList<Object>();
+		if (criteria.getStartDate()!=null) {
+			whereClause=getDateField()+">=?";
+			parameters.add(new Timestamp(criteria.getStartDate().getTime()));
+		}
+		if (criteria.getEndDate()!=null) {
+			whereClause=Misc.concatStrings(whereClause, " AND ", getDateField()+"<?");
+			parameters.add(new Timestamp(criteria.getEndDate().getTime()));
+		}
+		whereClause=addLikeClause(whereClause, parameters, getIdField(), criteria.getMessageIdPrefix(), false);
+		whereClause=addLikeClause(whereClause, parameters, getCorrelationIdField(), criteria.getCorrelationIdPrefix(), false);
+		whereClause=addLikeClause(whereClause, parameters, getLabelField(), criteria.getLabelPrefix(), false);
+		whereClause=addLikeClause(whereClause, parameters, getHostField(), criteria.getHostPrefix(), false);
+		whereClause=addLikeClause(whereClause, parameters, getCommentField(), criteria.getCommentSubstring(), true);
+		if (criteria.getAfterDate()!=null) {
+			String comparison=criteria.isSortDescending()?"<":">";
+			whereClause=Misc.concatStrings(whereClause, " AND ", "("+getDateField()+comparison+"? OR ("+getDateField()+"=? AND "+getKeyField()+comparison+"?))");
+			Timestamp afterDate=new Timestamp(criteria.getAfterDate().getTime());
+			parameters.add(afterDate);
+			parameters.add(afterDate);
+			String afterId=criteria.getAfterId();
+			parameters.add(StringUtils.isNumeric(afterId) ? (Object)Long.valueOf(afterId) : afterId);
+		}
+		String query="SELECT "+provideIndexHintAfterFirstKeyword(getDbmsSupport())+provideFirstRowsHintAfterFirstKeyword(getDbmsSupport())+ getListClause()+ getWhereClause(whereClause,false)+
+				" ORDER BY "+getDateField()+descending+","+getKeyField()+descending+provideTrailingFirstRowsHint(getDbmsSupport());
+		Connection conn;
+		try {
+			conn = getConnection();
+		} catch (JdbcException e) {
+			throw new ListenerException(e);
+		}
+		try {
+			if (log.isDebugEnabled()) {
+				log.debug("preparing page query ["+query+"]");
+			}
+			PreparedStatement stmt = conn.prepareStatement(query);
+			int paramPos=applyStandardParameters(stmt, true, false);
+			for (Object parameter:parameters) {
+				if (parameter instanceof Timestamp) {
+					stmt.setTimestamp(paramPos++, (Timestamp)parameter);
+				} else if (parameter instanceof Long) {
+					stmt.setLong(paramPos++, (Long)parameter);
+				} else {
+					stmt.setString(paramPos++, (String)parameter);
+				}
+			}
+			if (criteria.getMaxMessages()>0) {
+				stmt.setMaxRows(criteria.getMaxMessages());
+				stmt.setFetchSize(Math.min(criteria.getMaxMessages(), 100));
+			}
+			ResultSet rs =  stmt.executeQuery();
+			return new ResultSetIterator(conn,rs);
+		} catch (SQLException e) {
+			try {
+				conn.close();
+			} catch (SQLException e2) {
+				log.warn(getLogPrefix()+"error closing JdbcConnection", e2);
+			}
+			throw new ListenerException(e);
+		}
+	}
+
+	private String addLikeClause(String whereClause, List<Object> parameters, String field, String value, boolean substring) {
+		if (StringUtils.isEmpty(value)) {
+			return whereClause;
+		}
+		if (StringUtils.isEmpty(field)) {
+			// the value is not stored, so no message matches the filter
+			return Misc.concatStrings(whereClause, " AND ", "1=0");
+		}
+		String pattern=value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+		parameters.add((substring?"%":"")+pattern+"%");
+		return Misc.concatStrings(whereClause, " AND ", field+" LIKE ? ESCAPE '\\'");
+	}
+
+	/**
+	 * Returns the number of messages as counted at most {@link #setMessageCountRefreshInterval(long) messageCountRefreshInterval} ms ago,
+	 * adjusted for the messages that have been stored and deleted by this instance since then.
+	 */
+	public int getApproximateMessageCount() throws ListenerException {
+		long now=System.currentTimeMillis();
+		if (approximateMessageCountTime==0 || now-approximateMessageCountTime>getMessageCountRefreshInterval()) {
+			int count=getMessageCount();
+			approximateMessageCount.set(count);
+			approximateMessageCountTime=now;
+			return count;
+		}
+		return (int)Math.max(0, approximateMessageCount.get());
+	}
+
+	private void adjustApproximateMessageCount(long delta) {
+		if (approximateMessageCountTime!=0 && delta!=0) {
+			approximateMessageCount.addAndGet(delta);
+		}
+	}
+
 	protected String getSelector() {
 		if (StringUtils.isEmpty(getSlotId())) {
 			return null;
@@ -1093,6 +1289,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 			PreparedStatement stmt = conn.prepareStatement(deleteQuery);	
 			applyStandardParameters(stmt, messageId, true);
 			stmt.execute();
+			adjustApproximateMessageCount(-stmt.getUpdateCount());
 			
 		} catch (SQLException e) {
 			throw new ListenerException(e);
@@ -1106,41 +1303,55 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 	}
 
 	private Object retrieveObject(ResultSet rs, int columnIndex, boolean compressed) throws ClassNotFoundException, JdbcException, IOException, SQLException {
-		InputStream blobStream=null;
+		Blob blob = rs.getBlob(columnIndex);
+		if (blob==null) {
+			return null;
+		}
+		return retrieveObject(JdbcUtil.getBlobInputStream(blob, Integer.toString(columnIndex)), compressed);
+	}
+
+	private Object retrieveObject(InputStream blobStream, boolean compressed) throws ClassNotFoundException, IOException {
 		try {
-			Blob blob = rs.getBlob(columnIndex);
-			if (blob==null) {
-				return null;
-			}
 			if (compressed) {
-				blobStream=new InflaterInputStream(JdbcUtil.getBlobInputStream(blob, Integer.toString(columnIndex)));
-			} else {
-				blobStream=JdbcUtil.getBlobInputStream(blob, Integer.toString(columnIndex));
+				blobStream=new InflaterInputStream(blobStream);
 			}
 			ObjectInputStream ois = new ObjectInputStream(blobStream);
 			Object result = ois.readObject();
 			ois.close();
 			return result;
 		} finally {
-			if (blobStream!=null) {
-				blobStream.close();
-			}
+			blobStream.close();
 		}
 	}
 
-	
+	/**
+	 * Reads the message from the blob. Blobs in the compact format are recognized by their header, other blobs
+	 * are read as Java serialized objects, compressed or not.
+	 */
 	protected Object retrieveObject(ResultSet rs, int columnIndex) throws ClassNotFoundException, JdbcException, IOException, SQLException {
 		try {
+			Blob blob = rs.getBlob(columnIndex);
+			if (blob==null) {
+				return null;
+			}
+			InputStream blobStream = new BufferedInputStream(JdbcUtil.getBlobInputStream(blob, Integer.toString(columnIndex)));
+			if (MessageBlobFormat.isEncoded(blobStream)) {
+				try {
+					return MessageBlobFormat.decode(blobStream);
+				} finally {
+					blobStream.close();
+				}
+			}
 			if (isBlobsCompressed()) {
 				try {
-					return retrieveObject(rs,columnIndex,true);
+					return retrieveObject(blobStream,true);
 				} catch (ZipException e1) {
 					log.warn(getLogPrefix()+"could not extract compressed blob, trying non-compressed: ("+ClassUtils.nameOf(e1)+") "+e1.getMessage());
 					return retrieveObject(rs,columnIndex,false);
 				}
 			}
 			try {
-				return retrieveObject(rs,columnIndex,false);
+				return retrieveObject(blobStream,false);
 			} catch (Exception e1) {
 				log.warn(getLogPrefix()+"could not extract non-compressed blob, trying compressed: ("+ClassUtils.nameOf(e1)+") "+e1.getMessage());
 				return retrieveObject(rs,columnIndex,true);
@@ -1672,4 +1883,87 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 	public void setOnlyStoreWhenMessageIdUnique(boolean onlyStoreWhenMessageIdUnique) {
 		this.onlyStoreWhenMessageIdUnique = onlyStoreWhenMessageIdUnique;
 	}
+
+	@IbisDoc({"when set to <code>true</code>, messages are not stored in the processing thread, but queued and stored in batches by a background writer. "+
+			"only for message logs that are used for auditing: the message is not stored in the transaction of the processing thread, "+
+			"messages are dropped when the queue is full, and messages that are queued cannot be found yet by duplicate checks. "+
+			"messages that are still queued when the storage is closed, are written to a journal file when the database cannot be reached, that is stored again when the storage is opened", "<code>false</code>"})
+	public void setWriteBehind(boolean writeBehind) {
+		this.writeBehind = writeBehind;
+	}
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+
+	@IbisDoc({"maximum number of messages that are queued in writeBehind mode. when the queue is full, messages are dropped", "10000"})
+	public void setWriteBehindQueueSize(int writeBehindQueueSize) {
+		this.writeBehindQueueSize = writeBehindQueueSize;
+	}
+	public int getWriteBehindQueueSize() {
+		return writeBehindQueueSize;
+	}
+
+	@IbisDoc({"maximum number of messages that are inserted with a single batch in writeBehind mode", "100"})
+	public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+		this.writeBehindBatchSize = writeBehindBatchSize;
+	}
+	public int getWriteBehindBatchSize() {
+		return writeBehindBatchSize;
+	}
+
+	@IbisDoc({"maximum time (in ms) that the writer waits for more messages to fill a batch in writeBehind mode, and the time it waits before it retries after a failure", "1000"})
+	public void setWriteBehindFlushInterval(int writeBehindFlushInterval) {
+		this.writeBehindFlushInterval = writeBehindFlushInterval;
+	}
+	public int getWriteBehindFlushInterval() {
+		return writeBehindFlushInterval;
+	}
+
+	@IbisDoc({"directory of the journal files, in which queued messages are saved when the storage is closed while the database cannot be reached. when empty, these messages are lost", "${log.dir}"})
+	public void setWriteBehindJournalDirectory(String writeBehindJournalDirectory) {
+		this.writeBehindJournalDirectory = writeBehindJournalDirectory;
+	}
+	public String getWriteBehindJournalDirectory() {
+		return writeBehindJournalDirectory;
+	}
+
+	/**
+	 * Executor of the writer in writeBehind mode, autowired by Spring. When not set, the writer runs in a thread of its own.
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+	public TaskExecutor getTaskExecutor() {
+		return taskExecutor;
+	}
+
+	@IbisDoc({"format of the stored messages. <code>serialized</code>: java serialized objects, readable by all versions. "+
+			"<code>compact</code>: a binary format with a small header, in which text messages are stored as utf-8, that is faster to store and read and takes less space. "+
+			"messages are read in both formats, regardless of this setting", "serialized"})
+	public void setBlobFormat(String blobFormat) {
+		this.blobFormat = blobFormat;
+	}
+	public String getBlobFormat() {
+		return blobFormat;
+	}
+
+	@IbisDoc({"compression level used when blobsCompressed=<code>true</code>, from 1 (fastest) to 9 (smallest), or -1 for the default level of deflate", "1 for blobformat=compact, -1 for blobformat=serialized"})
+	public void setBlobCompressionLevel(int blobCompressionLevel) {
+		this.blobCompressionLevel = blobCompressionLevel;
+	}
+	public int getBlobCompressionLevel() {
+		if (blobCompressionLevel!=null) {
+			return blobCompressionLevel;
+		}
+		// the serialized format keeps the level it has always been written with
+		return BLOB_FORMAT_COMPACT.equalsIgnoreCase(getBlobFormat()) ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION;
+	}
+
+	@IbisDoc({"maximum age (in ms) of the count of messages that is shown when browsing the storage. in between, the count is maintained for the messages stored and deleted by this instance", "60000"})
+	public void setMessageCountRefreshInterval(long messageCountRefreshInterval) {
+		this.messageCountRefreshInterval = messageCountRefreshInterval;
+	}
+	public long getMessageCountRefreshInterval() {
+		return messageCountRefreshInterval;
+	}
 }
@@ -0,0 +1,238 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary format of the messages stored in the blobs of a {@link JdbcTransactionalStorage}.
+ * <p>
+ * A blob starts with a header, followed by the body:
+ * <pre>
+ * magic            4 bytes   'I' 'B' 'S' 'M'
+ * version          1 byte    1
+ * flags            1 byte    bit 0: body is compressed with raw deflate
+ * payload type     1 byte    0: UTF-8 string, 1: bytes, 2: Java serialized object
+ * payload length   4 bytes   length of the uncompressed body
+ * body
+ * </pre>
+ * Strings and byte arrays, the common case, are stored without Java serialization. Other objects are stored
+ * Java serialized. The body is only compressed when it is larger than {@link #COMPRESSION_THRESHOLD} and compression
+ * reduces its size.
+ * <p>
+ * Legacy blobs, that contain a Java serialized object or a zlib stream, never start with the magic bytes.
+ *
+ * @since 7.5
+ */
+public class MessageBlobFormat {
+
+	public static final int VERSION = 1;
+	public static final int COMPRESSION_THRESHOLD = 256;
+
+	private static final byte[] MAGIC = { 'I', 'B', 'S', 'M' };
+	private static final int HEADER_LENGTH = MAGIC.length + 7;
+	private static final int FLAG_COMPRESSED = 1;
+	private static final int TYPE_STRING = 0;
+	private static final int TYPE_BYTES = 1;
+	private static final int TYPE_SERIALIZED = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private MessageBlobFormat() {
+		// only static methods
+	}
+
+	/**
+	 * Encodes a message.
+	 * @param compressionLevel the {@link Deflater} level, or 0 to store the message uncompressed
+	 */
+	public static byte[] encode(Serializable message, int compressionLevel) throws IOException {
+		int type;
+		byte[] body;
+		if (message instanceof String) {
+			type = TYPE_STRING;
+			body = ((String)message).getBytes(UTF8);
+		} else if (message instanceof byte[]) {
+			type = TYPE_BYTES;
+			body = (byte[])message;
+		} else {
+			type = TYPE_SERIALIZED;
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(out);
+			oos.writeObject(message);
+			oos.close();
+			body = out.toByteArray();
+		}
+		int flags = 0;
+		int length = body.length;
+		byte[] compressed = null;
+		int compressedLength = 0;
+		if (compressionLevel != 0 && length > COMPRESSION_THRESHOLD) {
+			Deflater deflater = new Deflater(compressionLevel, true);
+			try {
+				deflater.setInput(body);
+				deflater.finish();
+				compressed = new byte[length];
+				while (!deflater.finished() && compressedLength < compressed.length) {
+					compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+				}
+				if (deflater.finished()) {
+					flags |= FLAG_COMPRESSED;
+				}
+			} finally {
+				deflater.end();
+			}
+		}
+		byte[] bodyToWrite = (flags & FLAG_COMPRESSED) != 0 ? compressed : body;
+		int bodyLength = (flags & FLAG_COMPRESSED) != 0 ? compressedLength : length;
+
+		byte[] result = new byte[HEADER_LENGTH + bodyLength];
+		System.arraycopy(MAGIC, 0, result, 0, MAGIC.length);
+		int pos = MAGIC.length;
+		result[pos++] = VERSION;
+		result[pos++] = (byte)flags;
+		result[pos++] = (byte)type;
+		result[pos++] = (byte)(length >>> 24);
+		result[pos++] = (byte)(length >>> 16);
+		result[pos++] = (byte)(length >>> 8);
+		result[pos++] = (byte)length;
+		System.arraycopy(bodyToWrite, 0, result, pos, bodyLength);
+		return result;
+	}
+
+	/**
+	 * Returns <code>true</code> when the data starts with the magic bytes of this format.
+	 */
+	public static boolean isEncoded(byte[] data) {
+		if (data == null || data.length < HEADER_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (data[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> when the stream starts with the magic bytes of this format.
+	 * The stream must support {@link InputStream#mark(int) mark}, it is reset to its original position.
+	 */
+	public static boolean isEncoded(InputStream in) throws IOException {
+		in.mark(MAGIC.length);
+		try {
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (in.read() != MAGIC[i]) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			in.reset();
+		}
+	}
+
+	public static Serializable decode(byte[] data) throws IOException {
+		return decode(new ByteArrayInputStream(data));
+	}
+
+	public static Serializable decode(InputStream in) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		byte[] magic = new byte[MAGIC.length];
+		din.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("blob is not in compact message format");
+		}
+		int version = din.readUnsignedByte();
+		if (version > VERSION) {
+			throw new IOException("unsupported compact message format version ["+version+"]");
+		}
+		int flags = din.readUnsignedByte();
+		int type = din.readUnsignedByte();
+		int length = din.readInt();
+		byte[] body = new byte[length];
+		if ((flags & FLAG_COMPRESSED) != 0) {
+			inflate(din, body);
+		} else {
+			din.readFully(body);
+		}
+		switch (type) {
+			case TYPE_STRING:
+				return new String(body, UTF8);
+			case TYPE_BYTES:
+				return body;
+			case TYPE_SERIALIZED:
+				ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(body));
+				try {
+					return (Serializable)ois.readObject();
+				} catch (ClassNotFoundException e) {
+					throw new IOException("cannot deserialize message", e);
+				} finally {
+					ois.close();
+				}
+			default:
+				throw new IOException("unknown payload type ["+type+"]");
+		}
+	}
+
+	private static void inflate(InputStream in, byte[] target) throws IOException {
+		Inflater inflater = new Inflater(true);
+		try {
+			byte[] buffer = new byte[8192];
+			boolean endOfInput = false;
+			int pos = 0;
+			while (pos < target.length && !inflater.finished()) {
+				if (inflater.needsInput()) {
+					if (endOfInput) {
+						break;
+					}
+					int read = in.read(buffer);
+					if (read < 0) {
+						// raw deflate needs an extra dummy byte to finish
+						endOfInput = true;
+						inflater.setInput(new byte[1]);
+					} else {
+						inflater.setInput(buffer, 0, read);
+					}
+				}
+				int count = inflater.inflate(target, pos, target.length - pos);
+				if (count == 0 && !inflater.needsInput()) {
+					break;
+				}
+				pos += count;
+			}
+			if (pos < target.length) {
+				throw new IOException("compressed body is truncated, expected ["+target.length+"] bytes, found ["+pos+"]");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("cannot decompress body", e);
+		} finally {
+			inflater.end();
+		}
+	}
+}
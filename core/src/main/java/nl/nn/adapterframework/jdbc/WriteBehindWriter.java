@@ -0,0 +1,465 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.jdbc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.Misc;
+
+/**
+ * Background writer of a {@link JdbcTransactionalStorage} in writeBehind mode. Messages are queued in a bounded
+ * queue, and inserted in batches by a single task, that runs on the task executor of the storage. When the queue
+ * is full, messages are dropped.
+ *
+ * When the writer is stopped, the messages that are still queued are written to the database. When that fails,
+ * they are written to a journal file, that is read and stored again when the writer of the same storage is started.
+ * The name of the journal file contains the instance name and the host, so that instances that share a journal
+ * directory only store their own journals. Messages offered after the writer started to stop are not accepted,
+ * the storage stores them itself.
+ *
+ * @since 7.5
+ */
+class WriteBehindWriter implements Runnable {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private static final String JOURNAL_SUFFIX = ".journal";
+	private static final long STOP_TIMEOUT = 30000;
+
+	private final JdbcTransactionalStorage storage;
+	private final BlockingQueue<PendingMessage> queue;
+	private final List<PendingMessage> pending = new ArrayList<PendingMessage>();
+
+	private volatile boolean running;
+	private boolean accepting;
+	private final ReadWriteLock acceptLock = new ReentrantReadWriteLock();
+	private volatile long oldestPendingTime;
+	private volatile List<PendingMessage> inFlight;
+	private long stopTimeout = STOP_TIMEOUT;
+	private CountDownLatch stopped;
+
+	private final AtomicLong messagesWritten = new AtomicLong();
+	private final AtomicLong messagesDropped = new AtomicLong();
+	private final AtomicLong messagesJournaled = new AtomicLong();
+	private final AtomicLong failedBatches = new AtomicLong();
+
+	static class PendingMessage implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final String messageId;
+		final String correlationId;
+		final Timestamp receivedDateTime;
+		final String comments;
+		final String label;
+		final Serializable message;
+		final transient long enqueueTime;
+
+		PendingMessage(String messageId, String correlationId, Timestamp receivedDateTime, String comments, String label, Serializable message) {
+			this.messageId = messageId;
+			this.correlationId = correlationId;
+			this.receivedDateTime = receivedDateTime;
+			this.comments = comments;
+			this.label = label;
+			this.message = message;
+			this.enqueueTime = System.currentTimeMillis();
+		}
+	}
+
+	WriteBehindWriter(JdbcTransactionalStorage storage) {
+		this.storage = storage;
+		this.queue = new ArrayBlockingQueue<PendingMessage>(Math.max(1, storage.getWriteBehindQueueSize()));
+	}
+
+	private String getLogPrefix() {
+		return storage.getLogPrefix()+"writeBehind ";
+	}
+
+	/**
+	 * Stores the messages of the journal files left by a previous run, and starts the writer task.
+	 */
+	void start() {
+		replayJournals();
+		setAccepting(true);
+		running = true;
+		stopped = new CountDownLatch(1);
+		TaskExecutor taskExecutor = storage.getTaskExecutor();
+		if (taskExecutor==null) {
+			taskExecutor = createFallbackExecutor();
+		}
+		try {
+			taskExecutor.execute(this);
+		} catch (TaskRejectedException e) {
+			log.warn(getLogPrefix()+"task executor rejected the writer task, starting it in a separate thread", e);
+			createFallbackExecutor().execute(this);
+		}
+		log.info(getLogPrefix()+"started, queueSize ["+storage.getWriteBehindQueueSize()+"] batchSize ["+storage.getWriteBehindBatchSize()+"]");
+	}
+
+	private TaskExecutor createFallbackExecutor() {
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("writeBehind-"+storage.getName()+"-");
+		executor.setDaemon(true);
+		return executor;
+	}
+
+	/**
+	 * Stops the writer task, and stores the messages that are still queued, or writes them to a journal.
+	 */
+	void stop() {
+		// no messages can be added to the queue once it is drained
+		setAccepting(false);
+		running = false;
+		if (stopped!=null) {
+			boolean writerStopped = false;
+			try {
+				writerStopped = stopped.await(stopTimeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (!writerStopped) {
+				List<PendingMessage> remaining = new ArrayList<PendingMessage>();
+				List<PendingMessage> batch = inFlight;
+				if (batch!=null) {
+					remaining.addAll(batch);
+				}
+				queue.drainTo(remaining);
+				log.warn(getLogPrefix()+"writer did not stop within ["+stopTimeout+"] ms, saving the batch that is being written and the queued messages. "
+						+ "messages of the batch are stored twice if the writer still succeeds in writing it");
+				writeJournal(remaining);
+				return;
+			}
+		}
+		queue.drainTo(pending);
+		while (!pending.isEmpty()) {
+			List<PendingMessage> batch = pending.subList(0, Math.min(pending.size(), getBatchSize()));
+			if (!write(batch)) {
+				writeJournal(pending);
+				pending.clear();
+			}
+		}
+		oldestPendingTime = 0;
+		log.info(getLogPrefix()+"stopped, messages written ["+getMessagesWritten()+"] dropped ["+getMessagesDropped()+"] journaled ["+getMessagesJournaled()+"]");
+	}
+
+	private void setAccepting(boolean accepting) {
+		acceptLock.writeLock().lock();
+		try {
+			this.accepting = accepting;
+		} finally {
+			acceptLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Queues the message, or drops it when the queue is full. Returns false when the message is not accepted because
+	 * the writer is stopping or stopped, the caller must then store the message itself.
+	 */
+	boolean enqueue(PendingMessage message) {
+		acceptLock.readLock().lock();
+		try {
+			if (!accepting) {
+				return false;
+			}
+			if (!queue.offer(message)) {
+				if (messagesDropped.incrementAndGet() % 1000 == 1) {
+					log.warn(getLogPrefix()+"queue is full, message ["+message.messageId+"] is dropped, ["+messagesDropped.get()+"] messages dropped so far");
+				}
+			}
+			return true;
+		} finally {
+			acceptLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void run() {
+		String ctName = Thread.currentThread().getName();
+		Thread.currentThread().setName("writeBehind-"+storage.getName());
+		try {
+			writeQueuedMessages();
+		} finally {
+			Thread.currentThread().setName(ctName);
+			stopped.countDown();
+		}
+	}
+
+	private void writeQueuedMessages() {
+		while (running) {
+			try {
+				if (pending.isEmpty()) {
+					PendingMessage first = queue.poll(storage.getWriteBehindFlushInterval(), TimeUnit.MILLISECONDS);
+					if (first==null) {
+						continue;
+					}
+					pending.add(first);
+				}
+				queue.drainTo(pending, getBatchSize()-pending.size());
+				oldestPendingTime = pending.get(0).enqueueTime;
+				inFlight = new ArrayList<PendingMessage>(pending);
+				if (write(pending)) {
+					inFlight = null;
+					oldestPendingTime = 0;
+				} else {
+					Thread.sleep(storage.getWriteBehindFlushInterval());
+				}
+			} catch (InterruptedException e) {
+				log.warn(getLogPrefix()+"writer thread interrupted");
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Throwable t) {
+				log.error(getLogPrefix()+"unexpected exception in writer thread", t);
+			}
+		}
+	}
+
+	private int getBatchSize() {
+		return Math.max(1, storage.getWriteBehindBatchSize());
+	}
+
+	/**
+	 * Writes the messages in a single transaction. Removes the messages from the list when successful.
+	 */
+	private boolean write(List<PendingMessage> messages) {
+		try {
+			Connection conn = storage.getConnection();
+			try {
+				boolean autoCommit = conn.getAutoCommit();
+				conn.setAutoCommit(false);
+				try {
+					if (storage.getDbmsSupport().mustInsertEmptyBlobBeforeData() || !storage.isStoreFullMessage()) {
+						for (PendingMessage message:messages) {
+							storage.storeMessageInDatabase(conn, message.messageId, message.correlationId, message.receivedDateTime, message.comments, message.label, message.message);
+						}
+					} else {
+						insertBatch(conn, messages);
+					}
+					conn.commit();
+				} catch (Exception e) {
+					conn.rollback();
+					throw e;
+				} finally {
+					conn.setAutoCommit(autoCommit);
+				}
+			} finally {
+				conn.close();
+			}
+			messagesWritten.addAndGet(messages.size());
+			messages.clear();
+			return true;
+		} catch (Exception e) {
+			failedBatches.incrementAndGet();
+			log.warn(getLogPrefix()+"cannot store ["+messages.size()+"] messages", e);
+			return false;
+		}
+	}
+
+	private void insertBatch(Connection conn, List<PendingMessage> messages) throws SQLException, IOException {
+		PreparedStatement stmt = conn.prepareStatement(storage.insertQuery);
+		try {
+			for (PendingMessage message:messages) {
+				int parPos = storage.applyInsertParameters(stmt, message.messageId, message.correlationId, message.receivedDateTime, message.comments, message.label);
+				stmt.setBytes(++parPos, storage.serializeMessage(message.message));
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private File getJournalDirectory() {
+		if (StringUtils.isEmpty(storage.getWriteBehindJournalDirectory())) {
+			return null;
+		}
+		return new File(storage.getWriteBehindJournalDirectory());
+	}
+
+	String getJournalPrefix() {
+		String instanceName = AppConstants.getInstance().getResolvedProperty("instance.name");
+		String name = "ibisstore-"+StringUtils.defaultString(instanceName)+"-"+Misc.getHostname()+"-"+storage.getType()+"-"+StringUtils.defaultString(storage.getSlotId());
+		return name.replaceAll("[^\\w.-]", "_")+"-";
+	}
+
+	private void writeJournal(List<PendingMessage> messages) {
+		if (messages.isEmpty()) {
+			return;
+		}
+		File directory = getJournalDirectory();
+		if (directory==null) {
+			log.error(getLogPrefix()+"no journal directory, ["+messages.size()+"] messages are lost");
+			return;
+		}
+		File journal = new File(directory, getJournalPrefix()+System.currentTimeMillis()+JOURNAL_SUFFIX);
+		try {
+			directory.mkdirs();
+			writeJournalFile(journal, messages);
+			messagesJournaled.addAndGet(messages.size());
+			log.warn(getLogPrefix()+"saved ["+messages.size()+"] messages in journal ["+journal.getPath()+"]");
+		} catch (IOException e) {
+			log.error(getLogPrefix()+"cannot write journal ["+journal.getPath()+"], ["+messages.size()+"] messages are lost", e);
+		}
+	}
+
+	private void writeJournalFile(File journal, List<PendingMessage> messages) throws IOException {
+		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(journal)));
+		try {
+			for (PendingMessage message:messages) {
+				out.writeObject(message);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Replaces the contents of the journal by the messages that are not stored yet. The new contents are written
+	 * to a temporary file first, that is not picked up as journal, so the journal is never left half written.
+	 */
+	private void rewriteJournal(File journal, List<PendingMessage> messages) {
+		File rewritten = new File(journal.getPath()+".tmp");
+		try {
+			writeJournalFile(rewritten, messages);
+			Files.move(rewritten.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.warn(getLogPrefix()+"kept the ["+messages.size()+"] messages that are not stored in journal ["+journal.getPath()+"]");
+		} catch (IOException e) {
+			log.error(getLogPrefix()+"cannot rewrite journal ["+journal.getPath()+"], messages that are already stored will be stored again", e);
+			rewritten.delete();
+		}
+	}
+
+	private void replayJournals() {
+		File directory = getJournalDirectory();
+		if (directory==null || !directory.isDirectory()) {
+			return;
+		}
+		final String prefix = getJournalPrefix();
+		File[] journals = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix) && name.endsWith(JOURNAL_SUFFIX);
+			}
+		});
+		if (journals==null) {
+			return;
+		}
+		Arrays.sort(journals);
+		for (File journal:journals) {
+			List<PendingMessage> messages = new ArrayList<PendingMessage>();
+			try {
+				ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(journal)));
+				try {
+					while (true) {
+						messages.add((PendingMessage)in.readObject());
+					}
+				} catch (EOFException e) {
+					// end of journal
+				} finally {
+					in.close();
+				}
+			} catch (IOException | ClassNotFoundException e) {
+				log.error(getLogPrefix()+"cannot read journal ["+journal.getPath()+"]", e);
+				continue;
+			}
+			int count = messages.size();
+			boolean stored = true;
+			while (stored && !messages.isEmpty()) {
+				stored = write(messages.subList(0, Math.min(messages.size(), getBatchSize())));
+			}
+			if (stored) {
+				log.info(getLogPrefix()+"stored ["+count+"] messages from journal ["+journal.getPath()+"]");
+				if (!journal.delete()) {
+					log.warn(getLogPrefix()+"cannot delete journal ["+journal.getPath()+"]");
+				}
+			} else {
+				log.error(getLogPrefix()+"cannot store ["+messages.size()+"] of ["+count+"] messages from journal ["+journal.getPath()+"], will retry when opened again");
+				if (messages.size()<count) {
+					rewriteJournal(journal, messages);
+				}
+				return;
+			}
+		}
+	}
+
+	void setStopTimeout(long stopTimeout) {
+		this.stopTimeout = stopTimeout;
+	}
+
+	int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the time in ms since the oldest message that has not been written was queued.
+	 */
+	long getLag() {
+		long oldest = oldestPendingTime;
+		if (oldest==0) {
+			PendingMessage head = queue.peek();
+			if (head!=null) {
+				oldest = head.enqueueTime;
+			}
+		}
+		return oldest==0 ? 0 : System.currentTimeMillis()-oldest;
+	}
+
+	long getMessagesWritten() {
+		return messagesWritten.get();
+	}
+
+	long getMessagesDropped() {
+		return messagesDropped.get();
+	}
+
+	long getMessagesJournaled() {
+		return messagesJournaled.get();
+	}
+
+	long getFailedBatches() {
+		return failedBatches.get();
+	}
+}
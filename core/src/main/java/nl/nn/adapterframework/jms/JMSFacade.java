@@ -48,6 +48,7 @@ import nl.nn.adapterframework.core.IXAEnabled;
 import nl.nn.adapterframework.core.IbisException;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.soap.SoapEnvelopeParts;
 import nl.nn.adapterframework.soap.SoapWrapper;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.DateUtils;
@@ -706,11 +707,13 @@ public class JMSFacade extends JNDIBase implements INamedObject, HasPhysicalDest
 		if (!soap) {
 			return rawMessageText;
 		}
-		String messageText=extractMessageBody(rawMessageText, context, soapWrapper);
-		if (StringUtils.isNotEmpty(soapHeaderSessionKey)) {
-			String soapHeader=soapWrapper.getHeader(rawMessageText);
-			context.put(soapHeaderSessionKey,soapHeader);
+		if (StringUtils.isEmpty(soapHeaderSessionKey)) {
+			return extractMessageBody(rawMessageText, context, soapWrapper);
 		}
+		// header and body are taken from a single parse of the envelope
+		SoapEnvelopeParts soapMessage=soapWrapper.split(rawMessageText);
+		String messageText=extractMessageBody(rawMessageText, soapMessage, context, soapWrapper);
+		context.put(soapHeaderSessionKey,soapMessage.getHeader());
 		return messageText;
 	}
 
@@ -718,6 +721,13 @@ public class JMSFacade extends JNDIBase implements INamedObject, HasPhysicalDest
 		return soapWrapper.getBody(rawMessageText);
 	}
 
+	/**
+	 * Variant of {@link #extractMessageBody(String, Map, SoapWrapper)} that is used when the envelope has already been split.
+	 */
+	protected String extractMessageBody(String rawMessageText, SoapEnvelopeParts soapMessage, Map context, SoapWrapper soapWrapper) throws DomBuilderException, TransformerException, IOException {
+		return soapMessage.getBody();
+	}
+
 
     public String toString() {
         StringBuffer sb = new StringBuffer();
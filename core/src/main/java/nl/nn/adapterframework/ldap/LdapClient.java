@@ -20,6 +20,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.security.cert.CertPathValidatorException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -31,8 +34,13 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.naming.Context;
+import javax.naming.InvalidNameException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.PartialResultException;
@@ -42,8 +50,11 @@ import javax.naming.directory.DirContext;
 import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
 
 import org.apache.log4j.Logger;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 
 import nl.nn.adapterframework.cache.ICacheAdapter;
 import nl.nn.adapterframework.cache.ICacheEnabled;
@@ -112,6 +123,14 @@ public class LdapClient implements ICacheEnabled<String,Set<String>> {
 	private Hashtable<String,Object> jndiEnv=null;
 	private ICacheAdapter<String,Set<String>> attributeCache=null;
 
+	private int membershipCacheTimeToLive=600;
+	private int membershipCacheMaxEntries=10000;
+	private String batchLookupAttribute="distinguishedName";
+	private int batchSize=20;
+	private TaskExecutor taskExecutor;
+
+	private final Map<String,CachedMemberships> membershipCache=new ConcurrentHashMap<String,CachedMemberships>();
+
     static{
     	//set JVM custom properties from Ldap.properties only once
     	//check if a custom property exists to override LDAP properties name/location in classpath
@@ -152,6 +171,7 @@ public class LdapClient implements ICacheEnabled<String,Set<String>> {
 	}
 
 	public void close() throws SenderException {
+		clearMembershipCache();
 		if (attributeCache!=null) {
 			attributeCache.close();
 		}
@@ -328,38 +348,50 @@ public class LdapClient implements ICacheEnabled<String,Set<String>> {
 //		}
 //    }
   
+    /**
+     * Returns the values of the attribute of the object, and recursively the values of that attribute in the objects found, e.g. all
+     * direct and nested group memberships of a user when the attribute is <code>memberOf</code>.
+     * <p>
+     * The objects found are searched level by level. The values of a level that are not found in the membership cache are searched
+     * in batches, using an OR-filter on the {@link #setBatchLookupAttribute(String) batchLookupAttribute}. When a task executor is set,
+     * the batches of a level are searched in parallel, each using its own context. Objects that are not returned by a batch search
+     * are searched one by one. When a batch search returns no objects at all, the remaining objects of the request are searched
+     * one by one. Objects that have already been searched are skipped, so cycles in the graph do no harm.
+     */
     public Set<String> searchRecursivelyViaAttributes(String uid, String baseDn, String attribute) throws NamingException {
-    	Set<String> results=new LinkedHashSet<String>();
-    	Set<String> toBeSearched=new LinkedHashSet<String>();
-       	Set<String> searched=new LinkedHashSet<String>();
-       	
+    	Set<String> results;
+       	Set<String> searched=new HashSet<String>();
+       	AtomicBoolean batchLookup=new AtomicBoolean(isBatchLookupEnabled());
+
        	DirContext context=getContext();
        	try {
 			int nestingLevel=0;
 			if (log.isDebugEnabled()) log.debug("primary lookup of attribute ["+attribute+"] of ["+uid+"]");
 			results=searchObjectForMultiValuedAttribute(context, uid, baseDn, attribute);
-			toBeSearched.addAll(results);
+			Set<String> toBeSearched=new LinkedHashSet<String>(results);
 			while (!toBeSearched.isEmpty()) {
-		       	Set<String> searchingNow=toBeSearched;
-		       	toBeSearched=new LinkedHashSet<String>();
-		       	nestingLevel++;
-				if (log.isDebugEnabled()) log.debug("secondary lookup of memberships of ["+uid+"] nestingLevel ["+nestingLevel+"]");
-				for (String target:searchingNow) {
-					if (log.isDebugEnabled()) log.debug("secondary lookup of memberships of ["+uid+"] nestingLevel ["+nestingLevel+"], now searching ["+target+"]");
-					searched.add(target);
-					Set<String> secondaryResults=searchObjectForMultiValuedAttributeWithCache(context, target, baseDn, attribute, true);
+				nestingLevel++;
+				if (log.isDebugEnabled()) log.debug("secondary lookup of memberships of ["+uid+"] nestingLevel ["+nestingLevel+"], searching ["+toBeSearched.size()+"] objects");
+				searched.addAll(toBeSearched);
+				Map<String,Set<String>> levelResults=searchLevel(context, toBeSearched, baseDn, attribute, batchLookup);
+				Set<String> nextLevel=new LinkedHashSet<String>();
+				for (String target:toBeSearched) {
+					Set<String> secondaryResults=levelResults.get(target);
+					if (secondaryResults==null) {
+						continue;
+					}
 					for(String secondaryResult:secondaryResults) {
-			    		if (!results.contains(secondaryResult)) {
-			    			if (log.isDebugEnabled()) log.debug("nestingLevel ["+nestingLevel+"] found secondary membership ["+secondaryResult+"]");
-			    			results.add(secondaryResult);
-			    			if (!searched.contains(secondaryResult) && 
-			    				!searchingNow.contains(secondaryResult) && 
-			    				!toBeSearched.contains(secondaryResult)) {
-			    				toBeSearched.add(secondaryResult);
-			    			}
-			    		}
+						if (results.add(secondaryResult)) {
+							if (log.isDebugEnabled()) log.debug("nestingLevel ["+nestingLevel+"] found secondary membership ["+secondaryResult+"]");
+						}
+						if (!searched.contains(secondaryResult)) {
+							nextLevel.add(secondaryResult);
+						} else {
+							if (log.isTraceEnabled()) log.trace("nestingLevel ["+nestingLevel+"] membership ["+secondaryResult+"] of ["+target+"] already searched");
+						}
 					}
 				}
+				toBeSearched=nextLevel;
 			}
 			return results;
        	} finally {
@@ -367,6 +399,251 @@ public class LdapClient implements ICacheEnabled<String,Set<String>> {
        	}
     }
 
+    /**
+     * Returns the values of the attribute for each of the targets, from the caches when possible.
+     */
+    private Map<String,Set<String>> searchLevel(DirContext context, Set<String> targets, String baseDn, String attribute, AtomicBoolean batchLookup) throws NamingException {
+    	Map<String,Set<String>> results=new ConcurrentHashMap<String,Set<String>>();
+    	List<String> misses=new ArrayList<String>();
+    	long now=System.currentTimeMillis();
+    	for (String target:targets) {
+    		Set<String> cached=getCachedMemberships(target, attribute, now);
+    		if (cached!=null) {
+    			results.put(target, cached);
+    		} else {
+    			misses.add(target);
+    		}
+    	}
+    	if (misses.isEmpty()) {
+    		return results;
+    	}
+    	List<List<String>> batches=new ArrayList<List<String>>();
+    	int batchSize=batchLookup.get() ? getBatchSize() : 1;
+    	for (int i=0; i<misses.size(); i+=batchSize) {
+    		batches.add(misses.subList(i, Math.min(i+batchSize, misses.size())));
+    	}
+    	if (getTaskExecutor()==null || batches.size()==1) {
+    		for (List<String> batch:batches) {
+    			searchBatch(context, batch, baseDn, attribute, results, batchLookup);
+    		}
+    	} else {
+    		searchBatchesInParallel(batches, baseDn, attribute, results, batchLookup);
+    	}
+    	return results;
+    }
+
+    private void searchBatchesInParallel(List<List<String>> batches, final String baseDn, final String attribute, final Map<String,Set<String>> results, final AtomicBoolean batchLookup) throws NamingException {
+    	final CountDownLatch done=new CountDownLatch(batches.size());
+    	final AtomicReference<NamingException> failure=new AtomicReference<NamingException>();
+    	for (final List<String> batch:batches) {
+    		Runnable task=new Runnable() {
+				@Override
+				public void run() {
+					try {
+						DirContext batchContext=getContext();
+						try {
+							searchBatch(batchContext, batch, baseDn, attribute, results, batchLookup);
+						} finally {
+							batchContext.close();
+						}
+					} catch (NamingException e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						done.countDown();
+					}
+				}
+			};
+    		try {
+    			getTaskExecutor().execute(task);
+    		} catch (TaskRejectedException e) {
+    			task.run();
+    		}
+    	}
+    	try {
+    		done.await();
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		NamingException ne=new NamingException("interrupted while searching for ["+attribute+"]");
+    		ne.setRootCause(e);
+    		throw ne;
+    	}
+    	if (failure.get()!=null) {
+    		throw failure.get();
+    	}
+    }
+
+    private void searchBatch(DirContext context, List<String> batch, String baseDn, String attribute, Map<String,Set<String>> results, AtomicBoolean batchLookup) throws NamingException {
+    	List<String> notFound=batch;
+    	if (batch.size()>1 && batchLookup.get()) {
+    		notFound=searchBatchWithFilter(context, batch, baseDn, attribute, results, batchLookup);
+    	}
+    	for (String target:notFound) {
+    		Set<String> memberships=searchObjectForMultiValuedAttributeWithCache(context, target, baseDn, attribute, true);
+    		if (memberships==null) {
+    			memberships=Collections.emptySet();
+    		}
+    		putCachedMemberships(target, attribute, memberships);
+    		results.put(target, memberships);
+    	}
+    }
+
+    /**
+     * Returns the name of dn relative to the root of the context, i.e. the DN of the provider URL, or null when dn is not in its tree.
+     */
+    private String getNameRelativeToContext(DirContext context, String dn) throws NamingException {
+    	LdapName root=new LdapName(context.getNameInNamespace());
+    	LdapName name=new LdapName(dn==null ? "" : dn);
+    	if (!name.startsWith(root)) {
+    		return null;
+    	}
+    	return name.getSuffix(root.size()).toString();
+    }
+
+    /**
+     * Searches the objects of the batch at once in the subtree of baseDn, and returns the objects that were not found. The DNs of the
+     * objects found are compared to the requested DNs as {@link LdapName}s, so differences in case or spacing do not matter.
+     */
+    private List<String> searchBatchWithFilter(DirContext context, List<String> batch, String baseDn, String attribute, Map<String,Set<String>> results, AtomicBoolean batchLookup) throws NamingException {
+    	String searchDN=getNameRelativeToContext(context, baseDn);
+    	if (searchDN==null) {
+    		if (log.isDebugEnabled()) log.debug("baseDn ["+baseDn+"] is not in the tree of the context ["+context.getNameInNamespace()+"], searching the objects one by one");
+    		return batch;
+    	}
+    	Map<LdapName,String> requested=new HashMap<LdapName,String>();
+    	StringBuilder filter=new StringBuilder("(|");
+    	for (String target:batch) {
+    		try {
+    			requested.put(new LdapName(target), target);
+    		} catch (InvalidNameException e) {
+    			if (log.isDebugEnabled()) log.debug("cannot parse ["+target+"] as DN, it will be searched separately: "+e.getMessage());
+    			continue;
+    		}
+    		filter.append("(").append(getBatchLookupAttribute()).append("=").append(escapeFilterValue(target)).append(")");
+    	}
+    	if (requested.isEmpty()) {
+    		return batch;
+    	}
+    	filter.append(")");
+    	Map<String,Set<String>> found=new HashMap<String,Set<String>>();
+    	NamingEnumeration<SearchResult> searchResults=search(context, searchDN, filter.toString(), attribute, SearchControls.SUBTREE_SCOPE);
+    	try {
+    		while (searchResults.hasMore()) {
+    			SearchResult searchResult=searchResults.next();
+    			String target;
+    			try {
+    				target=requested.get(new LdapName(searchResult.getNameInNamespace()));
+    			} catch (InvalidNameException e) {
+    				if (log.isDebugEnabled()) log.debug("ignoring result with unparsable DN ["+searchResult.getNameInNamespace()+"]: "+e.getMessage());
+    				continue;
+    			}
+    			if (target==null) {
+    				continue;
+    			}
+    			Set<String> memberships=new LinkedHashSet<String>();
+    			Attribute attr=searchResult.getAttributes().get(attribute);
+    			if (attr!=null) {
+    				NamingEnumeration<?> values=attr.getAll();
+    				try {
+    					while (values.hasMore()) {
+    						memberships.add((String)values.next());
+    					}
+    				} finally {
+    					values.close();
+    				}
+    			}
+    			found.put(target, memberships);
+    		}
+    	} catch(PartialResultException e) {
+    		if (log.isDebugEnabled()) log.debug("ignoring Exception: "+e);
+    	} finally {
+    		searchResults.close();
+    	}
+    	if (found.isEmpty() && batchLookup.compareAndSet(true, false)) {
+    		log.info("batch lookup on attribute ["+getBatchLookupAttribute()+"] returned no objects, searching the remaining objects of this request one by one");
+    	}
+    	List<String> notFound=new ArrayList<String>();
+    	for (String target:batch) {
+    		Set<String> memberships=found.get(target);
+    		if (memberships==null) {
+    			notFound.add(target);
+    		} else {
+    			putCachedMemberships(target, attribute, memberships);
+    			results.put(target, memberships);
+    		}
+    	}
+    	return notFound;
+    }
+
+    /**
+     * Escapes a value to be used in a search filter, as described in RFC 4515.
+     */
+    protected static String escapeFilterValue(String value) {
+    	StringBuilder result=new StringBuilder(value.length());
+    	for (int i=0; i<value.length(); i++) {
+    		char c=value.charAt(i);
+    		switch (c) {
+    			case '\\': result.append("\\5c"); break;
+    			case '*': result.append("\\2a"); break;
+    			case '(': result.append("\\28"); break;
+    			case ')': result.append("\\29"); break;
+    			case '\0': result.append("\\00"); break;
+    			default: result.append(c);
+    		}
+    	}
+    	return result.toString();
+    }
+
+    private Set<String> getCachedMemberships(String objectDN, String attribute, long now) {
+    	if (getMembershipCacheTimeToLive()<=0) {
+    		return null;
+    	}
+    	CachedMemberships cached=membershipCache.get(objectDN+"/"+attribute);
+    	if (cached==null) {
+    		return null;
+    	}
+    	if (cached.expiry<now) {
+    		membershipCache.remove(objectDN+"/"+attribute, cached);
+    		return null;
+    	}
+    	return cached.memberships;
+    }
+
+    private void putCachedMemberships(String objectDN, String attribute, Set<String> memberships) {
+    	if (getMembershipCacheTimeToLive()<=0) {
+    		return;
+    	}
+    	long now=System.currentTimeMillis();
+    	if (membershipCache.size()>=getMembershipCacheMaxEntries()) {
+    		for (Iterator<CachedMemberships> it=membershipCache.values().iterator(); it.hasNext();) {
+    			if (it.next().expiry<now) {
+    				it.remove();
+    			}
+    		}
+    		if (membershipCache.size()>=getMembershipCacheMaxEntries()) {
+    			log.info("membership cache reached maximum of ["+getMembershipCacheMaxEntries()+"] entries, clearing it");
+    			membershipCache.clear();
+    		}
+    	}
+    	membershipCache.put(objectDN+"/"+attribute, new CachedMemberships(Collections.unmodifiableSet(memberships), now+getMembershipCacheTimeToLive()*1000L));
+    }
+
+    /**
+     * Removes all entries from the membership cache.
+     */
+    public void clearMembershipCache() {
+    	membershipCache.clear();
+    }
+
+    private static class CachedMemberships {
+    	final Set<String> memberships;
+    	final long expiry;
+
+    	CachedMemberships(Set<String> memberships, long expiry) {
+    		this.memberships=memberships;
+    		this.expiry=expiry;
+    	}
+    }
+
     /**
      * Search LDAP without filter, for example to find attributes of a specific user/object.
      */
@@ -738,4 +1015,57 @@ public class LdapClient implements ICacheEnabled<String,Set<String>> {
 
 	}
 
+
+	/**
+	 * Number of seconds that the memberships of a group are kept in the membership cache, used by
+	 * {@link #searchRecursivelyViaAttributes(String, String, String)}. When 0, no membership cache is used.
+	 */
+	public void setMembershipCacheTimeToLive(int membershipCacheTimeToLive) {
+		this.membershipCacheTimeToLive = membershipCacheTimeToLive;
+	}
+	public int getMembershipCacheTimeToLive() {
+		return membershipCacheTimeToLive;
+	}
+
+	public void setMembershipCacheMaxEntries(int membershipCacheMaxEntries) {
+		this.membershipCacheMaxEntries = membershipCacheMaxEntries;
+	}
+	public int getMembershipCacheMaxEntries() {
+		return membershipCacheMaxEntries;
+	}
+
+	/**
+	 * Attribute that holds the DN of an object, used to search a batch of objects with a single OR-filter.
+	 * When a batch lookup does not return any object, the remaining objects of that request are searched one by one.
+	 */
+	public void setBatchLookupAttribute(String batchLookupAttribute) {
+		this.batchLookupAttribute = batchLookupAttribute;
+	}
+	public String getBatchLookupAttribute() {
+		return batchLookupAttribute;
+	}
+
+	/**
+	 * Maximum number of objects searched with a single OR-filter. When 1 or less, objects are searched one by one.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	protected boolean isBatchLookupEnabled() {
+		return getBatchSize()>1 && getBatchLookupAttribute()!=null;
+	}
+
+	/**
+	 * Executor used to search the batches of a nesting level in parallel. When not set, batches are searched one after the other.
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+	public TaskExecutor getTaskExecutor() {
+		return taskExecutor;
+	}
 }
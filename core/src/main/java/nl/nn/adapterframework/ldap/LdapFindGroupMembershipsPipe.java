@@ -22,6 +22,8 @@ import java.util.Set;
 import javax.naming.Context;
 import javax.naming.NamingException;
 
+import org.springframework.core.task.TaskExecutor;
+
 import nl.nn.adapterframework.cache.ICacheAdapter;
 import nl.nn.adapterframework.cache.ICacheEnabled;
 import nl.nn.adapterframework.configuration.ConfigurationException;
@@ -31,6 +33,7 @@ import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.core.PipeStartException;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.util.ConcurrencyLimitedTaskExecutor;
 import nl.nn.adapterframework.util.XmlBuilder;
 
 /**
@@ -64,6 +67,11 @@ import nl.nn.adapterframework.util.XmlBuilder;
 public class LdapFindGroupMembershipsPipe extends LdapQueryPipeBase implements ICacheEnabled<String,Set<String>> {
 	
 	private boolean recursiveSearch = true;
+	private int membershipCacheTimeToLive = 600;
+	private int batchSize = 20;
+	private String batchLookupAttribute = "distinguishedName";
+	private int maxParallelLookups = 4;
+	private TaskExecutor parallelTaskExecutor;
 	
 	private LdapClient ldapClient;
 	private ICacheAdapter<String, Set<String>> cache;
@@ -78,6 +86,12 @@ public class LdapFindGroupMembershipsPipe extends LdapQueryPipeBase implements I
 		options.put(Context.SECURITY_CREDENTIALS, cf.getPassword());
 		ldapClient= new LdapClient(options);
 		ldapClient.registerCache(cache);
+		ldapClient.setMembershipCacheTimeToLive(getMembershipCacheTimeToLive());
+		ldapClient.setBatchSize(getBatchSize());
+		ldapClient.setBatchLookupAttribute(getBatchLookupAttribute());
+		if (getParallelTaskExecutor()!=null && getMaxParallelLookups()>1) {
+			ldapClient.setTaskExecutor(new ConcurrencyLimitedTaskExecutor(getParallelTaskExecutor(), getMaxParallelLookups()));
+		}
 		ldapClient.configure();
 	}
 
@@ -152,4 +166,42 @@ public class LdapFindGroupMembershipsPipe extends LdapQueryPipeBase implements I
 		return recursiveSearch;
 	}
 
+	@IbisDoc({"2", "number of seconds that the memberships of the groups found are cached, to speed up recursive searches. when 0, memberships of groups are not cached", "600"})
+	public void setMembershipCacheTimeToLive(int membershipCacheTimeToLive) {
+		this.membershipCacheTimeToLive = membershipCacheTimeToLive;
+	}
+	public int getMembershipCacheTimeToLive() {
+		return membershipCacheTimeToLive;
+	}
+
+	@IbisDoc({"3", "maximum number of groups of a nesting level that are searched with a single ldap search. when 1, groups are searched one by one", "20"})
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@IbisDoc({"4", "attribute that holds the dn of a group, used to search a number of groups with a single ldap search", "distinguishedName"})
+	public void setBatchLookupAttribute(String batchLookupAttribute) {
+		this.batchLookupAttribute = batchLookupAttribute;
+	}
+	public String getBatchLookupAttribute() {
+		return batchLookupAttribute;
+	}
+
+	@IbisDoc({"5", "maximum number of ldap searches for a nesting level that are executed in parallel. when 1, searches are executed one after the other", "4"})
+	public void setMaxParallelLookups(int maxParallelLookups) {
+		this.maxParallelLookups = maxParallelLookups;
+	}
+	public int getMaxParallelLookups() {
+		return maxParallelLookups;
+	}
+
+	public void setParallelTaskExecutor(TaskExecutor parallelTaskExecutor) {
+		this.parallelTaskExecutor = parallelTaskExecutor;
+	}
+	public TaskExecutor getParallelTaskExecutor() {
+		return parallelTaskExecutor;
+	}
 }
@@ -0,0 +1,238 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.monitoring;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Bounded queue of monitoring events, that are evaluated by a single dispatcher thread instead of by the threads
+ * that throw them. Adding an event does not take locks.
+ *
+ * An event that is thrown again by the same source while it is still queued is coalesced with the queued event:
+ * the dispatcher evaluates it once, with the number of occurrences. When the queue is full, new events are dropped.
+ * The dispatcher thread blocks while the queue is empty, and is woken up when an event is added.
+ *
+ * @since 7.5
+ */
+public class MonitorEventQueue implements Runnable {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private static final long STOP_TIMEOUT = 10000;
+
+	public interface EventDispatcher {
+		void dispatchEvent(EventThrowing source, String eventCode, int occurrences);
+	}
+
+	private final EventDispatcher dispatcher;
+	private final int capacity;
+	private final Queue<PendingEvent> queue = new ConcurrentLinkedQueue<PendingEvent>();
+	private final ConcurrentMap<EventKey, PendingEvent> pendingEvents = new ConcurrentHashMap<EventKey, PendingEvent>();
+	private final AtomicInteger depth = new AtomicInteger();
+
+	private volatile boolean running;
+	private volatile boolean stopped;
+	private volatile Thread thread;
+
+	private final AtomicLong eventsDispatched = new AtomicLong();
+	private final AtomicLong eventsCoalesced = new AtomicLong();
+	private final AtomicLong eventsDropped = new AtomicLong();
+
+	private static class EventKey {
+		final EventThrowing source;
+		final String eventCode;
+
+		EventKey(EventThrowing source, String eventCode) {
+			this.source = source;
+			this.eventCode = eventCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof EventKey)) {
+				return false;
+			}
+			EventKey other = (EventKey)obj;
+			return source==other.source && eventCode.equals(other.eventCode);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31*System.identityHashCode(source)+eventCode.hashCode();
+		}
+	}
+
+	/**
+	 * Event that is waiting to be dispatched.
+	 */
+	private static class PendingEvent {
+		final EventKey key;
+		// number of occurrences, or -1 when the dispatcher has taken the event
+		private final AtomicInteger occurrences = new AtomicInteger(1);
+
+		PendingEvent(EventKey key) {
+			this.key = key;
+		}
+
+		boolean addOccurrence() {
+			while (true) {
+				int current = occurrences.get();
+				if (current<0) {
+					return false;
+				}
+				if (occurrences.compareAndSet(current, current+1)) {
+					return true;
+				}
+			}
+		}
+
+		int take() {
+			return occurrences.getAndSet(-1);
+		}
+	}
+
+	public MonitorEventQueue(EventDispatcher dispatcher, int capacity) {
+		this.dispatcher = dispatcher;
+		this.capacity = Math.max(1, capacity);
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this, "MonitorEventDispatcher");
+		thread.setDaemon(true);
+		thread.start();
+		log.info("started monitor event dispatcher, queueSize ["+capacity+"]");
+	}
+
+	/**
+	 * Stops the dispatcher thread, and dispatches the events that are still queued in the calling thread.
+	 * Events that are added after the queue has been stopped are dispatched by the thread that adds them.
+	 */
+	public void stop() {
+		running = false;
+		stopped = true;
+		Thread dispatcherThread = thread;
+		if (dispatcherThread!=null) {
+			LockSupport.unpark(dispatcherThread);
+			try {
+				dispatcherThread.join(STOP_TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+		dispatchPendingEvents();
+		log.info("stopped monitor event dispatcher, events dispatched ["+getEventsDispatched()+"] coalesced ["+getEventsCoalesced()+"] dropped ["+getEventsDropped()+"]");
+	}
+
+	/**
+	 * Queues an event. Returns <code>false</code> when the queue is full and the event is dropped.
+	 */
+	public boolean add(EventThrowing source, String eventCode) {
+		EventKey key = new EventKey(source, eventCode);
+		while (true) {
+			PendingEvent pending = pendingEvents.get(key);
+			if (pending!=null) {
+				if (pending.addOccurrence()) {
+					eventsCoalesced.incrementAndGet();
+					return true;
+				}
+				// the dispatcher has just taken the pending event, queue a new one
+				pendingEvents.remove(key, pending);
+				continue;
+			}
+			if (depth.incrementAndGet()>capacity) {
+				depth.decrementAndGet();
+				if (eventsDropped.incrementAndGet() % 1000 == 1) {
+					log.warn("monitor event queue is full, event ["+eventCode+"] is dropped, ["+eventsDropped.get()+"] events dropped so far");
+				}
+				return false;
+			}
+			PendingEvent event = new PendingEvent(key);
+			if (pendingEvents.putIfAbsent(key, event)!=null) {
+				// another thread queued the same event concurrently, coalesce with that one
+				depth.decrementAndGet();
+				continue;
+			}
+			queue.offer(event);
+			if (stopped) {
+				dispatchPendingEvents();
+				return true;
+			}
+			Thread dispatcherThread = thread;
+			if (dispatcherThread!=null) {
+				LockSupport.unpark(dispatcherThread);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Dispatches all queued events in the calling thread. Returns the number of dispatched events.
+	 */
+	public int dispatchPendingEvents() {
+		int count = 0;
+		PendingEvent event;
+		while ((event = queue.poll())!=null) {
+			depth.decrementAndGet();
+			int occurrences = event.take();
+			pendingEvents.remove(event.key, event);
+			try {
+				dispatcher.dispatchEvent(event.key.source, event.key.eventCode, occurrences);
+			} catch (Throwable t) {
+				log.error("could not dispatch event ["+event.key.eventCode+"]", t);
+			}
+			eventsDispatched.incrementAndGet();
+			count++;
+		}
+		return count;
+	}
+
+	@Override
+	public void run() {
+		while (running && !Thread.currentThread().isInterrupted()) {
+			if (dispatchPendingEvents()==0) {
+				// add() and stop() unpark this thread; when that happens between the check above and this call, park returns immediately
+				LockSupport.park(this);
+			}
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+	public int getDepth() {
+		return depth.get();
+	}
+	public long getEventsDispatched() {
+		return eventsDispatched.get();
+	}
+	public long getEventsCoalesced() {
+		return eventsCoalesced.get();
+	}
+	public long getEventsDropped() {
+		return eventsDropped.get();
+	}
+}
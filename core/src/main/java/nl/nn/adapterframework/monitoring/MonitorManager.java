@@ -51,7 +51,7 @@ import org.xml.sax.Attributes;
  * @author  Gerrit van Brakel
  * @since   4.9
  */
-public class MonitorManager implements EventHandler {
+public class MonitorManager implements EventHandler, MonitorEventQueue.EventDispatcher {
 	protected Logger log = LogUtil.getLogger(this);
 
 	private Configuration configuration;
@@ -76,6 +76,9 @@ public class MonitorManager implements EventHandler {
 
 
 	private boolean enabled = AppConstants.getInstance().getBoolean("monitoring.enabled", false);
+	private boolean asyncEvents = AppConstants.getInstance().getBoolean("monitoring.events.async", true);
+	private int eventQueueSize = AppConstants.getInstance().getInt("monitoring.events.queueSize", 10000);
+	private volatile MonitorEventQueue eventQueue = null;
 	private Date lastStateChange=null;
 
 	private Lock structureLock = new Lock();
@@ -92,7 +95,37 @@ public class MonitorManager implements EventHandler {
 	public void configure(Configuration configuration) throws ConfigurationException {
 		Collections.sort(eventThrowers,new EventThrowerComparator());
 		this.configuration=configuration;
+		// events thrown before the reconfiguration are evaluated by the monitors they were thrown for
+		stopEventQueue();
 		reconfigure();
+		startEventQueue();
+	}
+
+	private synchronized void startEventQueue() {
+		if (asyncEvents && eventQueue==null) {
+			MonitorEventQueue queue = new MonitorEventQueue(this, eventQueueSize);
+			queue.start();
+			eventQueue = queue;
+		}
+	}
+
+	/**
+	 * Stops the dispatcher thread of the event queue, after dispatching the events that are still queued.
+	 * Events fired while the queue is stopped are evaluated directly.
+	 */
+	private synchronized void stopEventQueue() {
+		MonitorEventQueue queue = eventQueue;
+		if (queue!=null) {
+			eventQueue = null;
+			queue.stop();
+		}
+	}
+
+	/**
+	 * Stops dispatching events asynchronously, to be called when the application is shut down.
+	 */
+	public void shutdown() {
+		stopEventQueue();
 	}
 
 	/*
@@ -747,7 +780,23 @@ public class MonitorManager implements EventHandler {
 		}
 	}
 
+	/**
+	 * Queues the event to be evaluated by the dispatcher thread, or evaluates it directly when events are not
+	 * dispatched asynchronously.
+	 */
 	public void fireEvent(EventThrowing source, String eventCode) {
+		if (isEnabled()) {
+			MonitorEventQueue queue = eventQueue;
+			if (queue!=null) {
+				queue.add(source, eventCode);
+			} else {
+				dispatchEvent(source, eventCode, 1);
+			}
+		}
+	}
+
+	@Override
+	public void dispatchEvent(EventThrowing source, String eventCode, int occurrences) {
 		if (isEnabled()) {
 			try {
 				structureLock.acquireShared();
@@ -759,7 +808,7 @@ public class MonitorManager implements EventHandler {
 							Set throwerFilter = (Set)notificationListenersOfEvent.get(trigger);
 							if (throwerFilter==null || throwerFilter.contains(source)) {
 								try {
-									trigger.evaluateEvent(source,eventCode);
+									trigger.evaluateEvent(source,eventCode,occurrences);
 								} catch (MonitorException e) {
 									log.error("Could not evaluate event ["+eventCode+"]",e);
 								}
@@ -770,7 +819,7 @@ public class MonitorManager implements EventHandler {
 					structureLock.releaseShared();
 				}
 			} catch (InterruptedException e) {
-				log.error("Could not obtain lock for fireEvent" , e);
+				log.error("Could not obtain lock for dispatchEvent" , e);
 			}
 		}
 	}
@@ -787,6 +836,13 @@ public class MonitorManager implements EventHandler {
 		statusXml.addAttribute("timestamp",DateUtils.format(new Date()));
 		statusXml.addAttribute("heapSize", Long.toString (totalMem-freeMem) );
 		statusXml.addAttribute("totalMemory", Long.toString(totalMem) );
+		MonitorEventQueue queue = eventQueue;
+		if (queue!=null) {
+			statusXml.addAttribute("eventQueueDepth", queue.getDepth());
+			statusXml.addAttribute("eventsDispatched", queue.getEventsDispatched());
+			statusXml.addAttribute("eventsCoalesced", queue.getEventsCoalesced());
+			statusXml.addAttribute("eventsDropped", queue.getEventsDropped());
+		}
 
 		for (int i=0; i<monitors.size(); i++) {
 			Monitor monitor=getMonitor(i);
@@ -849,6 +905,10 @@ public class MonitorManager implements EventHandler {
 		return structureLock;
 	}
 
+	public MonitorEventQueue getEventQueue() {
+		return eventQueue;
+	}
+
 	public void setEnabled(boolean b) {
 		enabled = b;
 	}
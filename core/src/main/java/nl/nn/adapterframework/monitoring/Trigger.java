@@ -56,7 +56,10 @@ public class Trigger {
 	private int threshold=0;
 	private int period=0;
 	
-	private LinkedList<Date> eventDts=null;
+	// times of the last <threshold> events, as a ring buffer
+	private long[] eventTimes=null;
+	private int eventCount=0;
+	private int nextEvent=0;
 		
 
 	public void configure() throws ConfigurationException {
@@ -70,11 +73,15 @@ public class Trigger {
 			throw new ConfigurationException(e);
 		}
 		if (threshold>0) {
-			if (eventDts==null) {
-				eventDts = new LinkedList<Date>();
+			if (eventTimes==null || eventTimes.length!=threshold) {
+				synchronized (this) {
+					eventTimes = new long[threshold];
+					eventCount = 0;
+					nextEvent = 0;
+				}
 			}
 		} else {
-			eventDts=null;
+			eventTimes=null;
 		}
 	}
 	
@@ -83,34 +90,46 @@ public class Trigger {
 	}
 
 	public void evaluateEvent(EventThrowing source, String eventCode) throws MonitorException {
+		evaluateEvent(source, eventCode, 1);
+	}
+
+	/**
+	 * Evaluates a number of occurrences of an event, that were coalesced while waiting to be dispatched.
+	 * The occurrences are counted at the time of evaluation.
+	 */
+	public void evaluateEvent(EventThrowing source, String eventCode, int occurrences) throws MonitorException {
 		Date now = new Date();
 		if (getThreshold()>0) {
-			cleanUpEvents(now);
-			eventDts.add(now);
-			if (eventDts.size()>=getThreshold()) {
+			if (registerEvents(now.getTime(), occurrences)) {
 				getOwner().changeState(now, alarm, getSeverityEnum(), source, eventCode, null);
 			}
 		} else {
 			getOwner().changeState(now, alarm, getSeverityEnum(), source, eventCode, null);
 		}
-	}	
-	
-	public void notificationOfReverseTrigger(EventThrowing source) {
-		if (eventDts!=null) {
-			eventDts.clear();
-		}
 	}
 
-	protected void cleanUpEvents(Date now) {
-		while(eventDts.size()>0) {
-			Date firstDate = (Date)eventDts.getFirst();
-			if ((now.getTime()-firstDate.getTime())>getPeriod()*1000) {
-				eventDts.removeFirst();
-				if (log.isDebugEnabled()) log.debug("removed element dated ["+DateUtils.format(firstDate)+"]");
-			} else {
-				break;
-			}
+	/**
+	 * Registers the events, and returns <code>true</code> when at least <code>threshold</code> events occurred
+	 * within the period. Only the times of the last <code>threshold</code> events are kept, the oldest of them
+	 * determines whether the threshold is reached.
+	 */
+	private synchronized boolean registerEvents(long time, int occurrences) {
+		int count = Math.min(occurrences, eventTimes.length);
+		for (int i=0; i<count; i++) {
+			eventTimes[nextEvent] = time;
+			nextEvent = (nextEvent+1) % eventTimes.length;
 		}
+		eventCount = Math.min(eventCount+count, eventTimes.length);
+		if (eventCount<eventTimes.length) {
+			return false;
+		}
+		long oldest = eventTimes[nextEvent];
+		if (log.isDebugEnabled()) log.debug(getLogPrefix()+"oldest of last ["+eventTimes.length+"] events dated ["+DateUtils.format(oldest)+"]");
+		return time-oldest<=getPeriod()*1000L;
+	}
+
+	public synchronized void notificationOfReverseTrigger(EventThrowing source) {
+		eventCount=0;
 	}
 
 	public void toXml(XmlBuilder monitor) {
@@ -31,6 +31,7 @@ import nl.nn.adapterframework.core.ParameterException;
 import nl.nn.adapterframework.core.PipeLineSessionBase;
 import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.ParsedDocumentCache;
 import nl.nn.adapterframework.util.XmlUtils;
  
 /**
@@ -59,7 +60,9 @@ public class ParameterResolutionContext {
 	 * @param xslt2NotUsed   when true use xslt2
 	 * @param singleThreadOnly when true (and the input message is transformed to
 	 *                       a DOM object) the DOM object is cached for
-	 *                       subsequent usage. Please note that a DOM object is
+	 *                       subsequent usage, and shared with other contexts
+	 *                       of the same session when a {@link ParsedDocumentCache}
+	 *                       is active. Please note that a DOM object is
 	 *                       not thread safe:
 	 *                         https://saxonica.plan.io/boards/3/topics/6147
 	 *                         https://www.saxonica.com/html/documentation/sourcedocs/thirdparty.html
@@ -109,7 +112,7 @@ public class ParameterResolutionContext {
 			if ("*".equals(parmSessionKey)) {
 				String parmName = parm.getName();
 				for (String sessionKey: session.keySet()) {
-					if (!PipeLineSessionBase.tsReceivedKey.equals(sessionKey) && !PipeLineSessionBase.tsSentKey.equals(sessionKey)) {
+					if (!PipeLineSessionBase.tsReceivedKey.equals(sessionKey) && !PipeLineSessionBase.tsSentKey.equals(sessionKey) && !ParsedDocumentCache.SESSION_KEY.equals(sessionKey)) {
 						if ((sessionKey.startsWith(parmName) || "*".equals(parmName))) {
 							Parameter newParm = new Parameter();
 							newParm.setName(sessionKey);
@@ -169,7 +172,11 @@ public class ParameterResolutionContext {
 		Source result = xmlSource!=null?xmlSource.get(namespaceAware):null;
 		if (result == null) {
 			log.debug("Constructing InputSource for ParameterResolutionContext");
-			result = XmlUtils.stringToSource(input,namespaceAware); 
+			if (xmlSource!=null) {
+				result = ParsedDocumentCache.getSource(session, input, namespaceAware);
+			} else {
+				result = XmlUtils.stringToSource(input,namespaceAware);
+			}
 			if (xmlSource!=null) {
 				xmlSource.put(namespaceAware, result);
 			}
@@ -41,7 +41,7 @@ import nl.nn.adapterframework.core.PipeStartException;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.doc.IbisDoc;
-import nl.nn.adapterframework.stream.InputMessageAdapter;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.stream.MessageOutputStream;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.StreamUtil;
@@ -138,7 +138,7 @@ public class ForEachChildElementPipe extends IteratingPipe<String> {
 	}
 
 	@Override
-	protected String sendMessage(Object input, IPipeLineSession session, String correlationID, ISender sender, Map<String,Object> threadContext, MessageOutputStream target) throws SenderException, TimeOutException {
+	protected Object sendMessage(Object input, IPipeLineSession session, String correlationID, ISender sender, Map<String,Object> threadContext, MessageOutputStream target) throws SenderException, TimeOutException {
 		return super.sendMessage(input, session, correlationID, sender, threadContext, null);
 	}
 
@@ -354,7 +354,11 @@ public class ForEachChildElementPipe extends IteratingPipe<String> {
 				throw new SenderException("could not find file ["+input+"]",e);
 			}
 		} else {
-			src = new InputMessageAdapter(input).asInputSource();
+			try {
+				src = Message.asMessage(input).asInputSource();
+			} catch (IOException e) {
+				throw new SenderException("could not read input", e);
+			}
 		}
 		ItemCallbackCallingHandler itemHandler;
 		ContentHandler inputHandler;
@@ -27,6 +27,7 @@ import nl.nn.adapterframework.util.LogUtil;
 
 import org.apache.log4j.Logger;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 
 /**
  * Helper class for IbisLocalSender that wraps around {@link ServiceDispatcher} to make calls to a local Ibis adapter in a separate thread.
@@ -50,16 +51,28 @@ public class IsolatedServiceCaller {
 		return taskExecutor;
 	}
 
+	/**
+	 * Hands the call to a thread of the pool. When no thread is available, the call fails instead of being
+	 * executed in the calling thread, which would silently drop its isolation.
+	 */
+	private void execute(String serviceName, IsolatedServiceExecutor ise) throws ListenerException {
+		try {
+			getTaskExecutor().execute(ise);
+		} catch (TaskRejectedException e) {
+			throw new ListenerException(ClassUtils.nameOf(this)+" has no thread available to call service ["+serviceName+"]",e);
+		}
+	}
+
 	public void callServiceAsynchronous(String serviceName, String correlationID, String message, HashMap context, boolean targetIsJavaListener) throws ListenerException {
 		IsolatedServiceExecutor ise=new IsolatedServiceExecutor(serviceName, correlationID, message, context, targetIsJavaListener, null);
-		getTaskExecutor().execute(ise);
+		execute(serviceName, ise);
 	}
 	
 	public String callServiceIsolated(String serviceName, String correlationID, String message, HashMap context, boolean targetIsJavaListener) throws ListenerException {
 		Guard guard= new Guard();
 		guard.addResource();
 		IsolatedServiceExecutor ise=new IsolatedServiceExecutor(serviceName, correlationID, message, context, targetIsJavaListener, guard);
-		getTaskExecutor().execute(ise);
+		execute(serviceName, ise);
 		try {
 			guard.waitForAllResources();
 		} catch (InterruptedException e) {
@@ -19,7 +19,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
 
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -39,9 +38,12 @@ import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.senders.ParallelSenderExecutor;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.stream.MessageOutputStream;
+import nl.nn.adapterframework.stream.SpillingMessageWriter;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.DomBuilderException;
+import nl.nn.adapterframework.util.DuplicateDetector;
 import nl.nn.adapterframework.util.Guard;
 import nl.nn.adapterframework.util.TransformerPool;
 import nl.nn.adapterframework.util.XmlUtils;
@@ -79,6 +81,8 @@ import nl.nn.adapterframework.util.XmlUtils;
  * <tr><td>{@link #setItemNoSessionKey(String) itemNoSessionKey}</td><td>key of session variable to store number of item processed.</td><td>&nbsp;</td></tr>
  * <tr><td>{@link #setAddInputToResult(boolean) addInputToResult}</td><td>when <code>true</code> the input is added to the result in an input element</td><td>false</td></tr>
  * <tr><td>{@link #setRemoveDuplicates(boolean) removeDuplicates}</td><td>when <code>true</code> duplicate input elements are removed</td><td>false</td></tr>
+ * <tr><td>{@link #setMaxDuplicateCheckItemsInMemory(int) maxDuplicateCheckItemsInMemory}</td><td>when <code>removeDuplicates=true</code>, the number of items kept in memory to check for duplicates. Beyond this number, the items are kept in a temporary file, and only a hash index of them in memory</td><td>10000</td></tr>
+ * <tr><td>{@link #setSpillThreshold(int) spillThreshold}</td><td>when <code>collectResults=true</code>, the number of characters of collected results kept in memory. Beyond this number, the results are written to a temporary file</td><td>value of message.spill.threshold</td></tr>
  * </table>
  * <table border="1">
  * <tr><th>nested elements</th><th>description</th></tr>
@@ -138,6 +142,8 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 	private boolean removeXmlDeclarationInResults=false;
 	private boolean addInputToResult=false;
 	private boolean removeDuplicates=false;
+	private int maxDuplicateCheckItemsInMemory=10000;
+	private int spillThreshold=Message.getSpillThreshold();
 	
 	private boolean closeIteratorOnExit=true;
 	private boolean parallel = false;
@@ -152,6 +158,7 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 	private int endPosition=-1;
 
 	private TaskExecutor taskExecutor;
+	private TaskExecutor parallelTaskExecutor;
 	protected TransformerPool msgTransformerPool;
 	private TransformerPool stopConditionTp=null;
 	private StatisticsKeeper senderStatisticsKeeper;
@@ -191,13 +198,13 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 		private String correlationID;
 		private ISender sender; 
 		private ISenderWithParameters psender=null;
-		private StringBuffer results = new StringBuffer();
+		private SpillingMessageWriter results;
 		int count=0;
-		private Vector<I> inputItems = new Vector<I>();
+		private DuplicateDetector duplicateDetector;
 		private Guard guard;
 		List<ParallelSenderExecutor> executorList;
 
-		public ItemCallback(IPipeLineSession session, String correlationID, ISender sender) {
+		public ItemCallback(IPipeLineSession session, String correlationID, ISender sender) throws SenderException {
 			this.session=session;
 			this.correlationID=correlationID;
 			this.sender=sender;
@@ -208,17 +215,30 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 				guard = new Guard();
 				executorList = new ArrayList<ParallelSenderExecutor>();
 			}
+			if (isCollectResults()) {
+				results = new SpillingMessageWriter(getSpillThreshold());
+				try {
+					results.write("<results>\n");
+				} catch (IOException e) {
+					throw new SenderException(getLogPrefix(session)+"cannot collect results",e);
+				}
+			}
+			if (isRemoveDuplicates()) {
+				duplicateDetector = new DuplicateDetector(getMaxDuplicateCheckItemsInMemory());
+			}
 		}
 		public boolean handleItem(I item) throws SenderException, TimeOutException {
 			if (isParallel() && isCollectResults()) {
 				guard.addResource();
 			}
 			if (isRemoveDuplicates()) {
-				if (inputItems.indexOf(item)>=0) {
-					log.debug(getLogPrefix(session)+"duplicate item ["+item+"] will not be processed");
-					return true;
-				} else {
-					inputItems.add(item);
+				try {
+					if (duplicateDetector.isDuplicate(String.valueOf(item))) {
+						log.debug(getLogPrefix(session)+"duplicate item ["+item+"] will not be processed");
+						return true;
+					}
+				} catch (IOException e) {
+					throw new SenderException(getLogPrefix(session)+"cannot check for duplicate items",e);
 				}
 			}
 			String itemResult=null;
@@ -254,7 +274,7 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 					if (isCollectResults()) {
 						executorList.add(pse);
 					}
-					getTaskExecutor().execute(pse);
+					getParallelTaskExecutorOrDefault().execute(pse);
 				} else {
 					if (psender!=null) {
 						itemResult = psender.sendMessage(correlationID, message, prc);
@@ -305,7 +325,7 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 				throw new SenderException(getLogPrefix(session)+"cannot serialize item",e);
 			}
 		}
-		private void addResult(int count, String message, String itemResult) {
+		private void addResult(int count, String message, String itemResult) throws IOException {
 			if (isRemoveXmlDeclarationInResults()) {
 				if (log.isDebugEnabled()) log.debug(getLogPrefix(session)+"removing XML declaration from ["+itemResult+"]");
 				itemResult = XmlUtils.skipXmlDeclaration(itemResult);
@@ -315,11 +335,13 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 			if (isAddInputToResult()) {
 				itemInput = "<input>"+(isRemoveXmlDeclarationInResults()?XmlUtils.skipXmlDeclaration(message):message)+"</input>";
 			}
-			itemResult = "<result item=\"" + count + "\">\n"+itemInput+itemResult+"\n</result>";
-			results.append(itemResult+"\n");
+			results.write("<result item=\"" + count + "\">\n"+itemInput+itemResult+"\n</result>\n");
 		}
 		
-		public StringBuffer getResults() throws SenderException {
+		/**
+		 * Returns the collected results, as a String or, when they did not fit in memory, as a {@link Message}.
+		 */
+		public Object getResults() throws SenderException {
 			if (isParallel()) {
 				try {
 					guard.waitForAllResources();
@@ -336,9 +358,37 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 					}
 				} catch (InterruptedException e) {
 					throw new SenderException(getLogPrefix(session)+"was interupted",e);
+				} catch (IOException e) {
+					throw new SenderException(getLogPrefix(session)+"cannot collect results",e);
+				}
+			}
+			try {
+				results.write("</results>");
+				if (results.isSpilled()) {
+					log.info(getLogPrefix(session)+"results of ["+count+"] items exceeded ["+getSpillThreshold()+"] characters, returning them from a temporary file");
+				}
+				Object result = results.getResult();
+				results = null;
+				return result;
+			} catch (IOException e) {
+				throw new SenderException(getLogPrefix(session)+"cannot collect results",e);
+			}
+		}
+
+		/**
+		 * Releases the resources used for duplicate detection and for results that have not been retrieved.
+		 */
+		public void close() {
+			if (duplicateDetector!=null) {
+				duplicateDetector.close();
+			}
+			if (results!=null) {
+				try {
+					results.getMessage().close();
+				} catch (IOException e) {
+					log.warn(getLogPrefix(session)+"cannot discard results",e);
 				}
 			}
-			return results;
 		}
 		
 		public int getCount() {
@@ -347,12 +397,12 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 	}
 
 	@Override
-	protected String sendMessage(Object input, IPipeLineSession session, String correlationID, ISender sender, Map<String,Object> threadContext, MessageOutputStream target) throws SenderException, TimeOutException {
+	protected Object sendMessage(Object input, IPipeLineSession session, String correlationID, ISender sender, Map<String,Object> threadContext, MessageOutputStream target) throws SenderException, TimeOutException {
 		// sendResult has a messageID for async senders, the result for sync senders
 		boolean keepGoing = true;
 		IDataIterator<I> it=null;
+		ItemCallback callback = new ItemCallback(session,correlationID,sender);
 		try {
-			ItemCallback callback = new ItemCallback(session,correlationID,sender);
 			it = getIterator(input,session, correlationID,threadContext);
 			if (it==null) {
 				iterateOverInput(input,session,correlationID, threadContext, callback);
@@ -418,17 +468,12 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 					}
 				}
 			}
-			String results = "";
 			if (isCollectResults()) {
-				StringBuffer callbackResults = callback.getResults();
-				callbackResults.insert(0, "<results>\n");
-				callbackResults.append("</results>");
-				results = callbackResults.toString();
-			} else {
-				results = "<results count=\""+callback.getCount()+"\"/>";
+				return callback.getResults();
 			}
-			return results;
+			return "<results count=\""+callback.getCount()+"\"/>";
 		} finally {
+			callback.close();
 			if (it!=null) {
 				try {
 					if (isCloseIteratorOnExit()) {
@@ -473,6 +518,20 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 		return taskExecutor;
 	}
 
+	/**
+	 * The thread-pool shared by all parallel senders, injected by Spring
+	 */
+	public void setParallelTaskExecutor(TaskExecutor executor) {
+		parallelTaskExecutor = executor;
+	}
+	public TaskExecutor getParallelTaskExecutor() {
+		return parallelTaskExecutor;
+	}
+
+	private TaskExecutor getParallelTaskExecutorOrDefault() {
+		return parallelTaskExecutor!=null ? parallelTaskExecutor : taskExecutor;
+	}
+
 	protected TransformerPool getStopConditionTp() {
 		return stopConditionTp;
 	}
@@ -653,4 +712,20 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 	public int getEndPosition() {
 		return endPosition;
 	}
+
+	@IbisDoc({"21", "when <code>removeduplicates=true</code>, the number of items kept in memory to check for duplicates. beyond this number, the items are kept in a temporary file, and only a hash index of them in memory", "10000"})
+	public void setMaxDuplicateCheckItemsInMemory(int i) {
+		maxDuplicateCheckItemsInMemory = i;
+	}
+	public int getMaxDuplicateCheckItemsInMemory() {
+		return maxDuplicateCheckItemsInMemory;
+	}
+
+	@IbisDoc({"22", "when <code>collectresults=true</code>, the number of characters of collected results kept in memory. beyond this number, the results are written to a temporary file, and the pipe returns the results as a stream", "value of message.spill.threshold"})
+	public void setSpillThreshold(int i) {
+		spillThreshold = i;
+	}
+	public int getSpillThreshold() {
+		return spillThreshold;
+	}
 }
@@ -21,6 +21,8 @@ import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import javax.xml.transform.Source;
+
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.SystemUtils;
@@ -35,6 +37,7 @@ import nl.nn.adapterframework.core.HasSender;
 import nl.nn.adapterframework.core.IAdapter;
 import nl.nn.adapterframework.core.ICorrelatedPullingListener;
 import nl.nn.adapterframework.core.IDualModeValidator;
+import nl.nn.adapterframework.core.IMessageSender;
 import nl.nn.adapterframework.core.IPipe;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.ISender;
@@ -66,12 +69,14 @@ import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.stream.IOutputStreamingSupport;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.stream.MessageOutputStream;
 import nl.nn.adapterframework.stream.StreamingException;
 import nl.nn.adapterframework.stream.StreamingPipe;
 import nl.nn.adapterframework.stream.StreamingSenderBase;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.ClassUtils;
+import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.Misc;
 import nl.nn.adapterframework.util.MsgLogUtil;
@@ -473,8 +478,16 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 	
 	@Override
 	public PipeRunResult doPipe(Object input, IPipeLineSession session, MessageOutputStream target) throws PipeRunException {
-		String originalMessage = input.toString();
-		String result = null;
+		if (input instanceof Message && (getMessageLog()!=null || getInputWrapper()!=null || getInputValidator()!=null || StringUtils.isNotEmpty(getStubFileName()) || getMaxRetries()>0)) {
+			// the message is used more than once, e.g. sent again on a retry, make sure it is not a stream that can be read only once
+			try {
+				((Message)input).preserve();
+			} catch (IOException e) {
+				throw new PipeRunException(this,getLogPrefix(session)+"cannot read message",e);
+			}
+		}
+		Object originalInput = input;
+		Object result = null;
 		String correlationID = session.getMessageId();
 
 		if (getInputWrapper()!=null) {
@@ -500,7 +513,7 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 			ParameterList pl = getParameterList();
 			result=returnString;
 			if (pl != null) {
-				ParameterResolutionContext prc = new ParameterResolutionContext((String)input, session);
+				ParameterResolutionContext prc = new ParameterResolutionContext(inputAsString(input, session), session);
 				Map params;
 				try {
 					params = prc.getValueMap(pl);
@@ -530,7 +543,7 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 				String messageID = null;
 				// sendResult has a messageID for async senders, the result for sync senders
 				int retryInterval = getRetryMinInterval();
-				String sendResult = null;
+				Object sendResult = null;
 				boolean replyIsValid = false;
 				int retriesLeft = 0;
 				if (getMaxRetries()>0) {
@@ -542,7 +555,7 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 					try {
 						sendResult = sendMessage(input, session, correlationID, getSender(), threadContext, target);
 						if (retryTp!=null) {
-							String retry=retryTp.transform(sendResult,null);
+							String retry=retryTp.transform(resultAsSource(sendResult),null);
 							if (retry.equalsIgnoreCase("true")) {
 								if (retriesLeft>=1) {
 									retryInterval = increaseRetryIntervalAndWait(session, retryInterval, "xpathRetry result ["+retry+"], retries left [" + retriesLeft + "]");
@@ -578,14 +591,14 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 					}
 					result = sendResult;
 				} else {
-					messageID = sendResult;
+					messageID = sendResult==null?null:sendResult.toString();
 					if (log.isInfoEnabled()) {
 						log.info(getLogPrefix(session) + "sent message to [" + getSender().getName()+ "] messageID ["+ messageID+ "] correlationID ["+ correlationID+ "] linkMethod ["+ getLinkMethod()	+ "]");
 					}
 					// if linkMethod is MESSAGEID overwrite correlationID with the messageID
 					// as this will be used with the listener
 					if (getLinkMethod().equalsIgnoreCase("MESSAGEID")) {
-						correlationID = sendResult;
+						correlationID = messageID;
 						if (log.isDebugEnabled()) log.debug(getLogPrefix(session)+"setting correlationId to listen for to messageId ["+correlationID+"]");
 					}
 				}
@@ -596,9 +609,9 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 					String messageTrail="no audit trail";
 					if (auditTrailTp!=null) {
 						if (isUseInputForExtract()){
-							messageTrail=auditTrailTp.transform(originalMessage,null);
+							messageTrail=auditTrailTp.transform(inputAsString(originalInput, session),null);
 						} else {
-							messageTrail=auditTrailTp.transform((String)input,null);
+							messageTrail=auditTrailTp.transform(inputAsString(input, session),null);
 						}
 					} else {
 						if (StringUtils.isNotEmpty(getAuditTrailSessionKey())) {
@@ -615,9 +628,9 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 							correlationID=correlationIDTp.transform(sourceString,null);
 						} else {
 							if (isUseInputForExtract()) {
-								correlationID=correlationIDTp.transform(originalMessage,null);
+								correlationID=correlationIDTp.transform(inputAsString(originalInput, session),null);
 							} else {
-								correlationID=correlationIDTp.transform((String)input,null);
+								correlationID=correlationIDTp.transform(inputAsString(input, session),null);
 							}
 						}
 						if (StringUtils.isEmpty(correlationID)) {
@@ -627,9 +640,9 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 					String label=null;
 					if (labelTp!=null) {
 						if (isUseInputForExtract()) {
-							label=labelTp.transform(originalMessage,null);
+							label=labelTp.transform(inputAsString(originalInput, session),null);
 						} else {
-							label=labelTp.transform((String)input,null);
+							label=labelTp.transform(inputAsString(input, session),null);
 						}
 					}
 					if (sender instanceof MailSender) {
@@ -643,7 +656,7 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 						}
 						messageLog.storeMessage(storedMessageID,correlationID,new Date(),messageTrail,label,messageInMailSafeForm);
 					} else {
-						String message = (String)input;
+						String message = inputAsString(input, session);
 						if (getHideRegex() != null){
 							if (getHideMethod().equalsIgnoreCase("FIRSTHALF")) {
 								message = Misc.hideFirstHalf(message, getHideRegex());
@@ -695,14 +708,7 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 					if (StringUtils.isNotEmpty(getResultOnTimeOut())) {
 						resultmsg =getResultOnTimeOut();
 					} else {
-						if (input instanceof String) {
-							resultmsg=new ErrorMessageFormatter().format(getLogPrefix(session),toe,this,(String)input,session.getMessageId(),0);
-						} else {
-							if (input==null) {
-								input="null";
-							}
-							resultmsg=new ErrorMessageFormatter().format(getLogPrefix(session),toe,this,input.toString(),session.getMessageId(),0);
-						}
+						resultmsg=new ErrorMessageFormatter().format(getLogPrefix(session),toe,this,inputForErrorMessage(input),session.getMessageId(),0);
 					}
 					return new PipeRunResult(timeoutForward,resultmsg);
 				}
@@ -714,20 +720,13 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 				if (exceptionForward!=null) {
 					log.warn(getLogPrefix(session) + "exception occured, forwarding to exception-forward ["+exceptionForward.getPath()+"], exception:\n", t);
 					String resultmsg;
-					if (input instanceof String) {
-						resultmsg=new ErrorMessageFormatter().format(getLogPrefix(session),t,this,(String)input,session.getMessageId(),0);
-					} else {
-						if (input==null) {
-							input="null";
-						}
-						resultmsg=new ErrorMessageFormatter().format(getLogPrefix(session),t,this,input.toString(),session.getMessageId(),0);
-					}
+					resultmsg=new ErrorMessageFormatter().format(getLogPrefix(session),t,this,inputForErrorMessage(input),session.getMessageId(),0);
 					return new PipeRunResult(exceptionForward,resultmsg);
 				}
 				throw new PipeRunException(this, getLogPrefix(session) + "caught exception", t);
 			}
 		}
-		if (!validResult(result)) {
+		if (!validResult(result, session)) {
 			PipeForward illegalResultForward = findForward(ILLEGAL_RESULT_FORWARD);
 			return new PipeRunResult(illegalResultForward, result);
 		}
@@ -746,12 +745,12 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 			if (wrapResult!=null && !wrapResult.getPipeForward().getName().equals(SUCCESS_FORWARD)) {
 				return wrapResult;
 			} 
-			result = wrapResult.getResult().toString();
+			result = wrapResult.getResult() instanceof Message ? wrapResult.getResult() : wrapResult.getResult().toString();
 			log.debug(getLogPrefix(session)+"response after wrapping [" + result + "]");
 		}
 
 		if (isStreamResultToServlet()) {
-			byte[] bytes = Base64.decodeBase64(result);
+			byte[] bytes = Base64.decodeBase64(inputAsString(result, session));
 			try {
 				String contentType = (String) session.get("contentType");
 				if (StringUtils.isNotEmpty(contentType)) {
@@ -767,17 +766,42 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 		}
 	}
 
-	private boolean validResult(String result) {
+	private boolean validResult(Object result, IPipeLineSession session) throws PipeRunException {
 		boolean validResult = true;
 		if (isCheckXmlWellFormed()  || StringUtils.isNotEmpty(getCheckRootTag())) {
-			if (!XmlUtils.isWellFormed(result, getCheckRootTag())) {
+			boolean wellFormed;
+			if (result instanceof Message) {
+				try {
+					wellFormed = XmlUtils.isWellFormed(((Message)result).asInputSource(), getCheckRootTag());
+				} catch (IOException e) {
+					throw new PipeRunException(this, getLogPrefix(session)+"cannot read result", e);
+				}
+			} else {
+				wellFormed = XmlUtils.isWellFormed(result.toString(), getCheckRootTag());
+			}
+			if (!wellFormed) {
 				validResult = false;
 			}
 		}
 		return validResult;
 	}
 
-	protected String sendMessage(Object input, IPipeLineSession session, String correlationID, ISender sender, Map<String,Object> threadContext, MessageOutputStream target) throws SenderException, TimeOutException, InterruptedException {
+	/**
+	 * Returns the result of the sender as a Source. A {@link Message} is parsed from its stream, so that a result that
+	 * was spilled to a file is not read into memory.
+	 */
+	private Source resultAsSource(Object result) throws IOException, DomBuilderException {
+		if (result instanceof Message) {
+			return XmlUtils.inputSourceToSAXSource(((Message)result).asInputSource(), XmlUtils.isNamespaceAwareByDefault(), false);
+		}
+		return XmlUtils.stringToSourceForSingleUse(result==null?null:result.toString());
+	}
+
+	/**
+	 * Sends the message to the sender. The result is normally a String, but can be a {@link Message}
+	 * when it is too large to be kept in memory.
+	 */
+	protected Object sendMessage(Object input, IPipeLineSession session, String correlationID, ISender sender, Map<String,Object> threadContext, MessageOutputStream target) throws SenderException, TimeOutException, InterruptedException {
 		long startTime = System.currentTimeMillis();
 		String sendResult = null;
 		String exitState = null;
@@ -842,7 +866,59 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 		return sendResult;
 	}
 	
+	/**
+	 * Returns the input or result as a String, reading it when it is a {@link Message}.
+	 */
+	private String inputAsString(Object input, IPipeLineSession session) throws PipeRunException {
+		if (input instanceof Message) {
+			try {
+				return ((Message)input).asString();
+			} catch (IOException e) {
+				throw new PipeRunException(this, getLogPrefix(session)+"cannot read message", e);
+			}
+		}
+		return input==null ? null : input.toString();
+	}
+
+	/**
+	 * Returns the input to include in an error message. A Message that is not repeatable may have been (partly)
+	 * consumed by the sender, it is not read again.
+	 */
+	private String inputForErrorMessage(Object input) {
+		if (input==null) {
+			return "null";
+		}
+		if (input instanceof Message) {
+			Message message = (Message)input;
+			if (!message.isRepeatable()) {
+				return message.toString();
+			}
+			try {
+				return message.asString();
+			} catch (IOException e) {
+				log.warn("cannot read message for error message", e);
+				return message.toString();
+			}
+		}
+		return input.toString();
+	}
+
 	protected String sendTextMessage(Object input, IPipeLineSession session, String correlationID, ISender sender, Map<String,Object> threadContext, MessageOutputStream target) throws SenderException, TimeOutException {
+		if (input instanceof Message) {
+			Message message = (Message)input;
+			if (sender instanceof IMessageSender) {
+				ParameterResolutionContext prc = new ParameterResolutionContext((String)null, session, isNamespaceAware());
+				if (sender instanceof StreamingSenderBase) {
+					return ((StreamingSenderBase)sender).sendMessage(correlationID, message, prc, target);
+				}
+				return ((IMessageSender)sender).sendMessage(correlationID, message, prc);
+			}
+			try {
+				input = message.asString();
+			} catch (IOException e) {
+				throw new SenderException(getLogPrefix(session)+"cannot read message", e);
+			}
+		}
 		if (input!=null && !(input instanceof String)) {
 			throw new SenderException("String expected, got a [" + input.getClass().getName() + "]");
 		}
@@ -936,6 +1012,9 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 		if (sender instanceof HasStatistics) {
 			((HasStatistics)sender).iterateOverStatistics(hski,data,action);
 		}
+		if (messageLog instanceof HasStatistics) {
+			((HasStatistics)messageLog).iterateOverStatistics(hski,data,action);
+		}
 	}
 
 	@Override
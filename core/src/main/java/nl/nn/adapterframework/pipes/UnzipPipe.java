@@ -16,13 +16,14 @@
 package nl.nn.adapterframework.pipes;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -30,7 +31,8 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import nl.nn.adapterframework.doc.IbisDoc;
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.lang.StringUtils;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
@@ -105,6 +107,7 @@ public class UnzipPipe extends FixedForwardPipe {
 	private String collectFileContentsBase64Encoded;
 	private boolean keepOriginalFileName=false;
 	private boolean createSubdirectories=false;
+	private int bufferSize=Misc.BUFFERSIZE;
 
 	private File dir; // File representation of directory
 	private List<String> base64Extensions;
@@ -113,6 +116,9 @@ public class UnzipPipe extends FixedForwardPipe {
 
 	public void configure() throws ConfigurationException {
 		super.configure();
+		if (getBufferSize()<=0) {
+			throw new ConfigurationException(getLogPrefix(null)+"bufferSize ["+getBufferSize()+"] must be a positive number");
+		}
 		if (StringUtils.isEmpty(getDirectory())) {
 			if (StringUtils.isEmpty(getDirectorySessionKey()) && !isCollectFileContents()) {
 				throw new ConfigurationException(getLogPrefix(null)+"directory or directorySessionKey must be specified");
@@ -167,9 +173,9 @@ public class UnzipPipe extends FixedForwardPipe {
 			}
 		}
 
-		String entryResults = "";
+		StringBuilder entryResults = new StringBuilder();
 		int count = 0;
-		ZipInputStream zis = new ZipInputStream(new BufferedInputStream(in));
+		ZipInputStream zis = new ZipInputStream(new BufferedInputStream(in, getBufferSize()));
 		try {
 			ZipEntry ze;
 			while ((ze=zis.getNextEntry())!=null) {
@@ -200,14 +206,6 @@ public class UnzipPipe extends FixedForwardPipe {
 					} else {
 						basename=filename;
 					}
-					InputStream inputStream;
-					byte[] fileContentBytes = null;
-					if (isCollectFileContents()) {
-						fileContentBytes = Misc.streamToBytes(zis);
-						inputStream = new ByteArrayInputStream(fileContentBytes);
-					} else {
-						inputStream = zis;
-					}
 					File tmpFile = null;
 					if (dir != null) {
 						if (isKeepOriginalFileName()) {
@@ -232,31 +230,32 @@ public class UnzipPipe extends FixedForwardPipe {
 								}
 							}
 						}
-						FileOutputStream fileOutputStream = new FileOutputStream(tmpFile);
 						log.debug(getLogPrefix(session)+"writing ZipEntry ["+filename+"] to file ["+tmpFile.getPath()+"]");
 						count++;
-						Misc.streamToStream(inputStream, fileOutputStream, false);
-						fileOutputStream.close();
+						try (FileOutputStream fileOutputStream = new FileOutputStream(tmpFile)) {
+							Misc.streamToStream(zis, fileOutputStream, false, getBufferSize());
+						}
 					}
 					if (isCollectResults()) {
-						entryResults += "<result item=\"" + count + "\"><zipEntry>"
-								+ XmlUtils.encodeCharsAndReplaceNonValidXmlCharacters(filename) + "</zipEntry>";
+						entryResults.append("<result item=\"").append(count).append("\"><zipEntry>")
+								.append(XmlUtils.encodeCharsAndReplaceNonValidXmlCharacters(filename)).append("</zipEntry>");
 						if (dir != null) {
-							entryResults += "<fileName>"
-									+ XmlUtils.encodeCharsAndReplaceNonValidXmlCharacters(tmpFile.getPath())
-									+ "</fileName>";
+							entryResults.append("<fileName>")
+									.append(XmlUtils.encodeCharsAndReplaceNonValidXmlCharacters(tmpFile.getPath()))
+									.append("</fileName>");
 						}
 						if (isCollectFileContents()) {
-							String fileContent;
-							if (base64Extensions.contains(extension)) {
-								fileContent = new String(Base64.encodeBase64Chunked(fileContentBytes));
-							} else {
-								fileContent = new String(fileContentBytes, Misc.DEFAULT_INPUT_STREAM_ENCODING);
-								fileContent = XmlUtils.encodeCharsAndReplaceNonValidXmlCharacters(fileContent);
+							// read the contents back from the extracted file, or directly from the zip when it is not extracted
+							InputStream contentStream = tmpFile != null ? new FileInputStream(tmpFile) : new CloseShieldInputStream(zis);
+							try {
+								entryResults.append("<fileContent>");
+								appendFileContent(entryResults, contentStream, base64Extensions.contains(extension));
+								entryResults.append("</fileContent>");
+							} finally {
+								contentStream.close();
 							}
-							entryResults += "<fileContent>" + fileContent + "</fileContent>";
 						}
-						entryResults += "</result>";
+						entryResults.append("</result>");
 					}
 				}
 			}
@@ -273,6 +272,27 @@ public class UnzipPipe extends FixedForwardPipe {
 		return new PipeRunResult(getForward(),result);
 	}
 
+	/*
+	 * Appends the contents without holding them in memory as bytes too; base64 is encoded while reading.
+	 */
+	private void appendFileContent(StringBuilder entryResults, InputStream contentStream, boolean base64) throws IOException {
+		if (base64) {
+			appendReader(entryResults, new InputStreamReader(new Base64InputStream(contentStream, true), "US-ASCII"));
+		} else {
+			StringBuilder fileContent = new StringBuilder();
+			appendReader(fileContent, new InputStreamReader(contentStream, Misc.DEFAULT_INPUT_STREAM_ENCODING));
+			entryResults.append(XmlUtils.encodeCharsAndReplaceNonValidXmlCharacters(fileContent.toString()));
+		}
+	}
+
+	private void appendReader(StringBuilder target, Reader reader) throws IOException {
+		char[] buffer = new char[getBufferSize()];
+		int charsRead;
+		while ((charsRead = reader.read(buffer)) >= 0) {
+			target.append(buffer, 0, charsRead);
+		}
+	}
+
 	@IbisDoc({"directory to extract the archive to", ""})
 	public void setDirectory(String string) {
 		directory = string;
@@ -346,4 +366,12 @@ public class UnzipPipe extends FixedForwardPipe {
 	{
 		this.checkDirectory = checkDirectory;
 	}
+
+	@IbisDoc({"size in bytes of the buffer used to read the archive and to write the extracted files", "20000"})
+	public void setBufferSize(int i) {
+		bufferSize = i;
+	}
+	public int getBufferSize() {
+		return bufferSize;
+	}
 }
@@ -23,6 +23,7 @@ import nl.nn.adapterframework.core.PipeForward;
 import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.util.ParsedDocumentCache;
 import nl.nn.adapterframework.util.TransformerPool;
 import nl.nn.adapterframework.util.XmlUtils;
 
@@ -105,7 +106,7 @@ public class XmlIf extends AbstractPipe {
 		
 		if (tp!=null) {
 			try {
-				forward = tp.transform(sInput,null, isNamespaceAware());
+				forward = tp.transform(ParsedDocumentCache.getSourceForSingleUse(session, sInput, isNamespaceAware()), null);
 			} catch (Exception e) {
 				throw new PipeRunException(this,getLogPrefix(session)+"cannot evaluate expression",e);
 			}
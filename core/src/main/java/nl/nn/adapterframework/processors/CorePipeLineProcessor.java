@@ -15,7 +15,9 @@
 */
 package nl.nn.adapterframework.processors;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.xml.transform.TransformerException;
 
@@ -35,6 +37,7 @@ import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.pipes.AbstractPipe;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.TransformerPool;
@@ -156,11 +159,15 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 		}
 
 		boolean outputValidated=false;
+		List<Message> messages = new ArrayList<Message>();
 		try {
 			while (!ready){
 
 				pipeRunResult = pipeProcessor.processPipe(pipeLine, pipeToRun, messageId, object, pipeLineSession);
 				object=pipeRunResult.getResult();
+				if (object instanceof Message) {
+					messages.add((Message)object);
+				}
 
 				// TODO: this should be moved to a StatisticsPipeProcessor
 				if (!(pipeToRun instanceof AbstractPipe)) {
@@ -169,6 +176,11 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 						if (sizeStat!=null) {
 							sizeStat.addValue(((String)object).length());
 						}
+					} else if (object instanceof Message && ((Message)object).size()>=0) {
+						StatisticsKeeper sizeStat = pipeLine.getPipeSizeStatistics(pipeToRun);
+						if (sizeStat!=null) {
+							sizeStat.addValue(((Message)object).size());
+						}
 					}
 				}
 
@@ -242,7 +254,15 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 						pipeLineResult.setState(state);
 						pipeLineResult.setExitCode(plExit.getExitCode());
 						if (object!=null && !plExit.getEmptyResult()) {
-							pipeLineResult.setResult(object.toString());
+							if (object instanceof Message) {
+								try {
+									pipeLineResult.setResult(((Message)object).asString());
+								} catch (IOException e) {
+									throw new PipeRunException(pipeToRun, "Pipeline of ["+pipeLine.getOwner().getName()+"] cannot read result message", e);
+								}
+							} else {
+								pipeLineResult.setResult(object.toString());
+							}
 						}
 						else {
 							pipeLineResult.setResult(null);
@@ -272,6 +292,14 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 				}
 			}
 		} finally {
+			// removes the files the messages may have been spilled to
+			for (Message intermediate:messages) {
+				try {
+					intermediate.close();
+				} catch (IOException e) {
+					log.warn("could not close message", e);
+				}
+			}
 			for (int i=0; i<pipeLine.getExitHandlers().size(); i++) {
 				IPipeLineExitHandler exitHandler = pipeLine.getExitHandlers().get(i);
 				try {
@@ -15,6 +15,7 @@
 */
 package nl.nn.adapterframework.processors;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.StringTokenizer;
 
@@ -29,6 +30,8 @@ import nl.nn.adapterframework.core.PipeLine;
 import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.pipes.FixedForwardPipe;
+import nl.nn.adapterframework.pipes.MessageSendingPipe;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.CompactSaxHandler;
 import nl.nn.adapterframework.util.XmlUtils;
 
@@ -62,7 +65,19 @@ public class InputOutputPipeProcessor extends PipeProcessorBase {
 				if (log.isDebugEnabled()) log.debug("Pipeline of adapter ["+owner.getName()+"] replacing input for pipe ["+pe.getName()+"] with fixed value ["+pe.getGetInputFromFixedValue()+"]");
 				message=pe.getGetInputFromFixedValue();
 			}
-			if ((message == null || StringUtils.isEmpty(message.toString()))
+		}
+
+		if (message instanceof Message && !(pipe instanceof MessageSendingPipe)) {
+			// only MessageSendingPipes consume a Message, other pipes expect its String value
+			try {
+				message=((Message)message).asString();
+			} catch (IOException e) {
+				throw new PipeRunException(pipe, "Pipeline of ["+owner.getName()+"] cannot read input message for pipe ["+pipe.getName()+"]", e);
+			}
+		}
+
+		if (pe!=null) {
+			if ((message == null || (message instanceof Message ? ((Message)message).isNull() : StringUtils.isEmpty(message.toString())))
 					&& StringUtils.isNotEmpty(pe.getEmptyInputReplacement())) {
 				if (log.isDebugEnabled()) log.debug("Pipeline of adapter ["+owner.getName()+"] replacing empty input for pipe ["+pe.getName()+"] with fixed value ["+pe.getEmptyInputReplacement()+"]");
 				message = pe.getEmptyInputReplacement();
@@ -21,8 +21,11 @@ import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.PipeLine;
 import nl.nn.adapterframework.core.PipeLineResult;
 import nl.nn.adapterframework.core.PipeRunException;
+import nl.nn.adapterframework.util.LockNotAcquiredException;
 import nl.nn.adapterframework.util.Locker;
 
+import org.apache.commons.lang.StringUtils;
+
 /**
  * @author Jaco de Groot
  */
@@ -41,7 +44,7 @@ public class LockerPipeLineProcessor extends PipeLineProcessorBase {
 					SQLException sqle = (SQLException) e;
 					isUniqueConstraintViolation = locker.getDbmsSupport().isUniqueConstraintViolation(sqle);
 				}
-				if (isUniqueConstraintViolation) {
+				if (isUniqueConstraintViolation || e instanceof LockNotAcquiredException) {
 					String msg = "error while setting lock: " + e.getMessage();
 					log.info(msg);
 				} else {
@@ -49,6 +52,9 @@ public class LockerPipeLineProcessor extends PipeLineProcessorBase {
 				}
 			}
 			if (objectId != null) {
+				if (StringUtils.isNotEmpty(locker.getFencingTokenSessionKey())) {
+					pipeLineSession.put(locker.getFencingTokenSessionKey(), String.valueOf(locker.getFencingToken(objectId)));
+				}
 				try {
 					pipeLineResult = pipeLineProcessor.processPipeLine(pipeLine, messageId, message, pipeLineSession, firstPipe);
 				} finally {
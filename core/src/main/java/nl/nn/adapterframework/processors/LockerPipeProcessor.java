@@ -23,6 +23,8 @@ import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.util.Locker;
 
+import org.apache.commons.lang.StringUtils;
+
 /**
  * @author Jaco de Groot
  */
@@ -45,6 +47,9 @@ public class LockerPipeProcessor extends PipeProcessorBase {
 			}
 		}
 		if (objectId != null) {
+			if (StringUtils.isNotEmpty(locker.getFencingTokenSessionKey())) {
+				pipeLineSession.put(locker.getFencingTokenSessionKey(), String.valueOf(locker.getFencingToken(objectId)));
+			}
 			try {
 				pipeRunResult = pipeProcessor.processPipe(pipeLine, pipe, messageId, message, pipeLineSession);
 			} finally {
@@ -1463,6 +1463,9 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 			hski.closeGroup(qstatData);
 		}
 
+		if (getMessageLog() instanceof HasStatistics) {
+			((HasStatistics)getMessageLog()).iterateOverStatistics(hski, recData, action);
+		}
 
 		hski.closeGroup(recData);
 	}
@@ -21,11 +21,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import nl.nn.adapterframework.configuration.Configuration;
 import nl.nn.adapterframework.configuration.ConfigurationException;
@@ -44,9 +46,9 @@ import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.http.RestListener;
 import nl.nn.adapterframework.http.RestServiceDispatcher;
 import nl.nn.adapterframework.jdbc.DirectQuerySender;
+import nl.nn.adapterframework.jdbc.ExpiredRecordsCleaner;
 import nl.nn.adapterframework.jdbc.FixedQuerySender;
 import nl.nn.adapterframework.jdbc.JdbcTransactionalStorage;
-import nl.nn.adapterframework.jdbc.dbms.DbmsSupportFactory;
 import nl.nn.adapterframework.jms.JmsRealmFactory;
 import nl.nn.adapterframework.pipes.MessageSendingPipe;
 import nl.nn.adapterframework.receivers.ReceiverBase;
@@ -55,8 +57,10 @@ import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.task.TimeoutGuard;
 import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.ConcurrencyLimitedTaskExecutor;
 import nl.nn.adapterframework.util.DirectoryCleaner;
 import nl.nn.adapterframework.util.JtaUtil;
+import nl.nn.adapterframework.util.LockNotAcquiredException;
 import nl.nn.adapterframework.util.Locker;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.MessageKeeper;
@@ -69,6 +73,7 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.log4j.Logger;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
@@ -394,19 +399,29 @@ public class JobDef {
 
 	private List<DirectoryCleaner> directoryCleaners = new ArrayList<DirectoryCleaner>();
 
+	private int cleanupBatchSize = 1000;
+	private int cleanupRangeMinutes = 60;
+	private long cleanupThrottleThreshold = 1000;
+	private int cleanupMaxParallelism = 1;
+	private long cleanupMaxDuration = 0;
+	private TaskExecutor parallelTaskExecutor;
+
 	private class MessageLogObject {
 		private String jmsRealmName;
 		private String tableName;
 		private String expiryDateField;
 		private String keyField;
 		private String typeField;
+		private String slotIdField;
+		private Set<String> slotIds = new LinkedHashSet<String>();
 
-		public MessageLogObject(String jmsRealmName, String tableName, String expiryDateField, String keyField, String typeField) {
+		public MessageLogObject(String jmsRealmName, String tableName, String expiryDateField, String keyField, String typeField, String slotIdField) {
 			this.jmsRealmName = jmsRealmName;
 			this.tableName = tableName;
 			this.expiryDateField = expiryDateField;
 			this.keyField = keyField;
 			this.typeField = typeField;
+			this.slotIdField = slotIdField;
 		}
 
 		public boolean equals(Object o) {
@@ -439,6 +454,14 @@ public class JobDef {
 		public String getTypeField() {
 			return typeField;
 		}
+
+		public String getSlotIdField() {
+			return slotIdField;
+		}
+
+		public Set<String> getSlotIds() {
+			return slotIds;
+		}
 	}
     
 	public String toString() {
@@ -569,7 +592,7 @@ public class JobDef {
 									isUniqueConstraintViolation = locker.getDbmsSupport().isUniqueConstraintViolation(sqle);
 								}
 								String msg = "error while setting lock: " + e.getMessage();
-								if (isUniqueConstraintViolation) {
+								if (isUniqueConstraintViolation || e instanceof LockNotAcquiredException) {
 									getMessageKeeper().add(msg, MessageKeeperMessage.INFO_LEVEL);
 									log.info(getLogPrefix()+msg);
 								} else {
@@ -667,10 +690,11 @@ public class JobDef {
 		statsKeeper.addValue(endTime - startTime);
 	}
 
+	/**
+	 * Deletes the expired locks and message log records, in batches, using an {@link ExpiredRecordsCleaner} per table.
+	 */
 	private void cleanupDatabase(IbisManager ibisManager) {
-		Date date = new Date();
-		SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-		String formattedDate = formatter.format(date);
+		Date now = new Date();
 
 		List<String> jmsRealmNames = new ArrayList<String>();
 
@@ -704,80 +728,83 @@ public class JobDef {
 			}
 		}
 
-		for (Iterator<String> iter = jmsRealmNames.iterator(); iter.hasNext();) {
-			String jmsRealmName = iter.next();
-			setJmsRealm(jmsRealmName);
-			DirectQuerySender qs;
-			qs = (DirectQuerySender)ibisManager.getIbisContext().createBeanAutowireByName(DirectQuerySender.class);
-			qs.setJmsRealm(jmsRealmName);
-			String deleteQuery;
-			if (qs.getDatabaseType() == DbmsSupportFactory.DBMS_MSSQLSERVER) {
-				deleteQuery = "DELETE FROM IBISLOCK WHERE EXPIRYDATE < CONVERT(datetime, '" + formattedDate + "', 120)";
-			} else {
-				deleteQuery = "DELETE FROM IBISLOCK WHERE EXPIRYDATE < TO_TIMESTAMP('" + formattedDate + "', 'YYYY-MM-DD HH24:MI:SS')";
-			}
-			setQuery(deleteQuery);
-			qs = null;
-			executeQueryJob(ibisManager);
+		for (String jmsRealmName : jmsRealmNames) {
+			ExpiredRecordsCleaner cleaner = createExpiredRecordsCleaner(ibisManager, jmsRealmName, "IBISLOCK", "OBJECTID", "EXPIRYDATE");
+			runExpiredRecordsCleaner(cleaner, now, null);
 		}
 
 		List<MessageLogObject> messageLogs = new ArrayList<MessageLogObject>();
 		for(IAdapter iadapter : ibisManager.getRegisteredAdapters()) {
 			Adapter adapter = (Adapter)iadapter;
+			for (Iterator<?> it = adapter.getReceiverIterator(); it.hasNext();) {
+				Object receiver = it.next();
+				if (receiver instanceof ReceiverBase) {
+					addMessageLog(messageLogs, ((ReceiverBase)receiver).getMessageLog());
+				}
+			}
 			PipeLine pipeline = adapter.getPipeLine();
 			for (int i=0; i<pipeline.getPipes().size(); i++) {
 				IPipe pipe = pipeline.getPipe(i);
 				if (pipe instanceof MessageSendingPipe) {
-					MessageSendingPipe msp=(MessageSendingPipe)pipe;
-					if (msp.getMessageLog()!=null) {
-						ITransactionalStorage transactionStorage = msp.getMessageLog();
-						if (transactionStorage instanceof JdbcTransactionalStorage) {
-							JdbcTransactionalStorage messageLog = (JdbcTransactionalStorage)transactionStorage;
-							String jmsRealmName = messageLog.getJmsRealName();
-							String expiryDateField = messageLog.getExpiryDateField();
-							String tableName = messageLog.getTableName();
-							String keyField = messageLog.getKeyField();
-							String typeField = messageLog.getTypeField();
-							MessageLogObject mlo = new MessageLogObject(jmsRealmName, tableName, expiryDateField, keyField, typeField);
-							if (!messageLogs.contains(mlo)) {
-								messageLogs.add(mlo);
-							}
-						}
-					}
+					addMessageLog(messageLogs, ((MessageSendingPipe)pipe).getMessageLog());
 				}
 			}
 		}
 
 		for (MessageLogObject mlo: messageLogs) {
-			setJmsRealm(mlo.getJmsRealmName());
-			DirectQuerySender qs;
-			qs = (DirectQuerySender)ibisManager.getIbisContext().createBeanAutowireByName(DirectQuerySender.class);
-			qs.setJmsRealm(mlo.getJmsRealmName());
-			String deleteQuery;
-			if (qs.getDatabaseType() == DbmsSupportFactory.DBMS_MSSQLSERVER) {
-				deleteQuery = "DELETE FROM " + mlo.getTableName() + " WHERE "
-					+ mlo.getKeyField() + " IN (SELECT "
-						+ mlo.getKeyField() + " FROM " + mlo.getTableName()
-						+ " WITH (rowlock,updlock,readpast) WHERE "
-						+ mlo.getTypeField() + " IN ('"
-						+ JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE + "','"
-						+ JdbcTransactionalStorage.TYPE_MESSAGELOG_RECEIVER
-						+ "') AND " + mlo.getExpiryDateField()
-						+ " < CONVERT(datetime, '" + formattedDate + "', 120))";
+			ExpiredRecordsCleaner cleaner = createExpiredRecordsCleaner(ibisManager, mlo.getJmsRealmName(), mlo.getTableName(), mlo.getKeyField(), mlo.getExpiryDateField());
+			cleaner.setTypeField(mlo.getTypeField(), JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE, JdbcTransactionalStorage.TYPE_MESSAGELOG_RECEIVER);
+			cleaner.setSlotIdField(mlo.getSlotIdField());
+			runExpiredRecordsCleaner(cleaner, now, getCleanupMaxParallelism()>1 ? mlo.getSlotIds() : null);
+		}
+	}
+
+	private void addMessageLog(List<MessageLogObject> messageLogs, ITransactionalStorage transactionStorage) {
+		if (transactionStorage instanceof JdbcTransactionalStorage) {
+			JdbcTransactionalStorage messageLog = (JdbcTransactionalStorage)transactionStorage;
+			MessageLogObject mlo = new MessageLogObject(messageLog.getJmsRealName(), messageLog.getTableName(), messageLog.getExpiryDateField(), messageLog.getKeyField(), messageLog.getTypeField(), messageLog.getSlotIdField());
+			int index = messageLogs.indexOf(mlo);
+			if (index<0) {
+				messageLogs.add(mlo);
+			} else {
+				mlo = messageLogs.get(index);
 			}
-			else {
-				deleteQuery = "DELETE FROM " + mlo.getTableName() + " WHERE "
-						+ mlo.getTypeField() + " IN ('"
-						+ JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE + "','"
-						+ JdbcTransactionalStorage.TYPE_MESSAGELOG_RECEIVER
-						+ "') AND " + mlo.getExpiryDateField()
-						+ " < TO_TIMESTAMP('" + formattedDate
-						+ "', 'YYYY-MM-DD HH24:MI:SS')";
+			if (StringUtils.isNotEmpty(messageLog.getSlotId())) {
+				mlo.getSlotIds().add(messageLog.getSlotId());
 			}
-			qs = null;
-			setQuery(deleteQuery);
-			setQueryTimeout(900);
-			executeQueryJob(ibisManager);
+		}
+	}
+
+	private ExpiredRecordsCleaner createExpiredRecordsCleaner(IbisManager ibisManager, String jmsRealmName, String tableName, String keyField, String expiryDateField) {
+		ExpiredRecordsCleaner cleaner = (ExpiredRecordsCleaner)ibisManager.getIbisContext().createBeanAutowireByName(ExpiredRecordsCleaner.class);
+		cleaner.setName("cleanupDatabase");
+		cleaner.setJmsRealm(jmsRealmName);
+		cleaner.setTableName(tableName);
+		cleaner.setKeyField(keyField);
+		cleaner.setExpiryDateField(expiryDateField);
+		cleaner.setBatchSize(getCleanupBatchSize());
+		cleaner.setRangeSize(getCleanupRangeMinutes()*60000L);
+		cleaner.setThrottleThreshold(getCleanupThrottleThreshold());
+		cleaner.setMaxDuration(getCleanupMaxDuration());
+		if (getQueryTimeout()>0) {
+			cleaner.setQueryTimeout(getQueryTimeout());
+		}
+		if (getParallelTaskExecutor()!=null && getCleanupMaxParallelism()>1) {
+			cleaner.setTaskExecutor(new ConcurrencyLimitedTaskExecutor(getParallelTaskExecutor(), getCleanupMaxParallelism()));
+		} else {
+			cleaner.setTaskExecutor(null);
+		}
+		cleaner.setMessageKeeper(getMessageKeeper());
+		return cleaner;
+	}
+
+	private void runExpiredRecordsCleaner(ExpiredRecordsCleaner cleaner, Date expiryLimit, Collection<String> slotIds) {
+		try {
+			cleaner.cleanup(expiryLimit, slotIds);
+		} catch (Exception e) {
+			String msg = "error while cleaning up table ["+cleaner.getTableName()+"] (as part of scheduled job execution): " + e.getMessage();
+			getMessageKeeper().add(msg,MessageKeeperMessage.ERROR_LEVEL);
+			log.error(getLogPrefix()+msg, e);
 		}
 	}
 
@@ -1295,4 +1322,51 @@ public class JobDef {
 	public void addDirectoryCleaner(DirectoryCleaner directoryCleaner) {
 		directoryCleaners.add(directoryCleaner);
 	}
+
+	@IbisDoc({"only for function 'cleanupdatabase': maximum number of records that are deleted in a single transaction", "1000"})
+	public void setCleanupBatchSize(int cleanupBatchSize) {
+		this.cleanupBatchSize = cleanupBatchSize;
+	}
+	public int getCleanupBatchSize() {
+		return cleanupBatchSize;
+	}
+
+	@IbisDoc({"only for function 'cleanupdatabase': size (in minutes) of the ranges of expiry date in which the expired records are deleted, from the oldest to the most recent", "60"})
+	public void setCleanupRangeMinutes(int cleanupRangeMinutes) {
+		this.cleanupRangeMinutes = cleanupRangeMinutes;
+	}
+	public int getCleanupRangeMinutes() {
+		return cleanupRangeMinutes;
+	}
+
+	@IbisDoc({"only for function 'cleanupdatabase': when a batch takes longer than this number of ms, e.g. because of lock waits, the cleanup pauses and continues with smaller batches", "1000"})
+	public void setCleanupThrottleThreshold(long cleanupThrottleThreshold) {
+		this.cleanupThrottleThreshold = cleanupThrottleThreshold;
+	}
+	public long getCleanupThrottleThreshold() {
+		return cleanupThrottleThreshold;
+	}
+
+	@IbisDoc({"only for function 'cleanupdatabase': maximum number of slotids of a table that are cleaned up in parallel. when 1, the table is cleaned up by a single thread", "1"})
+	public void setCleanupMaxParallelism(int cleanupMaxParallelism) {
+		this.cleanupMaxParallelism = cleanupMaxParallelism;
+	}
+	public int getCleanupMaxParallelism() {
+		return cleanupMaxParallelism;
+	}
+
+	@IbisDoc({"only for function 'cleanupdatabase': maximum time (in ms) that the cleanup of a table may take. the remaining records are deleted by the next run. 0 means no limit", "0"})
+	public void setCleanupMaxDuration(long cleanupMaxDuration) {
+		this.cleanupMaxDuration = cleanupMaxDuration;
+	}
+	public long getCleanupMaxDuration() {
+		return cleanupMaxDuration;
+	}
+
+	public void setParallelTaskExecutor(TaskExecutor parallelTaskExecutor) {
+		this.parallelTaskExecutor = parallelTaskExecutor;
+	}
+	public TaskExecutor getParallelTaskExecutor() {
+		return parallelTaskExecutor;
+	}
 }
@@ -27,6 +27,7 @@ import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.util.DateUtils;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.MessageKeeper;
+import nl.nn.adapterframework.util.MessageKeeperMessage;
 import nl.nn.adapterframework.util.XmlBuilder;
 
 import org.apache.commons.lang.StringUtils;
@@ -147,11 +148,11 @@ public class SchedulerAdapter {
 		if (jobdef!=null) {
 			MessageKeeper jobMessageKeeper = jobdef.getMessageKeeper();
 			if (jobMessageKeeper!=null) {
-				for (int t=0; t<jobMessageKeeper.size(); t++) {
+				for (MessageKeeperMessage message : jobMessageKeeper.getMessages()) {
 					XmlBuilder jobMessage=new XmlBuilder("jobMessage");
-					jobMessage.setValue(jobMessageKeeper.getMessage(t).getMessageText(),true);
-					jobMessage.addAttribute("date", DateUtils.format(jobMessageKeeper.getMessage(t).getMessageDate(), DateUtils.FORMAT_FULL_GENERIC));
-					jobMessage.addAttribute("level", jobMessageKeeper.getMessage(t).getMessageLevel());
+					jobMessage.setValue(message.getMessageText(),true);
+					jobMessage.addAttribute("date", DateUtils.format(message.getMessageDate(), DateUtils.FORMAT_FULL_GENERIC));
+					jobMessage.addAttribute("level", message.getMessageLevel());
 					jobMessages.addSubElement(jobMessage);
 				}
 			}
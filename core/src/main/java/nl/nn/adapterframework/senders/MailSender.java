@@ -21,12 +21,15 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
 
 import javax.activation.DataHandler;
 import javax.mail.BodyPart;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
@@ -41,6 +44,9 @@ import org.w3c.dom.Node;
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.util.CounterStatistic;
 import nl.nn.adapterframework.util.Misc;
 import nl.nn.adapterframework.util.XmlUtils;
 
@@ -102,8 +108,16 @@ import nl.nn.adapterframework.util.XmlUtils;
  * <tr><td>{@link #setDefaultSubject(String) defaultSubject}</td><td>value of the Subject: header if not specified in message itself</td><td>&nbsp;</td></tr>
  * <tr><td>{@link #setDefaultAttachmentName(String) defaultAttachmentName}</td><td>When this name is used, it will be followed by a number which is equal to the node's position</td><td>attachment</td></tr>
  * <tr><td>{@link #setTimeout(int) timeout}</td><td>timeout (in milliseconds). Used for socket connection timeout and socket I/O timeout</td><td>20000</td></tr>
+ * <tr><td>{@link #setSmtpPort(int) smtpPort}</td><td>port of the smtpHost. When not set, the port of the mail session is used, i.e. property <code>mail.smtp.port</code> or the default port of the protocol</td><td>&nbsp;</td></tr>
+ * <tr><td>{@link #setMaxIdleConnections(int) maxIdleConnections}</td><td>maximum number of connections to the smtpHost that are kept open to send subsequent messages. Use 0 to connect for every message</td><td>5</td></tr>
+ * <tr><td>{@link #setMaxIdleTime(int) maxIdleTime}</td><td>time (in milliseconds) after which an unused connection is closed instead of reused</td><td>30000</td></tr>
+ * <tr><td>{@link #setMaxMessagesPerConnection(int) maxMessagesPerConnection}</td><td>number of messages after which a connection is closed, to comply with limits of smtp servers. Use 0 for no limit</td><td>100</td></tr>
  * </table>
  * <p>
+ * Connections to the smtpHost are reused for subsequent messages, to avoid a connect, TLS and authentication handshake for every message.
+ * A connection that has not been used for a second is checked with a NOOP command before it is reused. When sending a message over a reused
+ * connection fails, the message is sent once more over a new connection.
+ * <p>
  * <table border="1">
  * <b>Parameters:</b>
  * <tr><th>name</th><th>type</th><th>remarks</th></tr>
@@ -132,13 +146,35 @@ import nl.nn.adapterframework.util.XmlUtils;
  * @author Johan Verrips/Gerrit van Brakel
  */
 
-public class MailSender extends MailSenderBase {
+public class MailSender extends MailSenderBase implements HasStatistics {
+
+	private static final long VALIDATE_AFTER_IDLE_MILLIS = 1000;
 
 	private String smtpHost;
+	private int smtpPort = -1;
+	private int maxIdleConnections = 5;
+	private int maxIdleTime = 30000;
+	private int maxMessagesPerConnection = 100;
 
 	private Session session;
 	private Properties properties;
 
+	private BlockingDeque<PooledTransport> idleTransports = new LinkedBlockingDeque<PooledTransport>();
+	private CounterStatistic connectionsOpened = new CounterStatistic(0);
+	private CounterStatistic connectionsReused = new CounterStatistic(0);
+	private CounterStatistic connectionsDiscarded = new CounterStatistic(0);
+	private CounterStatistic messagesSent = new CounterStatistic(0);
+
+	private static class PooledTransport {
+		Transport transport;
+		long lastUsed;
+		int messagesSent;
+
+		PooledTransport(Transport transport) {
+			this.transport = transport;
+		}
+	}
+
 	@Override
 	public void configure() throws ConfigurationException {
 		super.configure();
@@ -174,19 +210,14 @@ public class MailSender extends MailSenderBase {
 	}
 
 	/**
-	 * Close the <code>transport</code> layer.
+	 * Close the connections that are kept open to the smtpHost.
 	 */
 	@Override
 	public void close() throws SenderException {
-		/*
-		try {
-			if (transport!=null) {
-				transport.close();
-			}
-		} catch (Exception e) {
-			throw new SenderException("error closing transport", e);
+		PooledTransport pooledTransport;
+		while ((pooledTransport = idleTransports.pollFirst()) != null) {
+			closeTransport(pooledTransport);
 		}
-		*/
 	}
 
 	@Override
@@ -431,32 +462,119 @@ public class MailSender extends MailSenderBase {
 	}
 
 	protected void putOnTransport(Message msg) throws SenderException {
-		// connect to the transport 
-		Transport transport = null;
+		PooledTransport pooledTransport = null;
 		try {
-			transport = session.getTransport("smtp");
-			transport.connect(getSmtpHost(), getCredentialFactory().getUsername(),
-					getCredentialFactory().getPassword());
-			if (log.isDebugEnabled()) {
-				log.debug("MailSender [" + getName() + "] connected transport to URL [" + transport.getURLName() + "]");
+			pooledTransport = borrowTransport();
+			boolean reused = pooledTransport.messagesSent > 0;
+			try {
+				pooledTransport.transport.sendMessage(msg, msg.getAllRecipients());
+			} catch (MessagingException e) {
+				if (!reused || e instanceof SendFailedException) {
+					throw e;
+				}
+				log.info("MailSender [" + getName() + "] could not send message over reused connection, retrying over new connection: " + e.getMessage());
+				discardTransport(pooledTransport);
+				pooledTransport = null;
+				pooledTransport = connectTransport();
+				pooledTransport.transport.sendMessage(msg, msg.getAllRecipients());
 			}
-			transport.sendMessage(msg, msg.getAllRecipients());
-			transport.close();
+			messagesSent.increase();
+			pooledTransport.messagesSent++;
+			returnTransport(pooledTransport);
+			pooledTransport = null;
 		} catch (Exception e) {
 			throw new SenderException(
 					"MailSender [" + getName() + "] cannot connect send message to smtpHost [" + getSmtpHost() + "]",
 					e);
 		} finally {
-			if (transport != null) {
-				try {
-					transport.close();
-				} catch (MessagingException e1) {
-					log.warn("MailSender [" + getName() + "] got exception closing connection", e1);
-				}
+			if (pooledTransport != null) {
+				discardTransport(pooledTransport);
 			}
 		}
 	}
 
+	/**
+	 * Returns the most recently used idle connection that is still usable, or a new connection when there is none.
+	 */
+	private PooledTransport borrowTransport() throws MessagingException {
+		PooledTransport pooledTransport;
+		while ((pooledTransport = idleTransports.pollFirst()) != null) {
+			long idleTime = System.currentTimeMillis() - pooledTransport.lastUsed;
+			if (idleTime > getMaxIdleTime()) {
+				closeTransport(pooledTransport);
+				continue;
+			}
+			// isConnected() sends a NOOP command to verify the connection
+			if (idleTime > VALIDATE_AFTER_IDLE_MILLIS && !pooledTransport.transport.isConnected()) {
+				discardTransport(pooledTransport);
+				continue;
+			}
+			connectionsReused.increase();
+			return pooledTransport;
+		}
+		return connectTransport();
+	}
+
+	private PooledTransport connectTransport() throws MessagingException {
+		Transport transport = getSession().getTransport("smtp");
+		transport.connect(getSmtpHost(), getSmtpPort(), getCredentialFactory().getUsername(), getCredentialFactory().getPassword());
+		connectionsOpened.increase();
+		if (log.isDebugEnabled()) {
+			log.debug("MailSender [" + getName() + "] connected transport to URL [" + transport.getURLName() + "]");
+		}
+		return new PooledTransport(transport);
+	}
+
+	private void returnTransport(PooledTransport pooledTransport) {
+		if (getMaxMessagesPerConnection() > 0 && pooledTransport.messagesSent >= getMaxMessagesPerConnection()) {
+			closeTransport(pooledTransport);
+			return;
+		}
+		pooledTransport.lastUsed = System.currentTimeMillis();
+		if (idleTransports.size() >= getMaxIdleConnections() || !idleTransports.offerFirst(pooledTransport)) {
+			closeTransport(pooledTransport);
+		}
+	}
+
+	private void discardTransport(PooledTransport pooledTransport) {
+		connectionsDiscarded.increase();
+		closeTransport(pooledTransport);
+	}
+
+	private void closeTransport(PooledTransport pooledTransport) {
+		if (log.isDebugEnabled()) {
+			log.debug("MailSender [" + getName() + "] closing connection after [" + pooledTransport.messagesSent + "] messages");
+		}
+		try {
+			pooledTransport.transport.close();
+		} catch (MessagingException e) {
+			log.warn("MailSender [" + getName() + "] got exception closing connection", e);
+		}
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		Object smtpData = hski.openGroup(data, getName(), "smtpConnections");
+		hski.handleScalar(smtpData, "connectionsOpened", connectionsOpened.getValue());
+		hski.handleScalar(smtpData, "connectionsReused", connectionsReused.getValue());
+		hski.handleScalar(smtpData, "connectionsDiscarded", connectionsDiscarded.getValue());
+		hski.handleScalar(smtpData, "messagesSent", messagesSent.getValue());
+		hski.handleScalar(smtpData, "messagesSentThisInterval", messagesSent.getIntervalValue());
+		connectionsOpened.performAction(action);
+		connectionsReused.performAction(action);
+		connectionsDiscarded.performAction(action);
+		messagesSent.performAction(action);
+		hski.closeGroup(smtpData);
+	}
+
+	public long getConnectionsOpened() {
+		return connectionsOpened.getValue();
+	}
+
+	public long getConnectionsReused() {
+		return connectionsReused.getValue();
+	}
+
 	/**
 	 * Name of the SMTP Host.
 	 */
@@ -469,6 +587,38 @@ public class MailSender extends MailSenderBase {
 		return smtpHost;
 	}
 
+	@IbisDoc({ "port of the smtpHost. When not set, the port of the mail session is used, i.e. property <code>mail.smtp.port</code> or the default port of the protocol", "" })
+	public void setSmtpPort(int smtpPort) {
+		this.smtpPort = smtpPort;
+	}
+	public int getSmtpPort() {
+		return smtpPort;
+	}
+
+	@IbisDoc({ "maximum number of connections to the smtpHost that are kept open to send subsequent messages. Use 0 to connect for every message", "5" })
+	public void setMaxIdleConnections(int maxIdleConnections) {
+		this.maxIdleConnections = maxIdleConnections;
+	}
+	public int getMaxIdleConnections() {
+		return maxIdleConnections;
+	}
+
+	@IbisDoc({ "time (in milliseconds) after which an unused connection is closed instead of reused", "30000" })
+	public void setMaxIdleTime(int maxIdleTime) {
+		this.maxIdleTime = maxIdleTime;
+	}
+	public int getMaxIdleTime() {
+		return maxIdleTime;
+	}
+
+	@IbisDoc({ "number of messages after which a connection is closed, to comply with limits of smtp servers. Use 0 for no limit", "100" })
+	public void setMaxMessagesPerConnection(int maxMessagesPerConnection) {
+		this.maxMessagesPerConnection = maxMessagesPerConnection;
+	}
+	public int getMaxMessagesPerConnection() {
+		return maxMessagesPerConnection;
+	}
+
 	public void setProperties(Properties properties) {
 		this.properties = properties;
 	}
@@ -27,12 +27,12 @@ import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.util.ClassUtils;
+import nl.nn.adapterframework.util.ConcurrencyLimitedTaskExecutor;
 import nl.nn.adapterframework.util.Guard;
 import nl.nn.adapterframework.util.XmlBuilder;
 import nl.nn.adapterframework.util.XmlUtils;
 
 import org.springframework.core.task.TaskExecutor;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 /**
  * Collection of Senders, that are executed all at the same time.
@@ -49,6 +49,7 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 public class ParallelSenders extends SenderSeries {
 
 	private int maxConcurrentThreads = 0;
+	private TaskExecutor parallelTaskExecutor;
 
 	@Override
 	public void configure() throws ConfigurationException {
@@ -131,12 +132,32 @@ public class ParallelSenders extends SenderSeries {
 		} 
 	}
 
+	/**
+	 * Returns the executor for the senders of a single message. The threads are taken from the shared
+	 * <code>parallelTaskExecutor</code> pool, the number of senders that run at the same time for the message
+	 * is limited to <code>maxConcurrentThreads</code>.
+	 */
 	protected TaskExecutor createTaskExecutor() {
-		ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) getConfiguration().getIbisManager().getIbisContext().getBean("concurrentTaskExecutor");
-		executor.setCorePoolSize(getMaxConcurrentThreads());
+		TaskExecutor executor = getParallelTaskExecutor();
+		if (executor==null) {
+			executor = (TaskExecutor) getConfiguration().getIbisManager().getIbisContext().getBean("parallelTaskExecutor");
+		}
+		if (getMaxConcurrentThreads()>0) {
+			return new ConcurrencyLimitedTaskExecutor(executor, getMaxConcurrentThreads());
+		}
 		return executor;
 	}
 
+	/**
+	 * The thread-pool shared by all parallel senders, injected by Spring
+	 */
+	public void setParallelTaskExecutor(TaskExecutor parallelTaskExecutor) {
+		this.parallelTaskExecutor = parallelTaskExecutor;
+	}
+	public TaskExecutor getParallelTaskExecutor() {
+		return parallelTaskExecutor;
+	}
+
 	@IbisDoc({"sets and upper limit to the amount of concurrent threads that can be run simultaneously. use 0 to disable.", "0"})
 	public void setMaxConcurrentThreads(int maxThreads) {
 		if(maxThreads < 1)
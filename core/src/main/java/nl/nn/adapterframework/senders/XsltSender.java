@@ -43,6 +43,7 @@ import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterList;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.stream.MessageOutputStream;
 import nl.nn.adapterframework.stream.MessageOutputStreamCap;
 import nl.nn.adapterframework.stream.StreamingException;
@@ -236,8 +237,8 @@ public class XsltSender extends StreamingSenderBase  {
 			}
 
 			TransformerPool poolToUse = transformerPool;
-			if(StringUtils.isNotEmpty(styleSheetNameSessionKey) && prc.getSession().get(styleSheetNameSessionKey) != null) {
-				String styleSheetNameToUse = prc.getSession().get(styleSheetNameSessionKey).toString();
+			if(StringUtils.isNotEmpty(styleSheetNameSessionKey) && session!=null && session.get(styleSheetNameSessionKey) != null) {
+				String styleSheetNameToUse = session.get(styleSheetNameSessionKey).toString();
 			
 				if(!dynamicTransformerPoolMap.containsKey(styleSheetNameToUse)) {
 					dynamicTransformerPoolMap.put(styleSheetNameToUse, poolToUse = TransformerPool.configureTransformer(getLogPrefix(), getClassLoader(), null, null, styleSheetNameToUse, null, !isOmitXmlDeclaration(), getParameterList()));
@@ -274,7 +275,7 @@ public class XsltSender extends StreamingSenderBase  {
 				target=new MessageOutputStreamCap();
 			}
 			InputSource source = new InputSource(new StringReader(message));
-			ContentHandler handler = createHandler(correlationID, message, prc.getSession(), target);
+			ContentHandler handler = createHandler(correlationID, message, prc!=null ? prc.getSession() : null, target);
 			XMLReader reader = XmlUtils.getXMLReader(true, false, handler);
 			reader.parse(source);
 			return target.getResponseAsString();
@@ -283,6 +284,32 @@ public class XsltSender extends StreamingSenderBase  {
 		}
 	}
 	
+	/*
+	 * parses the message from a stream when possible, the message is only read as a String when parameters need it
+	 */
+	@Override
+	public String sendMessage(String correlationID, Message message, ParameterResolutionContext prc, MessageOutputStream target) throws SenderException {
+		if (message==null || message.isNull()) {
+			throw new SenderException(getLogPrefix()+"got null input");
+		}
+		try {
+			if (target==null) {
+				target=new MessageOutputStreamCap();
+			}
+			String input = null;
+			if (paramList!=null) {
+				message.preserve();
+				input = message.asString();
+			}
+			ContentHandler handler = createHandler(correlationID, input, prc!=null ? prc.getSession() : null, target);
+			XMLReader reader = XmlUtils.getXMLReader(true, false, handler);
+			reader.parse(message.asInputSource());
+			return target.getResponseAsString();
+		} catch (Exception e) {
+			throw new SenderException(getLogPrefix()+"Exception on transforming input", e);
+		}
+	}
+	
 	/**
 	 * Here the actual transforming is done. Under weblogic the transformer object becomes
 	 * corrupt when a not-well formed xml was handled. The transformer is then re-initialized
@@ -0,0 +1,92 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.soap;
+
+/**
+ * Header, body and fault information of a SOAP message, as split by {@link SoapWrapper#split(String)} in a single pass.
+ * Both SOAP 1.1 and SOAP 1.2 envelopes are recognized.
+ *
+ * @since 7.5
+ */
+public class SoapEnvelopeParts {
+
+	private String soapNamespace;
+	private String header = "";
+	private String body = "";
+	private int faultCount;
+	private String faultCode;
+	private String faultString;
+
+	/**
+	 * The namespace of the SOAP envelope, or <code>null</code> when the message is not a SOAP envelope.
+	 */
+	public String getSoapNamespace() {
+		return soapNamespace;
+	}
+	void setSoapNamespace(String soapNamespace) {
+		this.soapNamespace = soapNamespace;
+	}
+
+	/**
+	 * The elements in the SOAP header, or an empty string.
+	 */
+	public String getHeader() {
+		return header;
+	}
+	void setHeader(String header) {
+		this.header = header;
+	}
+
+	/**
+	 * The elements in the SOAP body, or an empty string.
+	 */
+	public String getBody() {
+		return body;
+	}
+	void setBody(String body) {
+		this.body = body;
+	}
+
+	/**
+	 * The number of Fault elements in the SOAP body.
+	 */
+	public int getFaultCount() {
+		return faultCount;
+	}
+	void setFaultCount(int faultCount) {
+		this.faultCount = faultCount;
+	}
+
+	/**
+	 * The faultcode (SOAP 1.1) or Code/Value (SOAP 1.2) of the fault.
+	 */
+	public String getFaultCode() {
+		return faultCode;
+	}
+	void setFaultCode(String faultCode) {
+		this.faultCode = faultCode;
+	}
+
+	/**
+	 * The faultstring (SOAP 1.1) or Reason/Text (SOAP 1.2) of the fault.
+	 */
+	public String getFaultString() {
+		return faultString;
+	}
+	void setFaultString(String faultString) {
+		this.faultString = faultString;
+	}
+}
@@ -0,0 +1,358 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.soap;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX handler that splits a SOAP message in a single pass into the parts of a {@link SoapEnvelopeParts}.
+ * <p>
+ * The children of the SOAP Header and Body are serialized with an identity transformer of the same
+ * TransformerFactory that evaluated the XPath expressions of the {@link SoapWrapper} before, so the result
+ * is equal to <code>xsl:copy-of</code> of <code>/soapenv:Envelope/soapenv:Body/*</code>: each copied element
+ * gets all namespace declarations that are in scope, and in the header whitespace-only text is stripped.
+ *
+ * @since 7.5
+ */
+class SoapEnvelopeSplitter extends DefaultHandler implements LexicalHandler {
+
+	static final String SOAP11_NAMESPACE = "http://schemas.xmlsoap.org/soap/envelope/";
+	static final String SOAP12_NAMESPACE = "http://www.w3.org/2003/05/soap-envelope";
+
+	private static final int SECTION_NONE = 0;
+	private static final int SECTION_HEADER = 1;
+	private static final int SECTION_BODY = 2;
+
+	private final SAXTransformerFactory transformerFactory;
+	private final SoapEnvelopeParts result = new SoapEnvelopeParts();
+
+	private final List<List<String[]>> prefixMappings = new ArrayList<List<String[]>>();
+	private List<String[]> pendingPrefixMappings = new ArrayList<String[]>();
+	private final StringBuilder text = new StringBuilder();
+
+	private int depth = 0;
+	private String soapNamespace;
+	private int section = SECTION_NONE;
+	private StringWriter headerWriter;
+	private StringWriter bodyWriter;
+
+	private TransformerHandler copier;
+	private int copyDepth;
+	private boolean stripSpace;
+
+	private int faultDepth;
+	private String faultPart;
+	private StringBuilder capture;
+	private int captureDepth;
+	private StringBuilder faultCode;
+	private StringBuilder faultString;
+
+	SoapEnvelopeSplitter(SAXTransformerFactory transformerFactory) {
+		this.transformerFactory = transformerFactory;
+	}
+
+	SoapEnvelopeParts getResult() {
+		return result;
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		flushText();
+		if (headerWriter != null) {
+			result.setHeader(headerWriter.toString());
+		}
+		if (bodyWriter != null) {
+			result.setBody(bodyWriter.toString());
+		}
+		if (faultCode != null) {
+			result.setFaultCode(faultCode.toString());
+		}
+		if (faultString != null) {
+			result.setFaultString(faultString.toString());
+		}
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri) throws SAXException {
+		pendingPrefixMappings.add(new String[] { prefix, uri });
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		flushText();
+		depth++;
+		try {
+			if (copier != null) {
+				// like in a copy, declarations that are already in scope are not repeated
+				for (String[] mapping : pendingPrefixMappings) {
+					if (!mapping[1].equals(getNamespaceInScope(mapping[0]))) {
+						copier.startPrefixMapping(mapping[0], mapping[1]);
+					}
+				}
+				copier.startElement(uri, localName, qName, attributes);
+			} else if (depth == 1) {
+				if ("Envelope".equals(localName) && (SOAP11_NAMESPACE.equals(uri) || SOAP12_NAMESPACE.equals(uri))) {
+					soapNamespace = uri;
+					result.setSoapNamespace(uri);
+				}
+			} else if (depth == 2) {
+				if (soapNamespace != null && soapNamespace.equals(uri)) {
+					if ("Header".equals(localName)) {
+						section = SECTION_HEADER;
+					} else if ("Body".equals(localName)) {
+						section = SECTION_BODY;
+					}
+				}
+			} else if (depth == 3 && section != SECTION_NONE) {
+				startCopy(uri, localName, qName, attributes);
+			}
+		} finally {
+			prefixMappings.add(pendingPrefixMappings);
+			pendingPrefixMappings = new ArrayList<String[]>();
+		}
+		if (section == SECTION_BODY) {
+			startFaultElement(uri, localName);
+		}
+	}
+
+	/**
+	 * Starts copying a child of the SOAP Header or Body, with all namespace declarations that are in scope.
+	 */
+	private void startCopy(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		Writer writer;
+		if (section == SECTION_HEADER) {
+			if (headerWriter == null) {
+				headerWriter = new StringWriter();
+			}
+			writer = headerWriter;
+		} else {
+			if (bodyWriter == null) {
+				bodyWriter = new StringWriter();
+			}
+			writer = bodyWriter;
+		}
+		try {
+			copier = transformerFactory.newTransformerHandler();
+		} catch (TransformerConfigurationException e) {
+			throw new SAXException("cannot create identity transformer", e);
+		}
+		Transformer transformer = copier.getTransformer();
+		transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		copier.setResult(new StreamResult(writer));
+		copyDepth = depth;
+		stripSpace = section == SECTION_HEADER;
+		copier.startDocument();
+		// the declarations of the element itself, then those of its ancestors, innermost first
+		Set<String> declared = new HashSet<String>();
+		declareInScopePrefixes(pendingPrefixMappings, declared);
+		for (int i = prefixMappings.size() - 1; i >= 0; i--) {
+			declareInScopePrefixes(prefixMappings.get(i), declared);
+		}
+		copier.startElement(uri, localName, qName, attributes);
+	}
+
+	private void declareInScopePrefixes(List<String[]> mappings, Set<String> declared) throws SAXException {
+		for (String[] mapping : mappings) {
+			if (declared.add(mapping[0]) && mapping[1].length() > 0) {
+				copier.startPrefixMapping(mapping[0], mapping[1]);
+			}
+		}
+	}
+
+	/**
+	 * The namespace that is bound to the prefix in the parent of the current element, or an empty string.
+	 */
+	private String getNamespaceInScope(String prefix) {
+		for (int i = prefixMappings.size() - 1; i >= 0; i--) {
+			for (String[] mapping : prefixMappings.get(i)) {
+				if (mapping[0].equals(prefix)) {
+					return mapping[1];
+				}
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Keeps track of the fault elements in the SOAP Body, and starts capturing the text of the fault code and string.
+	 */
+	private void startFaultElement(String uri, String localName) {
+		if (depth == 3) {
+			if ("Fault".equals(localName) && soapNamespace.equals(uri)) {
+				result.setFaultCount(result.getFaultCount() + 1);
+				faultDepth = depth;
+			}
+			return;
+		}
+		if (faultDepth == 0 || capture != null) {
+			return;
+		}
+		if (SOAP11_NAMESPACE.equals(soapNamespace)) {
+			if (depth == 4 && uri.length() == 0) {
+				if ("faultcode".equals(localName)) {
+					faultCode = startCapture(faultCode);
+				} else if ("faultstring".equals(localName)) {
+					faultString = startCapture(faultString);
+				}
+			}
+		} else {
+			if (depth == 4) {
+				faultPart = soapNamespace.equals(uri) ? localName : null;
+			} else if (depth == 5 && soapNamespace.equals(uri)) {
+				if ("Code".equals(faultPart) && "Value".equals(localName)) {
+					faultCode = startCapture(faultCode);
+				} else if ("Reason".equals(faultPart) && "Text".equals(localName)) {
+					faultString = startCapture(faultString);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Multiple values are separated by a space, like <code>xsl:value-of</code> does in XSLT 2.0.
+	 */
+	private StringBuilder startCapture(StringBuilder target) {
+		if (target == null) {
+			target = new StringBuilder();
+		} else {
+			target.append(' ');
+		}
+		capture = target;
+		captureDepth = depth;
+		return target;
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		flushText();
+		if (copier != null) {
+			copier.endElement(uri, localName, qName);
+			if (depth == copyDepth) {
+				copier.endDocument();
+				copier = null;
+			}
+		}
+		if (capture != null && depth == captureDepth) {
+			capture = null;
+		}
+		if (depth == 4) {
+			faultPart = null;
+		}
+		if (depth == faultDepth) {
+			faultDepth = 0;
+		}
+		if (depth == 2) {
+			section = SECTION_NONE;
+		}
+		prefixMappings.remove(prefixMappings.size() - 1);
+		depth--;
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (copier != null || capture != null) {
+			text.append(ch, start, length);
+		}
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		characters(ch, start, length);
+	}
+
+	@Override
+	public void processingInstruction(String target, String data) throws SAXException {
+		flushText();
+		if (copier != null) {
+			copier.processingInstruction(target, data);
+		}
+	}
+
+	@Override
+	public void comment(char[] ch, int start, int length) throws SAXException {
+		flushText();
+		if (copier != null) {
+			copier.comment(ch, start, length);
+		}
+	}
+
+	/**
+	 * Passes a text node on, when it is complete. Like <code>xsl:strip-space</code> whitespace-only text nodes are
+	 * removed from the header and from the fault texts.
+	 */
+	private void flushText() throws SAXException {
+		if (text.length() == 0) {
+			return;
+		}
+		boolean whitespaceOnly = isWhitespaceOnly(text);
+		if (copier != null && !(stripSpace && whitespaceOnly)) {
+			char[] chars = new char[text.length()];
+			text.getChars(0, chars.length, chars, 0);
+			copier.characters(chars, 0, chars.length);
+		}
+		if (capture != null && !whitespaceOnly) {
+			capture.append(text);
+		}
+		text.setLength(0);
+	}
+
+	private boolean isWhitespaceOnly(CharSequence chars) {
+		for (int i = 0; i < chars.length(); i++) {
+			char c = chars.charAt(i);
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void startDTD(String name, String publicId, String systemId) throws SAXException {
+	}
+	@Override
+	public void endDTD() throws SAXException {
+	}
+	@Override
+	public void startEntity(String name) throws SAXException {
+	}
+	@Override
+	public void endEntity(String name) throws SAXException {
+	}
+	@Override
+	public void startCDATA() throws SAXException {
+	}
+	@Override
+	public void endCDATA() throws SAXException {
+	}
+}
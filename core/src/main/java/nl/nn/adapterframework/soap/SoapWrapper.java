@@ -20,16 +20,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.StringTokenizer;
 
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.stream.StreamSource;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.util.CredentialFactory;
 import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.LogUtil;
-import nl.nn.adapterframework.util.TransformerPool;
 import nl.nn.adapterframework.util.XmlUtils;
 
 import org.apache.axis.Message;
@@ -49,6 +48,8 @@ import org.apache.ws.security.message.WSSecUsernameToken;
 import org.apache.ws.security.util.DOM2Writer;
 import org.apache.xml.security.signature.XMLSignature;
 import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
 /**
  * Utility class that wraps and unwraps messages from (and into) a SOAP Envelope.
@@ -58,19 +59,7 @@ import org.w3c.dom.Document;
 public class SoapWrapper {
 	protected Logger log = LogUtil.getLogger(this);
 
-	private TransformerPool extractBody;
-	private TransformerPool extractBody2;
-	private TransformerPool extractHeader;
-	private TransformerPool extractFaultCount;
-	private TransformerPool extractFaultCode;
-	private TransformerPool extractFaultString;
-	private static final String EXTRACT_NAMESPACE_DEFS  = "soapenv=http://schemas.xmlsoap.org/soap/envelope/";
-	private static final String EXTRACT_NAMESPACE_DEFS2 = "soapenv=http://www.w3.org/2003/05/soap-envelope";
-	private static final String EXTRACT_BODY_XPATH = "/soapenv:Envelope/soapenv:Body/*";
-	private static final String EXTRACT_HEADER_XPATH = "/soapenv:Envelope/soapenv:Header/*";
-	private static final String EXTRACT_FAULTCOUNTER_XPATH = "count(/soapenv:Envelope/soapenv:Body/soapenv:Fault)";
-	private static final String EXTRACT_FAULTCODE_XPATH = "/soapenv:Envelope/soapenv:Body/soapenv:Fault/faultcode";
-	private static final String EXTRACT_FAULTSTRING_XPATH = "/soapenv:Envelope/soapenv:Body/soapenv:Fault/faultstring";
+	private SAXTransformerFactory transformerFactory;
 
 	private static SoapWrapper self = null;
 
@@ -79,16 +68,12 @@ public class SoapWrapper {
 	}
 
 	private void init() throws ConfigurationException {
-		try {
-			extractBody = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource(EXTRACT_NAMESPACE_DEFS, EXTRACT_BODY_XPATH, "xml", false, null, false));
-			extractBody2 = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource(EXTRACT_NAMESPACE_DEFS2, EXTRACT_BODY_XPATH,"xml",false,null,false));
-			extractHeader = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource(EXTRACT_NAMESPACE_DEFS, EXTRACT_HEADER_XPATH, "xml"));
-			extractFaultCount = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource(EXTRACT_NAMESPACE_DEFS, EXTRACT_FAULTCOUNTER_XPATH, "text"));
-			extractFaultCode = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource(EXTRACT_NAMESPACE_DEFS, EXTRACT_FAULTCODE_XPATH, "text"));
-			extractFaultString = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource(EXTRACT_NAMESPACE_DEFS, EXTRACT_FAULTSTRING_XPATH, "text"));
-		} catch (TransformerConfigurationException e) {
-			throw new ConfigurationException("cannot create SOAP transformer", e);
+		// the XPath expressions that were used before to extract the parts were evaluated with XSLT 2.0
+		TransformerFactory factory = XmlUtils.getTransformerFactory(2);
+		if (!factory.getFeature(SAXTransformerFactory.FEATURE)) {
+			throw new ConfigurationException("TransformerFactory ["+factory.getClass().getName()+"] does not support SAX");
 		}
+		transformerFactory = (SAXTransformerFactory)factory;
 	}
 
 	public static SoapWrapper getInstance() throws ConfigurationException {
@@ -99,26 +84,51 @@ public class SoapWrapper {
 		return self;
 	}
 
+	/**
+	 * Splits a SOAP message in a single pass into its header, body and fault information.
+	 * A message that is not a SOAP envelope results in an empty header and body.
+	 */
+	public SoapEnvelopeParts split(String message) throws DomBuilderException {
+		if (message == null) {
+			throw new DomBuilderException("message is null");
+		}
+		SoapEnvelopeSplitter splitter = new SoapEnvelopeSplitter(transformerFactory);
+		try {
+			XmlUtils.parseXml(splitter, message);
+		} catch (IOException | SAXException e) {
+			throw new DomBuilderException("cannot split SOAP message", e);
+		}
+		return splitter.getResult();
+	}
+
+	public SoapEnvelopeParts split(InputStream message) throws DomBuilderException {
+		SoapEnvelopeSplitter splitter = new SoapEnvelopeSplitter(transformerFactory);
+		try {
+			XmlUtils.parseXml(splitter, new InputSource(message));
+		} catch (IOException | SAXException e) {
+			throw new DomBuilderException("cannot split SOAP message", e);
+		}
+		return splitter.getResult();
+	}
+
 	public void checkForSoapFault(String responseBody, Throwable nested) throws SenderException {
-		String faultString = null;
-		String faultCode = null;
-		int faultCount = 0;
+		if (StringUtils.isEmpty(responseBody)) {
+			return;
+		}
 		try {
-			faultCount = getFaultCount(responseBody);
-			log.debug("fault count=" + faultCount);
-			if (faultCount > 0) {
-				faultCode = getFaultCode(responseBody);
-				faultString = getFaultString(responseBody);
-				log.debug("faultCode=" + faultCode + ", faultString=" + faultString);
-			}
+			checkForSoapFault(split(responseBody), nested);
 		} catch (DomBuilderException e) {
-			log.debug("IOException extracting fault message", e);
-		} catch (IOException e) {
-			log.debug("IOException extracting fault message", e);
-		} catch (TransformerException e) {
-			log.debug("TransformerException extracting fault message:" + e.getMessageAndLocation());
+			log.debug("exception extracting fault message", e);
 		}
+	}
+
+	public void checkForSoapFault(SoapEnvelopeParts soapMessage, Throwable nested) throws SenderException {
+		int faultCount = soapMessage.getFaultCount();
+		log.debug("fault count=" + faultCount);
 		if (faultCount > 0) {
+			String faultCode = soapMessage.getFaultCode();
+			String faultString = soapMessage.getFaultString();
+			log.debug("faultCode=" + faultCode + ", faultString=" + faultString);
 			String msg = "SOAP fault [" + faultCode + "]: " + faultString;
 			log.info(msg);
 			throw new SenderException(msg, nested);
@@ -126,25 +136,27 @@ public class SoapWrapper {
 	}
 
 	public String getBody(String message) throws DomBuilderException, TransformerException, IOException  {
-		String result = extractBody.transform(message,null,true);
-		if (StringUtils.isNotEmpty(result))
-			return result;
-		return extractBody2.transform(message,null,true);
+		return split(message).getBody();
 	}
 
 	public String getBody(InputStream request) throws TransformerException, IOException {
-		String result = extractBody.transform(new StreamSource(request),null);
-		if (StringUtils.isNotEmpty(result))
-			return result;
-		return extractBody2.transform(new StreamSource(request),null);
+		try {
+			return split(request).getBody();
+		} catch (DomBuilderException e) {
+			throw new TransformerException(e);
+		}
 	}
 
 	public String getHeader(String message) throws DomBuilderException, TransformerException, IOException {
-		return extractHeader.transform(message, null, true);
+		return split(message).getHeader();
 	}
 
 	public String getHeader(InputStream request) throws TransformerException, IOException {
-		return extractHeader.transform(new StreamSource(request), null);
+		try {
+			return split(request).getHeader();
+		} catch (DomBuilderException e) {
+			throw new TransformerException(e);
+		}
 	}
 
 	public int getFaultCount(String message) throws DomBuilderException, TransformerException, IOException {
@@ -152,23 +164,15 @@ public class SoapWrapper {
 			log.warn("getFaultCount(): message is empty");
 			return 0;
 		}
-		String faultCount = extractFaultCount.transform(message, null, true);
-		if (StringUtils.isEmpty(faultCount)) {
-			log.warn("getFaultCount(): could not extract fault count, result is empty");
-			return 0;
-		}
-		if (log.isDebugEnabled()) {
-			log.debug("getFaultCount(): transformation result [" + faultCount + "]");
-		}
-		return Integer.parseInt(faultCount);
+		return split(message).getFaultCount();
 	}
 
 	public String getFaultCode(String message) throws DomBuilderException, TransformerException, IOException {
-		return extractFaultCode.transform(message, null, true);
+		return StringUtils.defaultString(split(message).getFaultCode());
 	}
 
 	public String getFaultString(String message) throws DomBuilderException, TransformerException, IOException {
-		return extractFaultString.transform(message, null, true);
+		return StringUtils.defaultString(split(message).getFaultString());
 	}
 
 	public String putInEnvelope(String message, String encodingStyleUri, String targetObjectNamespace) {
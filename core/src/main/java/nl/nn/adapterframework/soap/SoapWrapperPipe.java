@@ -240,16 +240,20 @@ public class SoapWrapperPipe extends FixedForwardPipe {
 
 				result = wrapMessage(payload, soapHeader);
 			} else {
-				result = unwrapMessage(input.toString());
+				String messageText = input.toString();
+				result = unwrapMessage(messageText);
 				if (StringUtils.isEmpty(result)) {
 					throw new PipeRunException(this, getLogPrefix(session) + "SOAP Body is empty or message is not a SOAP Message");
 				}
-				if (!isIgnoreSoapFault() && soapWrapper.getFaultCount(input.toString()) > 0) {
-					throw new PipeRunException(this, getLogPrefix(session) + "SOAP Body contains SOAP Fault");
-				}
-				if (StringUtils.isNotEmpty(getSoapHeaderSessionKey())) {
-					String soapHeader = soapWrapper.getHeader(input.toString());
-					session.put(getSoapHeaderSessionKey(), soapHeader);
+				if (!isIgnoreSoapFault() || StringUtils.isNotEmpty(getSoapHeaderSessionKey())) {
+					// fault count and header are taken from a single split of the envelope
+					SoapEnvelopeParts soapMessage = soapWrapper.split(messageText);
+					if (!isIgnoreSoapFault() && soapMessage.getFaultCount() > 0) {
+						throw new PipeRunException(this, getLogPrefix(session) + "SOAP Body contains SOAP Fault");
+					}
+					if (StringUtils.isNotEmpty(getSoapHeaderSessionKey())) {
+						session.put(getSoapHeaderSessionKey(), soapMessage.getHeader());
+					}
 				}
 				if (removeOutputNamespacesTp != null) {
 					result = removeOutputNamespacesTp.transform(result, null, true);
@@ -148,6 +148,30 @@ public class Basics implements ItemList {
 		}
 	}
 
+	public long getItemLong(int index) {
+		switch (index) {
+			case 0: return getCount();
+			case 1: if (getCount() == 0) return 0; else return getMin();
+			case 2: if (getCount() == 0) return 0; else return getMax();
+			case 3: return (long)getItemDouble(index);
+			case 4: return (long)getItemDouble(index);
+			case 5: if (getCount() == 0) return 0; else return getSum();
+			default : throw new IllegalArgumentException("item index ["+index+"] outside allowed range [0,"+(NUM_BASIC_ITEMS-1)+"]");
+		}
+	}
+
+	public double getItemDouble(int index) {
+		switch (index) {
+			case 0: return getCount();
+			case 1: if (getCount() == 0) return Double.NaN; else return getMin();
+			case 2: if (getCount() == 0) return Double.NaN; else return getMax();
+			case 3: if (getCount() == 0) return Double.NaN; else return getAverage();
+			case 4: if (getCount() == 0) return Double.NaN; else return getStdDev();
+			case 5: if (getCount() == 0) return Double.NaN; else return getSum();
+			default : throw new IllegalArgumentException("item index ["+index+"] outside allowed range [0,"+(NUM_BASIC_ITEMS-1)+"]");
+		}
+	}
+
 	protected XmlBuilder toXml(String elementName, String name, DecimalFormat timeFormat, DecimalFormat percentageFormat) {
 		return ItemUtil.toXml(this, elementName, name, timeFormat, percentageFormat);
 	}
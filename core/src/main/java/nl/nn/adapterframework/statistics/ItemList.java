@@ -50,5 +50,14 @@ public interface ItemList {
 	String getItemName(int index);
 	int getItemType(int index);
 	Object getItemValue(int index);
+	/**
+	 * Returns the value of an item, without creating an object. For items of type {@link #ITEM_TYPE_TIME} and {@link #ITEM_TYPE_FRACTION}
+	 * the value is truncated. Returns 0 when the item has no value.
+	 */
+	long getItemLong(int index);
+	/**
+	 * Returns the value of an item, without creating an object. Returns {@link Double#NaN} when the item has no value.
+	 */
+	double getItemDouble(int index);
 
 }
@@ -58,51 +58,51 @@ public class ItemUtil {
 		XmlBuilder stats = getSummaryContainer(container, name);
 	
 		for (int i=0; i<il.getItemCount(); i++) {
-			Object item = il.getItemValue(i);
-			if (item==null) {
-				addItem(stats, il.getItemName(i), ItemList.ITEM_VALUE_NAN);
-			} else {
-				String value = "";
-				switch (il.getItemType(i)) {
-					case ItemList.ITEM_TYPE_INTEGER: 
-						if (countFormat==null) {
-							value = ""+ (Long)item;
-						} else {
-							value = countFormat.format((Long)item);
-						}
-						break;
-					case ItemList.ITEM_TYPE_TIME: 
-						value = timeFormat.format(item);
-						break;
-					case ItemList.ITEM_TYPE_FRACTION:
-						value = percentageFormat.format(((Double)item).doubleValue()*100)+ "%";
-						break;
-				}
-				addItem(stats, il.getItemName(i), value);
-			}
+			addItem(stats, il.getItemName(i), formatItemValue(il.getItemType(i), il.getItemLong(i), il.getItemDouble(i), countFormat, timeFormat, percentageFormat));
 		}
 		return container;
 	}
 
+	/**
+	 * Formats the value of an item from its primitive values, fractions as percentage. Returns {@link ItemList#ITEM_VALUE_NAN} when the item has no value.
+	 */
+	public static String formatItemValue(int itemType, long longValue, double doubleValue, DecimalFormat countFormat, DecimalFormat timeFormat, DecimalFormat percentageFormat) {
+		if (Double.isNaN(doubleValue)) {
+			return ItemList.ITEM_VALUE_NAN;
+		}
+		switch (itemType) {
+			case ItemList.ITEM_TYPE_INTEGER: 
+				if (countFormat==null) {
+					return Long.toString(longValue);
+				}
+				return countFormat.format(longValue);
+			case ItemList.ITEM_TYPE_TIME: 
+				return timeFormat.format(doubleValue);
+			case ItemList.ITEM_TYPE_FRACTION:
+				return percentageFormat.format(doubleValue*100)+ "%";
+			default:
+				return "";
+		}
+	}
+
 	public static String getItemValueFormated(ItemList il, int index) {
-		Object item = il.getItemValue(index);
-		if (item==null) {
+		double item = il.getItemDouble(index);
+		if (Double.isNaN(item)) {
 			return ItemList.ITEM_VALUE_NAN;
 		} else {
 			switch (il.getItemType(index)) {
 				case StatisticsKeeper.ITEM_TYPE_INTEGER: 
-					return ""+ (Long)item;
+					return Long.toString(il.getItemLong(index));
 				case StatisticsKeeper.ITEM_TYPE_TIME: 
 					DecimalFormat df=new DecimalFormat(ItemList.ITEM_FORMAT_TIME);
 					return df.format(item);
 				case StatisticsKeeper.ITEM_TYPE_FRACTION:
 					DecimalFormat pf=new DecimalFormat(ItemList.ITEM_FORMAT_PERC);
-					return ""+pf.format(((Double)item).doubleValue()*100);
+					return ""+pf.format(item*100);
 				default:
-					return item.toString();
+					return Double.toString(item);
 			}
 		}
 	}
-    
 
 }
@@ -19,6 +19,7 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
 
 import nl.nn.adapterframework.statistics.percentiles.PercentileEstimator;
 import nl.nn.adapterframework.statistics.percentiles.PercentileEstimatorRanked;
@@ -40,6 +41,10 @@ public class StatisticsKeeper implements ItemList {
     private long last=0;
     private Basics cumulative;
 	private Basics mark;
+	private AtomicLong version=new AtomicLong();
+	private volatile StatisticsKeeperSnapshot snapshot;
+	private String[] itemNames;
+	private int[] itemTypes;
     private long classBoundaries[];
     private long classCounts[];
     
@@ -114,6 +119,7 @@ public class StatisticsKeeper implements ItemList {
 		}
 		if (action==HasStatistics.STATISTICS_ACTION_MARK_FULL || action==HasStatistics.STATISTICS_ACTION_MARK_MAIN) {
 			mark.mark(cumulative);
+			version.incrementAndGet();
 		}
 	}
 	
@@ -123,6 +129,7 @@ public class StatisticsKeeper implements ItemList {
 		first=0;
 		last=0;
 		pest.clear();
+		version.incrementAndGet();
 	}
 	
 	public void addValue(long value) {
@@ -143,6 +150,47 @@ public class StatisticsKeeper implements ItemList {
 	            classCounts[i]++;
 	        }
 	    }
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Returns the values of all items at this moment. The snapshot is only recalculated when values have been added,
+	 * or the statistics have been marked or cleared since the previous call, so all consumers of an idle keeper share it.
+	 */
+	public StatisticsKeeperSnapshot getSnapshot() {
+		long currentVersion=version.get();
+		StatisticsKeeperSnapshot result=snapshot;
+		if (result==null || result.getVersion()!=currentVersion) {
+			result=new StatisticsKeeperSnapshot(this, currentVersion);
+			snapshot=result;
+		}
+		return result;
+	}
+
+	/*
+	 * Names and types of the items do not change after construction, they are shared by all snapshots.
+	 */
+	String[] getItemNames() {
+		String[] result=itemNames;
+		if (result==null) {
+			result=new String[getItemCount()];
+			for (int i=0; i<result.length; i++) {
+				result[i]=getItemName(i);
+			}
+			itemNames=result;
+		}
+		return result;
+	}
+	int[] getItemTypes() {
+		int[] result=itemTypes;
+		if (result==null) {
+			result=new int[getItemCount()];
+			for (int i=0; i<result.length; i++) {
+				result[i]=getItemType(i);
+			}
+			itemTypes=result;
+		}
+		return result;
 	}
 	
 
@@ -252,6 +300,37 @@ public class StatisticsKeeper implements ItemList {
 				throw new ArrayIndexOutOfBoundsException("StatisticsKeeper.getItemValue() item index too high: "+index);
 	    }
     }
+	public long getItemLong(int index) {
+		if (index<Basics.NUM_BASIC_ITEMS) {
+			return cumulative.getItemLong(index);
+		}
+		switch (index) {
+			case 6: if (getCount() == 0) return 0; else return getFirst();
+			case 7: if (getCount() == 0) return 0; else return getLast();
+			default : return (long)getItemDouble(index);
+		}
+	}
+	public double getItemDouble(int index) {
+		if (index<Basics.NUM_BASIC_ITEMS) {
+			return cumulative.getItemDouble(index);
+		}
+		if (getCount() == 0) {
+			return Double.NaN;
+		}
+		switch (index) {
+			case 6: return getFirst();
+			case 7: return getLast();
+			default :
+				if ((index-NUM_STATIC_ITEMS) < classBoundaries.length) { 
+					return classCounts[index-NUM_STATIC_ITEMS]/(double)getCount();
+				}
+				if (calculatePercentiles) {
+					return pest.getPercentileEstimate(index-NUM_STATIC_ITEMS-classBoundaries.length,getCount(),getMin(),getMax());
+				}
+				throw new ArrayIndexOutOfBoundsException("StatisticsKeeper.getItemDouble() item index too high: "+index);
+		}
+	}
+
 	public Object getIntervalItemValue(int index) {
 		switch (index) {
 			case 0: return new Long(cumulative.getIntervalCount(mark));
@@ -264,6 +343,29 @@ public class StatisticsKeeper implements ItemList {
 		}
 	}
 
+	public long getIntervalItemLong(int index) {
+		switch (index) {
+			case 0: return cumulative.getIntervalCount(mark);
+			case 1: if (cumulative.getCount() == mark.getCount()) return 0; else return mark.getMin();
+			case 2: if (cumulative.getCount() == mark.getCount()) return 0; else return mark.getMax();
+			case 3: if (cumulative.getCount() == mark.getCount()) return 0; else return (long)cumulative.getIntervalAverage(mark);
+			case 4: return cumulative.getIntervalSum(mark);
+			case 5: return cumulative.getIntervalSumOfSquares(mark);
+			default : return 0;
+		}
+	}
+	public double getIntervalItemDouble(int index) {
+		switch (index) {
+			case 0: return cumulative.getIntervalCount(mark);
+			case 1: if (cumulative.getCount() == mark.getCount()) return Double.NaN; else return mark.getMin();
+			case 2: if (cumulative.getCount() == mark.getCount()) return Double.NaN; else return mark.getMax();
+			case 3: if (cumulative.getCount() == mark.getCount()) return Double.NaN; else return cumulative.getIntervalAverage(mark);
+			case 4: return cumulative.getIntervalSum(mark);
+			case 5: return cumulative.getIntervalSumOfSquares(mark);
+			default : return Double.NaN;
+		}
+	}
+
     public XmlBuilder dumpToXml() {
 		XmlBuilder result = new XmlBuilder("StatisticsKeeper");
 		XmlBuilder items = new XmlBuilder("items");
@@ -300,7 +402,7 @@ public class StatisticsKeeper implements ItemList {
 		if (deep) {
 			 return dumpToXml();
 		}
-		return ItemUtil.toXml(this, elementName, getName(), timeFormat, percentageFormat, countFormat);
+		return ItemUtil.toXml(getSnapshot(), elementName, getName(), timeFormat, percentageFormat, countFormat);
 	}
 
    
@@ -0,0 +1,294 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.statistics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
+
+/**
+ * Writes all statistics in the Prometheus text exposition format (version 0.0.4).
+ * <p>
+ * Samples are appended directly while iterating over the statistics keepers, without building
+ * intermediate XML. Samples are collected per metric family, so the handler can be used for the
+ * iterations over several configurations before {@link #write(Writer)} is called.
+ * <ul>
+ * <li>Each named group adds a label, named after the type of the group, e.g. <code>configuration="..."</code>,
+ * <code>adapter="..."</code>, <code>receiver="..."</code>. The instance group adds label <code>instance_name</code>,
+ * as Prometheus uses <code>instance</code> for the scrape target.</li>
+ * <li>Each StatisticsKeeper is written as a histogram <code>ibis_&lt;group type&gt;_&lt;units&gt;</code>, with
+ * the name of the keeper in label <code>name</code>. The buckets are the class boundaries of the keeper. N.B. a
+ * StatisticsKeeper counts the values strictly below a boundary, where Prometheus counts the values less than or
+ * equal; this only differs for values exactly on a boundary.</li>
+ * <li>Scalars are written as counter <code>ibis_&lt;group type&gt;_&lt;name&gt;_total</code>, or as gauge for
+ * values that can decrease. Dates are written as gauge in seconds since the epoch. Interval values are
+ * skipped, as they depend on the moment the statistics were last marked.</li>
+ * </ul>
+ * Iterate using {@link HasStatistics#STATISTICS_ACTION_FULL}, to leave marks and counters untouched.
+ * 
+ * @since   7.5
+ */
+public class StatisticsKeeperPrometheusExporter implements StatisticsKeeperIterationHandler {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final String PREFIX = "ibis_";
+	private static final String INTERVAL_SUFFIX = "ThisInterval";
+	private static final String INSTANCE_GROUP_TYPE = "instance";
+	private static final String INSTANCE_LABEL = "instance_name";
+	private static final String HOUR_GROUP_TYPE = "processing by hour";
+	private static final Set<String> GAUGE_SCALARS = new HashSet<String>(Arrays.asList("messagesInProcess", "messagesQueued", "lagMillis", "ObjectCount"));
+
+	private Map<String, MetricFamily> families = new LinkedHashMap<String, MetricFamily>();
+
+	private static class MetricFamily {
+		final String type;
+		final StringBuilder samples = new StringBuilder();
+
+		MetricFamily(String type) {
+			this.type = type;
+		}
+	}
+
+	private static class Group {
+		final Group parent;
+		final String metricName;
+		final String labelName;
+		final String labels; // rendered labels, without braces
+		final String scalarLabelName; // when set, the names of scalars are values of this label
+
+		Group(Group parent, String metricName, String labelName, String labels, String scalarLabelName) {
+			this.parent = parent;
+			this.metricName = metricName;
+			this.labelName = labelName;
+			this.labels = labels;
+			this.scalarLabelName = scalarLabelName;
+		}
+
+		boolean hasLabel(String name) {
+			for (Group group = this; group != null; group = group.parent) {
+				if (name.equals(group.labelName)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	@Override
+	public void configure() throws ConfigurationException {
+	}
+
+	@Override
+	public Object start(Date now, Date mainMark, Date detailMark) {
+		return new Group(null, PREFIX, null, "", null);
+	}
+
+	@Override
+	public void end(Object data) {
+	}
+
+	@Override
+	public Object openGroup(Object parentData, String name, String type) {
+		Group parent = (Group)parentData;
+		if (INSTANCE_GROUP_TYPE.equals(type)) {
+			// Prometheus reserves the label 'instance' for the scrape target
+			if (StringUtils.isEmpty(name)) {
+				return parent;
+			}
+			return new Group(parent, parent.metricName, INSTANCE_LABEL, appendLabel(parent.labels, INSTANCE_LABEL, name), null);
+		}
+		if (HOUR_GROUP_TYPE.equals(type)) {
+			// the hours become a label of a single metric, the adapter is already a label of the parent
+			return new Group(parent, PREFIX + "adapter_messages_by_hour", null, parent.labels, "hour");
+		}
+		String metricName = PREFIX + toSnakeCase(type);
+		String labelName = toSnakeCase(type);
+		if (name == null || parent.hasLabel(labelName)) {
+			return new Group(parent, metricName, null, parent.labels, null);
+		}
+		return new Group(parent, metricName, labelName, appendLabel(parent.labels, labelName, name), null);
+	}
+
+	@Override
+	public void closeGroup(Object data) {
+	}
+
+	@Override
+	public void handleStatisticsKeeper(Object data, StatisticsKeeper sk) {
+		if (sk == null) {
+			return;
+		}
+		Group group = (Group)data;
+		String metricName = group.metricName + "_" + toUnitSuffix(sk.getUnits());
+		String labels = appendLabel(group.labels, "name", sk.getName());
+		StringBuilder samples = getSamples(metricName, "histogram");
+		long count = sk.getCount();
+		long[] boundaries = sk.getClassBoundaries();
+		long[] counts = sk.getClassCounts();
+		for (int i = 0; i < boundaries.length; i++) {
+			appendSample(samples, metricName + "_bucket", appendLabel(labels, "le", Long.toString(boundaries[i])), counts[i]);
+		}
+		appendSample(samples, metricName + "_bucket", appendLabel(labels, "le", "+Inf"), count);
+		appendSample(samples, metricName + "_sum", labels, sk.getTotal());
+		appendSample(samples, metricName + "_count", labels, count);
+	}
+
+	@Override
+	public void handleScalar(Object data, String scalarName, long value) {
+		Group group = (Group)data;
+		if (group.scalarLabelName != null) {
+			String metricName = group.metricName + "_total";
+			appendSample(getSamples(metricName, "counter"), metricName, appendLabel(group.labels, group.scalarLabelName, scalarName), value);
+			return;
+		}
+		if (scalarName.endsWith(INTERVAL_SUFFIX)) {
+			return;
+		}
+		String metricName = group.metricName + "_" + toSnakeCase(scalarName);
+		if (GAUGE_SCALARS.contains(scalarName)) {
+			appendSample(getSamples(metricName, "gauge"), metricName, group.labels, value);
+		} else {
+			metricName = metricName + "_total";
+			appendSample(getSamples(metricName, "counter"), metricName, group.labels, value);
+		}
+	}
+
+	@Override
+	public void handleScalar(Object data, String scalarName, Date value) {
+		if (value == null) {
+			return;
+		}
+		Group group = (Group)data;
+		String metricName = group.metricName + "_" + toSnakeCase(scalarName) + "_seconds";
+		StringBuilder samples = getSamples(metricName, "gauge");
+		samples.append(metricName);
+		appendLabels(samples, group.labels);
+		samples.append(' ').append(value.getTime() / 1000).append('.');
+		long millis = value.getTime() % 1000;
+		if (millis < 100) {
+			samples.append('0');
+		}
+		if (millis < 10) {
+			samples.append('0');
+		}
+		samples.append(millis).append('\n');
+	}
+
+	/**
+	 * Writes the samples collected so far, one block per metric family.
+	 */
+	public void write(Writer writer) throws IOException {
+		for (Map.Entry<String, MetricFamily> entry : families.entrySet()) {
+			MetricFamily family = entry.getValue();
+			writer.write("# TYPE ");
+			writer.write(entry.getKey());
+			writer.write(' ');
+			writer.write(family.type);
+			writer.write('\n');
+			writer.append(family.samples);
+		}
+	}
+
+	private StringBuilder getSamples(String metricName, String type) {
+		MetricFamily family = families.get(metricName);
+		if (family == null) {
+			family = new MetricFamily(type);
+			families.put(metricName, family);
+		}
+		return family.samples;
+	}
+
+	private void appendSample(StringBuilder samples, String metricName, String labels, long value) {
+		samples.append(metricName);
+		appendLabels(samples, labels);
+		samples.append(' ').append(value).append('\n');
+	}
+
+	private void appendLabels(StringBuilder samples, String labels) {
+		if (labels.length() > 0) {
+			samples.append('{').append(labels).append('}');
+		}
+	}
+
+	private String appendLabel(String labels, String name, String value) {
+		StringBuilder result = new StringBuilder(labels.length() + name.length() + (value == null ? 0 : value.length()) + 4);
+		result.append(labels);
+		if (labels.length() > 0) {
+			result.append(',');
+		}
+		result.append(name).append("=\"");
+		if (value != null) {
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch (c) {
+					case '\\':
+						result.append("\\\\");
+						break;
+					case '"':
+						result.append("\\\"");
+						break;
+					case '\n':
+						result.append("\\n");
+						break;
+					default:
+						result.append(c);
+				}
+			}
+		}
+		return result.append('"').toString();
+	}
+
+	private String toUnitSuffix(String units) {
+		if ("ms".equals(units)) {
+			return "milliseconds";
+		}
+		if ("B".equals(units)) {
+			return "bytes";
+		}
+		return toSnakeCase(units);
+	}
+
+	/**
+	 * Converts names like 'pipeStats', 'CacheHits' or 'processing by hour' to valid lower case metric and label names.
+	 */
+	protected static String toSnakeCase(String name) {
+		StringBuilder result = new StringBuilder(name.length() + 8);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (Character.isUpperCase(c)) {
+				if (result.length() > 0 && result.charAt(result.length() - 1) != '_') {
+					result.append('_');
+				}
+				result.append(Character.toLowerCase(c));
+			} else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9' && result.length() > 0)) {
+				result.append(c);
+			} else if (result.length() > 0 && result.charAt(result.length() - 1) != '_') {
+				result.append('_');
+			}
+		}
+		return result.toString();
+	}
+}
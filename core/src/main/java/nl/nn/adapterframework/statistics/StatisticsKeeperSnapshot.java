@@ -0,0 +1,110 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.statistics;
+
+/**
+ * Values of all items of a {@link StatisticsKeeper} at a moment, kept in primitive arrays. Obtain it with
+ * {@link StatisticsKeeper#getSnapshot()}, to render a keeper without calculating and boxing each item again for each consumer.
+ * 
+ * @since   7.5
+ */
+public class StatisticsKeeperSnapshot implements ItemList {
+
+	private final StatisticsKeeper keeper;
+	private final long version;
+	private final String name;
+	private final String[] itemNames;
+	private final int[] itemTypes;
+	private final long[] itemLongs;
+	private final double[] itemDoubles;
+	private final long[] intervalItemLongs;
+	private final double[] intervalItemDoubles;
+
+	StatisticsKeeperSnapshot(StatisticsKeeper sk, long version) {
+		keeper = sk;
+		this.version = version;
+		name = sk.getName();
+		itemNames = sk.getItemNames();
+		itemTypes = sk.getItemTypes();
+		itemLongs = new long[itemNames.length];
+		itemDoubles = new double[itemNames.length];
+		for (int i=0; i<itemNames.length; i++) {
+			itemDoubles[i] = sk.getItemDouble(i);
+			itemLongs[i] = itemTypes[i]==ITEM_TYPE_FRACTION ? (long)itemDoubles[i] : sk.getItemLong(i);
+		}
+		intervalItemLongs = new long[sk.getIntervalItemCount()];
+		intervalItemDoubles = new double[intervalItemLongs.length];
+		for (int i=0; i<intervalItemLongs.length; i++) {
+			intervalItemLongs[i] = sk.getIntervalItemLong(i);
+			intervalItemDoubles[i] = sk.getIntervalItemDouble(i);
+		}
+	}
+
+	long getVersion() {
+		return version;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getItemCount() {
+		return itemNames.length;
+	}
+	@Override
+	public String getItemName(int index) {
+		return itemNames[index];
+	}
+	@Override
+	public int getItemType(int index) {
+		return itemTypes[index];
+	}
+	@Override
+	public long getItemLong(int index) {
+		return itemLongs[index];
+	}
+	@Override
+	public double getItemDouble(int index) {
+		return itemDoubles[index];
+	}
+	@Override
+	public Object getItemValue(int index) {
+		if (Double.isNaN(itemDoubles[index])) {
+			return null;
+		}
+		if (itemTypes[index]==ITEM_TYPE_INTEGER) {
+			return new Long(itemLongs[index]);
+		}
+		return new Double(itemDoubles[index]);
+	}
+
+	public int getIntervalItemCount() {
+		return intervalItemLongs.length;
+	}
+	public String getIntervalItemName(int index) {
+		return keeper.getIntervalItemName(index);
+	}
+	public int getIntervalItemType(int index) {
+		return keeper.getIntervalItemType(index);
+	}
+	public long getIntervalItemLong(int index) {
+		return intervalItemLongs[index];
+	}
+	public double getIntervalItemDouble(int index) {
+		return intervalItemDoubles[index];
+	}
+}
@@ -157,51 +157,22 @@ public class StatisticsKeeperXmlBuilder implements StatisticsKeeperIterationHand
 		if (sk==null) {
 			return null;
 		}
-		String name = sk.getName();
+		StatisticsKeeperSnapshot snapshot = sk.getSnapshot();
+		String name = snapshot.getName();
 		XmlBuilder container = new XmlBuilder(elementName);
 		if (name!=null)
 			container.addAttribute("name", name);
 			
 		XmlBuilder cumulativeStats = new XmlBuilder(STATKEEPER_SUMMARY_ELEMENT);
 	
-		for (int i=0; i<sk.getItemCount(); i++) {
-			Object item = sk.getItemValue(i);
-			if (item==null) {
-				addNumber(cumulativeStats, sk.getItemName(i), "-");
-			} else {
-				switch (sk.getItemType(i)) {
-					case StatisticsKeeper.ITEM_TYPE_INTEGER: 
-						addNumber(cumulativeStats, sk.getItemName(i), ""+ (Long)item);
-						break;
-					case StatisticsKeeper.ITEM_TYPE_TIME: 
-						addNumber(cumulativeStats, sk.getItemName(i), df.format(item));
-						break;
-					case StatisticsKeeper.ITEM_TYPE_FRACTION:
-						addNumber(cumulativeStats, sk.getItemName(i), ""+pf.format(((Double)item).doubleValue()*100)+ "%");
-						break;
-				}
-			}
+		for (int i=0; i<snapshot.getItemCount(); i++) {
+			addNumber(cumulativeStats, snapshot.getItemName(i), ItemUtil.formatItemValue(snapshot.getItemType(i), snapshot.getItemLong(i), snapshot.getItemDouble(i), null, df, pf));
 		}
 		container.addSubElement(cumulativeStats);
 		XmlBuilder intervalStats = new XmlBuilder(STATKEEPER_INTERVAL_ELEMENT);
 	
-		for (int i=0; i<sk.getIntervalItemCount(); i++) {
-			Object item = sk.getIntervalItemValue(i);
-			if (item==null) {
-				addNumber(intervalStats, sk.getIntervalItemName(i), "-");
-			} else {
-				switch (sk.getIntervalItemType(i)) {
-					case StatisticsKeeper.ITEM_TYPE_INTEGER: 
-						addNumber(intervalStats, sk.getIntervalItemName(i), ""+ (Long)item);
-						break;
-					case StatisticsKeeper.ITEM_TYPE_TIME: 
-						addNumber(intervalStats, sk.getIntervalItemName(i), df.format(item));
-						break;
-					case StatisticsKeeper.ITEM_TYPE_FRACTION:
-						addNumber(intervalStats, sk.getIntervalItemName(i), ""+pf.format(((Double)item).doubleValue()*100)+ "%");
-						break;
-				}
-			}
+		for (int i=0; i<snapshot.getIntervalItemCount(); i++) {
+			addNumber(intervalStats, snapshot.getIntervalItemName(i), ItemUtil.formatItemValue(snapshot.getIntervalItemType(i), snapshot.getIntervalItemLong(i), snapshot.getIntervalItemDouble(i), null, df, pf));
 		}
 		container.addSubElement(intervalStats);
 		return container;
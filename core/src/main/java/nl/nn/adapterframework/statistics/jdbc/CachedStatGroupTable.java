@@ -16,6 +16,9 @@
 package nl.nn.adapterframework.statistics.jdbc;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -30,10 +33,12 @@ public class CachedStatGroupTable extends StatGroupTable {
 	
 	private static Map cache=Collections.synchronizedMap(new HashMap());
 	private String mapKey;
+	private String selectByInstanceQuery;
 	
 	public CachedStatGroupTable(String tableName, String keyColumn, String parentKeyColumn, String instanceKeyColumn, String nameColumn, String typeColumn, String sequence) {
 		super(tableName,keyColumn,parentKeyColumn,instanceKeyColumn,nameColumn,typeColumn,sequence);
 		mapKey=tableName+"/"+keyColumn+"/"+parentKeyColumn+"/"+nameColumn+"/"+typeColumn;
+		selectByInstanceQuery="SELECT "+keyColumn+","+parentKeyColumn+","+nameColumn+","+typeColumn+" FROM "+tableName+" WHERE "+instanceKeyColumn+"=? AND "+parentKeyColumn+" IS NOT NULL";
 		synchronized(cache) {
 			Map tableCache=(Map)cache.get(mapKey);
 			if (tableCache==null) {
@@ -46,7 +51,7 @@ public class CachedStatGroupTable extends StatGroupTable {
 	public int findOrInsert(Connection connection, int parentKey, int instanceKey, String name, String type) throws JdbcException {
 		Integer result;
 		Map tableCache=(Map)cache.get(mapKey);
-		String valueKey=parentKey+"/"+type+"/"+name;
+		String valueKey=getValueKey(parentKey, name, type);
 		result=(Integer)tableCache.get(valueKey);
 		if (result==null) {
 			result= new Integer(super.findOrInsert(connection, parentKey, instanceKey, name, type));
@@ -55,4 +60,34 @@ public class CachedStatGroupTable extends StatGroupTable {
 		return result.intValue();
 	}
 
+	/**
+	 * Reads all groups of the instance into the cache, so that groups that already exist are resolved without queries.
+	 */
+	public void preload(Connection connection, int instanceKey) throws JdbcException {
+		Map tableCache=(Map)cache.get(mapKey);
+		try {
+			PreparedStatement stmt = connection.prepareStatement(selectByInstanceQuery);
+			try {
+				stmt.setInt(1, instanceKey);
+				ResultSet rs = stmt.executeQuery();
+				try {
+					while (rs.next()) {
+						tableCache.put(getValueKey(rs.getInt(2), rs.getString(3), rs.getString(4)), new Integer(rs.getInt(1)));
+					}
+				} finally {
+					rs.close();
+				}
+			} finally {
+				stmt.close();
+			}
+		} catch (SQLException e) {
+			throw new JdbcException("could not execute query ["+selectByInstanceQuery+"]",e);
+		}
+	}
+
+	// unnamed groups are stored with an empty name, that some databases read back as null
+	private String getValueKey(int parentKey, String name, String type) {
+		return parentKey+"/"+type+"/"+(name==null?"":name);
+	}
+
 }
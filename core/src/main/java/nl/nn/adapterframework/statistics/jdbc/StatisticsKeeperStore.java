@@ -21,14 +21,18 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.jdbc.CachedSideTable;
 import nl.nn.adapterframework.jdbc.JdbcException;
 import nl.nn.adapterframework.jdbc.JdbcFacade;
@@ -42,6 +46,12 @@ import nl.nn.adapterframework.util.Misc;
 
 /**
  * StatisticsKeeperIterationHandler that stores all statisticsdata in a database.
+ * <p>
+ * Names and groups that already exist in the database are read into a cache at configure time, and the rows of a
+ * dump are written using JDBC batches of at most <code>batchSize</code> rows. The values of each StatisticsKeeper at
+ * the previous dump are kept in memory, to store interval values instead of cumulative values when
+ * <code>storeIntervalValues</code> is set, and to skip keepers without activity since the previous dump when
+ * <code>skipInactiveKeepers</code> is set.
  * 
  * @author  Gerrit van Brakel
  * @since   4.9.8
@@ -50,9 +60,9 @@ public class StatisticsKeeperStore extends JdbcFacade implements StatisticsKeepe
 
 	private SideTable instances=new CachedSideTable("ibisinstance", "instancekey", "name", "seq_ibisinstance");
 	private SideTable hosts=    new CachedSideTable("ibishost",     "hostkey",     "name", "seq_ibishost");
-	private SideTable statnames=new CachedSideTable("ibisstatname", "statnamekey", "name", "seq_ibisstatname");
+	private CachedSideTable statnames=new CachedSideTable("ibisstatname", "statnamekey", "name", "seq_ibisstatname");
 	
-	private StatGroupTable groups= new CachedStatGroupTable("ibisgroup", "groupkey", "parentgroup", "instancekey", "name", "type", "seq_ibisgroup");
+	private CachedStatGroupTable groups= new CachedStatGroupTable("ibisgroup", "groupkey", "parentgroup", "instancekey", "name", "type", "seq_ibisgroup");
 
 	private String insertEventQueryInsertClause;
 	private String insertEventQueryValuesClause;
@@ -62,6 +72,12 @@ public class StatisticsKeeperStore extends JdbcFacade implements StatisticsKeepe
 	private String selectNextValueQuery;
 
 	private int instanceKey;
+	private int batchSize=100;
+	private boolean storeIntervalValues=false;
+	private boolean skipInactiveKeepers=false;
+
+	// count, sum and sum of squares of each StatisticsKeeper at the previous dump, by groupkey and statnamekey
+	private Map<String,long[]> previousValues=new ConcurrentHashMap<String,long[]>();
 	
 	private final boolean trace=false;
 	
@@ -75,18 +91,80 @@ public class StatisticsKeeperStore extends JdbcFacade implements StatisticsKeepe
 		Connection connection;
 		int groupKey;
 		int eventKey;
+		BatchedStatement statKeeperStatement;
+		BatchedStatement numStatement;
+		BatchedStatement timestampStatement;
+	}
+
+	/**
+	 * PreparedStatement that is executed each time batchSize rows have been added.
+	 */
+	private class BatchedStatement {
+		private String query;
+		private PreparedStatement stmt;
+		private int pending=0;
+		// values of the StatisticsKeepers in the current batch, that become the previous values once the batch is executed
+		private Map<String,long[]> pendingValues=new HashMap<String,long[]>();
+
+		BatchedStatement(Connection connection, String query) throws SQLException {
+			this.query=query;
+			if (trace && log.isDebugEnabled()) log.debug("prepare query ["+query+"]");
+			stmt=connection.prepareStatement(query);
+		}
+
+		PreparedStatement getStatement() {
+			return stmt;
+		}
+
+		void addBatch() throws SQLException {
+			stmt.addBatch();
+			if (++pending>=getBatchSize()) {
+				flush();
+			}
+		}
+
+		void addBatch(String valuesKey, long[] values) throws SQLException {
+			pendingValues.put(valuesKey, values);
+			addBatch();
+		}
+
+		void flush() throws SQLException {
+			if (pending>0) {
+				if (trace && log.isDebugEnabled()) log.debug("execute batch of ["+pending+"] rows for query ["+query+"]");
+				pending=0;
+				try {
+					stmt.executeBatch();
+					previousValues.putAll(pendingValues);
+				} finally {
+					pendingValues.clear();
+				}
+			}
+		}
+
+		void close() throws SQLException {
+			stmt.close();
+		}
+
+		String getQuery() {
+			return query;
+		}
 	}
 
 	public void configure() throws ConfigurationException {
 		if (StringUtils.isEmpty(getDatasourceName())) {
 			throw new ConfigurationException("datasource must be specified");
 		}
+		if (getBatchSize()<1) {
+			throw new ConfigurationException("batchSize must be at least 1");
+		}
 		createQueries();
 		String instance=AppConstants.getInstance().getString("instance.name","");
 		Connection connection=null;
 		try {
 			connection = getConnection();
 			instanceKey=instances.findOrInsert(connection,instance);			
+			statnames.preload(connection);
+			groups.preload(connection,instanceKey);
 		} catch (JdbcException e) {
 			throw new ConfigurationException("could not find instancekey for instance ["+instance+"]",e);
 		} finally {
@@ -208,20 +286,60 @@ public class StatisticsKeeperStore extends JdbcFacade implements StatisticsKeepe
 				}
 			}
 			
+			sessionInfo.statKeeperStatement=new BatchedStatement(connection,insertStatKeeperQuery);
+			sessionInfo.numStatement=new BatchedStatement(connection,insertNumQuery);
+			sessionInfo.timestampStatement=new BatchedStatement(connection,insertTimestampQuery);
 			return sessionInfo;
 		} catch (Exception e) {
+			try {
+				close(sessionInfo);
+			} catch (SQLException e1) {
+				log.warn("could not close connection after failed start of statistics dump", e1);
+			}
 			throw new SenderException(e);
 		}
 	}
 
 	public void end(Object data) throws SenderException {
 		SessionInfo sessionInfo = (SessionInfo)data;	
+		BatchedStatement current=null;
 		try {
 			if (sessionInfo!=null && sessionInfo.connection!=null) {
-				sessionInfo.connection.close();
+				current=sessionInfo.statKeeperStatement;
+				current.flush();
+				current=sessionInfo.numStatement;
+				current.flush();
+				current=sessionInfo.timestampStatement;
+				current.flush();
 			}
 		} catch (Exception e) {
-			throw new SenderException(e);
+			throw new SenderException("could not execute batch for query ["+current.getQuery()+"]",e);
+		} finally {
+			try {
+				close(sessionInfo);
+			} catch (Exception e) {
+				throw new SenderException(e);
+			}
+		}
+	}
+
+	private void close(SessionInfo sessionInfo) throws SQLException {
+		if (sessionInfo==null || sessionInfo.connection==null) {
+			return;
+		}
+		try {
+			BatchedStatement[] statements = {sessionInfo.statKeeperStatement, sessionInfo.numStatement, sessionInfo.timestampStatement};
+			for (BatchedStatement statement:statements) {
+				if (statement!=null) {
+					try {
+						statement.close();
+					} catch (SQLException e) {
+						log.warn("could not close statement for query ["+statement.getQuery()+"]", e);
+					}
+				}
+			}
+		} finally {
+			sessionInfo.connection.close();
 		}
 	}
 
@@ -244,87 +362,108 @@ public class StatisticsKeeperStore extends JdbcFacade implements StatisticsKeepe
 	}
 
 	public void handleStatisticsKeeper(Object data, StatisticsKeeper sk) throws SenderException {
+		if (sk==null) {
+			return;
+		}
 		SessionInfo sessionInfo = (SessionInfo)data;	
-		PreparedStatement stmt = null;
 
 		int statnamekey=-1;
 		try {
 			statnamekey=statnames.findOrInsert(sessionInfo.connection,sk.getName());
-			if (trace && log.isDebugEnabled()) log.debug("prepare and execute query ["+insertStatKeeperQuery+"]");
-			stmt = sessionInfo.connection.prepareStatement(insertStatKeeperQuery);
-			int pos=1;
 			long count=sk.getCount();
+			long sum=sk.getTotal();
+			long sumsq=sk.getTotalSquare();
+			String valuesKey=sessionInfo.groupKey+"/"+statnamekey;
+			long[] current=new long[] {count, sum, sumsq};
+			long[] previous=previousValues.get(valuesKey);
+			if (previous!=null && previous[0]>count) {
+				// statistics have been reset since the previous dump
+				previous=null;
+			}
+			long intervalCount=previous==null ? count : count-previous[0];
+			if (skipInactiveKeepers && intervalCount==0) {
+				previousValues.put(valuesKey, current);
+				return;
+			}
+			PreparedStatement stmt = sessionInfo.statKeeperStatement.getStatement();
+			int pos=1;
 			applyParam(stmt,pos++,sessionInfo.eventKey);
 			applyParam(stmt,pos++,sessionInfo.groupKey);
 			applyParam(stmt,pos++,statnamekey);
-			applyParam(stmt,pos++,count);
-			if (count==0) {
-				stmt.setNull(pos++,Types.NUMERIC);
-				stmt.setNull(pos++,Types.NUMERIC);
+			if (storeIntervalValues) {
+				long intervalSum=previous==null ? sum : sum-previous[1];
+				long intervalSumsq=previous==null ? sumsq : sumsq-previous[2];
+				applyParam(stmt,pos++,intervalCount);
+				// minimum and maximum of the interval cannot be derived from the cumulative values
 				stmt.setNull(pos++,Types.NUMERIC);
 				stmt.setNull(pos++,Types.NUMERIC);
+				if (intervalCount==0) {
+					stmt.setNull(pos++,Types.NUMERIC);
+					stmt.setNull(pos++,Types.NUMERIC);
+				} else {
+					applyParam(stmt,pos++,intervalSum/(double)intervalCount);
+					if (intervalCount==1) {
+						stmt.setNull(pos++,Types.NUMERIC);
+					} else {
+						// in double, the square of the sum easily exceeds the range of a long
+						double variance=(intervalSumsq-((double)intervalSum*intervalSum)/intervalCount)/(intervalCount-1);
+						applyParam(stmt,pos++,Math.sqrt(Math.max(0,variance)));
+					}
+				}
+				applyParam(stmt,pos++,intervalSum);
+				applyParam(stmt,pos++,intervalSumsq);
 			} else {
-				applyParam(stmt,pos++,sk.getMin());
-				applyParam(stmt,pos++,sk.getMax());
-				applyParam(stmt,pos++,sk.getAvg());
-				if (count==1) {
+				applyParam(stmt,pos++,count);
+				if (count==0) {
+					stmt.setNull(pos++,Types.NUMERIC);
+					stmt.setNull(pos++,Types.NUMERIC);
+					stmt.setNull(pos++,Types.NUMERIC);
 					stmt.setNull(pos++,Types.NUMERIC);
 				} else {
-					applyParam(stmt,pos++,sk.getStdDev());
+					applyParam(stmt,pos++,sk.getMin());
+					applyParam(stmt,pos++,sk.getMax());
+					applyParam(stmt,pos++,sk.getAvg());
+					if (count==1) {
+						stmt.setNull(pos++,Types.NUMERIC);
+					} else {
+						applyParam(stmt,pos++,sk.getStdDev());
+					}
 				}
+				applyParam(stmt,pos++,sum);
+				applyParam(stmt,pos++,sumsq);
 			}
-			applyParam(stmt,pos++,sk.getTotal());
-			applyParam(stmt,pos++,sk.getTotalSquare());
-			stmt.execute();
+			sessionInfo.statKeeperStatement.addBatch(valuesKey, current);
 		} catch (Exception e) {
 			throw new SenderException("could not execute query ["+insertStatKeeperQuery+"]",e);
-		} finally {
-			if (stmt!=null) {
-				try {
-					stmt.close();
-				} catch (Exception e) {
-					throw new SenderException("could not close statement for query ["+insertStatKeeperQuery+"]",e);
-				}
-			}
 		}
 	}
 
 	public void handleScalar(Object data, String scalarName, long value) throws SenderException {
 		SessionInfo sessionInfo = (SessionInfo)data;
-		PreparedStatement stmt = null;
 
 		int statnamekey=-1;
 		try {
 			statnamekey=statnames.findOrInsert(sessionInfo.connection,scalarName);
-			if (trace && log.isDebugEnabled()) log.debug("prepare and execute query ["+insertNumQuery+"] params ["+sessionInfo.eventKey+","+ sessionInfo.groupKey +","+ statnamekey+","+ value +"]");
-			stmt = sessionInfo.connection.prepareStatement(insertNumQuery);
+			if (trace && log.isDebugEnabled()) log.debug("add batch for query ["+insertNumQuery+"] params ["+sessionInfo.eventKey+","+ sessionInfo.groupKey +","+ statnamekey+","+ value +"]");
+			PreparedStatement stmt = sessionInfo.numStatement.getStatement();
 			stmt.setLong(1,sessionInfo.eventKey);
 			stmt.setLong(2,sessionInfo.groupKey);
 			stmt.setLong(3,statnamekey);
 			stmt.setLong(4,value);
-			stmt.execute();
+			sessionInfo.numStatement.addBatch();
 		} catch (Exception e) {
 			throw new SenderException("could not execute query ["+insertNumQuery+"] params ["+sessionInfo.eventKey+","+ sessionInfo.groupKey +","+ statnamekey+","+ value +"]",e);
-		} finally {
-			if (stmt!=null) {
-				try {
-					stmt.close();
-				} catch (Exception e) {
-					throw new SenderException("could not close statement for query ["+insertNumQuery+"] params ["+sessionInfo.eventKey+","+ sessionInfo.groupKey +","+ statnamekey+","+ value +"]",e);
-				}
-			}
 		}
 	}
 
 	public void handleScalar(Object data, String scalarName, Date value) throws SenderException {
 		SessionInfo sessionInfo = (SessionInfo)data;	
-		PreparedStatement stmt = null;
 
 		int statnamekey=-1;
 		try {
 			statnamekey=statnames.findOrInsert(sessionInfo.connection,scalarName);
-			if (trace && log.isDebugEnabled()) log.debug("prepare and execute query ["+insertTimestampQuery+"] params ["+sessionInfo.eventKey+","+ sessionInfo.groupKey +","+ statnamekey+","+ (value==null?"null":DateUtils.format(value)) +"]");
-			stmt = sessionInfo.connection.prepareStatement(insertTimestampQuery);
+			if (trace && log.isDebugEnabled()) log.debug("add batch for query ["+insertTimestampQuery+"] params ["+sessionInfo.eventKey+","+ sessionInfo.groupKey +","+ statnamekey+","+ (value==null?"null":DateUtils.format(value)) +"]");
+			PreparedStatement stmt = sessionInfo.timestampStatement.getStatement();
 			stmt.setLong(1,sessionInfo.eventKey);
 			stmt.setLong(2,sessionInfo.groupKey);
 			stmt.setLong(3,statnamekey);
@@ -333,17 +472,9 @@ public class StatisticsKeeperStore extends JdbcFacade implements StatisticsKeepe
 			} else {
 				stmt.setTimestamp(4,new Timestamp(value.getTime()));
 			}
-			stmt.execute();
+			sessionInfo.timestampStatement.addBatch();
 		} catch (Exception e) {
 			throw new SenderException("could not execute query ["+insertTimestampQuery+"] params ["+sessionInfo.eventKey+","+ sessionInfo.groupKey +","+ statnamekey+","+ (value==null?"null":DateUtils.format(value)) +"]",e);
-		} finally {
-			if (stmt!=null) {
-				try {
-					stmt.close();
-				} catch (Exception e) {
-					throw new SenderException("could not close statement for query ["+insertTimestampQuery+"] params ["+sessionInfo.eventKey+","+ sessionInfo.groupKey +","+ statnamekey+","+ (value==null?"null":DateUtils.format(value)) +"]",e);
-				}
-			}
 		}
 	}
 
@@ -357,6 +488,9 @@ public class StatisticsKeeperStore extends JdbcFacade implements StatisticsKeepe
 			groupData.connection=sessionInfo.connection;
 			groupData.eventKey=sessionInfo.eventKey;
 			groupData.groupKey=groupKey;
+			groupData.statKeeperStatement=sessionInfo.statKeeperStatement;
+			groupData.numStatement=sessionInfo.numStatement;
+			groupData.timestampStatement=sessionInfo.timestampStatement;
 			return groupData;
 		} catch (JdbcException e) {
 			throw new SenderException(e);
@@ -367,4 +501,29 @@ public class StatisticsKeeperStore extends JdbcFacade implements StatisticsKeepe
 		// nothing to do
 	}
 
+	@IbisDoc({"maximum number of rows that are inserted with a single batch", "100"})
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@IbisDoc({"when <code>true</code>, count, sum and sum of squares of statistics keepers are stored as the values of the interval since the previous dump, "+
+			"instead of as cumulative values. minimum and maximum are then not stored", "<code>false</code>"})
+	public void setStoreIntervalValues(boolean storeIntervalValues) {
+		this.storeIntervalValues = storeIntervalValues;
+	}
+	public boolean isStoreIntervalValues() {
+		return storeIntervalValues;
+	}
+
+	@IbisDoc({"when <code>true</code>, statistics keepers that have not registered any values since the previous dump are not stored", "<code>false</code>"})
+	public void setSkipInactiveKeepers(boolean skipInactiveKeepers) {
+		this.skipInactiveKeepers = skipInactiveKeepers;
+	}
+	public boolean isSkipInactiveKeepers() {
+		return skipInactiveKeepers;
+	}
+
 }
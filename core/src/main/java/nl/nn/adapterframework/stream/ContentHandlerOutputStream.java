@@ -15,88 +15,290 @@
 */
 package nl.nn.adapterframework.stream;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.xml.sax.ContentHandler;
-import org.xml.sax.InputSource;
-import org.xml.sax.XMLReader;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.fasterxml.aalto.AsyncByteArrayFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
 
 import nl.nn.adapterframework.util.LogUtil;
-import nl.nn.adapterframework.util.XmlUtils;
 
 /**
  * Helper class to convert character or byte based OutputStreams into a SAX event stream.
- * Uses OS pipes to convert an OutputStream into an InputStream
- * 
- * @author Gerrit van Brakel
+ * The bytes written are fed to a non-blocking XML parser, that emits the SAX events in the thread
+ * of the writer, as soon as enough bytes have been written to complete them.
+ * <p>
+ * The non-blocking parser only supports UTF-8 and US-ASCII. The encoding is detected from the
+ * byte order mark and the XML declaration; documents in other encodings are parsed by a
+ * {@link PipedContentHandlerOutputStream}, that emits the events in a separate thread.
+ *
+ * @since 7.5
  */
-public class ContentHandlerOutputStream extends PipedOutputStream implements Thread.UncaughtExceptionHandler {
+public class ContentHandlerOutputStream extends OutputStream {
 	protected Logger log = LogUtil.getLogger(this);
 
+	/*
+	 * The factory is created directly, and not via XMLInputFactory.newInstance(), to keep
+	 * the StAX implementation that is used in the rest of the framework independent of this class.
+	 * For the same reason the aalto classes are included without their service registration,
+	 * see the pom.xml of this module.
+	 */
+	private static final AsyncXMLInputFactory FACTORY;
+
+	static {
+		FACTORY = new InputFactoryImpl();
+		FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private static final Set<String> ASYNC_ENCODINGS = new HashSet<String>(Arrays.asList("UTF-8", "UTF8", "US-ASCII", "ASCII"));
+	private static final String XML_DECLARATION_START = "<?xml";
+	// the XML declaration is expected within this number of bytes, otherwise the document is taken to be UTF-8
+	private static final int MAX_DECLARATION_LENGTH = 1024;
+	private static final Pattern ENCODING_PATTERN = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._\\-]+)[\"']");
+
 	private ContentHandler handler;
-	
-	private PipedInputStream pipedInputStream=new PipedInputStream();
-	private final EventConsumer pipeReader=new EventConsumer();
-	private Throwable exception;
-	
+	private LexicalHandler lexicalHandler;
+
+	private AsyncXMLStreamReader<AsyncByteArrayFeeder> reader;
+	private int depth=0;
+	private boolean closed=false;
+
+	// bytes that are written before the encoding is known
+	private ByteArrayOutputStream head = new ByteArrayOutputStream();
+	// parses documents in encodings that the non-blocking parser does not support
+	private OutputStream fallback;
+
 	public ContentHandlerOutputStream(ContentHandler handler) throws StreamingException {
 		this.handler=handler;
-		try {
-			pipedInputStream=new PipedInputStream();
-			connect(pipedInputStream);
-			pipeReader.setUncaughtExceptionHandler(this);
-			pipeReader.start();
-		} catch (IOException e) {
-			throw new StreamingException(e);
+		if (handler instanceof LexicalHandler) {
+			lexicalHandler=(LexicalHandler)handler;
 		}
+		reader = FACTORY.createAsyncForByteArray();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte)b }, 0, 1);
 	}
 
-	private class EventConsumer extends Thread {
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("stream is closed");
+		}
+		if (len==0) {
+			return;
+		}
+		if (head!=null) {
+			head.write(b, off, len);
+			if (!detectEncoding(false)) {
+				return;
+			}
+			b=head.toByteArray();
+			off=0;
+			len=b.length;
+			head=null;
+		}
+		if (fallback!=null) {
+			fallback.write(b, off, len);
+			return;
+		}
+		try {
+			reader.getInputFeeder().feedInput(b, off, len);
+			processEvents();
+		} catch (XMLStreamException | SAXException e) {
+			throw new IOException(new StreamingException(e));
+		}
+	}
 
-		boolean inCdata=false;
-		
-		@Override
-		public void run() {
+	/*
+	 * Determines the encoding from the bytes written so far, and creates the fallback stream when the
+	 * non-blocking parser does not support it. Returns false when more bytes are required.
+	 */
+	private boolean detectEncoding(boolean endOfInput) throws IOException {
+		String encoding = getEncoding(head.toByteArray(), endOfInput);
+		if (encoding==null) {
+			return false;
+		}
+		if (!ASYNC_ENCODINGS.contains(encoding.toUpperCase())) {
+			if (log.isDebugEnabled()) log.debug("encoding ["+encoding+"] is not supported by the non-blocking parser, using a piped parser");
 			try {
-				boolean namespaceAware=true;
-				boolean resolveExternalEntities=false;
-				InputSource inputSource = new InputSource(pipedInputStream);
-				XMLReader xmlReader = XmlUtils.getXMLReader(namespaceAware, resolveExternalEntities, handler);
-				xmlReader.parse(inputSource);
-			} catch (Exception e) {
-				StreamingException se = new StreamingException(e);
-				setException(se);
+				fallback = new PipedContentHandlerOutputStream(handler);
+			} catch (StreamingException e) {
+				throw new IOException(e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the encoding of an XML document that starts with the specified bytes, or <code>null</code> when more
+	 * bytes are required to determine it.
+	 */
+	static String getEncoding(byte[] bytes, boolean endOfInput) throws UnsupportedEncodingException {
+		int length = bytes.length;
+		if (length<2) {
+			return endOfInput ? "UTF-8" : null;
+		}
+		if ((bytes[0]==(byte)0xFE && bytes[1]==(byte)0xFF) || (bytes[0]==(byte)0xFF && bytes[1]==(byte)0xFE) || bytes[0]==0 || bytes[1]==0) {
+			// byte order mark, or '<' encoded in two or four bytes
+			return "UTF-16";
+		}
+		int start = 0;
+		if (bytes[0]==(byte)0xEF) {
+			if (length<3 && !endOfInput) {
+				return null;
+			}
+			start = 3;
+		}
+		String text = new String(bytes, start, Math.min(length-start, MAX_DECLARATION_LENGTH), "ISO-8859-1");
+		if (text.length()<XML_DECLARATION_START.length()) {
+			return XML_DECLARATION_START.startsWith(text) && !endOfInput ? null : "UTF-8";
+		}
+		if (!text.startsWith(XML_DECLARATION_START)) {
+			return "UTF-8";
+		}
+		int end = text.indexOf("?>");
+		if (end<0) {
+			if (!endOfInput && length-start<MAX_DECLARATION_LENGTH) {
+				return null;
 			}
+			end = text.length();
 		}
-		
+		Matcher matcher = ENCODING_PATTERN.matcher(text.substring(0, end));
+		return matcher.find() ? matcher.group(1) : "UTF-8";
 	}
-	
-	
+
 	@Override
 	public void close() throws IOException {
-		super.close();
+		if (closed) {
+			return;
+		}
+		closed=true;
+		if (head!=null) {
+			detectEncoding(true);
+			byte[] b=head.toByteArray();
+			head=null;
+			if (fallback!=null) {
+				fallback.write(b);
+			} else if (b.length>0) {
+				try {
+					reader.getInputFeeder().feedInput(b, 0, b.length);
+					processEvents();
+				} catch (XMLStreamException | SAXException e) {
+					throw new IOException(new StreamingException(e));
+				}
+			}
+		}
+		if (fallback!=null) {
+			fallback.close();
+			return;
+		}
 		try {
-			pipeReader.join();
-			if (getException()!=null) {
-				throw new IOException(getException());
+			reader.getInputFeeder().endOfInput();
+			processEvents();
+			reader.close();
+		} catch (XMLStreamException | SAXException e) {
+			throw new IOException(new StreamingException(e));
+		}
+	}
+
+	/*
+	 * Consumes all events that can be completed with the input fed so far, and forwards them to the handler.
+	 * The parser keeps the state of partially received tokens, so the caller can reuse its buffer after write() returns.
+	 */
+	private void processEvents() throws XMLStreamException, SAXException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			switch (event) {
+			case AsyncXMLStreamReader.EVENT_INCOMPLETE:
+				return;
+			case XMLStreamConstants.START_DOCUMENT:
+				handler.startDocument();
+				break;
+			case XMLStreamConstants.END_DOCUMENT:
+				handler.endDocument();
+				break;
+			case XMLStreamConstants.START_ELEMENT:
+				startElement();
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				endElement();
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.SPACE:
+				if (depth>0) {
+					handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				}
+				break;
+			case XMLStreamConstants.CDATA:
+				if (lexicalHandler!=null) {
+					lexicalHandler.startCDATA();
+				}
+				handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				if (lexicalHandler!=null) {
+					lexicalHandler.endCDATA();
+				}
+				break;
+			case XMLStreamConstants.COMMENT:
+				if (lexicalHandler!=null) {
+					lexicalHandler.comment(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				}
+				break;
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+				handler.processingInstruction(reader.getPITarget(), reader.getPIData());
+				break;
+			default:
+				if (log.isTraceEnabled()) log.trace("ignoring event ["+event+"]");
 			}
-		} catch (InterruptedException e) {
-			log.warn(e);
 		}
 	}
 
-	@Override
-	public void uncaughtException(Thread arg0, Throwable t) {
-		setException(t);
+	private void startElement() throws SAXException {
+		depth++;
+		for (int i=0; i<reader.getNamespaceCount(); i++) {
+			handler.startPrefixMapping(StringUtils.defaultString(reader.getNamespacePrefix(i)), StringUtils.defaultString(reader.getNamespaceURI(i)));
+		}
+		AttributesImpl attributes = new AttributesImpl();
+		for (int i=0; i<reader.getAttributeCount(); i++) {
+			attributes.addAttribute(StringUtils.defaultString(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i), qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeType(i), reader.getAttributeValue(i));
+		}
+		handler.startElement(StringUtils.defaultString(reader.getNamespaceURI()), reader.getLocalName(), qualifiedName(reader.getPrefix(), reader.getLocalName()), attributes);
 	}
-	
-	public void setException(Throwable exception) {
-		this.exception = exception;
+
+	private void endElement() throws SAXException {
+		handler.endElement(StringUtils.defaultString(reader.getNamespaceURI()), reader.getLocalName(), qualifiedName(reader.getPrefix(), reader.getLocalName()));
+		for (int i=0; i<reader.getNamespaceCount(); i++) {
+			handler.endPrefixMapping(StringUtils.defaultString(reader.getNamespacePrefix(i)));
+		}
+		depth--;
 	}
-	public Throwable getException() {
-		return exception;
+
+	private String qualifiedName(String prefix, String localName) {
+		if (StringUtils.isEmpty(prefix)) {
+			return localName;
+		}
+		return prefix+":"+localName;
 	}
 }
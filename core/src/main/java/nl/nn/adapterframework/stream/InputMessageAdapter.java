@@ -29,6 +29,10 @@ import org.xml.sax.InputSource;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.StreamUtil;
 
+/**
+ * @deprecated use {@link Message} instead, which also converts representations only once and can spill large messages to disk.
+ */
+@Deprecated
 public class InputMessageAdapter {
 	protected Logger log = LogUtil.getLogger(this);
 
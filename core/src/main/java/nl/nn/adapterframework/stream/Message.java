@@ -0,0 +1,420 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.input.ReaderInputStream;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.xml.sax.InputSource;
+
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.StreamUtil;
+
+/**
+ * Message that can be passed between pipes and senders, holding a String, byte[], InputStream, Reader or File.
+ *
+ * The message is converted to another representation only when that representation is asked for. Conversions
+ * of streams to a String or byte[] are done only once, the result is kept. Streams can only be read once;
+ * {@link #preserve()} makes the message repeatable by reading it into memory or, when it is larger than
+ * <code>message.spill.threshold</code>, into a temporary file that is removed when the message is {@link #close() closed}.
+ * Copies of a message share that file, it is removed when the last of them is closed.
+ *
+ * @since 7.5
+ */
+public class Message {
+	protected static Logger log = LogUtil.getLogger(Message.class);
+
+	public static final String SPILL_THRESHOLD_KEY = "message.spill.threshold";
+	private static final int DEFAULT_SPILL_THRESHOLD = 1024*1024;
+	private static final int CHUNK_SIZE = 8192;
+
+	private Object request;
+	private String charset;
+	private String stringValue;
+	private byte[] byteArrayValue;
+	private SpillFile spillFile;
+
+	/**
+	 * Temporary file shared by a message and its copies, removed when the last of them releases it.
+	 */
+	private static class SpillFile {
+		private final File file;
+		private final AtomicInteger owners = new AtomicInteger(1);
+
+		SpillFile(File file) {
+			this.file = file;
+		}
+
+		SpillFile retain() {
+			owners.incrementAndGet();
+			return this;
+		}
+
+		void release() {
+			if (owners.decrementAndGet() == 0) {
+				if (!file.delete() && file.exists()) {
+					log.warn("could not delete spill file ["+file.getPath()+"]");
+				}
+			}
+		}
+	}
+
+	public Message(Object request) {
+		this(request, null);
+	}
+
+	public Message(Object request, String charset) {
+		if (request instanceof Message) {
+			Message message = (Message)request;
+			this.request = message.request;
+			this.charset = StringUtils.isNotEmpty(charset) ? charset : message.charset;
+			this.spillFile = message.spillFile != null ? message.spillFile.retain() : null;
+			if (this.charset.equals(message.charset)) {
+				// the converted values are only valid for the charset they were decoded or encoded with
+				this.stringValue = message.stringValue;
+				this.byteArrayValue = message.byteArrayValue;
+			}
+		} else {
+			this.request = request;
+			this.charset = StringUtils.isNotEmpty(charset) ? charset : StreamUtil.DEFAULT_INPUT_STREAM_ENCODING;
+		}
+	}
+
+	/**
+	 * Returns the object as a Message, without wrapping it again when it already is one.
+	 */
+	public static Message asMessage(Object object) {
+		if (object instanceof Message) {
+			return (Message)object;
+		}
+		return new Message(object);
+	}
+
+	/**
+	 * Creates a message for a temporary file, that is removed when the message is {@link #close() closed}.
+	 */
+	static Message fromSpillFile(File file, String charset) {
+		Message message = new Message(file, charset);
+		message.spillFile = new SpillFile(file);
+		return message;
+	}
+
+	public static int getSpillThreshold() {
+		return AppConstants.getInstance().getInt(SPILL_THRESHOLD_KEY, DEFAULT_SPILL_THRESHOLD);
+	}
+
+	public Object asObject() {
+		return request;
+	}
+
+	public String getCharset() {
+		return charset;
+	}
+
+	public boolean isNull() {
+		return request == null;
+	}
+
+	/**
+	 * Returns true when the message is kept as bytes, i.e. converting it to characters requires decoding.
+	 */
+	public boolean isBinary() {
+		return request instanceof byte[] || request instanceof InputStream || request instanceof File;
+	}
+
+	/**
+	 * Returns true when the message can be read more than once.
+	 */
+	public boolean isRepeatable() {
+		return request == null || request instanceof String || request instanceof byte[] || request instanceof File || stringValue != null || byteArrayValue != null;
+	}
+
+	/**
+	 * Returns the size of the message in characters or bytes, depending on the representation, or -1 when it is not known without reading the message.
+	 */
+	public long size() {
+		if (request == null) {
+			return 0;
+		}
+		if (request instanceof String) {
+			return ((String)request).length();
+		}
+		if (request instanceof byte[]) {
+			return ((byte[])request).length;
+		}
+		if (request instanceof File) {
+			return ((File)request).length();
+		}
+		if (stringValue != null) {
+			return stringValue.length();
+		}
+		if (byteArrayValue != null) {
+			return byteArrayValue.length;
+		}
+		return -1;
+	}
+
+	/**
+	 * Makes the message repeatable. Streams and readers are read completely, into memory when they are
+	 * smaller than the spill threshold and into a temporary file otherwise.
+	 */
+	public void preserve() throws IOException {
+		preserve(getSpillThreshold());
+	}
+
+	public void preserve(int threshold) throws IOException {
+		if (isRepeatable()) {
+			return;
+		}
+		if (request instanceof InputStream) {
+			InputStream inputStream = (InputStream)request;
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			byte[] chunk = new byte[CHUNK_SIZE];
+			int length;
+			try {
+				while ((length = inputStream.read(chunk)) >= 0) {
+					buffer.write(chunk, 0, length);
+					if (buffer.size() > threshold) {
+						File file = createSpillFile();
+						try (OutputStream out = new FileOutputStream(file)) {
+							buffer.writeTo(out);
+							StreamUtil.copyStream(inputStream, out, CHUNK_SIZE);
+						}
+						request = file;
+						return;
+					}
+				}
+			} finally {
+				inputStream.close();
+			}
+			request = buffer.toByteArray();
+			return;
+		}
+		if (request instanceof Reader) {
+			Reader reader = (Reader)request;
+			StringBuilder buffer = new StringBuilder();
+			char[] chunk = new char[CHUNK_SIZE];
+			int length;
+			try {
+				while ((length = reader.read(chunk)) >= 0) {
+					buffer.append(chunk, 0, length);
+					if (buffer.length() > threshold) {
+						File file = createSpillFile();
+						try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), charset)) {
+							writer.append(buffer);
+							buffer = null;
+							while ((length = reader.read(chunk)) >= 0) {
+								writer.write(chunk, 0, length);
+							}
+						}
+						request = file;
+						return;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			request = buffer.toString();
+		}
+	}
+
+	private File createSpillFile() throws IOException {
+		File file = createTemporaryFile();
+		spillFile = new SpillFile(file);
+		return file;
+	}
+
+	static File createTemporaryFile() throws IOException {
+		String directory = AppConstants.getInstance().getResolvedProperty("upload.dir");
+		File dir = StringUtils.isNotEmpty(directory) ? new File(directory) : null;
+		File file = File.createTempFile("msg", ".dat", dir != null && dir.isDirectory() ? dir : null);
+		file.deleteOnExit();
+		if (log.isDebugEnabled()) log.debug("spilling message to file ["+file.getPath()+"]");
+		return file;
+	}
+
+	public Reader asReader() throws IOException {
+		if (request == null) {
+			return null;
+		}
+		if (request instanceof Reader) {
+			return (Reader)request;
+		}
+		if (stringValue != null) {
+			return new StringReader(stringValue);
+		}
+		if (request instanceof String) {
+			return new StringReader((String)request);
+		}
+		return new InputStreamReader(asInputStream(), charset);
+	}
+
+	public InputStream asInputStream() throws IOException {
+		if (request == null) {
+			return null;
+		}
+		if (request instanceof InputStream) {
+			return (InputStream)request;
+		}
+		if (byteArrayValue != null) {
+			return new ByteArrayInputStream(byteArrayValue);
+		}
+		if (request instanceof byte[]) {
+			return new ByteArrayInputStream((byte[])request);
+		}
+		if (request instanceof File) {
+			return new FileInputStream((File)request);
+		}
+		if (request instanceof Reader) {
+			return new ReaderInputStream((Reader)request, charset);
+		}
+		return new ByteArrayInputStream(asByteArray());
+	}
+
+	public InputSource asInputSource() throws IOException {
+		if (request == null) {
+			return null;
+		}
+		if (request instanceof String || stringValue != null || request instanceof Reader) {
+			return new InputSource(asReader());
+		}
+		// let the parser detect the encoding from the xml declaration
+		return new InputSource(asInputStream());
+	}
+
+	/**
+	 * Returns the message as a byte array. Streams and files are read only once, the result is kept.
+	 */
+	public byte[] asByteArray() throws IOException {
+		if (request == null) {
+			return null;
+		}
+		if (request instanceof byte[]) {
+			return (byte[])request;
+		}
+		if (byteArrayValue == null) {
+			if (request instanceof String || stringValue != null) {
+				byteArrayValue = asString().getBytes(charset);
+			} else {
+				byteArrayValue = StreamUtil.streamToByteArray(asInputStream(), false);
+			}
+			releaseStream();
+		}
+		return byteArrayValue;
+	}
+
+	/**
+	 * Returns the message as a String. Streams and files are read and decoded only once, the result is kept.
+	 */
+	public String asString() throws IOException {
+		if (request == null) {
+			return null;
+		}
+		if (request instanceof String) {
+			return (String)request;
+		}
+		if (stringValue == null) {
+			if (byteArrayValue != null) {
+				stringValue = new String(byteArrayValue, charset);
+			} else if (request instanceof byte[]) {
+				stringValue = new String((byte[])request, charset);
+			} else {
+				stringValue = StreamUtil.readerToString(asReader(), null);
+			}
+			releaseStream();
+		}
+		return stringValue;
+	}
+
+	/*
+	 * Streams have been read completely after they are converted, they are replaced by the
+	 * converted value so they are not read again.
+	 */
+	private void releaseStream() {
+		if (request instanceof InputStream || request instanceof Reader) {
+			try {
+				closeStream(request);
+			} catch (IOException e) {
+				log.warn("cannot close stream", e);
+			}
+			request = stringValue != null ? (Object)stringValue : (Object)byteArrayValue;
+		}
+	}
+
+	private void closeStream(Object object) throws IOException {
+		if (object instanceof InputStream) {
+			((InputStream)object).close();
+		} else if (object instanceof Reader) {
+			((Reader)object).close();
+		}
+	}
+
+	/**
+	 * Closes the underlying stream, if any, and removes the file the message was spilled to when no other copy of the message uses it.
+	 */
+	public void close() throws IOException {
+		try {
+			closeStream(request);
+		} finally {
+			if (spillFile != null) {
+				spillFile.release();
+				spillFile = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns a description of the message for logging. The content is only included when it can be obtained
+	 * without reading a stream, as reading it here would consume the stream for the actual processing and would
+	 * hide read errors. Use {@link #asString()} to obtain the content.
+	 */
+	@Override
+	public String toString() {
+		if (request == null) {
+			return "null";
+		}
+		if (request instanceof String) {
+			return (String)request;
+		}
+		if (stringValue != null) {
+			return stringValue;
+		}
+		if (request instanceof byte[] || byteArrayValue != null) {
+			try {
+				return asString();
+			} catch (IOException e) {
+				log.warn("cannot decode message", e);
+			}
+		}
+		return "Message[" + request.getClass().getSimpleName() + (spillFile != null ? ", spilled" : "") + ", charset=" + charset + "]";
+	}
+}
@@ -0,0 +1,139 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.stream;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.log4j.Logger;
+
+import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.StreamUtil;
+
+/**
+ * Writer that collects a message in memory until it grows beyond a threshold, after which the
+ * message is written to a temporary file. This keeps the memory used to build large messages bounded.
+ * The result is obtained by {@link #getMessage()}.
+ *
+ * @since 7.5
+ */
+public class SpillingMessageWriter extends Writer {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private int threshold;
+	private StringBuilder buffer = new StringBuilder();
+	private File file;
+	private Writer fileWriter;
+	private boolean closed;
+
+	public SpillingMessageWriter() {
+		this(Message.getSpillThreshold());
+	}
+
+	/**
+	 * @param threshold number of characters kept in memory before the message is written to a file.
+	 */
+	public SpillingMessageWriter(int threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("writer is closed");
+		}
+		if (fileWriter != null) {
+			fileWriter.write(cbuf, off, len);
+			return;
+		}
+		buffer.append(cbuf, off, len);
+		if (buffer.length() > threshold) {
+			spill();
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("writer is closed");
+		}
+		if (fileWriter != null) {
+			fileWriter.write(str, off, len);
+			return;
+		}
+		buffer.append(str, off, off+len);
+		if (buffer.length() > threshold) {
+			spill();
+		}
+	}
+
+	private void spill() throws IOException {
+		file = Message.createTemporaryFile();
+		if (log.isDebugEnabled()) log.debug("message exceeds ["+threshold+"] characters, continuing in file ["+file.getPath()+"]");
+		fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StreamUtil.DEFAULT_INPUT_STREAM_ENCODING));
+		fileWriter.append(buffer);
+		buffer = null;
+	}
+
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (fileWriter != null) {
+			fileWriter.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			if (fileWriter != null) {
+				fileWriter.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes the writer and returns the message that was written. The temporary file, if any, is
+	 * removed when the message is closed.
+	 */
+	public Message getMessage() throws IOException {
+		close();
+		if (file != null) {
+			return Message.fromSpillFile(file, StreamUtil.DEFAULT_INPUT_STREAM_ENCODING);
+		}
+		return new Message(buffer.toString());
+	}
+
+	/**
+	 * Closes the writer and returns the message as a String when it was kept in memory, or as a {@link Message}
+	 * otherwise. This allows callers that normally produce a String to do so for small messages.
+	 */
+	public Object getResult() throws IOException {
+		close();
+		if (file != null) {
+			return getMessage();
+		}
+		return buffer.toString();
+	}
+}
@@ -39,6 +39,7 @@ public abstract class StreamingPipe extends FixedForwardPipe implements IOutputS
 	private boolean streamingActive=AppConstants.getInstance().getBoolean(AUTOMATIC_STREAMING, false);
 	
 	private List<IOutputStreamingSupport> streamTargets;
+	private boolean streamsToPipeLineExit;
 	
 	@Override
 	public void start() throws PipeStartException {
@@ -78,10 +79,11 @@ public abstract class StreamingPipe extends FixedForwardPipe implements IOutputS
 	@Override
 	public final PipeRunResult doPipe(Object input, IPipeLineSession session) throws PipeRunException {
 		List<IOutputStreamingSupport> streamTargets = getStreamTargets();
+		MessageOutputStream pipeLineOutputStream = getPipeLineOutputStream(session);
 		if (streamTargets!=null && streamTargets.size()>0) {
 			try {
 				log.debug(getLogPrefix(session)+"obtaining outputstream");
-				MessageOutputStream outputStream = getNextPipesOutputStream(streamTargets, session);
+				MessageOutputStream outputStream = getNextPipesOutputStream(streamTargets, session, pipeLineOutputStream);
 				log.debug(getLogPrefix(session)+"executing pipe with outputstream");
 				doPipe(input, session, outputStream);
 				PipeForward finalForward=getFinalForward(streamTargets);
@@ -90,12 +92,31 @@ public abstract class StreamingPipe extends FixedForwardPipe implements IOutputS
 			} catch (StreamingException e) {
 				throw new PipeRunException(this,"Streaming exception", e);
 			}
+		} else if (pipeLineOutputStream!=null) {
+			log.debug(getLogPrefix(session)+"executing pipe with outputstream of the caller of the pipeline");
+			doPipe(input, session, pipeLineOutputStream);
+			return new PipeRunResult(getForward(), pipeLineOutputStream.getResponse());
 		} else {
 			log.debug(getLogPrefix(session)+"cannot stream, streamingActive ["+isStreamingActive()+"]");
 			return doPipe(input, session, null);
 		}
 	}
 
+	/**
+	 * Returns the outputstream the caller of the pipeline provided in session key {@link IPipeLineSession#PIPELINE_OUTPUT_STREAM_KEY},
+	 * when the output of this pipe, possibly via its stream targets, is the result of the pipeline.
+	 */
+	private MessageOutputStream getPipeLineOutputStream(IPipeLineSession session) {
+		if (!streamsToPipeLineExit || !canStreamToTarget()) {
+			return null;
+		}
+		Object outputStream = session.get(IPipeLineSession.PIPELINE_OUTPUT_STREAM_KEY);
+		if (outputStream instanceof MessageOutputStream) {
+			return (MessageOutputStream)outputStream;
+		}
+		return null;
+	}
+
 	
 	/**
 	 * return a list of down stream {@link IOutputStreamingSupport}s, that can be used to set up the chain of targets.
@@ -126,6 +147,8 @@ public abstract class StreamingPipe extends FixedForwardPipe implements IOutputS
 				IPipe nextPipe=pipeline.getPipe(forwardPath);
 				if (nextPipe==null) {
 					log.debug("Pipeline ends here, streaming stops");
+					// the output is the result of the pipeline, unless the pipeline still has to validate or wrap it
+					streamsToPipeLineExit = pipeline.getPipeLineExits().containsKey(forwardPath) && pipeline.getOutputValidator()==null && pipeline.getOutputWrapper()==null;
 					break;
 				}
 				if (!(nextPipe instanceof IOutputStreamingSupport)) {
@@ -148,6 +171,7 @@ public abstract class StreamingPipe extends FixedForwardPipe implements IOutputS
 				if (nextPipe instanceof StreamingPipe) {
 					log.debug("attach streamTargets of nextPipe ["+forwardPath+"]");
 					myStreamTargets.addAll(((StreamingPipe)nextPipe).getStreamTargets());
+					streamsToPipeLineExit = ((StreamingPipe)nextPipe).streamsToPipeLineExit;
 					break;
 				}
 				// if next pipe is not a StreamingPipe, than add it's streaming targets manually
@@ -168,9 +192,9 @@ public abstract class StreamingPipe extends FixedForwardPipe implements IOutputS
 		return lastPipe.findForward(lastPipe.getForwardName());
 	}
 	
-	private MessageOutputStream getNextPipesOutputStream(List<IOutputStreamingSupport> streamTargets, IPipeLineSession session) throws StreamingException {
+	private MessageOutputStream getNextPipesOutputStream(List<IOutputStreamingSupport> streamTargets, IPipeLineSession session, MessageOutputStream pipeLineOutputStream) throws StreamingException {
 		String correlationID=session.getMessageId();
-		MessageOutputStream result=null;
+		MessageOutputStream result=pipeLineOutputStream;
 		for(int i=streamTargets.size()-1; i>=0; i--) {
 			result = streamTargets.get(i).provideOutputStream(correlationID, session, result);
 		}
@@ -15,13 +15,16 @@
 */
 package nl.nn.adapterframework.stream;
 
+import java.io.IOException;
+
+import nl.nn.adapterframework.core.IMessageSender;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.SenderWithParametersBase;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 
-public abstract class StreamingSenderBase extends SenderWithParametersBase implements IOutputStreamingSupport {
+public abstract class StreamingSenderBase extends SenderWithParametersBase implements IMessageSender, IOutputStreamingSupport {
 
 //	private final boolean TEST_STREAMING_VIA_SEND_MESSAGE=false;
 	
@@ -46,6 +49,27 @@ public abstract class StreamingSenderBase extends SenderWithParametersBase imple
 		return sendMessage(correlationID, message, prc, null);
 	}
 
+	/**
+	 * Sends a {@link Message}. The default implementation reads the message as a String and makes it the input of
+	 * the ParameterResolutionContext; senders that can consume the message as a stream override this method.
+	 */
+	public String sendMessage(String correlationID, Message message, ParameterResolutionContext prc, MessageOutputStream target) throws SenderException, TimeOutException {
+		try {
+			String input = message.asString();
+			if (prc!=null && prc.getInput()==null) {
+				prc.setInput(input);
+			}
+			return sendMessage(correlationID, input, prc, target);
+		} catch (IOException e) {
+			throw new SenderException(getLogPrefix()+"cannot read message", e);
+		}
+	}
+
+	@Override
+	public final String sendMessage(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+		return sendMessage(correlationID, message, prc, null);
+	}
+
 	@Override
 	public boolean canStreamToTarget() {
 		return true;
@@ -35,6 +35,7 @@ import nl.nn.adapterframework.extensions.esb.EsbJmsListener;
 import nl.nn.adapterframework.extensions.esb.EsbUtils;
 import nl.nn.adapterframework.jdbc.JdbcTransactionalStorage;
 import nl.nn.adapterframework.jms.PushingJmsListener;
+import nl.nn.adapterframework.monitoring.MonitorManager;
 import nl.nn.adapterframework.receivers.ReceiverBase;
 import nl.nn.adapterframework.scheduler.JobDef;
 import nl.nn.adapterframework.scheduler.SchedulerHelper;
@@ -107,6 +108,7 @@ public class DefaultIbisManager implements IbisManager {
         }
         unload((String)null);
         IbisCacheManager.shutdown();
+        MonitorManager.getInstance().shutdown();
     }
 
 	public void unload(String configurationName) {
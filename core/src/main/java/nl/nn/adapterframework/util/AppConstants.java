@@ -21,11 +21,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URL;
+import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.digester.substitution.VariableExpander;
 import org.apache.commons.io.FilenameUtils;
@@ -39,7 +46,14 @@ import nl.nn.adapterframework.configuration.IbisContext;
  * by the <code>propertiesFileName</code> field</p>
  * <p>If a property exits with the name <code>ADDITIONAL.PROPERTIES.FILE</code>
  * that file is loaded also</p>
-
+ * <p>Reads are served from an immutable snapshot that holds the resolved values of all properties,
+ * including the system properties that override them. The snapshot is created on the first read, and
+ * replaced after the properties are modified, so a lookup does not lock and does not resolve variables.
+ * System properties that are set afterwards only become visible after {@link #refresh()} is called, or
+ * after the properties are modified. As system properties are shared, {@link #refresh()} discards the snapshots
+ * of all instances.</p>
+ * <p>Instances for a ClassLoader are cached per ClassLoader, until the ClassLoader is reloaded.</p>
+ *
  * @author Johan Verrips
  *
  */
@@ -48,10 +62,15 @@ public final class AppConstants extends Properties implements Serializable{
 
 	private final static String APP_CONSTANTS_PROPERTIES_FILE = "AppConstants.properties";
 	private final static String ADDITIONAL_PROPERTIES_FILE_KEY = "ADDITIONAL.PROPERTIES.FILE";
-	private static AppConstants self = null;
+	private static volatile AppConstants self = null;
+	private static final Map<ClassLoader, AppConstants> classLoaderInstances = new WeakHashMap<ClassLoader, AppConstants>();
 	private VariableExpander variableExpander;
 	private static Properties additionalPropertiesFilesSubstVarsProperties = new Properties();
 	private static Properties propertyPlaceholderConfigurerProperties = new Properties();
+
+	private transient volatile Snapshot snapshot;
+	// incremented by refresh(), snapshots created before that are discarded by all instances
+	private static final AtomicInteger generation = new AtomicInteger();
 	
 	private AppConstants() {
 		super();
@@ -83,11 +102,17 @@ public final class AppConstants extends Properties implements Serializable{
 	 * Retrieve an instance of this singleton
 	 * @return AppConstants instance
 	 */
-	public static synchronized AppConstants getInstance() {
-		if (self==null) {
-			self=new AppConstants();
+	public static AppConstants getInstance() {
+		AppConstants instance = self;
+		if (instance==null) {
+			synchronized (AppConstants.class) {
+				if (self==null) {
+					self=new AppConstants();
+				}
+				instance = self;
+			}
 		}
-		return self;
+		return instance;
 	}
 
 	public static synchronized void removeInstance() {
@@ -95,6 +120,19 @@ public final class AppConstants extends Properties implements Serializable{
 			self.clear();
 			self=null;
 		}
+		synchronized (classLoaderInstances) {
+			classLoaderInstances.clear();
+		}
+	}
+
+	/**
+	 * Removes the cached instance of a ClassLoader, to have the properties loaded again when
+	 * the ClassLoader has been reloaded.
+	 */
+	public static void removeInstance(ClassLoader classLoader) {
+		synchronized (classLoaderInstances) {
+			classLoaderInstances.remove(classLoader);
+		}
 	}
 
 	/**
@@ -107,8 +145,15 @@ public final class AppConstants extends Properties implements Serializable{
 	 * @see IbisContext#init()
 	 * @return AppConstants instance
 	 */
-	public static synchronized AppConstants getInstance(ClassLoader classLoader) {
-		return new AppConstants(classLoader);
+	public static AppConstants getInstance(ClassLoader classLoader) {
+		synchronized (classLoaderInstances) {
+			AppConstants instance = classLoaderInstances.get(classLoader);
+			if (instance==null) {
+				instance = new AppConstants(classLoader);
+				classLoaderInstances.put(classLoader, instance);
+			}
+			return instance;
+		}
 	}
 
 	/**
@@ -154,17 +199,18 @@ public final class AppConstants extends Properties implements Serializable{
 	/**
 	 * the method is like the <code>Properties.getProperty</code>, but provides functionality to resolve <code>${variable}</code>
 	 * syntaxis. It uses the AppConstants values and systemvalues to resolve the variables, and does this recursively.
+	 * The value is taken from the snapshot of resolved values, see {@link AppConstants class description}.
 	 * @see nl.nn.adapterframework.util.StringResolver
 	 */
 	public String getResolvedProperty(String key) {
-		String value = null;
-        value=getSystemProperty(key); // first try custom properties
-        if (value==null) {
-			value = super.getProperty(key); // then try DeploymentSpecifics and appConstants
-        }
+		return getSnapshot().values.get(key);
+	}
+
+	private String resolveProperty(String key, Map<String, String> unresolvedView) {
+		String value = getRawProperty(key);
 		if (value != null) {
 			try {
-				String result=StringResolver.substVars(value, this);
+				String result=StringResolver.substVars(value, unresolvedView);
 				if (log.isTraceEnabled()) {
 					if (!value.equals(result)){
 						log.trace("resolved key ["+key+"], value ["+value+"] to ["+result+"]");
@@ -177,9 +223,133 @@ public final class AppConstants extends Properties implements Serializable{
 				return value;
 			}
 		} else {
-            if (log.isTraceEnabled()) log.trace("getResolvedProperty: key ["+key+"] resolved to value ["+value+"]");
-            return null;
-        }
+			if (log.isTraceEnabled()) log.trace("getResolvedProperty: key ["+key+"] resolved to value ["+value+"]");
+			return null;
+		}
+	}
+
+	private String getRawProperty(String key) {
+		String value=getSystemProperty(key); // first try custom properties
+		if (value==null) {
+			value = super.getProperty(key); // then try DeploymentSpecifics and appConstants
+		}
+		return value;
+	}
+
+	/**
+	 * Immutable set of resolved values, with the values of the typed getters cached after their first use.
+	 */
+	private static class Snapshot {
+		final int generation;
+		final Map<String, String> values;
+		final Map<String, Integer> ints = new ConcurrentHashMap<String, Integer>();
+		final Map<String, Long> longs = new ConcurrentHashMap<String, Long>();
+		final Map<String, Double> doubles = new ConcurrentHashMap<String, Double>();
+
+		Snapshot(int generation, Map<String, String> values) {
+			this.generation = generation;
+			this.values = values;
+		}
+
+		boolean isCurrent() {
+			return generation == AppConstants.generation.get();
+		}
+	}
+
+	/**
+	 * View on the unresolved values, used to resolve variables while the snapshot is created.
+	 * {@link StringResolver} resolves the variables in the values recursively.
+	 */
+	private class UnresolvedView extends AbstractMap<String, String> {
+		@Override
+		public String get(Object key) {
+			return key instanceof String ? getRawProperty((String)key) : null;
+		}
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			Map<String, String> rawValues = new HashMap<String, String>();
+			// keySet() is not overridden, it does not resolve values like get() does
+			for (Object key : AppConstants.this.keySet()) {
+				if (key instanceof String) {
+					rawValues.put((String)key, getRawProperty((String)key));
+				}
+			}
+			try {
+				for (String key : System.getProperties().stringPropertyNames()) {
+					rawValues.put(key, getRawProperty(key));
+				}
+			} catch (Throwable e) {
+				log.warn("Was not allowed to read system properties: "+ e.getMessage());
+			}
+			return Collections.unmodifiableMap(rawValues).entrySet();
+		}
+	}
+
+	private Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		if (current == null || !current.isCurrent()) {
+			current = createSnapshot();
+		}
+		return current;
+	}
+
+	private synchronized Snapshot createSnapshot() {
+		if (snapshot == null || !snapshot.isCurrent()) {
+			int currentGeneration = generation.get();
+			Map<String, String> values = new HashMap<String, String>();
+			Map<String, String> unresolvedView = new UnresolvedView();
+			Properties systemProperties = null;
+			try {
+				systemProperties = System.getProperties();
+			} catch (Throwable e) {
+				log.warn("Was not allowed to read system properties: "+ e.getMessage());
+			}
+			if (systemProperties != null) {
+				for (String key : systemProperties.stringPropertyNames()) {
+					values.put(key, resolveProperty(key, unresolvedView));
+				}
+			}
+			for (Object key : keySet()) {
+				if (key instanceof String && !values.containsKey(key)) {
+					values.put((String)key, resolveProperty((String)key, unresolvedView));
+				}
+			}
+			snapshot = new Snapshot(currentGeneration, Collections.unmodifiableMap(values));
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Discards the snapshots of resolved values of all instances, to have them created again on the next read.
+	 * Must be called after system properties have been set, that are used by AppConstants.
+	 */
+	public void refresh() {
+		generation.incrementAndGet();
+		snapshot = null;
+	}
+
+	@Override
+	public synchronized Object put(Object key, Object value) {
+		try {
+			return super.put(key, value);
+		} finally {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public synchronized Object remove(Object key) {
+		try {
+			return super.remove(key);
+		} finally {
+			snapshot = null;
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		super.clear();
+		snapshot = null;
 	}
 
 	/**
@@ -333,8 +503,13 @@ public final class AppConstants extends Properties implements Serializable{
 	 * of IbisContext.
 	 */
 	public void putPropertyPlaceholderConfigurerProperty(String name, String value) {
-		self.put(name, value);
+		getInstance().put(name, value);
 		propertyPlaceholderConfigurerProperties.put(name, value);
+		synchronized (classLoaderInstances) {
+			for (AppConstants instance : classLoaderInstances.values()) {
+				instance.put(name, value);
+			}
+		}
 	}
 
 	public String toXml() {
@@ -399,11 +574,16 @@ public final class AppConstants extends Properties implements Serializable{
 	 * @return int
 	 */
 	public int getInt(String key, int dfault) {
-		 String ob = this.getResolvedProperty(key);
-
-		 if (ob == null) return dfault;
-		 return Integer.parseInt(ob);
-	 }
+		Snapshot current = getSnapshot();
+		Integer result = current.ints.get(key);
+		if (result == null) {
+			String ob = current.values.get(key);
+			if (ob == null) return dfault;
+			result = Integer.valueOf(ob);
+			current.ints.put(key, result);
+		}
+		return result;
+	}
 
 	/**
 	 * Gets a <code>long</code> value
@@ -412,12 +592,17 @@ public final class AppConstants extends Properties implements Serializable{
 	 * @param dfault the default value
 	 * @return long
 	 */
-	 public long getLong(String key, long dfault) {
-		 String ob = this.getResolvedProperty(key);
-
-		 if (ob == null)return dfault;
-		 return Long.parseLong(ob);
-	 }
+	public long getLong(String key, long dfault) {
+		Snapshot current = getSnapshot();
+		Long result = current.longs.get(key);
+		if (result == null) {
+			String ob = current.values.get(key);
+			if (ob == null) return dfault;
+			result = Long.valueOf(ob);
+			current.longs.put(key, result);
+		}
+		return result;
+	}
 
 	/**
 	 * Gets a <code>double</code> value
@@ -426,11 +611,17 @@ public final class AppConstants extends Properties implements Serializable{
 	 * @param dfault the default value
 	 * @return double
 	 */
-	 public double getDouble(String key, double dfault) {
-		 String ob = this.getResolvedProperty(key);
-		 if (ob == null)return dfault;
-		 return Double.parseDouble(ob);
-	 }
+	public double getDouble(String key, double dfault) {
+		Snapshot current = getSnapshot();
+		Double result = current.doubles.get(key);
+		if (result == null) {
+			String ob = current.values.get(key);
+			if (ob == null) return dfault;
+			result = Double.valueOf(ob);
+			current.doubles.put(key, result);
+		}
+		return result;
+	}
 
 
 	/*
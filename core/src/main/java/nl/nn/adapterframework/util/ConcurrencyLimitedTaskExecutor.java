@@ -0,0 +1,77 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.util.concurrent.Semaphore;
+
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+/**
+ * Limits the number of tasks that are executed at the same time by a shared {@link TaskExecutor}.
+ * {@link #execute(Runnable)} blocks until one of the running tasks has finished when the limit has been reached.
+ * No threads are created by this class, so it can be created for every message at little cost.
+ *
+ * @since 7.5
+ */
+public class ConcurrencyLimitedTaskExecutor implements TaskExecutor {
+
+	private TaskExecutor delegate;
+	private Semaphore permits;
+
+	public ConcurrencyLimitedTaskExecutor(TaskExecutor delegate, int concurrencyLimit) {
+		this.delegate = delegate;
+		this.permits = new Semaphore(concurrencyLimit);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TaskRejectedException("interrupted while waiting for a running task to finish", e);
+		}
+		LimitedTask limitedTask = new LimitedTask(task);
+		try {
+			delegate.execute(limitedTask);
+		} catch (RuntimeException e) {
+			if (!limitedTask.started) {
+				permits.release();
+			}
+			throw e;
+		}
+	}
+
+	private class LimitedTask implements Runnable {
+		private Runnable task;
+		private volatile boolean started;
+
+		LimitedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			started = true;
+			try {
+				task.run();
+			} finally {
+				permits.release();
+			}
+		}
+	}
+}
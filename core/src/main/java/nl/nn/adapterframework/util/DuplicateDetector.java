@@ -0,0 +1,211 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps track of the items seen so far, to detect duplicates.
+ *
+ * Up to <code>maxItemsInMemory</code> items are kept in memory. When more items are added, the items
+ * are moved to a file on disk, and only a hash index of them is kept in memory: a 64 bit hash and the
+ * position in the file of each item, 16 to 32 bytes per item regardless of the size of the items. An item
+ * is read from the file only when an item with the same hash has been seen before, so checking an item
+ * takes a constant time, and the result is always exact.
+ *
+ * Call {@link #close()} to remove the file.
+ *
+ * @since 7.5
+ */
+public class DuplicateDetector {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private static final int INITIAL_INDEX_CAPACITY = 1<<16;
+
+	private int maxItemsInMemory;
+	private Set<String> items = new HashSet<String>();
+
+	private File file;
+	private DataOutputStream output;
+	private RandomAccessFile input;
+	private long fileSize;
+	private long itemsRead;
+
+	// open addressing hash table, positions are stored plus one so that 0 marks an empty slot
+	private long[] indexHashes;
+	private long[] indexPositions;
+	private int indexSize;
+
+	public DuplicateDetector(int maxItemsInMemory) {
+		this.maxItemsInMemory = maxItemsInMemory;
+	}
+
+	/**
+	 * Registers the item, and returns <code>true</code> if it had been registered before.
+	 */
+	public boolean isDuplicate(String item) throws IOException {
+		if (file == null) {
+			if (!items.add(item)) {
+				return true;
+			}
+			if (items.size() > maxItemsInMemory) {
+				spill();
+			}
+			return false;
+		}
+		long hash = hash(item);
+		int slot = slot(hash, indexHashes.length);
+		while (indexPositions[slot] != 0) {
+			if (indexHashes[slot] == hash && item.equals(readItem(indexPositions[slot] - 1))) {
+				return true;
+			}
+			slot = (slot + 1) & (indexHashes.length - 1);
+		}
+		store(hash, item, slot);
+		return false;
+	}
+
+	private void spill() throws IOException {
+		if (log.isDebugEnabled()) log.debug("more than ["+maxItemsInMemory+"] items, moving items to disk");
+		file = FileUtils.createTempFile("dup", ".dat");
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		int capacity = INITIAL_INDEX_CAPACITY;
+		while (capacity < items.size() * 2) {
+			capacity <<= 1;
+		}
+		indexHashes = new long[capacity];
+		indexPositions = new long[capacity];
+		for (String item:items) {
+			long hash = hash(item);
+			store(hash, item, freeSlot(hash));
+		}
+		items = null;
+	}
+
+	private void store(long hash, String item, int slot) throws IOException {
+		indexHashes[slot] = hash;
+		indexPositions[slot] = fileSize + 1;
+		indexSize++;
+		fileSize += writeItem(output, item);
+		if (indexSize * 2 > indexHashes.length) {
+			growIndex();
+		}
+	}
+
+	private int freeSlot(long hash) {
+		int slot = slot(hash, indexHashes.length);
+		while (indexPositions[slot] != 0) {
+			slot = (slot + 1) & (indexHashes.length - 1);
+		}
+		return slot;
+	}
+
+	private void growIndex() {
+		long[] hashes = indexHashes;
+		long[] positions = indexPositions;
+		indexHashes = new long[hashes.length * 2];
+		indexPositions = new long[positions.length * 2];
+		for (int i=0; i<hashes.length; i++) {
+			if (positions[i] != 0) {
+				int slot = freeSlot(hashes[i]);
+				indexHashes[slot] = hashes[i];
+				indexPositions[slot] = positions[i];
+			}
+		}
+	}
+
+	private int slot(long hash, int capacity) {
+		return (int)(hash ^ (hash >>> 32)) & (capacity - 1);
+	}
+
+	/*
+	 * DataOutput.writeUTF is limited to 64k, items are written as length and UTF-8 bytes.
+	 */
+	private int writeItem(DataOutputStream out, String item) throws IOException {
+		byte[] bytes = item.getBytes(StreamUtil.DEFAULT_INPUT_STREAM_ENCODING);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		return 4 + bytes.length;
+	}
+
+	private String readItem(long position) throws IOException {
+		output.flush();
+		if (input == null) {
+			input = new RandomAccessFile(file, "r");
+		}
+		itemsRead++;
+		input.seek(position);
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes, StreamUtil.DEFAULT_INPUT_STREAM_ENCODING);
+	}
+
+	/*
+	 * 64 bit FNV-1a hash.
+	 */
+	long hash(String item) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i=0; i<item.length(); i++) {
+			hash ^= item.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	/**
+	 * Returns the number of items read back from disk to compare them with a new item.
+	 */
+	long getItemsRead() {
+		return itemsRead;
+	}
+
+	public void close() {
+		if (file != null) {
+			try {
+				output.close();
+			} catch (IOException e) {
+				log.warn("could not close file ["+file.getPath()+"]", e);
+			}
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					log.warn("could not close file ["+file.getPath()+"]", e);
+				}
+			}
+			if (!file.delete()) {
+				log.warn("could not delete file ["+file.getPath()+"]");
+			}
+			file = null;
+		}
+		items = null;
+		indexHashes = null;
+		indexPositions = null;
+	}
+}
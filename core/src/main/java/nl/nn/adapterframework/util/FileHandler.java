@@ -44,6 +44,7 @@ import nl.nn.adapterframework.parameters.ParameterValue;
 import nl.nn.adapterframework.parameters.ParameterValueList;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 
@@ -164,35 +165,51 @@ public class FileHandler {
 //		return handle(input, session, null);
 //	}
 	
+	/**
+	 * Executes the actions one after the other. An action passes a stream to the next action when the next action
+	 * accepts one, or to the caller when it is the last action and outputType is <code>stream</code>, so that e.g.
+	 * <code>read,encode</code> and <code>read,write</code> do not read the whole file into memory.
+	 */
 	public Object handle(Object input, IPipeLineSession session, ParameterList paramList) throws Exception {
 		Object output = null;
-		if (input instanceof byte[]) {
-			output = (byte[])input;
-		} else if (input instanceof InputStream) {
-			if (transformers.get(0) instanceof TransformerActionWithInputTypeStream) {
-				output = input;
-			} else {
-				output = Misc.streamToBytes((InputStream)input);
-			}
+		if (input instanceof byte[] || input instanceof InputStream) {
+			output = input;
 		} else {
 			output = (input == null) ? null : input.toString().getBytes(charset);
 		}
-		for (Iterator it = transformers.iterator(); it.hasNext(); ) {
-			TransformerAction transformerAction = (TransformerAction)it.next();
-			if (!it.hasNext() && "stream".equals(outputType)) {
-				if (transformerAction instanceof TransformerActionWithOutputTypeStream) {
-					output = ((TransformerActionWithOutputTypeStream)transformerAction).go((byte[])output, session, paramList, "stream");
+		for (int i = 0; i < transformers.size(); i++) {
+			TransformerAction transformerAction = (TransformerAction)transformers.get(i);
+			boolean streamOutput;
+			if (i < transformers.size() - 1) {
+				streamOutput = transformers.get(i + 1) instanceof TransformerActionWithInputTypeStream;
+			} else {
+				streamOutput = "stream".equals(outputType);
+			}
+			if (output instanceof InputStream && !(transformerAction instanceof TransformerActionWithInputTypeStream)) {
+				InputStream inputStream = (InputStream)output;
+				try {
+					output = Misc.streamToBytes(inputStream);
+				} finally {
+					inputStream.close();
+				}
+			}
+			if (output instanceof InputStream) {
+				if (streamOutput && transformerAction instanceof TransformerActionWithInputAndOutputTypeStream) {
+					output = ((TransformerActionWithInputAndOutputTypeStream)transformerAction).go((InputStream)output, session, paramList, "stream");
 				} else {
-					output = new ByteArrayInputStream(transformerAction.go((byte[])output, session, paramList));
+					output = ((TransformerActionWithInputTypeStream)transformerAction).go((InputStream)output, session, paramList);
 				}
 			} else {
-				if (output instanceof InputStream) {
-					output = ((TransformerActionWithInputTypeStream)transformerAction).go((InputStream)output, session, paramList);
+				if (streamOutput && transformerAction instanceof TransformerActionWithOutputTypeStream) {
+					output = ((TransformerActionWithOutputTypeStream)transformerAction).go((byte[])output, session, paramList, "stream");
 				} else {
 					output = transformerAction.go((byte[])output, session, paramList);
 				}
 			}
 		}
+		if ("stream".equals(outputType) && output instanceof byte[]) {
+			output = new ByteArrayInputStream((byte[])output);
+		}
 		if (output == null || "bytes".equals(outputType) || "base64".equals(outputType) || "stream".equals(outputType)) {
 			if ("stream".equals(outputType) && isStreamResultToServlet()) {
 				InputStream inputStream = (InputStream) output;
@@ -245,25 +262,51 @@ public class FileHandler {
 	protected interface TransformerActionWithOutputTypeStream extends TransformerAction {
 		InputStream go(byte[] in, IPipeLineSession session, ParameterList paramList, String outputType) throws Exception;
 	}
+
+	protected interface TransformerActionWithInputAndOutputTypeStream extends TransformerActionWithInputTypeStream {
+		InputStream go(InputStream in, IPipeLineSession session, ParameterList paramList, String outputType) throws Exception;
+	}
 	
 	/**
-	 * Encodes the input 
+	 * Encodes the input. Streamed input is encoded while it is read.
 	 */
-	private class Encoder implements TransformerAction {
+	private class Encoder implements TransformerActionWithInputAndOutputTypeStream {
 		public void configure() {}
 		public byte[] go(byte[] in, IPipeLineSession session, ParameterList paramList) throws Exception {
 			return Base64.encodeBase64(in);
 		}
+		public byte[] go(InputStream in, IPipeLineSession session, ParameterList paramList) throws Exception {
+			InputStream encoded = go(in, session, paramList, "stream");
+			try {
+				return Misc.streamToBytes(encoded);
+			} finally {
+				encoded.close();
+			}
+		}
+		public InputStream go(InputStream in, IPipeLineSession session, ParameterList paramList, String outputType) throws Exception {
+			return new Base64InputStream(in, true, 0, null);
+		}
 	}
 	
 	/**
-	 * Decodes the input
+	 * Decodes the input. Streamed input is decoded while it is read.
 	 */
-	private class Decoder implements TransformerAction {
+	private class Decoder implements TransformerActionWithInputAndOutputTypeStream {
 		public void configure() {}
 		public byte[] go(byte[] in, IPipeLineSession session, ParameterList paramList) throws Exception {
 			return Base64.decodeBase64(in == null ? null : new String(in));
 		}
+		public byte[] go(InputStream in, IPipeLineSession session, ParameterList paramList) throws Exception {
+			InputStream decoded = go(in, session, paramList, "stream");
+			try {
+				return Misc.streamToBytes(decoded);
+			} finally {
+				decoded.close();
+			}
+		}
+		public InputStream go(InputStream in, IPipeLineSession session, ParameterList paramList, String outputType) throws Exception {
+			return new Base64InputStream(in, false);
+		}
 	}
 
 	private String getEffectiveFileName(byte[] in, IPipeLineSession session) {
@@ -448,9 +491,7 @@ public class FileHandler {
 			InputStream inputStream =
 					getSkipBomAndDeleteFileAfterReadInputStream(in, session);
 			try {
-				byte[] result = new byte[inputStream.available()];
-				inputStream.read(result);
-				return result;
+				return Misc.streamToBytes(inputStream);
 			} finally {
 				inputStream.close();
 			}
@@ -54,6 +54,7 @@ import javax.jms.TextMessage;
 import nl.nn.adapterframework.core.IMessageWrapper;
 import nl.nn.adapterframework.jdbc.JdbcException;
 import nl.nn.adapterframework.jdbc.JdbcFacade;
+import nl.nn.adapterframework.jdbc.MessageBlobFormat;
 import nl.nn.adapterframework.jdbc.dbms.IDbmsSupport;
 import nl.nn.adapterframework.jms.JmsRealmFactory;
 import nl.nn.adapterframework.parameters.Parameter;
@@ -347,6 +348,21 @@ public class JdbcUtil {
 			byte[] buf = new byte[bl];
 			int bl1 = is.read(buf);
 
+			if (MessageBlobFormat.isEncoded(buf)) {
+				Object result = MessageBlobFormat.decode(buf);
+				String rawMessage;
+				if (result instanceof byte[]) {
+					rawMessage = new String((byte[])result, charset!=null ? charset : Misc.DEFAULT_INPUT_STREAM_ENCODING);
+				} else if (result instanceof IMessageWrapper) {
+					rawMessage = ((IMessageWrapper)result).getText();
+				} else if (result instanceof TextMessage) {
+					rawMessage = ((TextMessage)result).getText();
+				} else {
+					rawMessage = (String)result;
+				}
+				return XmlUtils.encodeCdataString(rawMessage);
+			}
+
 			Inflater decompressor = new Inflater();
 			decompressor.setInput(buf);
 			ByteArrayOutputStream bos = new ByteArrayOutputStream(buf.length);
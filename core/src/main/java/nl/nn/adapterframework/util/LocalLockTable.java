@@ -0,0 +1,100 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * In-JVM table of the locks held by {@link Locker}s, keyed by objectId.
+ * <p>
+ * Acquiring a free lock and releasing a lock without waiters only update a {@link ConcurrentHashMap}.
+ * Threads that have to wait for a lock wait on one of a fixed number of monitors (stripes), and are
+ * notified when a lock of that stripe is released.
+ *
+ * @since 7.5
+ */
+class LocalLockTable {
+
+	private static final int STRIPES = 64;
+
+	private final ConcurrentMap<String, Object> owners = new ConcurrentHashMap<String, Object>();
+	private final Object[] stripes = new Object[STRIPES];
+	private final AtomicIntegerArray waiters = new AtomicIntegerArray(STRIPES);
+
+	LocalLockTable() {
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Object();
+		}
+	}
+
+	private int stripe(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return h & (STRIPES - 1);
+	}
+
+	/**
+	 * Tries to acquire the lock on <code>key</code> for <code>owner</code>, waiting at most <code>timeout</code> ms.
+	 * @return <code>true</code> when the lock is acquired
+	 */
+	boolean tryLock(String key, Object owner, long timeout) throws InterruptedException {
+		if (owners.putIfAbsent(key, owner) == null) {
+			return true;
+		}
+		if (timeout <= 0) {
+			return false;
+		}
+		int i = stripe(key);
+		Object monitor = stripes[i];
+		long deadline = System.currentTimeMillis() + timeout;
+		waiters.incrementAndGet(i);
+		try {
+			synchronized (monitor) {
+				while (owners.putIfAbsent(key, owner) != null) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						return false;
+					}
+					monitor.wait(remaining);
+				}
+				return true;
+			}
+		} finally {
+			waiters.decrementAndGet(i);
+		}
+	}
+
+	/**
+	 * Releases the lock on <code>key</code>, when it is held by <code>owner</code>.
+	 */
+	void unlock(String key, Object owner) {
+		if (owners.remove(key, owner)) {
+			int i = stripe(key);
+			if (waiters.get(i) > 0) {
+				Object monitor = stripes[i];
+				synchronized (monitor) {
+					monitor.notifyAll();
+				}
+			}
+		}
+	}
+
+	boolean isLocked(String key) {
+		return owners.containsKey(key);
+	}
+}
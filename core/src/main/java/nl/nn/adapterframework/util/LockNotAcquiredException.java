@@ -0,0 +1,33 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import nl.nn.adapterframework.jdbc.JdbcException;
+
+/**
+ * Thrown by {@link Locker#lock()} when the lock is held by another thread of this node, and could not be
+ * acquired within the configured retries.
+ *
+ * @since 7.5
+ */
+public class LockNotAcquiredException extends JdbcException {
+
+	private static final long serialVersionUID = 1L;
+
+	public LockNotAcquiredException(String message) {
+		super(message);
+	}
+}
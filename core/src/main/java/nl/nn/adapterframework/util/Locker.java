@@ -17,16 +17,27 @@ package nl.nn.adapterframework.util;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.configuration.ConfigurationWarnings;
+import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.jdbc.JdbcException;
 import nl.nn.adapterframework.jdbc.JdbcFacade;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.util.Misc;
 
 import org.apache.commons.lang.StringUtils;
@@ -36,6 +47,20 @@ import org.apache.commons.lang.StringUtils;
  *
  * Tries to set a lock (by inserting a record in the database table IbisLock) and only if this is done
  * successfully the job is executed.
+ * <p>
+ * When <code>localLocking</code> is set, locks are set in two tiers. First a lock is acquired in a table in memory,
+ * shared by all lockers of this node that use the same datasource. Threads of the same node that want the same lock
+ * wait for it in memory, and are notified when it is released, instead of polling the database. Only the thread that
+ * holds the lock in memory inserts the record in the database, for exclusion between nodes.
+ * <p>
+ * When <code>leaseDuration</code> is set, the record of a temporary lock is a lease: its expiryDate is
+ * <code>leaseDuration</code> ms ahead, and is renewed in the background while the lock is held. A lease that has
+ * expired, because its node stopped or could not reach the database, is taken over by the next node that wants
+ * the lock, without waiting for the cleanup of the database. The FENCINGTOKEN column of the lease holds a fencing
+ * token: it is higher for every next holder of the lock, and renewing and removing a lease only succeeds for the
+ * holder with the token in the database. When a lease is lost, unlock() throws an exception. The tokens are taken
+ * from a counter in the record with objectId <code>*fencingToken*</code>. That record has no expiryDate, so it is
+ * not removed by the cleanup of the database, and the tokens do not depend on the clocks of the nodes.
  * 
  * For an Oracle database the following objects are used:
  *  <pre>
@@ -45,7 +70,8 @@ import org.apache.commons.lang.StringUtils;
 	TYPE CHAR(1 CHAR),
 	HOST VARCHAR2(100 CHAR),
 	CREATIONDATE TIMESTAMP(6),
-	EXPIRYDATE TIMESTAMP(6)
+	EXPIRYDATE TIMESTAMP(6),
+	FENCINGTOKEN NUMBER(19),
 	CONSTRAINT PK_IBISLOCK PRIMARY KEY (OBJECTID)
 	);
 
@@ -60,8 +86,14 @@ import org.apache.commons.lang.StringUtils;
  * 
  * @author  Peter Leeuwenburgh
  */
-public class Locker extends JdbcFacade {
+public class Locker extends JdbcFacade implements HasStatistics {
 	private static final String LOCK_IGNORED="%null%";
+	private static final String FENCING_TOKEN_COUNTER="*fencingToken*";
+	private static final int MAX_FENCING_TOKEN_ATTEMPTS=100;
+
+	private static final LocalLockTable LOCAL_LOCKS = new LocalLockTable();
+	private static Timer leaseRenewalTimer;
+	private static int activeRenewals = 0;
 
 	private String name;
 	private String objectId;
@@ -70,11 +102,54 @@ public class Locker extends JdbcFacade {
 	private int retention = -1;
 	private String insertQuery = "INSERT INTO ibisLock (objectId, type, host, creationDate, expiryDate) VALUES (?, ?, ?, ?, ?)";
 	private String deleteQuery = "DELETE FROM ibisLock WHERE objectId=?";
+	private String leaseInsertQuery = "INSERT INTO ibisLock (objectId, type, host, creationDate, expiryDate, fencingToken) VALUES (?, ?, ?, ?, ?, ?)";
+	private String expiredLeaseQuery = "SELECT fencingToken FROM ibisLock WHERE objectId=? AND expiryDate<?";
+	private String takeOverQuery = "UPDATE ibisLock SET type=?, host=?, creationDate=?, expiryDate=?, fencingToken=? WHERE objectId=? AND expiryDate<? AND COALESCE(fencingToken,0)=?";
+	private String renewQuery = "UPDATE ibisLock SET expiryDate=? WHERE objectId=? AND fencingToken=?";
+	private String leaseDeleteQuery = "DELETE FROM ibisLock WHERE objectId=? AND fencingToken=?";
+	private String fencingTokenCounterQuery = "SELECT fencingToken FROM ibisLock WHERE objectId=?";
+	private String fencingTokenCounterInsertQuery = "INSERT INTO ibisLock (objectId, type, host, creationDate, fencingToken) VALUES (?, ?, ?, ?, ?)";
+	private String fencingTokenCounterUpdateQuery = "UPDATE ibisLock SET fencingToken=? WHERE objectId=? AND fencingToken=?";
+	private String maxFencingTokenQuery = "SELECT MAX(fencingToken) FROM ibisLock";
 	private SimpleDateFormat formatter;
 	private int numRetries = 0;
 	private int firstDelay = 10000;
 	private int retryDelay = 10000;
 	private boolean ignoreTableNotExist = false;
+	private boolean localLocking = false;
+	private int leaseDuration = 0;
+	private String fencingTokenSessionKey;
+
+	private volatile boolean tablePresent = false;
+	private final Map<String, HeldLock> heldLocks = new ConcurrentHashMap<String, HeldLock>();
+
+	private final StatisticsKeeper waitStatistics = new StatisticsKeeper("wait for lock");
+	private final AtomicLong locksAcquired = new AtomicLong();
+	private final AtomicLong localContentions = new AtomicLong();
+	private final AtomicLong databaseContentions = new AtomicLong();
+	private final AtomicLong leasesTakenOver = new AtomicLong();
+	private final AtomicLong leasesRenewed = new AtomicLong();
+	private final AtomicLong leasesLost = new AtomicLong();
+
+	/**
+	 * A lock held by this locker. Is also the owner of the lock in the {@link LocalLockTable}.
+	 */
+	private class HeldLock {
+		final String objectIdWithSuffix;
+		final String localLockKey;
+		final Timestamp creationDate;
+		long fencingToken = -1;
+		volatile long expiryTime;
+		volatile boolean lost;
+		TimerTask renewal;
+
+		HeldLock(String objectIdWithSuffix, Date date) {
+			this.objectIdWithSuffix = objectIdWithSuffix;
+			// lockers of different datasources do not exclude each other in the database, nor should they in memory
+			this.localLockKey = StringUtils.defaultString(getDatasourceName())+"|"+objectIdWithSuffix;
+			this.creationDate = new Timestamp(date.getTime());
+		}
+	}
 
 	public void configure() throws ConfigurationException {
 		if (StringUtils.isEmpty(getObjectId())) {
@@ -97,19 +172,37 @@ public class Locker extends JdbcFacade {
 				retention = 30;
 			}
 		}
+		if (getLeaseDuration()<0) {
+			throw new ConfigurationException(getLogPrefix()+"leaseDuration ["+getLeaseDuration()+"] must not be negative");
+		}
+		if (getLeaseDuration()>0 && !getType().equalsIgnoreCase("T")) {
+			ConfigurationWarnings.getInstance().add(log, getLogPrefix()+"leaseDuration is only used for locks of type 'T', ignoring it");
+			setLeaseDuration(0);
+		}
 	}
 
-	public String lock() throws JdbcException, SQLException, InterruptedException {
+	private boolean isLeased() {
+		return getLeaseDuration()>0;
+	}
+
+	/**
+	 * Checks once whether the table exists, to avoid a database round trip for every lock.
+	 */
+	private boolean checkTablePresent() throws JdbcException {
+		if (tablePresent) {
+			return true;
+		}
 		Connection conn = getConnection();
 		try {
-			if (!getDbmsSupport().isTablePresent(conn, "ibisLock")) {
-				if (isIgnoreTableNotExist()) {
-					log.info("table [ibisLock] does not exist, ignoring lock");
-					return LOCK_IGNORED;
-				} else {
-					throw new JdbcException("table [ibisLock] does not exist");
-				}
+			if (getDbmsSupport().isTablePresent(conn, "ibisLock")) {
+				tablePresent = true;
+				return true;
 			}
+			if (isIgnoreTableNotExist()) {
+				log.info("table [ibisLock] does not exist, ignoring lock");
+				return false;
+			}
+			throw new JdbcException("table [ibisLock] does not exist");
 		} finally {
 			try {
 				conn.close();
@@ -117,76 +210,378 @@ public class Locker extends JdbcFacade {
 				log.error("error closing JdbcConnection", e);
 			}
 		}
-		
+	}
+
+	public String lock() throws JdbcException, SQLException, InterruptedException {
+		if (!checkTablePresent()) {
+			return LOCK_IGNORED;
+		}
+
 		String objectIdWithSuffix = null;
+		HeldLock heldLock = null;
+		boolean waitedInMemory = false;
+		long startTime = 0;
 		int r = -1;
 		while (objectIdWithSuffix == null && (numRetries == -1 || r < numRetries)) {
 			r++;
 			if (r == 0 && firstDelay > 0) {
 				Thread.sleep(firstDelay);
 			}
-			if (r > 0) {
+			if (r == 0) {
+				startTime = System.currentTimeMillis();
+			}
+			if (r > 0 && !waitedInMemory) {
 				Thread.sleep(retryDelay);
 			}
+			boolean willRetry = numRetries == -1 || r < numRetries;
 			Date date = new Date();
-			objectIdWithSuffix = getObjectId();
+			String candidate = getObjectId();
 			if (StringUtils.isNotEmpty(getDateFormatSuffix())) {
 				String formattedDate = formatter.format(date);
-				objectIdWithSuffix = objectIdWithSuffix.concat(formattedDate);
+				candidate = candidate.concat(formattedDate);
 			}
-			log.debug("preparing to set lock [" + objectIdWithSuffix + "]");
-			conn = getConnection();
-			try {
-				PreparedStatement stmt = conn.prepareStatement(insertQuery);			
-				stmt.clearParameters();
-				stmt.setString(1,objectIdWithSuffix);
-				stmt.setString(2,getType());
-				stmt.setString(3,Misc.getHostname());
-				stmt.setTimestamp(4, new Timestamp(date.getTime()));
-				Calendar cal = Calendar.getInstance();
-				cal.setTime(date);
-				if (getType().equalsIgnoreCase("T")) {
-					cal.add(Calendar.HOUR_OF_DAY, getRetention());
-				} else {
-					cal.add(Calendar.DAY_OF_MONTH, getRetention());
+			heldLock = new HeldLock(candidate, date);
+			// a thread of this node that waits for the lock, waits in memory instead of sleeping retryDelay 
+			waitedInMemory = false;
+			if (isLocalLocking() && !LOCAL_LOCKS.tryLock(heldLock.localLockKey, heldLock, willRetry ? retryDelay : 0)) {
+				localContentions.incrementAndGet();
+				if (willRetry) {
+					log.debug(getLogPrefix()+"lock ["+candidate+"] is held by another thread of this node, will try again");
+					waitedInMemory = true;
+					continue;
 				}
-				stmt.setTimestamp(5, new Timestamp(cal.getTime().getTime()));
-				stmt.executeUpdate();
+				throw new LockNotAcquiredException(getLogPrefix()+"lock ["+candidate+"] is held by another thread of this node");
+			}
+			log.debug("preparing to set lock [" + candidate + "]");
+			try {
+				setDatabaseLock(heldLock, date);
+				objectIdWithSuffix = candidate;
 				log.debug("lock ["+objectIdWithSuffix+"] set");
 			} catch (SQLException e) {
+				databaseContentions.incrementAndGet();
 				log.debug(getLogPrefix()+"error executing insert query (as part of locker): " + e.getMessage());
-				if (numRetries == -1 || r < numRetries) {
+				if (willRetry) {
 					log.debug(getLogPrefix()+"will try again");
-					objectIdWithSuffix = null;
 				} else {
 					log.debug(getLogPrefix()+"will not try again");
 					throw e;
 				}
 			} finally {
+				if (objectIdWithSuffix == null && isLocalLocking()) {
+					LOCAL_LOCKS.unlock(heldLock.localLockKey, heldLock);
+				}
+			}
+		}
+		if (objectIdWithSuffix != null) {
+			heldLocks.put(objectIdWithSuffix, heldLock);
+			if (isLeased()) {
+				scheduleRenewal(heldLock);
+			}
+			locksAcquired.incrementAndGet();
+			synchronized (waitStatistics) {
+				waitStatistics.addValue(System.currentTimeMillis() - startTime);
+			}
+		}
+		return objectIdWithSuffix;
+	}
+
+	/**
+	 * Inserts the record of the lock. When leases are used and the insert fails, an expired lease is taken over.
+	 */
+	private void setDatabaseLock(HeldLock heldLock, Date date) throws JdbcException, SQLException {
+		Timestamp expiryDate;
+		if (isLeased()) {
+			expiryDate = new Timestamp(date.getTime() + getLeaseDuration());
+		} else {
+			Calendar cal = Calendar.getInstance();
+			cal.setTime(date);
+			if (getType().equalsIgnoreCase("T")) {
+				cal.add(Calendar.HOUR_OF_DAY, getRetention());
+			} else {
+				cal.add(Calendar.DAY_OF_MONTH, getRetention());
+			}
+			expiryDate = new Timestamp(cal.getTime().getTime());
+		}
+		Connection conn = getConnection();
+		try {
+			long fencingToken = isLeased() ? nextFencingToken(conn) : -1;
+			try {
+				PreparedStatement stmt = conn.prepareStatement(isLeased() ? leaseInsertQuery : insertQuery);
+				try {
+					stmt.setString(1,heldLock.objectIdWithSuffix);
+					stmt.setString(2,getType());
+					stmt.setString(3,Misc.getHostname());
+					stmt.setTimestamp(4, heldLock.creationDate);
+					stmt.setTimestamp(5, expiryDate);
+					if (isLeased()) {
+						stmt.setLong(6, fencingToken);
+					}
+					stmt.executeUpdate();
+					heldLock.fencingToken = fencingToken;
+				} finally {
+					stmt.close();
+				}
+			} catch (SQLException e) {
+				if (!isLeased() || !takeOverExpiredLease(conn, heldLock, expiryDate, fencingToken)) {
+					throw e;
+				}
+			}
+			heldLock.expiryTime = expiryDate.getTime();
+		} finally {
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				log.error("error closing JdbcConnection", e);
+			}
+		}
+	}
+
+	/**
+	 * Takes over an expired lease, with a fencing token that is higher than that of the previous holder. The update
+	 * only succeeds when the token has not changed since it was read, so of two nodes that try to take over the
+	 * same lease only one succeeds. The token that was taken for the insert is used when it is higher.
+	 */
+	private boolean takeOverExpiredLease(Connection conn, HeldLock heldLock, Timestamp expiryDate, long fencingToken) {
+		try {
+			long previousToken;
+			PreparedStatement stmt = conn.prepareStatement(expiredLeaseQuery);
+			try {
+				stmt.setString(1,heldLock.objectIdWithSuffix);
+				stmt.setTimestamp(2, heldLock.creationDate);
+				ResultSet rs = stmt.executeQuery();
+				try {
+					if (!rs.next()) {
+						return false;
+					}
+					previousToken = rs.getLong(1);
+				} finally {
+					rs.close();
+				}
+			} finally {
+				stmt.close();
+			}
+			if (fencingToken <= previousToken) {
+				// the previous holder took its token from the counter before it wrote it, so the next value is higher
+				fencingToken = nextFencingToken(conn);
+			}
+			stmt = conn.prepareStatement(takeOverQuery);
+			try {
+				stmt.setString(1,getType());
+				stmt.setString(2,Misc.getHostname());
+				stmt.setTimestamp(3, heldLock.creationDate);
+				stmt.setTimestamp(4, expiryDate);
+				stmt.setLong(5, fencingToken);
+				stmt.setString(6,heldLock.objectIdWithSuffix);
+				stmt.setTimestamp(7, heldLock.creationDate);
+				stmt.setLong(8, previousToken);
+				if (stmt.executeUpdate() == 1) {
+					heldLock.fencingToken = fencingToken;
+					leasesTakenOver.incrementAndGet();
+					log.info(getLogPrefix()+"took over expired lease of lock ["+heldLock.objectIdWithSuffix+"]");
+					return true;
+				}
+				return false;
+			} finally {
+				stmt.close();
+			}
+		} catch (SQLException e) {
+			log.debug(getLogPrefix()+"could not take over lease of lock ["+heldLock.objectIdWithSuffix+"]: "+e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Increments the fencing token counter and returns its new value. The counter is incremented with a compare-and-set,
+	 * like the take over of a lease, so every token is handed out once. When the counter does not exist yet, it starts
+	 * above the highest token in the table.
+	 */
+	private long nextFencingToken(Connection conn) throws SQLException {
+		for (int attempt=1; ; attempt++) {
+			Long current = null;
+			PreparedStatement stmt = conn.prepareStatement(fencingTokenCounterQuery);
+			try {
+				stmt.setString(1, FENCING_TOKEN_COUNTER);
+				ResultSet rs = stmt.executeQuery();
+				try {
+					if (rs.next()) {
+						current = rs.getLong(1);
+					}
+				} finally {
+					rs.close();
+				}
+			} finally {
+				stmt.close();
+			}
+			if (current == null) {
+				long first = maxFencingToken(conn) + 1;
+				stmt = conn.prepareStatement(fencingTokenCounterInsertQuery);
 				try {
-					conn.close();
+					stmt.setString(1, FENCING_TOKEN_COUNTER);
+					stmt.setString(2, "C");
+					stmt.setString(3, Misc.getHostname());
+					stmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+					stmt.setLong(5, first);
+					stmt.executeUpdate();
+					return first;
 				} catch (SQLException e) {
-					log.error("error closing JdbcConnection", e);
+					// another node created the counter at the same time
+					if (attempt >= MAX_FENCING_TOKEN_ATTEMPTS) {
+						throw e;
+					}
+				} finally {
+					stmt.close();
+				}
+			} else {
+				stmt = conn.prepareStatement(fencingTokenCounterUpdateQuery);
+				try {
+					stmt.setLong(1, current + 1);
+					stmt.setString(2, FENCING_TOKEN_COUNTER);
+					stmt.setLong(3, current);
+					if (stmt.executeUpdate() == 1) {
+						return current + 1;
+					}
+				} finally {
+					stmt.close();
+				}
+				if (attempt >= MAX_FENCING_TOKEN_ATTEMPTS) {
+					throw new SQLException(getLogPrefix()+"could not increment fencing token counter in ["+attempt+"] attempts");
 				}
 			}
 		}
-		return objectIdWithSuffix;
+	}
+
+	private long maxFencingToken(Connection conn) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(maxFencingTokenQuery);
+		try {
+			ResultSet rs = stmt.executeQuery();
+			try {
+				return rs.next() ? rs.getLong(1) : 0;
+			} finally {
+				rs.close();
+			}
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Schedules a renewal on the timer shared by all lockers. The timer is only kept while there are leases to renew,
+	 * so its thread does not keep the classloader of a stopped application alive.
+	 */
+	private static synchronized void scheduleOnTimer(TimerTask task, long period) {
+		if (leaseRenewalTimer == null) {
+			leaseRenewalTimer = new Timer("Locker-leaseRenewal", true);
+		}
+		leaseRenewalTimer.schedule(task, period, period);
+		activeRenewals++;
+	}
+
+	private static synchronized void cancelOnTimer(TimerTask task) {
+		// cancel() only returns true the first time, so a renewal is only counted down once
+		if (task.cancel() && --activeRenewals == 0) {
+			leaseRenewalTimer.cancel();
+			leaseRenewalTimer = null;
+		}
+	}
+
+	static synchronized boolean isLeaseRenewalTimerActive() {
+		return leaseRenewalTimer != null;
+	}
+
+	private void cancelRenewal(HeldLock heldLock) {
+		if (heldLock.renewal != null) {
+			cancelOnTimer(heldLock.renewal);
+		}
+	}
+
+	private void scheduleRenewal(final HeldLock heldLock) {
+		long period = Math.max(1, getLeaseDuration() / 3);
+		heldLock.renewal = new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					renewLease(heldLock);
+				} catch (Throwable t) {
+					log.warn(getLogPrefix()+"unexpected exception renewing lease of lock ["+heldLock.objectIdWithSuffix+"]", t);
+				}
+			}
+		};
+		scheduleOnTimer(heldLock.renewal, period);
+	}
+
+	private void renewLease(HeldLock heldLock) {
+		if (heldLock.lost) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		Timestamp expiryDate = new Timestamp(now + getLeaseDuration());
+		try {
+			Connection conn = getConnection();
+			try {
+				PreparedStatement stmt = conn.prepareStatement(renewQuery);
+				try {
+					stmt.setTimestamp(1, expiryDate);
+					stmt.setString(2, heldLock.objectIdWithSuffix);
+					stmt.setLong(3, heldLock.fencingToken);
+					if (stmt.executeUpdate() == 1) {
+						heldLock.expiryTime = expiryDate.getTime();
+						leasesRenewed.incrementAndGet();
+					} else {
+						leaseLost(heldLock, "lease has been taken over or removed");
+					}
+				} finally {
+					stmt.close();
+				}
+			} finally {
+				conn.close();
+			}
+		} catch (JdbcException | SQLException e) {
+			if (now >= heldLock.expiryTime) {
+				leaseLost(heldLock, "lease has expired, could not renew it: "+e.getMessage());
+			} else {
+				log.warn(getLogPrefix()+"could not renew lease of lock ["+heldLock.objectIdWithSuffix+"], will try again: "+e.getMessage());
+			}
+		}
+	}
+
+	private void leaseLost(HeldLock heldLock, String reason) {
+		if (!heldLock.lost) {
+			heldLock.lost = true;
+			leasesLost.incrementAndGet();
+			cancelRenewal(heldLock);
+			log.warn(getLogPrefix()+"lost lock ["+heldLock.objectIdWithSuffix+"]: "+reason);
+		}
 	}
 
 	public void unlock(String objectIdWithSuffix) throws JdbcException, SQLException {
 		if (LOCK_IGNORED.equals(objectIdWithSuffix)) {
 			log.info("lock not set, ignoring unlock");
-		} else {
+			return;
+		}
+		HeldLock heldLock = heldLocks.remove(objectIdWithSuffix);
+		try {
+			if (heldLock != null) {
+				cancelRenewal(heldLock);
+			}
 			if (getType().equalsIgnoreCase("T")) {
 				log.debug("preparing to remove lock [" + objectIdWithSuffix + "]");
+				boolean leased = heldLock != null && heldLock.renewal != null;
 
 				Connection conn;
 				conn = getConnection();
 				try {
-					PreparedStatement stmt = conn.prepareStatement(deleteQuery);			
-					stmt.clearParameters();
-					stmt.setString(1,objectIdWithSuffix);
-					stmt.executeUpdate();
+					PreparedStatement stmt = conn.prepareStatement(leased ? leaseDeleteQuery : deleteQuery);
+					try {
+						stmt.setString(1,objectIdWithSuffix);
+						if (leased) {
+							stmt.setLong(2, heldLock.fencingToken);
+						}
+						if (stmt.executeUpdate() == 0 && leased) {
+							leaseLost(heldLock, "lease has been taken over or removed");
+						}
+					} finally {
+						stmt.close();
+					}
 					log.debug("lock ["+objectIdWithSuffix+"] removed");
 				} finally {
 					try {
@@ -196,7 +591,56 @@ public class Locker extends JdbcFacade {
 					}
 				}
 			}
+		} finally {
+			if (heldLock != null && isLocalLocking()) {
+				LOCAL_LOCKS.unlock(heldLock.localLockKey, heldLock);
+			}
 		}
+		if (heldLock != null && heldLock.lost) {
+			throw new JdbcException(getLogPrefix()+"lease of lock ["+objectIdWithSuffix+"] was lost before it was released, exclusive access is not guaranteed");
+		}
+	}
+
+	/**
+	 * Returns the fencing token of a lease held by this locker, or -1 when the lock is not held or is not a lease.
+	 */
+	public long getFencingToken(String objectIdWithSuffix) {
+		HeldLock heldLock = heldLocks.get(objectIdWithSuffix);
+		return heldLock == null ? -1 : heldLock.fencingToken;
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		Object lockerData = hski.openGroup(data, getName() != null ? getName() : "Locker of ["+getObjectId()+"]", "locker");
+		hski.handleScalar(lockerData, "locksAcquired", locksAcquired.get());
+		hski.handleScalar(lockerData, "localContentions", localContentions.get());
+		hski.handleScalar(lockerData, "databaseContentions", databaseContentions.get());
+		if (isLeased()) {
+			hski.handleScalar(lockerData, "leasesTakenOver", leasesTakenOver.get());
+			hski.handleScalar(lockerData, "leasesRenewed", leasesRenewed.get());
+			hski.handleScalar(lockerData, "leasesLost", leasesLost.get());
+		}
+		synchronized (waitStatistics) {
+			hski.handleStatisticsKeeper(lockerData, waitStatistics);
+			waitStatistics.performAction(action);
+		}
+		hski.closeGroup(lockerData);
+	}
+
+	public long getLocksAcquired() {
+		return locksAcquired.get();
+	}
+	public long getLocalContentions() {
+		return localContentions.get();
+	}
+	public long getDatabaseContentions() {
+		return databaseContentions.get();
+	}
+	public long getLeasesTakenOver() {
+		return leasesTakenOver.get();
+	}
+	public long getLeasesLost() {
+		return leasesLost.get();
 	}
 
 	protected String getLogPrefix() {
@@ -280,4 +724,31 @@ public class Locker extends JdbcFacade {
 	public boolean isIgnoreTableNotExist() {
 		return ignoreTableNotExist;
 	}
-}
\ No newline at end of file
+
+	@IbisDoc({"when <code>true</code>, threads of this node that want the same lock wait for each other in memory, and only the thread that holds the lock in memory accesses the database", "false"})
+	public void setLocalLocking(boolean localLocking) {
+		this.localLocking = localLocking;
+	}
+
+	public boolean isLocalLocking() {
+		return localLocking;
+	}
+
+	@IbisDoc({"when set to a value &gt; 0, the lock (type=t only) is a lease with an expirydate of this many ms, that is renewed in the background while the lock is held. an expired lease of another node is taken over", "0"})
+	public void setLeaseDuration(int leaseDuration) {
+		this.leaseDuration = leaseDuration;
+	}
+
+	public int getLeaseDuration() {
+		return leaseDuration;
+	}
+
+	@IbisDoc({"when set, the fencing token of the lock is stored under this key in the pipelinesession. the token is higher for every next holder of the lock, so other systems can reject requests of a holder that has lost its lease", ""})
+	public void setFencingTokenSessionKey(String fencingTokenSessionKey) {
+		this.fencingTokenSessionKey = fencingTokenSessionKey;
+	}
+
+	public String getFencingTokenSessionKey() {
+		return fencingTokenSessionKey;
+	}
+}
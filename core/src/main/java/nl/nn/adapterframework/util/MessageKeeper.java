@@ -15,41 +15,159 @@
 */
 package nl.nn.adapterframework.util;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Keeps a list of <code>MessageKeeperMessage</code>s.
+ * Keeps the last <code>maxSize</code> <code>MessageKeeperMessage</code>s.
  * <br/>
+ * Messages are kept in a fixed size ring buffer, adding a message does not take locks. Use {@link #getMessages()} to
+ * obtain a consistent snapshot of the messages, {@link #size()} and {@link #getMessage(int)} can change between calls
+ * when messages are added concurrently.
  * @author  Johan Verrips IOS
  * @see MessageKeeperMessage
  */
-public class MessageKeeper extends SizeLimitedVector {
+public class MessageKeeper {
+
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	private volatile AtomicReferenceArray<Entry> ring;
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong warnCount = new AtomicLong();
+	private final AtomicLong infoCount = new AtomicLong();
+
+	/**
+	 * A message with its sequence number, to detect slots that have been overwritten while reading.
+	 */
+	private static class Entry {
+		final long sequence;
+		final MessageKeeperMessage message;
+
+		Entry(long sequence, MessageKeeperMessage message) {
+			this.sequence = sequence;
+			this.message = message;
+		}
+	}
 
 	public MessageKeeper() {
-		super();
+		this(DEFAULT_MAX_SIZE);
 	}
 
 	public MessageKeeper(int maxSize) {
-		super(maxSize);
+		ring = new AtomicReferenceArray<Entry>(Math.max(1, maxSize));
 	}
-	
-	public synchronized void add(String message) {
+
+	public void add(String message) {
 		add(message, MessageKeeperMessage.INFO_LEVEL);
 	}
-	public synchronized void add(String message, String level) {
-		super.add(new MessageKeeperMessage(message, level));
+	public void add(String message, String level) {
+		add(new MessageKeeperMessage(message, level));
 	}
-	public synchronized void add(String message, Date date) {
+	public void add(String message, Date date) {
 		add(message, date, MessageKeeperMessage.INFO_LEVEL);
 	}
-	public synchronized void add(String message, Date date, String level) {
-		super.add(new MessageKeeperMessage(message, date, level));
+	public void add(String message, Date date, String level) {
+		add(new MessageKeeperMessage(message, date, level));
 	}
+
+	private void add(MessageKeeperMessage message) {
+		String level = message.getMessageLevel();
+		if (MessageKeeperMessage.ERROR_LEVEL.equals(level)) {
+			errorCount.incrementAndGet();
+		} else if (MessageKeeperMessage.WARN_LEVEL.equals(level)) {
+			warnCount.incrementAndGet();
+		} else {
+			infoCount.incrementAndGet();
+		}
+		long seq = sequence.getAndIncrement();
+		AtomicReferenceArray<Entry> current = ring;
+		current.set((int)(seq % current.length()), new Entry(seq, message));
+	}
+
 	/**
-	 * Get a message by number
+	 * Returns a snapshot of the messages, oldest first.
+	 */
+	public List<MessageKeeperMessage> getMessages() {
+		AtomicReferenceArray<Entry> current = ring;
+		long last = sequence.get();
+		long first = Math.max(0, last - current.length());
+		List<MessageKeeperMessage> result = new ArrayList<MessageKeeperMessage>((int)(last - first));
+		for (long seq = first; seq < last; seq++) {
+			Entry entry = current.get((int)(seq % current.length()));
+			// skip slots that are still being written, or have been overwritten by a newer message
+			if (entry != null && entry.sequence == seq) {
+				result.add(entry.message);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get a message by number, 0 being the oldest message kept.
 	 * @see MessageKeeperMessage
 	 */
 	public MessageKeeperMessage getMessage(int i) {
-		return (MessageKeeperMessage)super.get(i);
+		AtomicReferenceArray<Entry> current = ring;
+		long last = sequence.get();
+		long first = Math.max(0, last - current.length());
+		if (i < 0 || first + i >= last) {
+			throw new ArrayIndexOutOfBoundsException(i);
+		}
+		Entry entry = current.get((int)((first + i) % current.length()));
+		return entry == null ? null : entry.message;
+	}
+
+	public int size() {
+		return (int)Math.min(sequence.get(), ring.length());
+	}
+
+	public boolean isEmpty() {
+		return sequence.get() == 0;
+	}
+
+	public int getMaxSize() {
+		return ring.length();
+	}
+
+	/**
+	 * Sets the maximum number of messages kept. The newest messages are retained. Messages that are added while
+	 * the size is changed can be lost.
+	 */
+	public synchronized void setMaxSize(int maxSize) {
+		AtomicReferenceArray<Entry> resized = new AtomicReferenceArray<Entry>(Math.max(1, maxSize));
+		AtomicReferenceArray<Entry> current = ring;
+		long last = sequence.get();
+		long first = Math.max(0, last - Math.min(current.length(), resized.length()));
+		for (long seq = first; seq < last; seq++) {
+			Entry entry = current.get((int)(seq % current.length()));
+			if (entry != null && entry.sequence == seq) {
+				resized.set((int)(seq % resized.length()), entry);
+			}
+		}
+		ring = resized;
+	}
+
+	/**
+	 * Number of messages with level {@link MessageKeeperMessage#ERROR_LEVEL ERROR} added since the creation of this MessageKeeper.
+	 */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+	/**
+	 * Number of messages with level {@link MessageKeeperMessage#WARN_LEVEL WARN} added since the creation of this MessageKeeper.
+	 */
+	public long getWarnCount() {
+		return warnCount.get();
+	}
+	/**
+	 * Number of messages with other levels added since the creation of this MessageKeeper.
+	 */
+	public long getInfoCount() {
+		return infoCount.get();
 	}
 }
@@ -36,6 +36,7 @@ import java.net.InetAddress;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.net.UnknownHostException;
+import java.nio.channels.FileChannel;
 import java.rmi.server.UID;
 import java.text.DecimalFormat;
 import java.util.Collection;
@@ -173,11 +174,25 @@ public class Misc {
 		streamToStream(input,output,true);
 	}
 	public static void streamToStream(InputStream input, OutputStream output, boolean closeInput) throws IOException {
+		streamToStream(input, output, closeInput, BUFFERSIZE);
+	}
+
+	/**
+	 * Copies the input to the output using a buffer of <code>bufferSize</code> bytes.
+	 * When input and output are both plain file streams, the data is transferred by the
+	 * file system using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+	 * without copying it through the Java heap.
+	 */
+	public static void streamToStream(InputStream input, OutputStream output, boolean closeInput, int bufferSize) throws IOException {
 		if (input!=null) {
-			byte[] buffer=new byte[BUFFERSIZE];
-			int bytesRead;
-			while ((bytesRead=input.read(buffer,0,BUFFERSIZE))>-1) {
-				output.write(buffer,0,bytesRead);
+			if (input.getClass()==FileInputStream.class && output!=null && output.getClass()==FileOutputStream.class) {
+				channelToChannel(((FileInputStream)input).getChannel(), ((FileOutputStream)output).getChannel());
+			} else {
+				byte[] buffer=new byte[bufferSize];
+				int bytesRead;
+				while ((bytesRead=input.read(buffer,0,bufferSize))>-1) {
+					output.write(buffer,0,bytesRead);
+				}
 			}
 			if (closeInput) {
 				input.close();
@@ -185,6 +200,24 @@ public class Misc {
 		}
 	}
 
+	/**
+	 * Transfers the remainder of the input channel, starting at its current position, to the output channel.
+	 */
+	public static long channelToChannel(FileChannel input, FileChannel output) throws IOException {
+		long start=input.position();
+		long position=start;
+		long size=input.size();
+		while (position<size) {
+			long transferred=input.transferTo(position, size-position, output);
+			if (transferred<=0) {
+				break;
+			}
+			position+=transferred;
+		}
+		input.position(position);
+		return position-start;
+	}
+
 	public static void streamToFile(InputStream inputStream, File file) throws IOException {
 		try (OutputStream fileOut = new FileOutputStream(file)) {
 			Misc.streamToStream(inputStream, fileOut);
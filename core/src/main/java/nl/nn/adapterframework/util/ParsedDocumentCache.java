@@ -0,0 +1,147 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.util.Map;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+
+/**
+ * Keeps the documents parsed from the current message of a pipeline session, so that consecutive XPath and XSLT
+ * based pipes and parameters that work on the same message parse it only once.
+ * <p>
+ * The cache is stored in the session under {@link #SESSION_KEY}. It is created when the property
+ * <code>xml.parsedDocumentCache.active</code> is <code>true</code>. It holds the documents of a single message:
+ * when a document is requested for another message, the documents of the previous message are discarded.
+ * As DOM documents are not thread safe, a document is only reused by the thread that parsed it.
+ * <p>
+ * The documents are DOM documents, because a Saxon tree can only be used by transformers of the configuration
+ * it was built with, while every {@link TransformerPool} has a configuration of its own.
+ *
+ * @since 7.5
+ */
+public class ParsedDocumentCache {
+	protected static Logger log = LogUtil.getLogger(ParsedDocumentCache.class);
+
+	public static final String SESSION_KEY = "parsedDocumentCache";
+
+	private static final boolean ACTIVE = AppConstants.getInstance().getBoolean("xml.parsedDocumentCache.active", false);
+
+	private String message;
+	private Thread owner;
+	private Document namespaceAwareDocument;
+	private Document namespaceUnawareDocument;
+	private int hits;
+	private int misses;
+
+	/**
+	 * Returns the cache of the session, creating it when caching is active. Returns <code>null</code> when the
+	 * session has no cache and caching is not active.
+	 */
+	public static ParsedDocumentCache getInstance(Map<String,Object> session) {
+		if (session == null) {
+			return null;
+		}
+		synchronized (session) {
+			ParsedDocumentCache cache = (ParsedDocumentCache)session.get(SESSION_KEY);
+			if (cache == null && ACTIVE) {
+				cache = new ParsedDocumentCache();
+				session.put(SESSION_KEY, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Returns a source of the message that can be used multiple times, taken from the cache of the session when
+	 * there is one.
+	 */
+	public static Source getSource(Map<String,Object> session, String message, boolean namespaceAware) throws DomBuilderException {
+		ParsedDocumentCache cache = getInstance(session);
+		if (cache == null) {
+			return XmlUtils.stringToSource(message, namespaceAware);
+		}
+		return new DOMSource(cache.getDocument(message, namespaceAware));
+	}
+
+	/**
+	 * Returns a source of the message for a single transformation. When the session has a cache, the document
+	 * is taken from the cache, otherwise the message is parsed while it is transformed.
+	 */
+	public static Source getSourceForSingleUse(Map<String,Object> session, String message, boolean namespaceAware) throws DomBuilderException {
+		ParsedDocumentCache cache = getInstance(session);
+		if (cache == null) {
+			return XmlUtils.stringToSourceForSingleUse(message, namespaceAware);
+		}
+		return new DOMSource(cache.getDocument(message, namespaceAware));
+	}
+
+	public synchronized Document getDocument(String message, boolean namespaceAware) throws DomBuilderException {
+		if (StringUtils.isEmpty(message)) {
+			return XmlUtils.buildDomDocument(message, namespaceAware);
+		}
+		Thread current = Thread.currentThread();
+		boolean sameMessage = message.equals(this.message);
+		if (sameMessage && owner != current) {
+			// documents are not shared between threads, and a parallel thread must not evict the documents of the owner
+			misses++;
+			return XmlUtils.buildDomDocument(message, namespaceAware);
+		}
+		if (!sameMessage) {
+			this.message = message;
+			owner = current;
+			namespaceAwareDocument = null;
+			namespaceUnawareDocument = null;
+		}
+		Document document = namespaceAware ? namespaceAwareDocument : namespaceUnawareDocument;
+		if (document != null) {
+			hits++;
+			return document;
+		}
+		misses++;
+		if (log.isDebugEnabled()) log.debug("parsing message of [" + message.length() + "] characters, namespaceAware [" + namespaceAware + "]");
+		document = XmlUtils.buildDomDocument(message, namespaceAware);
+		if (namespaceAware) {
+			namespaceAwareDocument = document;
+		} else {
+			namespaceUnawareDocument = document;
+		}
+		return document;
+	}
+
+	/**
+	 * Discards the cached documents.
+	 */
+	public synchronized void clear() {
+		message = null;
+		owner = null;
+		namespaceAwareDocument = null;
+		namespaceUnawareDocument = null;
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+}
@@ -0,0 +1,188 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Named, bounded thread pool that is shared by all users of a kind of task, like listener threads,
+ * isolated calls or parallel senders. The threads are created when the pool is started, and reused
+ * afterwards, so no threads are created while processing messages.
+ *
+ * The threads are named after the bean, and the pool is registered as an MBean under
+ * <code>nl.nn.adapterframework:type=TaskExecutor,name=&lt;beanName&gt;</code>, when an MBean server is available.
+ *
+ * The rejection policy determines what happens when all threads are busy and the queue is full:
+ * <ul>
+ * <li><code>callerRuns</code>: the task is executed in the thread that submits it. This throttles the submitter, and
+ * prevents deadlocks when tasks that wait for other tasks are executed in the same pool</li>
+ * <li><code>abort</code>: a {@link org.springframework.core.task.TaskRejectedException} is thrown</li>
+ * </ul>
+ *
+ * @since 7.5
+ */
+public class PooledTaskExecutor extends ThreadPoolTaskExecutor implements PooledTaskExecutorMBean {
+	protected Logger log = LogUtil.getLogger(this);
+
+	public static final String REJECTION_POLICY_CALLER_RUNS = "callerRuns";
+	public static final String REJECTION_POLICY_ABORT = "abort";
+
+	private String name;
+	private String rejectionPolicy = REJECTION_POLICY_CALLER_RUNS;
+	private boolean prestartCoreThreads = true;
+	private int queueCapacity = Integer.MAX_VALUE;
+	private ObjectName objectName;
+
+	private final AtomicLong rejectedTaskCount = new AtomicLong();
+
+	@Override
+	public void setBeanName(String name) {
+		super.setBeanName(name);
+		this.name = name;
+	}
+
+	@Override
+	protected ExecutorService initializeExecutor(ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+		ExecutorService executor = super.initializeExecutor(threadFactory, new CountingRejectedExecutionHandler(createRejectedExecutionHandler()));
+		if (isPrestartCoreThreads()) {
+			getThreadPoolExecutor().prestartAllCoreThreads();
+		}
+		log.info("started task executor ["+getName()+"] corePoolSize ["+getCorePoolSize()+"] maxPoolSize ["+getMaxPoolSize()+"] queueCapacity ["+getQueueCapacity()+"] rejectionPolicy ["+getRejectionPolicy()+"]");
+		registerMBean();
+		return executor;
+	}
+
+	@Override
+	public void shutdown() {
+		unregisterMBean();
+		super.shutdown();
+	}
+
+	private RejectedExecutionHandler createRejectedExecutionHandler() {
+		if (REJECTION_POLICY_ABORT.equalsIgnoreCase(getRejectionPolicy())) {
+			return new ThreadPoolExecutor.AbortPolicy();
+		}
+		if (REJECTION_POLICY_CALLER_RUNS.equalsIgnoreCase(getRejectionPolicy())) {
+			return new ThreadPoolExecutor.CallerRunsPolicy();
+		}
+		throw new IllegalArgumentException("task executor ["+getName()+"] illegal value for rejectionPolicy ["+getRejectionPolicy()+"], must be one of ["+REJECTION_POLICY_CALLER_RUNS+"] or ["+REJECTION_POLICY_ABORT+"]");
+	}
+
+	private class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+		private RejectedExecutionHandler delegate;
+
+		CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (rejectedTaskCount.incrementAndGet() % 1000 == 1) {
+				log.warn("task executor ["+getName()+"] has no threads available, rejectionPolicy ["+getRejectionPolicy()+"] applied to ["+rejectedTaskCount.get()+"] tasks so far");
+			}
+			delegate.rejectedExecution(r, executor);
+		}
+	}
+
+	private void registerMBean() {
+		try {
+			MBeanServer server = JmxUtils.getMBeanServer();
+			ObjectName candidate = new ObjectName("nl.nn.adapterframework:type=TaskExecutor,name="+ObjectName.quote(getName()));
+			if (!server.isRegistered(candidate)) {
+				server.registerMBean(new StandardMBean(this, PooledTaskExecutorMBean.class), candidate);
+				objectName = candidate;
+			}
+		} catch (Exception e) {
+			log.debug("task executor ["+getName()+"] not registered as MBean: "+e.getMessage());
+		}
+	}
+
+	private void unregisterMBean() {
+		if (objectName != null) {
+			try {
+				JmxUtils.getMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) {
+				log.warn("task executor ["+getName()+"] could not unregister MBean ["+objectName+"]", e);
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return StringUtils.isNotEmpty(name) ? name : getThreadNamePrefix();
+	}
+
+	@Override
+	public int getQueueSize() {
+		return getThreadPoolExecutor().getQueue().size();
+	}
+
+	@Override
+	public int getLargestPoolSize() {
+		return getThreadPoolExecutor().getLargestPoolSize();
+	}
+
+	@Override
+	public long getCompletedTaskCount() {
+		return getThreadPoolExecutor().getCompletedTaskCount();
+	}
+
+	@Override
+	public long getRejectedTaskCount() {
+		return rejectedTaskCount.get();
+	}
+
+	@Override
+	public void setQueueCapacity(int queueCapacity) {
+		super.setQueueCapacity(queueCapacity);
+		this.queueCapacity = queueCapacity;
+	}
+	@Override
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setRejectionPolicy(String rejectionPolicy) {
+		this.rejectionPolicy = rejectionPolicy;
+	}
+	@Override
+	public String getRejectionPolicy() {
+		return rejectionPolicy;
+	}
+
+	/**
+	 * When <code>true</code>, the core threads are started when the pool is initialized, instead of when the first tasks are submitted.
+	 */
+	public void setPrestartCoreThreads(boolean prestartCoreThreads) {
+		this.prestartCoreThreads = prestartCoreThreads;
+	}
+	public boolean isPrestartCoreThreads() {
+		return prestartCoreThreads;
+	}
+}
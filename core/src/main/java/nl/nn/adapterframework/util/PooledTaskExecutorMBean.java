@@ -0,0 +1,38 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+/**
+ * Metrics of a {@link PooledTaskExecutor}, as exposed via JMX.
+ *
+ * @since 7.5
+ */
+public interface PooledTaskExecutorMBean {
+
+	String getName();
+	String getRejectionPolicy();
+
+	int getCorePoolSize();
+	int getMaxPoolSize();
+	int getQueueCapacity();
+
+	int getPoolSize();
+	int getLargestPoolSize();
+	int getActiveCount();
+	int getQueueSize();
+	long getCompletedTaskCount();
+	long getRejectedTaskCount();
+}
@@ -1641,6 +1641,13 @@ public class XmlUtils {
 	}
 
 	static public boolean isWellFormed(String input, String root) {
+		return isWellFormed(new InputSource(new StringReader(input)), root);
+	}
+
+	/**
+	 * Checks that the input is well formed and, when root is specified, has that root element, without keeping the input in memory.
+	 */
+	static public boolean isWellFormed(InputSource input, String root) {
 		Set<List<String>> rootValidations = null;
 		if (StringUtils.isNotEmpty(root)) {
 			List<String> path = new ArrayList<String>();
@@ -1654,7 +1661,7 @@ public class XmlUtils {
 				new XmlValidatorErrorHandler(xmlHandler, "Is not well formed");
 		xmlHandler.setXmlValidatorErrorHandler(xmlValidatorErrorHandler);
 		try {
-			SAXSource saxSource = stringToSAXSource(input, true, false);
+			SAXSource saxSource = inputSourceToSAXSource(input, true, false);
 			XMLReader xmlReader = saxSource.getXMLReader();
 			xmlReader.setContentHandler(xmlHandler);
 			// Prevent message in System.err: [Fatal Error] :-1:-1: Premature end of file.
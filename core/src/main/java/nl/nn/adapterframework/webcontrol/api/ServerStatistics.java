@@ -57,7 +57,9 @@ import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.DateUtils;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.MessageKeeper;
+import nl.nn.adapterframework.util.MessageKeeperMessage;
 import nl.nn.adapterframework.util.Misc;
+import nl.nn.adapterframework.util.PooledTaskExecutor;
 import nl.nn.adapterframework.util.ProcessMetrics;
 import nl.nn.adapterframework.util.RunStateEnum;
 
@@ -220,17 +222,17 @@ public class ServerStatistics extends Base {
 
 	private List<Object> mapMessageKeeperMessages(MessageKeeper messageKeeper) {
 		List<Object> messages = new ArrayList<Object>();
-		for (int t = 0; t < messageKeeper.size(); t++) {
+		for (MessageKeeperMessage message : messageKeeper.getMessages()) {
 			Map<String, Object> configurationMessage = new HashMap<String, Object>();
-			String msg = messageKeeper.getMessage(t).getMessageText();
+			String msg = message.getMessageText();
 			if (MAX_MESSAGE_SIZE > 0 && msg.length() > MAX_MESSAGE_SIZE) {
 				msg = msg.substring(0, MAX_MESSAGE_SIZE) + "...(" + (msg.length() - MAX_MESSAGE_SIZE)
 						+ " characters more)";
 			}
 			configurationMessage.put("message", msg);
-			Date date = messageKeeper.getMessage(t).getMessageDate();
+			Date date = message.getMessageDate();
 			configurationMessage.put("date", DateUtils.format(date, DateUtils.FORMAT_FULL_GENERIC));
-			String level = messageKeeper.getMessage(t).getMessageLevel();
+			String level = message.getMessageLevel();
 			configurationMessage.put("level", level);
 			messages.add(configurationMessage);
 		}
@@ -338,6 +340,34 @@ public class ServerStatistics extends Base {
 		return Response.status(Response.Status.NO_CONTENT).build();
 	}
 
+	@GET
+	@RolesAllowed({"IbisObserver", "IbisDataAdmin", "IbisAdmin", "IbisTester"})
+	@Path("/server/threadpools")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getThreadPools() throws ApiException {
+		initBase(servletConfig);
+
+		List<Map<String, Object>> pools = new ArrayList<Map<String, Object>>();
+		for (String beanName : ibisContext.getBeanNamesForType(PooledTaskExecutor.class)) {
+			PooledTaskExecutor pool = (PooledTaskExecutor) ibisContext.getBean(beanName);
+			Map<String, Object> poolInfo = new LinkedHashMap<String, Object>();
+			poolInfo.put("name", beanName);
+			poolInfo.put("rejectionPolicy", pool.getRejectionPolicy());
+			poolInfo.put("corePoolSize", pool.getCorePoolSize());
+			poolInfo.put("maxPoolSize", pool.getMaxPoolSize());
+			poolInfo.put("queueCapacity", pool.getQueueCapacity());
+			poolInfo.put("poolSize", pool.getPoolSize());
+			poolInfo.put("largestPoolSize", pool.getLargestPoolSize());
+			poolInfo.put("activeCount", pool.getActiveCount());
+			poolInfo.put("queueSize", pool.getQueueSize());
+			poolInfo.put("completedTaskCount", pool.getCompletedTaskCount());
+			poolInfo.put("rejectedTaskCount", pool.getRejectedTaskCount());
+			pools.add(poolInfo);
+		}
+
+		return Response.status(Response.Status.OK).entity(pools).build();
+	}
+
 	@GET
 	@PermitAll
 	@Path("/server/health")
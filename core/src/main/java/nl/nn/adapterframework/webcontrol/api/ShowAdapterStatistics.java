@@ -39,8 +39,10 @@ import nl.nn.adapterframework.core.IReceiverStatistics;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.statistics.ItemList;
+import nl.nn.adapterframework.statistics.ItemUtil;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.statistics.StatisticsKeeperSnapshot;
 import nl.nn.adapterframework.util.DateUtils;
 
 /**
@@ -210,31 +212,11 @@ public final class ShowAdapterStatistics extends Base {
 			return null;
 		}
 
+		StatisticsKeeperSnapshot snapshot = sk.getSnapshot();
 		Map<String, Object> tmp = new HashMap<String, Object>();
-		for (int i=0; i<sk.getItemCount(); i++) {
-			Object item = sk.getItemValue(i);
-			String key = sk.getItemName(i).replace("< ", "");
-			if (item==null) {
-				tmp.put(key, ItemList.ITEM_VALUE_NAN);
-			} else {
-				String value = "";
-				switch (sk.getItemType(i)) {
-					case ItemList.ITEM_TYPE_INTEGER: 
-						if (countFormat==null) {
-							value = ""+ (Long)item;
-						} else {
-							value = countFormat.format((Long)item);
-						}
-						break;
-					case ItemList.ITEM_TYPE_TIME: 
-						value = timeFormat.format(item);
-						break;
-					case ItemList.ITEM_TYPE_FRACTION:
-						value = percentageFormat.format(((Double)item).doubleValue()*100)+ "%";
-						break;
-				}
-				tmp.put(key, value);
-			}
+		for (int i=0; i<snapshot.getItemCount(); i++) {
+			String key = snapshot.getItemName(i).replace("< ", "");
+			tmp.put(key, ItemUtil.formatItemValue(snapshot.getItemType(i), snapshot.getItemLong(i), snapshot.getItemDouble(i), countFormat, timeFormat, percentageFormat));
 		}
 		return tmp;
 	}
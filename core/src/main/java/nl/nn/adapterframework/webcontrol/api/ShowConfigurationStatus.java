@@ -74,6 +74,7 @@ import nl.nn.adapterframework.receivers.ReceiverBase;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.CredentialFactory;
+import nl.nn.adapterframework.util.MessageKeeper;
 import nl.nn.adapterframework.util.MessageKeeperMessage;
 import nl.nn.adapterframework.util.RunStateEnum;
 
@@ -772,17 +773,16 @@ public final class ShowConfigurationStatus extends Base {
 	}
 
 	private ArrayList<Object> mapAdapterMessages(Adapter adapter) {
-		int totalMessages = adapter.getMessageKeeper().size();
-		//adapter.getMessageKeeper().get
-		ArrayList<Object> messages = new ArrayList<Object>(totalMessages);
-		for (int t=0; t<totalMessages; t++) {
+		MessageKeeper messageKeeper = adapter.getMessageKeeper();
+		List<MessageKeeperMessage> adapterMessages = messageKeeper.getMessages();
+		ArrayList<Object> messages = new ArrayList<Object>(adapterMessages.size());
+		for (MessageKeeperMessage msg : adapterMessages) {
 			Map<String, Object> message = new HashMap<String, Object>();
-			MessageKeeperMessage msg = adapter.getMessageKeeper().getMessage(t);
-		
+
 			message.put("message", msg.getMessageText());
 			message.put("date", msg.getMessageDate());
 			message.put("level", msg.getMessageLevel());
-			message.put("capacity", adapter.getMessageKeeper().capacity());
+			message.put("capacity", messageKeeper.getMaxSize());
 			
 			messages.add(message);
 		}
@@ -284,9 +284,8 @@ public final class ShowScheduler extends Base {
 	private List<Map<String, Object>> getJobMessages(JobDef jobdef) throws ApiException {
 		List<Map<String, Object>> messages = new ArrayList<Map<String, Object>>();
 
-		for (int t=0; t < jobdef.getMessageKeeper().size(); t++) {
+		for (MessageKeeperMessage job : jobdef.getMessageKeeper().getMessages()) {
 			Map<String, Object> message = new HashMap<String, Object>(3);
-			MessageKeeperMessage job = jobdef.getMessageKeeper().getMessage(t);
 
 			message.put("text", job.getMessageText());
 			message.put("date", job.getMessageDate());
@@ -16,6 +16,7 @@ limitations under the License.
 package nl.nn.adapterframework.webcontrol.api;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -23,6 +24,8 @@ import java.util.List;
 import java.util.Map;
 
 import javax.annotation.security.RolesAllowed;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.ServletConfig;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -33,10 +36,12 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -52,8 +57,10 @@ import nl.nn.adapterframework.core.IListener;
 import nl.nn.adapterframework.core.IMessageBrowser;
 import nl.nn.adapterframework.core.IMessageBrowsingIterator;
 import nl.nn.adapterframework.core.IMessageBrowsingIteratorItem;
+import nl.nn.adapterframework.core.IPagedMessageBrowser;
 import nl.nn.adapterframework.core.ITransactionalStorage;
 import nl.nn.adapterframework.core.ListenerException;
+import nl.nn.adapterframework.core.MessageBrowsingCriteria;
 import nl.nn.adapterframework.pipes.MessageSendingPipe;
 import nl.nn.adapterframework.receivers.ReceiverBase;
 import nl.nn.adapterframework.util.AppConstants;
@@ -120,7 +127,8 @@ public class TransactionalStorage extends Base {
 				@QueryParam("endDate") String endDateStr,
 				@QueryParam("sort") String sort,
 				@QueryParam("skip") int skipMessages,
-				@QueryParam("max") int maxMessages
+				@QueryParam("max") int maxMessages,
+				@QueryParam("continuation") String continuation
 			) throws ApiException {
 
 		initBase(servletConfig);
@@ -156,10 +164,12 @@ public class TransactionalStorage extends Base {
 		filter.setStartDateMask(startDateStr);
 		filter.setEndDateMask(endDateStr);
 	
+		filter.setContinuation(continuation);
+	
 		if("desc".equalsIgnoreCase(sort))
 			filter.setSortDescending();
 
-		return Response.status(Response.Status.OK).entity(getMessages(storage, filter)).build();
+		return getMessages(storage, filter);
 	}
 
 	@PUT
@@ -356,7 +366,8 @@ public class TransactionalStorage extends Base {
 				@QueryParam("endDate") String endDateStr,
 				@QueryParam("sort") String sort,
 				@QueryParam("skip") int skipMessages,
-				@QueryParam("max") int maxMessages
+				@QueryParam("max") int maxMessages,
+				@QueryParam("continuation") String continuation
 			) throws ApiException {
 
 		initBase(servletConfig);
@@ -387,10 +398,12 @@ public class TransactionalStorage extends Base {
 		filter.setStartDateMask(startDateStr);
 		filter.setEndDateMask(endDateStr);
 
+		filter.setContinuation(continuation);
+
 		if("desc".equalsIgnoreCase(sort))
 				filter.setSortDescending();
 
-		return Response.status(Response.Status.OK).entity(getMessages(storage, filter)).build();
+		return getMessages(storage, filter);
 	}
 
 	private String[] getMessages(MultipartFormDataInput input) {
@@ -488,72 +501,166 @@ public class TransactionalStorage extends Base {
 		return Response.status(Response.Status.OK).type(getMediaType(msg)).entity(msg).build();
 	}
 
-	private Map<String, Object> getMessages(IMessageBrowser transactionalStorage, MessageBrowsingFilter filter) {
+	/**
+	 * Streams the messages as JSON, while iterating over them. Storages that implement {@link IPagedMessageBrowser}
+	 * return a page that is selected and filtered by the database, followed by a continuation to retrieve the next page.
+	 * Other storages are iterated from the start, skipping the first messages.
+	 */
+	private Response getMessages(final IMessageBrowser transactionalStorage, final MessageBrowsingFilter filter) {
+		final boolean paged = transactionalStorage instanceof IPagedMessageBrowser && filter.skipMessages() == 0;
+
 		int messageCount = 0;
 		try {
-			messageCount = ((ITransactionalStorage) transactionalStorage).getMessageCount();
+			if (paged) {
+				messageCount = ((IPagedMessageBrowser) transactionalStorage).getApproximateMessageCount();
+			} else {
+				messageCount = ((ITransactionalStorage) transactionalStorage).getMessageCount();
+			}
 		} catch (Exception e) {
 			log.warn(e);
 			messageCount = -1;
 		}
 
-		Map<String, Object> returnObj = new HashMap<String, Object>(3);
-		returnObj.put("totalMessages", messageCount);
-		returnObj.put("skipMessages", filter.skipMessages());
-		returnObj.put("messageCount", messageCount - filter.skipMessages());
-
-		Date startDate = null;
-		Date endDate = null;
+		final IMessageBrowsingIterator iterator;
 		try {
-			IMessageBrowsingIterator iterator = null;
+			if (paged) {
+				iterator = ((IPagedMessageBrowser) transactionalStorage).getPage(filter.getCriteria());
+			} else {
+				iterator = transactionalStorage.getIterator(null, null, filter.isSortDescending());
+			}
+		}
+		catch (ListenerException e) {
+			throw new ApiException(e);
+		}
+
+		final int totalMessages = messageCount;
+		StreamingOutput stream = new StreamingOutput() {
+			@Override
+			public void write(OutputStream out) throws IOException, WebApplicationException {
+				JsonGenerator generator = Json.createGenerator(out);
+				try {
+					generator.writeStartObject();
+					generator.write("totalMessages", totalMessages);
+					generator.write("approximateCount", paged);
+					generator.write("skipMessages", filter.skipMessages());
+					generator.write("messageCount", totalMessages - filter.skipMessages());
+					generator.writeStartArray("messages");
+					String continuation = paged ? writeMessagePage(generator, (IPagedMessageBrowser) transactionalStorage, iterator, filter) : writeMessages(generator, iterator, filter);
+					generator.writeEnd();
+					if (continuation != null) {
+						generator.write("continuation", continuation);
+					}
+					generator.writeEnd();
+				} catch (ListenerException e) {
+					log.warn("error browsing messages", e);
+					throw new WebApplicationException(e);
+				} finally {
+					generator.close();
+					try {
+						iterator.close();
+					} catch (ListenerException e) {
+						log.warn("error closing message iterator", e);
+					}
+				}
+			}
+		};
+		return Response.status(Response.Status.OK).type(MediaType.APPLICATION_JSON_TYPE).entity(stream).build();
+	}
+
+	private String writeMessages(JsonGenerator generator, IMessageBrowsingIterator iterator, MessageBrowsingFilter filter) throws ListenerException {
+		int count;
+		for (count=0; iterator.hasNext(); ) {
+			IMessageBrowsingIteratorItem iterItem = iterator.next();
 			try {
-				iterator = transactionalStorage.getIterator(startDate, endDate, filter.isSortDescending());
-	
-				int count;
-				ArrayList<Object> messages = new ArrayList<Object>();
-				for (count=0; iterator.hasNext(); ) {
+				if(!filter.matchAny(iterItem))
+					continue;
+
+				count++;
+				if (count > filter.skipMessages()) { 
+					writeMessage(generator, iterItem, count);
+				}
+
+				if (filter.maxMessages() > 0 && count >= (filter.maxMessages() + filter.skipMessages())) {
+					log.warn("stopped iterating messages after ["+count+"]: limit reached");
+					break;
+				}
+			} finally {
+				iterItem.release();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes a page of messages, and returns the continuation for the next page, or <code>null</code> when this is the last page.
+	 * When messages of a page are left out by the filters that the storage does not apply, the next pages are read until
+	 * the page is full.
+	 */
+	private String writeMessagePage(JsonGenerator generator, IPagedMessageBrowser storage, IMessageBrowsingIterator firstPage, MessageBrowsingFilter filter) throws ListenerException {
+		MessageBrowsingCriteria criteria = filter.getCriteria();
+		int count = 0;
+		IMessageBrowsingIterator iterator = firstPage;
+		while (true) {
+			int rows = 0;
+			String continuation = null;
+			try {
+				while (count < criteria.getMaxMessages() && iterator.hasNext()) {
 					IMessageBrowsingIteratorItem iterItem = iterator.next();
 					try {
-						if(!filter.matchAny(iterItem))
-							continue;
-
-						count++;
-						if (count > filter.skipMessages()) { 
-							Map<String, Object> message = new HashMap<String, Object>(3);
-	
-							message.put("id", iterItem.getId());
-							message.put("pos", count);
-							message.put("originalId", iterItem.getOriginalId());
-							message.put("correlationId", iterItem.getCorrelationId());
-							message.put("type", iterItem.getType());
-							message.put("host", iterItem.getHost());
-							message.put("insertDate", iterItem.getInsertDate());
-							message.put("expiryDate", iterItem.getExpiryDate());
-							message.put("comment", iterItem.getCommentString());
-							message.put("label", iterItem.getLabel());
-							messages.add(message);
-						}
-		
-						if (filter.maxMessages() > 0 && count >= (filter.maxMessages() + filter.skipMessages())) {
-							log.warn("stopped iterating messages after ["+count+"]: limit reached");
-							break;
+						rows++;
+						continuation = MessageBrowsingCriteria.getContinuation(iterItem);
+						if(filter.matchAny(iterItem)) {
+							writeMessage(generator, iterItem, ++count);
 						}
 					} finally {
 						iterItem.release();
 					}
 				}
-				returnObj.put("messages", messages);
-			}
-			finally {
-				if(iterator != null)
+			} finally {
+				if (iterator != firstPage) {
 					iterator.close();
+				}
+			}
+			if (count >= criteria.getMaxMessages()) {
+				return continuation;
+			}
+			if (rows < criteria.getMaxMessages()) {
+				return null;
 			}
+			criteria.setContinuation(continuation);
+			iterator = storage.getPage(criteria);
 		}
-		catch (ListenerException e) {
-			throw new ApiException(e);
+	}
+
+	private void writeMessage(JsonGenerator generator, IMessageBrowsingIteratorItem iterItem, int pos) throws ListenerException {
+		generator.writeStartObject();
+		writeField(generator, "id", iterItem.getId());
+		generator.write("pos", pos);
+		writeField(generator, "originalId", iterItem.getOriginalId());
+		writeField(generator, "correlationId", iterItem.getCorrelationId());
+		writeField(generator, "type", iterItem.getType());
+		writeField(generator, "host", iterItem.getHost());
+		writeField(generator, "insertDate", iterItem.getInsertDate());
+		writeField(generator, "expiryDate", iterItem.getExpiryDate());
+		writeField(generator, "comment", iterItem.getCommentString());
+		writeField(generator, "label", iterItem.getLabel());
+		generator.writeEnd();
+	}
+
+	private void writeField(JsonGenerator generator, String name, String value) {
+		if (value == null) {
+			generator.writeNull(name);
+		} else {
+			generator.write(name, value);
 		}
+	}
 
-		return returnObj;
+	private void writeField(JsonGenerator generator, String name, Date value) {
+		if (value == null) {
+			generator.writeNull(name);
+		} else {
+			generator.write(name, value.getTime());
+		}
 	}
 
 	public class MessageBrowsingFilter {
@@ -574,6 +681,8 @@ public class TransactionalStorage extends Base {
 		private boolean sortDescending = false;
 		private IMessageBrowser storage = null;
 		private IListener listener = null;
+		private String continuation = null;
+		private boolean filteredByStorage = false;
 
 		public MessageBrowsingFilter() {
 			this(AppConstants.getInstance().getInt("browse.messages.max", 0), 0);
@@ -591,6 +700,30 @@ public class TransactionalStorage extends Base {
 			return sortDescending;
 		}
 
+		public void setContinuation(String continuation) {
+			this.continuation = continuation;
+		}
+
+		/**
+		 * Returns the criteria for the storage, that apply all filters except on type, id and message.
+		 * From then on, only these filters are applied by {@link #matchAny(IMessageBrowsingIteratorItem)}.
+		 */
+		public MessageBrowsingCriteria getCriteria() throws ListenerException {
+			int max = maxMessages > 0 ? maxMessages : AppConstants.getInstance().getInt("browse.messages.max", 100);
+			MessageBrowsingCriteria criteria = new MessageBrowsingCriteria(max);
+			criteria.setStartDate(startDate);
+			criteria.setEndDate(endDate);
+			criteria.setMessageIdPrefix(messageId);
+			criteria.setCorrelationIdPrefix(correlationId);
+			criteria.setLabelPrefix(label);
+			criteria.setHostPrefix(host);
+			criteria.setCommentSubstring(comment);
+			criteria.setSortDescending(sortDescending);
+			criteria.setContinuation(continuation);
+			filteredByStorage = true;
+			return criteria;
+		}
+
 		public boolean matchAny(IMessageBrowsingIteratorItem iterItem) throws ListenerException {
 			int count = 0;
 			int matches = 0;
@@ -599,14 +732,21 @@ public class TransactionalStorage extends Base {
 				count++;
 				matches += iterItem.getType().startsWith(type) ? 1 : 0;
 			}
-			if(host != null) {
-				count++;
-				matches += iterItem.getHost().startsWith(host) ? 1 : 0;
-			}
 			if(id != null) {
 				count++;
 				matches += iterItem.getId().startsWith(id) ? 1 : 0;
 			}
+			if(message != null) {
+				count++;
+				matches += matchMessage(iterItem) ? 1 : 0;
+			}
+			if(filteredByStorage) {
+				return count == matches;
+			}
+			if(host != null) {
+				count++;
+				matches += iterItem.getHost().startsWith(host) ? 1 : 0;
+			}
 			if(messageId != null) {
 				count++;
 				matches += iterItem.getOriginalId().startsWith(messageId) ? 1 : 0;
@@ -629,16 +769,12 @@ public class TransactionalStorage extends Base {
 			}
 			if(startDate == null && endDate != null) {
 				count++;
-				matches += iterItem.getInsertDate().before(startDate) ? 1 : 0;
+				matches += iterItem.getInsertDate().before(endDate) ? 1 : 0;
 			}
 			if(startDate != null && endDate != null) {
 				count++;
 				matches += (iterItem.getInsertDate().after(startDate) && iterItem.getInsertDate().before(endDate)) ? 1 : 0;
 			}
-			if(message != null) {
-				count++;
-				matches += matchMessage(iterItem) ? 1 : 0;
-			}
 
 			return count == matches;
 		}
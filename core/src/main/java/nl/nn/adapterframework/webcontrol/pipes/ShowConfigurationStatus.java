@@ -229,17 +229,17 @@ public class ShowConfigurationStatus extends ConfigurationBase {
 			messageKeeper = ibisManager.getIbisContext().getMessageKeeper(CONFIG_ALL);
 		}
 
-		for (int t = 0; t < messageKeeper.size(); t++) {
+		for (MessageKeeperMessage message : messageKeeper.getMessages()) {
 			XmlBuilder configurationMessage = new XmlBuilder("configurationMessage");
-			String msg = messageKeeper.getMessage(t).getMessageText();
+			String msg = message.getMessageText();
 			if (MAX_MESSAGE_SIZE > 0 && msg.length() > MAX_MESSAGE_SIZE) {
 				msg = msg.substring(0, MAX_MESSAGE_SIZE) + "...(" + (msg.length() - MAX_MESSAGE_SIZE)
 						+ " characters more)";
 			}
 			configurationMessage.setValue(msg, true);
 			configurationMessage.addAttribute("date",
-					DateUtils.format(messageKeeper.getMessage(t).getMessageDate(), DateUtils.FORMAT_FULL_GENERIC));
-			String level = messageKeeper.getMessage(t).getMessageLevel();
+					DateUtils.format(message.getMessageDate(), DateUtils.FORMAT_FULL_GENERIC));
+			String level = message.getMessageLevel();
 			configurationMessage.addAttribute("level", level);
 			configurationMessages.addSubElement(configurationMessage);
 		}
@@ -788,17 +788,17 @@ public class ShowConfigurationStatus extends ConfigurationBase {
 	private XmlBuilder toAdapterMessagesXmlSelected(Adapter adapter,
 			ShowConfigurationStatusManager showConfigurationStatusManager) {
 		XmlBuilder adapterMessages = new XmlBuilder("adapterMessages");
-		for (int t = 0; t < adapter.getMessageKeeper().size(); t++) {
+		for (MessageKeeperMessage message : adapter.getMessageKeeper().getMessages()) {
 			XmlBuilder adapterMessage = new XmlBuilder("adapterMessage");
-			String msg = XmlUtils.replaceNonValidXmlCharacters(adapter.getMessageKeeper().getMessage(t).getMessageText());
+			String msg = XmlUtils.replaceNonValidXmlCharacters(message.getMessageText());
 			if (MAX_MESSAGE_SIZE > 0 && msg.length() > MAX_MESSAGE_SIZE) {
 				msg = msg.substring(0, MAX_MESSAGE_SIZE) + "...(" + (msg.length() - MAX_MESSAGE_SIZE)
 						+ " characters more)";
 			}
 			adapterMessage.setValue(msg, true);
 			adapterMessage.addAttribute("date", DateUtils
-					.format(adapter.getMessageKeeper().getMessage(t).getMessageDate(), DateUtils.FORMAT_FULL_GENERIC));
-			String level = adapter.getMessageKeeper().getMessage(t).getMessageLevel();
+					.format(message.getMessageDate(), DateUtils.FORMAT_FULL_GENERIC));
+			String level = message.getMessageLevel();
 			adapterMessage.addAttribute("level", level);
 			adapterMessages.addSubElement(adapterMessage);
 			if (level.equals(MessageKeeperMessage.ERROR_LEVEL)) {
@@ -821,8 +821,9 @@ public class ShowConfigurationStatus extends ConfigurationBase {
 		int cme = 0;
 		int cmw = 0;
 		int cmi = 0;
-		for (int t = 0; t < adapter.getMessageKeeper().size(); t++) {
-			String level = adapter.getMessageKeeper().getMessage(t).getMessageLevel();
+		List<MessageKeeperMessage> messages = adapter.getMessageKeeper().getMessages();
+		for (MessageKeeperMessage message : messages) {
+			String level = message.getMessageLevel();
 			if (level.equals(MessageKeeperMessage.ERROR_LEVEL)) {
 				cme++;
 			} else {
@@ -839,9 +840,8 @@ public class ShowConfigurationStatus extends ConfigurationBase {
 		showConfigurationStatusManager.countMessagesError += cme;
 		showConfigurationStatusManager.countMessagesWarn += cmw;
 		showConfigurationStatusManager.countMessagesInfo += cmi;
-		if (!adapter.getMessageKeeper().isEmpty()) {
-			String lastMessageLevel = adapter.getMessageKeeper().getMessage(adapter.getMessageKeeper().size() - 1)
-					.getMessageLevel();
+		if (!messages.isEmpty()) {
+			String lastMessageLevel = messages.get(messages.size() - 1).getMessageLevel();
 			adapterMessages.addAttribute("lastMessageLevel", lastMessageLevel.toLowerCase());
 			if (lastMessageLevel.equals(MessageKeeperMessage.ERROR_LEVEL)
 					|| lastMessageLevel.equals(MessageKeeperMessage.WARN_LEVEL)) {
@@ -0,0 +1,91 @@
+package nl.nn.adapterframework.compression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.util.Misc;
+
+public class ZipWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String contents = "<contents>of the entry</contents>";
+
+	private ZipInputStream writeZip(boolean completeFileHeader, Object entryContents) throws Exception {
+		IPipeLineSession session = new PipeLineSessionBase();
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		ZipWriter zipWriter = ZipWriter.createZipWriter(session, "handle", zip, true, 16);
+		if (completeFileHeader) {
+			zipWriter.writeEntryWithCompletedHeader("entry.xml", entryContents, true, "UTF-8");
+		} else {
+			zipWriter.writeEntry("entry.xml", entryContents, true, "UTF-8");
+		}
+		zipWriter.close();
+		return new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()));
+	}
+
+	private File createFile() throws IOException {
+		File file = folder.newFile();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(contents.getBytes("UTF-8"));
+		}
+		return file;
+	}
+
+	private void assertStoredEntry(ZipInputStream zis) throws IOException {
+		ZipEntry entry = zis.getNextEntry();
+		assertEquals("entry.xml", entry.getName());
+		assertEquals(ZipEntry.STORED, entry.getMethod());
+		assertEquals(contents.length(), entry.getSize());
+		CRC32 crc = new CRC32();
+		crc.update(contents.getBytes("UTF-8"));
+		assertEquals(crc.getValue(), entry.getCrc());
+		assertEquals(contents, new String(Misc.streamToBytes(zis), "UTF-8"));
+		assertNull(zis.getNextEntry());
+	}
+
+	@Test
+	public void testWriteEntryFromStream() throws Exception {
+		ZipInputStream zis = writeZip(false, new ByteArrayInputStream(contents.getBytes("UTF-8")));
+		assertEquals("entry.xml", zis.getNextEntry().getName());
+		assertEquals(contents, new String(Misc.streamToBytes(zis), "UTF-8"));
+	}
+
+	@Test
+	public void testWriteEntryFromFile() throws Exception {
+		ZipInputStream zis = writeZip(false, createFile());
+		assertEquals("entry.xml", zis.getNextEntry().getName());
+		assertEquals(contents, new String(Misc.streamToBytes(zis), "UTF-8"));
+	}
+
+	@Test
+	public void testCompletedHeaderFromString() throws Exception {
+		assertStoredEntry(writeZip(true, contents));
+	}
+
+	@Test
+	public void testCompletedHeaderFromStream() throws Exception {
+		assertStoredEntry(writeZip(true, new ByteArrayInputStream(contents.getBytes("UTF-8"))));
+	}
+
+	@Test
+	public void testCompletedHeaderFromFile() throws Exception {
+		assertStoredEntry(writeZip(true, createFile()));
+	}
+}
@@ -0,0 +1,233 @@
+package nl.nn.adapterframework.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.util.RunStateEnum;
+
+public class AdapterTest {
+
+	private static final String ERROR_MESSAGE = "error";
+
+	private ExecutorService executor;
+	private Adapter adapter;
+	private BlockingPipeLine pipeline;
+
+	/**
+	 * PipeLine without pipes, of which processing can be held until it is released.
+	 */
+	private class BlockingPipeLine extends PipeLine {
+		private CountDownLatch release = new CountDownLatch(0);
+		private CountDownLatch entered = new CountDownLatch(0);
+
+		@Override
+		public void configure() throws ConfigurationException {
+			// no pipes to configure
+		}
+
+		@Override
+		public PipeLineResult process(String messageId, String message, IPipeLineSession pipeLineSession) throws PipeRunException {
+			entered.countDown();
+			try {
+				if (!release.await(10, TimeUnit.SECONDS)) {
+					throw new PipeRunException(null, "pipeline was not released");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new PipeRunException(null, "interrupted", e);
+			}
+			if (ERROR_MESSAGE.equals(message)) {
+				throw new PipeRunException(null, "error requested");
+			}
+			PipeLineResult result = new PipeLineResult();
+			result.setState("success");
+			result.setResult(message);
+			return result;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		executor = Executors.newCachedThreadPool();
+		pipeline = new BlockingPipeLine();
+		adapter = spy(new Adapter());
+		adapter.setName("AdapterTest");
+		adapter.registerPipeLine(pipeline);
+		adapter.configure();
+		doReturn(RunStateEnum.STARTED).when(adapter).getRunState();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private Future<Boolean> processMessage(final String message, final CountDownLatch start) {
+		return executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				if (start != null) {
+					start.await();
+				}
+				try {
+					adapter.processMessageWithExceptions("mid-" + message, message, new PipeLineSessionBase());
+					return true;
+				} catch (ListenerException e) {
+					return false;
+				}
+			}
+		});
+	}
+
+	private long sum(long[] values) {
+		long result = 0;
+		for (long value : values) {
+			result += value;
+		}
+		return result;
+	}
+
+	@Test
+	public void testCountersUnderConcurrentLoad() throws Exception {
+		int threads = 8;
+		int messagesPerThread = 250;
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			final int messages = messagesPerThread;
+			futures.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					start.await();
+					int errors = 0;
+					for (int i = 0; i < messages; i++) {
+						String message = i % 10 == 0 ? ERROR_MESSAGE : "message " + thread + "-" + i;
+						try {
+							adapter.processMessageWithExceptions("mid-" + thread + "-" + i, message, new PipeLineSessionBase());
+						} catch (ListenerException e) {
+							errors++;
+						}
+					}
+					return errors;
+				}
+			}));
+		}
+		start.countDown();
+		int errors = 0;
+		for (Future<Integer> future : futures) {
+			errors += future.get(30, TimeUnit.SECONDS);
+		}
+		int total = threads * messagesPerThread;
+		assertEquals(0, adapter.getNumOfMessagesInProcess());
+		assertEquals(total, adapter.getNumOfMessagesProcessed());
+		assertEquals(errors, adapter.getNumOfMessagesInError());
+		assertEquals(threads * (messagesPerThread / 10), errors);
+		assertEquals(total, adapter.getStatsMessageProcessingDuration().getCount());
+		assertEquals(total, sum(adapter.getNumOfMessagesStartProcessingByHour()));
+	}
+
+	@Test
+	public void testWaitForNoMessagesInProcess() throws Exception {
+		int messages = 4;
+		CountDownLatch release = new CountDownLatch(1);
+		pipeline.release = release;
+		pipeline.entered = new CountDownLatch(messages);
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < messages; i++) {
+			futures.add(processMessage(i == 0 ? ERROR_MESSAGE : "message " + i, null));
+		}
+		assertTrue("messages must be in process", pipeline.entered.await(10, TimeUnit.SECONDS));
+		assertEquals(messages, adapter.getNumOfMessagesInProcess());
+
+		Future<?> waiter = executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				adapter.waitForNoMessagesInProcess();
+				return null;
+			}
+		});
+		try {
+			waiter.get(200, TimeUnit.MILLISECONDS);
+			fail("waitForNoMessagesInProcess() must wait while messages are in process");
+		} catch (TimeoutException e) {
+			// expected
+		}
+
+		release.countDown();
+		waiter.get(10, TimeUnit.SECONDS);
+		assertEquals(0, adapter.getNumOfMessagesInProcess());
+		int succeeded = 0;
+		for (Future<Boolean> future : futures) {
+			if (future.get(10, TimeUnit.SECONDS)) {
+				succeeded++;
+			}
+		}
+		assertEquals(messages - 1, succeeded);
+		assertEquals(messages, adapter.getNumOfMessagesProcessed());
+		assertEquals(1, adapter.getNumOfMessagesInError());
+	}
+
+	@Test
+	public void testWaitForNoMessagesInProcessUnderLoad() throws Exception {
+		// waiters that arrive while messages start and end must all be released when the adapter becomes idle
+		int messages = 200;
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < messages; i++) {
+			futures.add(processMessage("message " + i, start));
+		}
+		List<Future<Void>> waiters = new ArrayList<Future<Void>>();
+		for (int i = 0; i < 4; i++) {
+			waiters.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					adapter.waitForNoMessagesInProcess();
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<Boolean> future : futures) {
+			assertTrue(future.get(30, TimeUnit.SECONDS));
+		}
+		for (Future<Void> waiter : waiters) {
+			waiter.get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(0, adapter.getNumOfMessagesInProcess());
+		assertEquals(messages, adapter.getNumOfMessagesProcessed());
+	}
+
+	@Test
+	public void testWaitForNoMessagesInProcessWhenIdle() throws Exception {
+		Future<?> waiter = executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				adapter.waitForNoMessagesInProcess();
+				return null;
+			}
+		});
+		waiter.get(10, TimeUnit.SECONDS);
+		assertFalse(waiter.isCancelled());
+	}
+}
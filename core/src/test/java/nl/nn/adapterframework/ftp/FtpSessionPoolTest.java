@@ -0,0 +1,258 @@
+package nl.nn.adapterframework.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FtpSessionPoolTest {
+
+	private FtpServer server;
+
+	/**
+	 * Minimal in-process FTP server, that supports the control connection commands used by the tests.
+	 */
+	private class FtpServer implements Runnable {
+		private ServerSocket serverSocket;
+		private AtomicInteger connections = new AtomicInteger();
+		private List<String> deleted = new CopyOnWriteArrayList<String>();
+		private List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+
+		FtpServer() throws IOException {
+			serverSocket = new ServerSocket(0);
+			Thread thread = new Thread(this, "FtpServer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			while (!serverSocket.isClosed()) {
+				try {
+					final Socket socket = serverSocket.accept();
+					connections.incrementAndGet();
+					sockets.add(socket);
+					Thread handler = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							handle(socket);
+						}
+					});
+					handler.setDaemon(true);
+					handler.start();
+				} catch (IOException e) {
+					// server closed
+				}
+			}
+		}
+
+		private void handle(Socket socket) {
+			try (Socket s = socket) {
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "US-ASCII"));
+				OutputStream out = s.getOutputStream();
+				reply(out, "220 ready");
+				String line;
+				while ((line = in.readLine()) != null) {
+					String command = line.split(" ")[0].toUpperCase();
+					String argument = line.indexOf(' ') > 0 ? line.substring(line.indexOf(' ') + 1) : "";
+					if (command.equals("USER")) {
+						reply(out, "331 password required");
+					} else if (command.equals("PASS")) {
+						reply(out, "230 logged in");
+					} else if (command.equals("PWD")) {
+						reply(out, "257 \"/home\" is current directory");
+					} else if (command.equals("DELE")) {
+						deleted.add(argument);
+						reply(out, "250 deleted");
+					} else if (command.equals("QUIT")) {
+						reply(out, "221 bye");
+						return;
+					} else {
+						reply(out, "200 OK");
+					}
+				}
+			} catch (IOException e) {
+				// connection closed
+			}
+		}
+
+		private void reply(OutputStream out, String reply) throws IOException {
+			out.write((reply + "\r\n").getBytes("US-ASCII"));
+			out.flush();
+		}
+
+		void dropConnections() throws IOException {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+
+		void close() throws IOException {
+			serverSocket.close();
+			dropConnections();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		server = new FtpServer();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FtpConnectionPool.getInstance().closeIdleConnections();
+		server.close();
+	}
+
+	private FtpSession createSession() throws Exception {
+		FtpSession session = new FtpSession();
+		session.setHost("localhost");
+		session.setPort(server.serverSocket.getLocalPort());
+		session.setUsername("user");
+		session.setPassword("password");
+		session.configure();
+		return session;
+	}
+
+	@Test
+	public void testConnectionReusedAfterClose() throws Exception {
+		FtpSession session = createSession();
+		for (int i = 0; i < 5; i++) {
+			session.deleteRemote("dir", "file" + i, true);
+		}
+		assertEquals(5, server.deleted.size());
+		assertEquals(1, server.connections.get());
+		assertEquals(1, FtpConnectionPool.getInstance().getIdleConnections(session.getRoute()));
+	}
+
+	@Test
+	public void testConnectionSharedBetweenSessions() throws Exception {
+		createSession().deleteRemote("dir", "file1", true);
+		createSession().deleteRemote("dir", "file2", true);
+		assertEquals(1, server.connections.get());
+	}
+
+	@Test
+	public void testDifferentCredentialsNotShared() throws Exception {
+		createSession().deleteRemote("dir", "file1", true);
+		FtpSession session = createSession();
+		session.setPassword("otherPassword");
+		session.deleteRemote("dir", "file2", true);
+		assertEquals(2, server.connections.get());
+	}
+
+	@Test
+	public void testNoPooling() throws Exception {
+		FtpSession session = createSession();
+		session.setMaxIdleConnections(0);
+		for (int i = 0; i < 3; i++) {
+			session.deleteRemote("dir", "file" + i, true);
+		}
+		assertEquals(3, server.connections.get());
+		assertEquals(0, FtpConnectionPool.getInstance().getOpenConnections(session.getRoute()));
+	}
+
+	@Test
+	public void testBrokenConnectionNotReused() throws Exception {
+		FtpSession session = createSession();
+		session.deleteRemote("dir", "file1", true);
+		server.dropConnections();
+		session.deleteRemote("dir", "file2", true);
+		assertEquals(2, server.deleted.size());
+		assertEquals(2, server.connections.get());
+		assertEquals(1, FtpConnectionPool.getInstance().getOpenConnections(session.getRoute()));
+	}
+
+	@Test
+	public void testMaxConnectionsPerRoute() throws Exception {
+		FtpSession holder = createSession();
+		holder.setMaxConnectionsPerRoute(1);
+		holder.openClient("dir");
+
+		final FtpSession waiter = createSession();
+		waiter.setMaxConnectionsPerRoute(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					waiter.deleteRemote("dir", "file", true);
+				} catch (Exception e) {
+					failure.set(e);
+				} finally {
+					done.countDown();
+				}
+			}
+		};
+		thread.start();
+		assertEquals("waiter must wait for the connection to be returned", false, done.await(500, TimeUnit.MILLISECONDS));
+		holder.closeClient();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertNull("waiter failed", failure.get());
+		assertEquals(1, server.deleted.size());
+		assertEquals(1, server.connections.get());
+	}
+
+	@Test
+	public void testMaxConnectionWaitTime() throws Exception {
+		FtpSession holder = createSession();
+		holder.setMaxConnectionsPerRoute(1);
+		holder.openClient("dir");
+		try {
+			FtpSession waiter = createSession();
+			waiter.setMaxConnectionsPerRoute(1);
+			waiter.setMaxConnectionWaitTime(100);
+			waiter.deleteRemote("dir", "file", true);
+			fail("expected FtpConnectException");
+		} catch (FtpConnectException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("within [100] ms"));
+		} finally {
+			holder.closeClient();
+		}
+	}
+
+	@Test
+	public void testReleaseAfterRouteEvicted() throws Exception {
+		FtpSession session = createSession();
+		session.openClient("dir");
+		FtpConnectionPool pool = FtpConnectionPool.getInstance();
+		// the connection is not counted anymore, so the route is evicted while the connection is in use
+		pool.cancel(session.getRoute());
+		pool.evictIdleConnections();
+		session.closeClient();
+		assertEquals(0, pool.getOpenConnections(session.getRoute()));
+		assertEquals(0, pool.getIdleConnections(session.getRoute()));
+	}
+
+	@Test
+	public void testEvictionTimerStoppedWithoutIdleConnections() throws Exception {
+		FtpSession session = createSession();
+		session.setMaxIdleTime(0);
+		session.deleteRemote("dir", "file", true);
+		FtpConnectionPool pool = FtpConnectionPool.getInstance();
+		assertTrue(pool.isEvictionTimerActive());
+		Thread.sleep(10);
+		pool.evictIdleConnections();
+		assertEquals(0, pool.getOpenConnections(session.getRoute()));
+		assertFalse(pool.isEvictionTimerActive());
+	}
+}
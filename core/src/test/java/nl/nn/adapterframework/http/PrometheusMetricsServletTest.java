@@ -0,0 +1,122 @@
+package nl.nn.adapterframework.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import org.springframework.mock.web.MockServletContext;
+
+import net.sf.ehcache.Cache;
+import nl.nn.adapterframework.cache.IbisCacheManager;
+import nl.nn.adapterframework.configuration.AdapterService;
+import nl.nn.adapterframework.configuration.Configuration;
+import nl.nn.adapterframework.configuration.IbisContext;
+import nl.nn.adapterframework.configuration.IbisManager;
+import nl.nn.adapterframework.core.IAdapter;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.statistics.StatisticsKeeperPrometheusExporter;
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.webcontrol.ConfigurationServlet;
+
+public class PrometheusMetricsServletTest {
+
+	private MockServletContext servletContext;
+	private List<Configuration> configurations = new ArrayList<Configuration>();
+
+	@Before
+	public void setUp() throws Exception {
+		servletContext = new MockServletContext();
+		IbisManager ibisManager = mock(IbisManager.class);
+		when(ibisManager.getConfigurations()).thenReturn(configurations);
+		IbisContext ibisContext = mock(IbisContext.class);
+		when(ibisContext.getIbisManager()).thenReturn(ibisManager);
+		servletContext.setAttribute(AppConstants.getInstance().getProperty(ConfigurationServlet.KEY_CONTEXT), ibisContext);
+	}
+
+	@After
+	public void tearDown() {
+		IbisCacheManager.shutdown();
+	}
+
+	private Configuration createConfiguration(String name, final String adapterName, final long messagesProcessed) throws Exception {
+		IAdapter adapter = mock(IAdapter.class);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				StatisticsKeeperIterationHandler hski = invocation.getArgument(0);
+				Object adapterData = hski.openGroup(invocation.getArgument(1), adapterName, "adapter");
+				hski.handleScalar(adapterData, "messagesProcessed", messagesProcessed);
+				hski.closeGroup(adapterData);
+				return null;
+			}
+		}).when(adapter).forEachStatisticsKeeperBody(any(StatisticsKeeperIterationHandler.class), any(), anyInt());
+		Map<String, IAdapter> adapters = new LinkedHashMap<String, IAdapter>();
+		adapters.put(adapterName, adapter);
+		AdapterService adapterService = mock(AdapterService.class);
+		when(adapterService.getAdapters()).thenReturn(adapters);
+		Configuration configuration = new Configuration(adapterService);
+		configuration.setName(name);
+		return configuration;
+	}
+
+	private MockHttpServletResponse scrape() throws Exception {
+		PrometheusMetricsServlet servlet = new PrometheusMetricsServlet();
+		servlet.init(new MockServletConfig(servletContext));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		servlet.doGet(new MockHttpServletRequest("GET", "/metrics"), response);
+		return response;
+	}
+
+	@Test
+	public void testConfigurationLabel() throws Exception {
+		configurations.add(createConfiguration("config1", "adapter1", 10));
+		configurations.add(createConfiguration("config2", "adapter1", 20));
+
+		MockHttpServletResponse response = scrape();
+		assertEquals(200, response.getStatus());
+		assertEquals(StatisticsKeeperPrometheusExporter.CONTENT_TYPE, response.getContentType());
+		String result = response.getContentAsString();
+		String instance = "instance_name=\"" + AppConstants.getInstance().getString("instance.name", "") + "\"";
+		assertTrue(result, result.contains("ibis_adapter_messages_processed_total{" + instance + ",configuration=\"config1\",adapter=\"adapter1\"} 10\n"));
+		assertTrue(result, result.contains("ibis_adapter_messages_processed_total{" + instance + ",configuration=\"config2\",adapter=\"adapter1\"} 20\n"));
+	}
+
+	@Test
+	public void testCachesExportedOnce() throws Exception {
+		IbisCacheManager.getInstance().addCache(new Cache("testCache", 10, false, true, 0, 0));
+		configurations.add(createConfiguration("config1", "adapter1", 1));
+		configurations.add(createConfiguration("config2", "adapter2", 2));
+
+		String result = scrape().getContentAsString();
+		String series = "ibis_cache_cache_hits_total{";
+		int first = result.indexOf(series);
+		assertTrue(result, first >= 0);
+		assertEquals("cache statistics must be exported once, not per configuration", first, result.lastIndexOf(series));
+		String cacheLine = result.substring(first, result.indexOf('\n', first));
+		assertTrue(cacheLine, cacheLine.contains("cache=\"testCache\""));
+		assertTrue(cacheLine, !cacheLine.contains("configuration="));
+	}
+
+	@Test
+	public void testNotStarted() throws Exception {
+		servletContext.removeAttribute(AppConstants.getInstance().getProperty(ConfigurationServlet.KEY_CONTEXT));
+		assertEquals(503, scrape().getStatus());
+	}
+}
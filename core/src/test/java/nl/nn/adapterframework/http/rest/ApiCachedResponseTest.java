@@ -0,0 +1,128 @@
+package nl.nn.adapterframework.http.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class ApiCachedResponseTest {
+
+	private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+	private String createBody(int size) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			sb.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"één\"}");
+		}
+		return sb.append("]").toString();
+	}
+
+	private MockHttpServletResponse write(ApiCachedResponse cachedResponse, String acceptEncoding) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/test");
+		if (acceptEncoding != null) {
+			request.addHeader("Accept-Encoding", acceptEncoding);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		cachedResponse.write(request, response);
+		assertEquals(CONTENT_TYPE, response.getHeader("Content-Type"));
+		if (response.getHeader("Content-Encoding") == null) {
+			assertEquals(cachedResponse.getEtag(), response.getHeader("etag"));
+		} else {
+			assertEquals("compressed representations must not share the strong etag", "W/\"" + cachedResponse.getEtag() + "\"", response.getHeader("etag"));
+			assertTrue(ApiCacheManager.etagMatches(response.getHeader("etag"), cachedResponse.getEtag()));
+		}
+		return response;
+	}
+
+	@Test
+	public void testContentEncodings() throws Exception {
+		String body = createBody(200);
+		byte[] bytes = body.getBytes("UTF-8");
+		ApiCachedResponse cachedResponse = new ApiCachedResponse("etag1", CONTENT_TYPE, body);
+		assertTrue(cachedResponse.isCompressed());
+		assertArrayEquals(bytes, cachedResponse.getBody());
+
+		MockHttpServletResponse response = write(cachedResponse, "gzip, deflate");
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertArrayEquals(bytes, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+
+		response = write(cachedResponse, "gzip;q=0, deflate");
+		assertEquals("deflate", response.getHeader("Content-Encoding"));
+		byte[] deflated = response.getContentAsByteArray();
+		assertArrayEquals(bytes, IOUtils.toByteArray(new InflaterInputStream(new ByteArrayInputStream(deflated))));
+		assertArrayEquals("deflated body must be kept", deflated, write(cachedResponse, "deflate").getContentAsByteArray());
+
+		response = write(cachedResponse, null);
+		assertNull(response.getHeader("Content-Encoding"));
+		assertArrayEquals(bytes, response.getContentAsByteArray());
+		assertEquals(bytes.length, response.getContentLength());
+	}
+
+	@Test
+	public void testSmallBodyNotCompressed() throws Exception {
+		String body = createBody(1);
+		ApiCachedResponse cachedResponse = new ApiCachedResponse("etag1", CONTENT_TYPE, body);
+		assertFalse(cachedResponse.isCompressed());
+		MockHttpServletResponse response = write(cachedResponse, "gzip");
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(body, response.getContentAsString());
+	}
+
+	@Test
+	public void testEtagMatches() {
+		assertTrue(ApiCacheManager.etagMatches("abc", "abc"));
+		assertTrue(ApiCacheManager.etagMatches("\"abc\"", "abc"));
+		assertTrue(ApiCacheManager.etagMatches("W/\"abc\"", "abc"));
+		assertTrue(ApiCacheManager.etagMatches("\"xyz\", \"abc\"", "abc"));
+		assertTrue(ApiCacheManager.etagMatches("*", "abc"));
+		assertFalse(ApiCacheManager.etagMatches("\"abcd\"", "abc"));
+		assertFalse(ApiCacheManager.etagMatches(null, "abc"));
+	}
+
+	@Test
+	public void testStrongEtagComparison() {
+		assertTrue(ApiCacheManager.etagMatches("\"abc\"", "abc", false));
+		assertTrue(ApiCacheManager.etagMatches("W/\"xyz\", \"abc\"", "abc", false));
+		assertTrue(ApiCacheManager.etagMatches("*", "abc", false));
+		assertFalse("a weak etag must not match in a strong comparison", ApiCacheManager.etagMatches("W/\"abc\"", "abc", false));
+	}
+
+	@Test
+	public void testAcceptable() throws Exception {
+		ApiCachedResponse cachedResponse = new ApiCachedResponse("etag1", CONTENT_TYPE, createBody(1));
+		assertTrue(cachedResponse.isAcceptable(null));
+		assertTrue(cachedResponse.isAcceptable("*/*"));
+		assertTrue(cachedResponse.isAcceptable("application/json"));
+		assertTrue(cachedResponse.isAcceptable("text/html, */*;q=0.8"));
+		assertFalse(cachedResponse.isAcceptable("application/xml"));
+	}
+
+	@Test
+	public void testContentEtag() {
+		String etag = ApiCacheManager.buildEtag("test/*", "content");
+		assertEquals(etag, ApiCacheManager.buildEtag("test/*", "content"));
+		assertNotEquals(etag, ApiCacheManager.buildEtag("test/*", "contenu"));
+		// strings with the same hashCode
+		assertNotEquals(ApiCacheManager.buildEtag("test/*", "Aa"), ApiCacheManager.buildEtag("test/*", "BB"));
+	}
+
+	@Test
+	public void testResponseCacheKey() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/test");
+		request.setQueryString("page=2");
+		request.addHeader("Accept-Language", "nl");
+		assertEquals("key_response?page=2|accept-language=nl|x-tenant=", ApiCacheManager.buildResponseCacheKey("key", request, Arrays.asList("Accept-Language", "X-Tenant")));
+	}
+}
@@ -0,0 +1,149 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import nl.nn.adapterframework.util.MessageKeeper;
+
+public class ExpiredRecordsCleanerTest {
+
+	// the old H2 version in the test classpath only has table locks, parallel cleanups would wait for each other
+	private static final String URL = "jdbc:h2:mem:cleanup;LOCK_MODE=0";
+	private static final String DATASOURCE_NAME = "jdbc/cleanup";
+	private static final long HOUR = 3600000L;
+
+	private Connection connection;
+	private Map<String, Object> dataSources = new HashMap<String, Object>();
+	private long now = System.currentTimeMillis();
+
+	@Before
+	public void setUp() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl(URL);
+		dataSources.put(DATASOURCE_NAME, dataSource);
+		// keeps the in-memory database alive during the test
+		connection = dataSource.getConnection();
+		execute("CREATE TABLE ibisstore (messageKey INT IDENTITY PRIMARY KEY, type CHAR(1), slotId VARCHAR(100), expiryDate TIMESTAMP)");
+		PreparedStatement stmt = connection.prepareStatement("INSERT INTO ibisstore (type, slotId, expiryDate) VALUES (?,?,?)");
+		try {
+			// per slot 100 expired records, spread over 50 hours, and 10 records that have not expired
+			for (String slotId : Arrays.asList("slot1", "slot2", "slot3")) {
+				for (int i = 0; i < 110; i++) {
+					stmt.setString(1, i % 2 == 0 ? "L" : "A");
+					stmt.setString(2, slotId);
+					stmt.setTimestamp(3, new Timestamp(i < 100 ? now - (i / 2 + 1) * HOUR : now + HOUR));
+					stmt.executeUpdate();
+				}
+			}
+			// error records are never deleted
+			for (int i = 0; i < 5; i++) {
+				stmt.setString(1, "E");
+				stmt.setString(2, "slot1");
+				stmt.setTimestamp(3, new Timestamp(now - HOUR));
+				stmt.executeUpdate();
+			}
+		} finally {
+			stmt.close();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		execute("DROP TABLE IF EXISTS ibisstore");
+		connection.close();
+	}
+
+	private void execute(String query) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.execute(query);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private int countRows(String where) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ibisstore WHERE " + where);
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private ExpiredRecordsCleaner createCleaner() {
+		ExpiredRecordsCleaner cleaner = new ExpiredRecordsCleaner();
+		cleaner.setProxiedDataSources(dataSources);
+		cleaner.setDatasourceName(DATASOURCE_NAME);
+		cleaner.setTableName("ibisstore");
+		cleaner.setKeyField("messageKey");
+		cleaner.setExpiryDateField("expiryDate");
+		cleaner.setTypeField("type", "L", "A");
+		cleaner.setSlotIdField("slotId");
+		cleaner.setBatchSize(15);
+		cleaner.setRangeSize(10 * HOUR);
+		return cleaner;
+	}
+
+	@Test
+	public void testCleanupInBatches() throws Exception {
+		ExpiredRecordsCleaner cleaner = createCleaner();
+		MessageKeeper messageKeeper = new MessageKeeper();
+		cleaner.setMessageKeeper(messageKeeper);
+		assertEquals(300, cleaner.cleanup(new Date(now), null));
+		assertEquals(30, countRows("type IN ('L','A')"));
+		assertEquals(5, countRows("type='E'"));
+		assertEquals("one progress message per range of 10 hours and a summary", 6, messageKeeper.size());
+	}
+
+	@Test
+	public void testCleanupSlotsInParallel() throws Exception {
+		ExpiredRecordsCleaner cleaner = createCleaner();
+		cleaner.setTaskExecutor(new SimpleAsyncTaskExecutor());
+		assertEquals(300, cleaner.cleanup(new Date(now), Arrays.asList("slot1", "slot2")));
+		assertEquals(0, countRows("expiryDate<NOW() AND type<>'E'"));
+		assertEquals(35, countRows("1=1"));
+	}
+
+	@Test
+	public void testResumeAfterMaxDuration() throws Exception {
+		ExpiredRecordsCleaner cleaner = createCleaner();
+		cleaner.setBatchSize(10);
+		cleaner.setMaxDuration(1);
+		long deleted = cleaner.cleanup(new Date(now), null);
+		assertTrue("deleted [" + deleted + "]", deleted < 300);
+
+		cleaner.setMaxDuration(0);
+		assertEquals(300 - deleted, cleaner.cleanup(new Date(now), null));
+		assertEquals(35, countRows("1=1"));
+	}
+
+	@Test
+	public void testWithoutTypeAndSlot() throws Exception {
+		ExpiredRecordsCleaner cleaner = createCleaner();
+		cleaner.setTypeField(null);
+		cleaner.setSlotIdField(null);
+		cleaner.setBatchSize(1000);
+		assertEquals(305, cleaner.cleanup(new Date(now), Arrays.asList("slot1")));
+		assertEquals(30, countRows("1=1"));
+	}
+}
@@ -0,0 +1,144 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class JdbcTransactionalStorageBlobFormatTest {
+
+	private static final String URL = "jdbc:h2:mem:blobFormat";
+	private static final String DATASOURCE_NAME = "jdbc/blobFormat";
+
+	private Connection connection;
+	private Map<String, Object> dataSources = new HashMap<String, Object>();
+
+	@Before
+	public void setUp() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl(URL);
+		dataSources.put(DATASOURCE_NAME, dataSource);
+		// keeps the in-memory database alive during the test
+		connection = dataSource.getConnection();
+		execute("CREATE TABLE ibisstore (messageKey INT IDENTITY PRIMARY KEY, type CHAR(1), slotId VARCHAR(100), host VARCHAR(100), "
+				+ "messageId VARCHAR(100), correlationId VARCHAR(256), messageDate TIMESTAMP, comments VARCHAR(1000), "
+				+ "expiryDate TIMESTAMP, label VARCHAR(1000), message BLOB)");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		execute("DROP TABLE IF EXISTS ibisstore");
+		connection.close();
+	}
+
+	private void execute(String query) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.execute(query);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private String getKey(String messageId) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT messageKey FROM ibisstore WHERE messageId='" + messageId + "'");
+			rs.next();
+			return rs.getString(1);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private byte[] getBlob(String key) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT message FROM ibisstore WHERE messageKey=" + key);
+			rs.next();
+			return rs.getBytes(1);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private JdbcTransactionalStorage createStorage(String blobFormat, boolean blobsCompressed) throws Exception {
+		JdbcTransactionalStorage storage = new JdbcTransactionalStorage();
+		storage.setName("messageLog of [test]");
+		storage.setProxiedDataSources(dataSources);
+		storage.setDatasourceName(DATASOURCE_NAME);
+		storage.setSlotId("test");
+		storage.setType(JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE);
+		storage.setBlobFormat(blobFormat);
+		storage.setBlobsCompressed(blobsCompressed);
+		storage.configure();
+		storage.open();
+		return storage;
+	}
+
+	private String createMessage() {
+		StringBuilder sb = new StringBuilder("<request>");
+		for (int i = 0; i < 100; i++) {
+			sb.append("<line>").append(i).append("</line>");
+		}
+		return sb.append("</request>").toString();
+	}
+
+	@Test
+	public void testCompactAndLegacyBlobsReadByBothFormats() throws Exception {
+		String message = createMessage();
+		JdbcTransactionalStorage legacy = createStorage(JdbcTransactionalStorage.BLOB_FORMAT_SERIALIZED, true);
+		legacy.storeMessage("id1", "cid1", new Date(), "comments", "label", message);
+		legacy.close();
+		JdbcTransactionalStorage compact = createStorage(JdbcTransactionalStorage.BLOB_FORMAT_COMPACT, true);
+		compact.storeMessage("id2", "cid2", new Date(), "comments", "label", message);
+		String legacyKey = getKey("id1");
+		String compactKey = getKey("id2");
+
+		assertFalse(MessageBlobFormat.isEncoded(getBlob(legacyKey)));
+		assertTrue(MessageBlobFormat.isEncoded(getBlob(compactKey)));
+
+		assertEquals(message, compact.browseMessage(legacyKey));
+		assertEquals(message, compact.browseMessage(compactKey));
+		compact.close();
+
+		legacy = createStorage(JdbcTransactionalStorage.BLOB_FORMAT_SERIALIZED, false);
+		assertEquals(message, legacy.browseMessage(compactKey));
+		assertEquals(message, legacy.browseMessage(legacyKey));
+		legacy.close();
+	}
+
+	@Test
+	public void testDefaultCompressionLevel() throws Exception {
+		JdbcTransactionalStorage storage = new JdbcTransactionalStorage();
+		assertEquals("serialized blobs keep the level they have always been written with", Deflater.DEFAULT_COMPRESSION, storage.getBlobCompressionLevel());
+		storage.setBlobFormat(JdbcTransactionalStorage.BLOB_FORMAT_COMPACT);
+		assertEquals(Deflater.BEST_SPEED, storage.getBlobCompressionLevel());
+		storage.setBlobCompressionLevel(9);
+		assertEquals(9, storage.getBlobCompressionLevel());
+	}
+
+	@Test
+	public void testUncompressedCompactBlob() throws Exception {
+		String message = createMessage();
+		JdbcTransactionalStorage compact = createStorage(JdbcTransactionalStorage.BLOB_FORMAT_COMPACT, false);
+		compact.storeMessage("id1", "cid1", new Date(), "comments", "label", message);
+		String key = getKey("id1");
+		assertEquals(11 + message.length(), getBlob(key).length);
+		assertEquals(message, compact.browseMessage(key));
+		compact.close();
+	}
+}
@@ -0,0 +1,186 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import nl.nn.adapterframework.core.IMessageBrowsingIterator;
+import nl.nn.adapterframework.core.IMessageBrowsingIteratorItem;
+import nl.nn.adapterframework.core.ListenerException;
+import nl.nn.adapterframework.core.MessageBrowsingCriteria;
+
+public class JdbcTransactionalStoragePagingTest {
+
+	private static final String URL = "jdbc:h2:mem:paging";
+	private static final String DATASOURCE_NAME = "jdbc/paging";
+	private static final long BASE_TIME = 1500000000000L;
+
+	private Connection connection;
+	private Map<String, Object> dataSources = new HashMap<String, Object>();
+	private JdbcTransactionalStorage storage;
+
+	@Before
+	public void setUp() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl(URL);
+		dataSources.put(DATASOURCE_NAME, dataSource);
+		// keeps the in-memory database alive during the test
+		connection = dataSource.getConnection();
+		execute("CREATE TABLE ibisstore (messageKey INT IDENTITY PRIMARY KEY, type CHAR(1), slotId VARCHAR(100), host VARCHAR(100), "
+				+ "messageId VARCHAR(100), correlationId VARCHAR(256), messageDate TIMESTAMP, comments VARCHAR(1000), "
+				+ "expiryDate TIMESTAMP, label VARCHAR(1000), message BLOB)");
+
+		storage = createStorage("test");
+		// messages 0..24, two messages per timestamp, to test the tie breaker on the key
+		for (int i = 0; i < 25; i++) {
+			storage.storeMessage("id" + i, (i % 5 == 0 ? "c_" : "cx") + i, new Date(BASE_TIME + (i / 2) * 1000), "comment " + i, null, "message " + i);
+		}
+		createStorage("other").storeMessage("id-other", "c_other", new Date(BASE_TIME), "comment", null, "message");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		execute("DROP TABLE IF EXISTS ibisstore");
+		connection.close();
+	}
+
+	private void execute(String query) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.execute(query);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private JdbcTransactionalStorage createStorage(String slotId) throws Exception {
+		JdbcTransactionalStorage storage = new JdbcTransactionalStorage();
+		storage.setName("messageLog of [" + slotId + "]");
+		storage.setProxiedDataSources(dataSources);
+		storage.setDatasourceName(DATASOURCE_NAME);
+		storage.setSlotId(slotId);
+		storage.setType(JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE);
+		storage.configure();
+		storage.open();
+		return storage;
+	}
+
+	/**
+	 * Reads a page, adds the original ids to the result and returns the continuation for the next page.
+	 */
+	private String readPage(MessageBrowsingCriteria criteria, List<String> result) throws ListenerException {
+		IMessageBrowsingIterator iterator = storage.getPage(criteria);
+		String continuation = null;
+		try {
+			while (iterator.hasNext()) {
+				IMessageBrowsingIteratorItem item = iterator.next();
+				try {
+					result.add(item.getOriginalId());
+					continuation = MessageBrowsingCriteria.getContinuation(item);
+				} finally {
+					item.release();
+				}
+			}
+		} finally {
+			iterator.close();
+		}
+		return continuation;
+	}
+
+	private List<String> readAllPages(boolean descending) throws ListenerException {
+		List<String> result = new ArrayList<String>();
+		String continuation = null;
+		int pages = 0;
+		do {
+			MessageBrowsingCriteria criteria = new MessageBrowsingCriteria(10);
+			criteria.setSortDescending(descending);
+			criteria.setContinuation(continuation);
+			continuation = readPage(criteria, result);
+			pages++;
+		} while (continuation != null);
+		assertEquals(4, pages);
+		return result;
+	}
+
+	@Test
+	public void testPagesAscending() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 25; i++) {
+			expected.add("id" + i);
+		}
+		assertEquals(expected, readAllPages(false));
+	}
+
+	@Test
+	public void testPagesDescending() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		for (int i = 24; i >= 0; i--) {
+			expected.add("id" + i);
+		}
+		assertEquals(expected, readAllPages(true));
+	}
+
+	@Test
+	public void testFilters() throws Exception {
+		MessageBrowsingCriteria criteria = new MessageBrowsingCriteria(100);
+		criteria.setCorrelationIdPrefix("c_");
+		List<String> result = new ArrayList<String>();
+		readPage(criteria, result);
+		assertEquals("[id0, id5, id10, id15, id20]", result.toString());
+
+		criteria = new MessageBrowsingCriteria(100);
+		criteria.setStartDate(new Date(BASE_TIME + 2000));
+		criteria.setEndDate(new Date(BASE_TIME + 4000));
+		criteria.setCommentSubstring("ment");
+		result.clear();
+		readPage(criteria, result);
+		assertEquals("[id4, id5, id6, id7]", result.toString());
+	}
+
+	@Test
+	public void testFilterOnFieldNotStored() throws Exception {
+		storage.setLabelField("");
+		MessageBrowsingCriteria criteria = new MessageBrowsingCriteria(100);
+		criteria.setLabelPrefix("label");
+		List<String> result = new ArrayList<String>();
+		readPage(criteria, result);
+		assertEquals("no message has a label when labels are not stored", 0, result.size());
+	}
+
+	@Test
+	public void testApproximateMessageCount() throws Exception {
+		assertEquals(25, storage.getApproximateMessageCount());
+		storage.storeMessage("id25", "cid", new Date(), null, null, "message");
+		assertEquals(26, storage.getApproximateMessageCount());
+		execute("DELETE FROM ibisstore WHERE messageId='id0'");
+		assertEquals("count is not refreshed yet", 26, storage.getApproximateMessageCount());
+		storage.setMessageCountRefreshInterval(0);
+		Thread.sleep(5);
+		assertEquals(25, storage.getApproximateMessageCount());
+	}
+
+	@Test(expected = ListenerException.class)
+	public void testInvalidContinuation() throws Exception {
+		new MessageBrowsingCriteria(10).setContinuation("abc");
+	}
+
+	@Test
+	public void testEmptyContinuation() throws Exception {
+		MessageBrowsingCriteria criteria = new MessageBrowsingCriteria(10);
+		criteria.setContinuation("");
+		assertNull(criteria.getAfterDate());
+	}
+}
@@ -0,0 +1,355 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.Misc;
+
+public class JdbcTransactionalStorageWriteBehindTest {
+
+	private static final String URL = "jdbc:h2:mem:writeBehind";
+	private static final String DATASOURCE_NAME = "jdbc/writeBehind";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Connection connection;
+	private Map<String, Object> dataSources = new HashMap<String, Object>();
+	private BlockingDataSource dataSource;
+
+	/**
+	 * DataSource of which getConnection() blocks while a block is set, to simulate a database that hangs.
+	 */
+	private static class BlockingDataSource extends DriverManagerDataSource {
+		private volatile CountDownLatch block;
+		private final CountDownLatch blocked = new CountDownLatch(1);
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			CountDownLatch currentBlock = block;
+			if (currentBlock != null) {
+				blocked.countDown();
+				try {
+					currentBlock.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return super.getConnection();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new BlockingDataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl(URL);
+		dataSources.put(DATASOURCE_NAME, dataSource);
+		// keeps the in-memory database alive during the test
+		connection = dataSource.getConnection();
+		createTable();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		execute("DROP TABLE IF EXISTS ibisstore");
+		connection.close();
+	}
+
+	private void createTable() throws Exception {
+		execute("CREATE TABLE ibisstore (messageKey INT IDENTITY PRIMARY KEY, type CHAR(1), slotId VARCHAR(100), host VARCHAR(100), "
+				+ "messageId VARCHAR(100), correlationId VARCHAR(256), messageDate TIMESTAMP, comments VARCHAR(1000), "
+				+ "expiryDate TIMESTAMP, label VARCHAR(1000), message BLOB)");
+	}
+
+	private void execute(String query) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.execute(query);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private int countRows() throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ibisstore");
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private String getJournalPrefix(String instanceName, String host) {
+		return ("ibisstore-" + instanceName + "-" + host + "-L-test").replaceAll("[^\\w.-]", "_") + "-";
+	}
+
+	private File getJournal(String name) {
+		return new File(folder.getRoot(), getJournalPrefix(AppConstants.getInstance().getResolvedProperty("instance.name"), Misc.getHostname()) + name);
+	}
+
+	private WriteBehindWriter.PendingMessage createMessage(int i) {
+		return new WriteBehindWriter.PendingMessage("id" + i, "cid" + i, new Timestamp(System.currentTimeMillis()), "comments", "label", "message " + i);
+	}
+
+	private JdbcTransactionalStorage createStorage() throws Exception {
+		return createStorage(true, null);
+	}
+
+	private JdbcTransactionalStorage createStorage(boolean writeBehind, TaskExecutor taskExecutor) throws Exception {
+		JdbcTransactionalStorage storage = new JdbcTransactionalStorage();
+		storage.setName("messageLog of [test]");
+		storage.setProxiedDataSources(dataSources);
+		storage.setDatasourceName(DATASOURCE_NAME);
+		storage.setSlotId("test");
+		storage.setType(JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE);
+		storage.setWriteBehind(writeBehind);
+		storage.setTaskExecutor(taskExecutor);
+		storage.setWriteBehindBatchSize(20);
+		storage.setWriteBehindFlushInterval(50);
+		storage.setWriteBehindJournalDirectory(folder.getRoot().getPath());
+		storage.configure();
+		storage.open();
+		return storage;
+	}
+
+	private void storeMessages(JdbcTransactionalStorage storage, int count) throws Exception {
+		for (int i = 0; i < count; i++) {
+			assertNull(storage.storeMessage("id" + i, "cid" + i, new Date(), "comments", "label", "message " + i));
+		}
+	}
+
+	@Test
+	public void testMessagesWrittenInBatches() throws Exception {
+		JdbcTransactionalStorage storage = createStorage();
+		storeMessages(storage, 95);
+		long timeout = System.currentTimeMillis() + 10000;
+		while (countRows() < 95 && System.currentTimeMillis() < timeout) {
+			Thread.sleep(20);
+		}
+		assertEquals(95, countRows());
+		assertEquals("message 7", storage.browseMessage(getKey("id7")));
+		storage.close();
+	}
+
+	@Test
+	public void testQueuedMessagesWrittenOnClose() throws Exception {
+		JdbcTransactionalStorage storage = createStorage();
+		storeMessages(storage, 50);
+		storage.close();
+		assertEquals(50, countRows());
+	}
+
+	@Test
+	public void testJournalWhenDatabaseUnavailable() throws Exception {
+		JdbcTransactionalStorage storage = createStorage();
+		execute("DROP TABLE ibisstore");
+		storeMessages(storage, 30);
+		storage.close();
+		File[] journals = folder.getRoot().listFiles();
+		assertEquals(1, journals.length);
+		String expectedPrefix = getJournalPrefix(AppConstants.getInstance().getResolvedProperty("instance.name"), Misc.getHostname());
+		assertTrue(journals[0].getName(), journals[0].getName().startsWith(expectedPrefix));
+
+		createTable();
+		storage = createStorage();
+		assertEquals(30, countRows());
+		assertEquals(0, folder.getRoot().listFiles().length);
+		storage.close();
+	}
+
+	@Test
+	public void testMessagesDroppedWhenQueueFull() throws Exception {
+		JdbcTransactionalStorage storage = createStorage();
+		storage.setWriteBehindQueueSize(5);
+		storage.close();
+		storage.open();
+		execute("DROP TABLE ibisstore");
+		storeMessages(storage, 50);
+		storage.setWriteBehindJournalDirectory(null);
+		storage.close();
+		createTable();
+		assertEquals(0, countRows());
+	}
+
+	@Test
+	public void testStoredMessagesRemovedFromJournalAfterPartialReplay() throws Exception {
+		File journal = getJournal("1.journal");
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(journal));
+		try {
+			for (int i = 0; i < 30; i++) {
+				if (i == 25) {
+					// too long for the table, fails the second batch
+					out.writeObject(new WriteBehindWriter.PendingMessage("id" + i, "cid" + i, new Timestamp(System.currentTimeMillis()), "comments", "label" + new String(new char[1000]).replace('\0', 'x'), "message " + i));
+				} else {
+					out.writeObject(createMessage(i));
+				}
+			}
+		} finally {
+			out.close();
+		}
+		JdbcTransactionalStorage storage = createStorage();
+		storage.close();
+		assertEquals("the first batch must be stored", 20, countRows());
+
+		List<String> kept = new ArrayList<String>();
+		ObjectInputStream in = new ObjectInputStream(new FileInputStream(journal));
+		try {
+			while (true) {
+				kept.add(((WriteBehindWriter.PendingMessage)in.readObject()).messageId);
+			}
+		} catch (EOFException e) {
+			// end of journal
+		} finally {
+			in.close();
+		}
+		assertEquals("only the messages that were not stored must be kept", 10, kept.size());
+		assertEquals("id20", kept.get(0));
+		assertEquals(1, folder.getRoot().listFiles().length);
+
+		execute("ALTER TABLE ibisstore ALTER COLUMN label VARCHAR(2000)");
+		storage = createStorage();
+		storage.close();
+		assertEquals("messages must not be stored twice", 30, countRows());
+		assertFalse(journal.exists());
+	}
+
+	@Test
+	public void testMessagesNotAcceptedWhileStopping() throws Exception {
+		JdbcTransactionalStorage storage = createStorage(false, null);
+		final WriteBehindWriter writer = new WriteBehindWriter(storage);
+		writer.start();
+		CountDownLatch block = new CountDownLatch(1);
+		dataSource.block = block;
+		Thread stopper = new Thread() {
+			@Override
+			public void run() {
+				writer.stop();
+			}
+		};
+		try {
+			assertTrue(writer.enqueue(createMessage(0)));
+			assertTrue("writer must be writing", dataSource.blocked.await(10, TimeUnit.SECONDS));
+			stopper.start();
+			long timeout = System.currentTimeMillis() + 10000;
+			boolean accepted = true;
+			while (accepted && System.currentTimeMillis() < timeout) {
+				accepted = writer.enqueue(createMessage(1));
+				Thread.sleep(10);
+			}
+			assertFalse("messages must not be accepted once the writer is stopping", accepted);
+		} finally {
+			dataSource.block = null;
+			block.countDown();
+			stopper.join(10000);
+			storage.close();
+		}
+		assertEquals("messages accepted before the stop must be stored", countRows(), writer.getMessagesWritten());
+		assertEquals(0, writer.getQueueSize());
+		assertEquals(0, writer.getMessagesJournaled());
+	}
+
+	@Test
+	public void testJournalOfOtherInstanceNotReplayed() throws Exception {
+		File journal = new File(folder.getRoot(), getJournalPrefix("otherInstance", "otherHost") + "1.journal");
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(journal));
+		try {
+			out.writeObject(new WriteBehindWriter.PendingMessage("id1", "cid1", new Timestamp(System.currentTimeMillis()), "comments", "label", "message 1"));
+		} finally {
+			out.close();
+		}
+		JdbcTransactionalStorage storage = createStorage();
+		storage.close();
+		assertEquals(0, countRows());
+		assertTrue("journal of another instance must be left alone", journal.exists());
+	}
+
+	@Test
+	public void testWriterRunsOnTaskExecutor() throws Exception {
+		final AtomicInteger tasks = new AtomicInteger();
+		final SimpleAsyncTaskExecutor delegate = new SimpleAsyncTaskExecutor();
+		TaskExecutor taskExecutor = new TaskExecutor() {
+			@Override
+			public void execute(Runnable task) {
+				tasks.incrementAndGet();
+				delegate.execute(task);
+			}
+		};
+		JdbcTransactionalStorage storage = createStorage(true, taskExecutor);
+		assertEquals(1, tasks.get());
+		storeMessages(storage, 10);
+		storage.close();
+		assertEquals(10, countRows());
+	}
+
+	@Test
+	public void testBatchInProgressJournaledWhenWriterDoesNotStop() throws Exception {
+		JdbcTransactionalStorage storage = createStorage(false, null);
+		WriteBehindWriter writer = new WriteBehindWriter(storage);
+		writer.setStopTimeout(200);
+		writer.start();
+		CountDownLatch block = new CountDownLatch(1);
+		dataSource.block = block;
+		try {
+			for (int i = 0; i < 5; i++) {
+				writer.enqueue(new WriteBehindWriter.PendingMessage("id" + i, "cid" + i, new Timestamp(System.currentTimeMillis()), "comments", "label", "message " + i));
+			}
+			assertTrue("writer must be writing", dataSource.blocked.await(10, TimeUnit.SECONDS));
+			writer.enqueue(new WriteBehindWriter.PendingMessage("id5", "cid5", new Timestamp(System.currentTimeMillis()), "comments", "label", "message 5"));
+			writer.stop();
+			assertEquals("batch in progress and queued message must be journaled", 6, writer.getMessagesJournaled());
+		} finally {
+			dataSource.block = null;
+			block.countDown();
+			// wait for the writer to finish the batch, so it does not write in the table of the next test
+			writer.setStopTimeout(10000);
+			writer.stop();
+			storage.close();
+		}
+	}
+
+	private String getKey(String messageId) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT messageKey FROM ibisstore WHERE messageId='" + messageId + "'");
+			rs.next();
+			return rs.getString(1);
+		} finally {
+			stmt.close();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+public class MessageBlobFormatTest {
+	private Logger log = LogUtil.getLogger(this);
+
+	private static final String SMALL_MESSAGE = "<request>small</request>";
+
+	private String createMessage(int repeat) {
+		StringBuilder sb = new StringBuilder("<request>");
+		for (int i = 0; i < repeat; i++) {
+			sb.append("<line number=\"").append(i).append("\">tekst met een één en €</line>");
+		}
+		return sb.append("</request>").toString();
+	}
+
+	private byte[] legacy(Serializable message, boolean compressed) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(compressed ? new DeflaterOutputStream(out) : out);
+		oos.writeObject(message);
+		oos.close();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testStringRoundTrip() throws Exception {
+		String message = createMessage(100);
+		byte[] compressed = MessageBlobFormat.encode(message, Deflater.BEST_SPEED);
+		byte[] uncompressed = MessageBlobFormat.encode(message, 0);
+		assertTrue(compressed.length < uncompressed.length);
+		assertEquals(message, MessageBlobFormat.decode(compressed));
+		assertEquals(message, MessageBlobFormat.decode(uncompressed));
+	}
+
+	@Test
+	public void testSmallMessageNotCompressed() throws Exception {
+		byte[] encoded = MessageBlobFormat.encode(SMALL_MESSAGE, Deflater.BEST_COMPRESSION);
+		assertEquals(11 + SMALL_MESSAGE.length(), encoded.length);
+		assertEquals(SMALL_MESSAGE, MessageBlobFormat.decode(encoded));
+	}
+
+	@Test
+	public void testBytesRoundTrip() throws Exception {
+		byte[] message = createMessage(50).getBytes("UTF-8");
+		assertArrayEquals(message, (byte[])MessageBlobFormat.decode(MessageBlobFormat.encode(message, Deflater.BEST_SPEED)));
+		assertArrayEquals(message, (byte[])MessageBlobFormat.decode(MessageBlobFormat.encode(message, 0)));
+	}
+
+	@Test
+	public void testSerializedObjectRoundTrip() throws Exception {
+		ArrayList<String> message = new ArrayList<String>(Arrays.asList(createMessage(20), SMALL_MESSAGE));
+		assertEquals(message, MessageBlobFormat.decode(MessageBlobFormat.encode(message, Deflater.BEST_SPEED)));
+		assertEquals(message, MessageBlobFormat.decode(new ByteArrayInputStream(MessageBlobFormat.encode(message, 0))));
+	}
+
+	@Test
+	public void testLegacyBlobsNotRecognized() throws Exception {
+		String message = createMessage(10);
+		assertFalse(MessageBlobFormat.isEncoded(legacy(message, false)));
+		assertFalse(MessageBlobFormat.isEncoded(legacy(message, true)));
+		BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(legacy(message, true)));
+		assertFalse(MessageBlobFormat.isEncoded(in));
+		assertEquals("stream must be reset", 0x78, in.read());
+
+		in = new BufferedInputStream(new ByteArrayInputStream(MessageBlobFormat.encode(message, Deflater.BEST_SPEED)));
+		assertTrue(MessageBlobFormat.isEncoded(in));
+		assertEquals(message, MessageBlobFormat.decode(in));
+	}
+
+	@Test(expected=IOException.class)
+	public void testTruncatedBlob() throws Exception {
+		byte[] encoded = MessageBlobFormat.encode(createMessage(100), Deflater.BEST_SPEED);
+		MessageBlobFormat.decode(Arrays.copyOf(encoded, encoded.length / 2));
+	}
+
+	@Test
+	@Ignore("benchmark, run manually")
+	public void benchmark() throws Exception {
+		for (int size : new int[] { 1, 100, 2000 }) {
+			String message = createMessage(size);
+			int iterations = 2000000 / message.length() + 100;
+			for (int pass = 0; pass < 2; pass++) {
+				long legacySize = 0, compactSize = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < iterations; i++) {
+					legacySize = legacy(message, true).length;
+				}
+				long legacyTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int i = 0; i < iterations; i++) {
+					compactSize = MessageBlobFormat.encode(message, Deflater.BEST_SPEED).length;
+				}
+				long compactTime = System.nanoTime() - start;
+				byte[] legacyBlob = legacy(message, true);
+				byte[] compactBlob = MessageBlobFormat.encode(message, Deflater.BEST_SPEED);
+				start = System.nanoTime();
+				for (int i = 0; i < iterations; i++) {
+					new java.io.ObjectInputStream(new java.util.zip.InflaterInputStream(new ByteArrayInputStream(legacyBlob))).readObject();
+				}
+				long legacyReadTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int i = 0; i < iterations; i++) {
+					MessageBlobFormat.decode(compactBlob);
+				}
+				long compactReadTime = System.nanoTime() - start;
+				if (pass == 1) {
+					log.info("message [" + message.length() + "] chars: legacy [" + legacySize + "] bytes, write [" + legacyTime / iterations + "] ns, read [" + legacyReadTime / iterations
+							+ "] ns; compact [" + compactSize + "] bytes, write [" + compactTime / iterations + "] ns, read [" + compactReadTime / iterations + "] ns");
+				}
+			}
+		}
+	}
+}
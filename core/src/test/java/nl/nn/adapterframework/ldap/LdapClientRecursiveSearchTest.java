@@ -0,0 +1,199 @@
+package nl.nn.adapterframework.ldap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+
+public class LdapClientRecursiveSearchTest {
+
+	private static final String BASE_DN = "dc=ibissource,dc=org";
+	private static final String USER = "cn=user,ou=users," + BASE_DN;
+
+	private InMemoryDirectoryServer server;
+	private AtomicInteger searches = new AtomicInteger();
+	private List<String> subtreeSearchBases = new CopyOnWriteArrayList<String>();
+
+	@Before
+	public void startLdapServer() throws Exception {
+		InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+		config.setSchema(null);
+		config.setAccessLogHandler(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				if (record.getMessage().contains("SEARCH REQUEST")) {
+					searches.incrementAndGet();
+					if (record.getMessage().contains("scope=2")) {
+						subtreeSearchBases.add(record.getMessage().replaceAll(".* base=\"([^\"]*)\".*", "$1"));
+					}
+				}
+			}
+			@Override
+			public void flush() {
+			}
+			@Override
+			public void close() {
+			}
+		});
+		server = new InMemoryDirectoryServer(config);
+		server.add("dn: " + BASE_DN, "objectClass: domain", "dc: ibissource");
+		server.add("dn: ou=users," + BASE_DN, "objectClass: organizationalUnit", "ou: users");
+		server.add("dn: ou=groups," + BASE_DN, "objectClass: organizationalUnit", "ou: groups");
+		addEntry(USER, "g1", "g2", "g3");
+		addEntry(group("g1"), "g4");
+		addEntry(group("g2"), "g4", "g5");
+		addEntry(group("g3"));
+		addEntry(group("g4"), "g6");
+		addEntry(group("g5"), "g6");
+		// g6 and g7 are members of each other
+		addEntry(group("g6"), "g7");
+		addEntry(group("g7"), "g6");
+		server.startListening();
+	}
+
+	@After
+	public void stopLdapServer() {
+		server.shutDown(true);
+	}
+
+	private String group(String name) {
+		return "cn=" + name + ",ou=groups," + BASE_DN;
+	}
+
+	private void addEntry(String dn, String... memberships) throws Exception {
+		String[] lines = new String[3 + memberships.length];
+		lines[0] = "dn: " + dn;
+		lines[1] = "objectClass: top";
+		lines[2] = "distinguishedName: " + dn;
+		for (int i = 0; i < memberships.length; i++) {
+			lines[3 + i] = "memberOf: " + group(memberships[i]);
+		}
+		server.add(lines);
+	}
+
+	private LdapClient createClient() {
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("java.naming.provider.url", "ldap://localhost:" + server.getListenPort() + "/" + BASE_DN);
+		return new LdapClient(options);
+	}
+
+	private Set<String> expectedGroups() {
+		Set<String> expected = new HashSet<String>();
+		for (String name : Arrays.asList("g1", "g2", "g3", "g4", "g5", "g6", "g7")) {
+			expected.add(group(name));
+		}
+		return expected;
+	}
+
+	@Test
+	public void testNestedGroupsWithCycle() throws Exception {
+		LdapClient client = createClient();
+		client.setBatchSize(1);
+		client.setMembershipCacheTimeToLive(0);
+		assertEquals(expectedGroups(), new HashSet<String>(client.searchRecursivelyViaAttributes(USER, BASE_DN, "memberOf")));
+		assertEquals("one search for the user and for each group", 8, searches.get());
+	}
+
+	@Test
+	public void testBatchedLookups() throws Exception {
+		LdapClient client = createClient();
+		client.setMembershipCacheTimeToLive(0);
+		assertEquals(expectedGroups(), new HashSet<String>(client.searchRecursivelyViaAttributes(USER, BASE_DN, "memberOf")));
+		assertEquals("one search for the user and for each nesting level", 5, searches.get());
+	}
+
+	@Test
+	public void testBatchesSearchedUnderBaseDn() throws Exception {
+		LdapClient client = createClient();
+		client.setMembershipCacheTimeToLive(0);
+		assertEquals(expectedGroups(), new HashSet<String>(client.searchRecursivelyViaAttributes(USER, BASE_DN, "memberOf")));
+		assertEquals("one subtree search for each nesting level with more than one group", 2, subtreeSearchBases.size());
+		for (String base : subtreeSearchBases) {
+			assertEquals(BASE_DN, base);
+		}
+	}
+
+	@Test
+	public void testMembershipsCached() throws Exception {
+		LdapClient client = createClient();
+		client.searchRecursivelyViaAttributes(USER, BASE_DN, "memberOf");
+		searches.set(0);
+		assertEquals(expectedGroups(), new HashSet<String>(client.searchRecursivelyViaAttributes(USER, BASE_DN, "memberOf")));
+		assertEquals("only the user is searched", 1, searches.get());
+
+		client.clearMembershipCache();
+		searches.set(0);
+		client.searchRecursivelyViaAttributes(USER, BASE_DN, "memberOf");
+		assertEquals(5, searches.get());
+	}
+
+	@Test
+	public void testFallbackWhenBatchLookupAttributeIsNotAvailable() throws Exception {
+		LdapClient client = createClient();
+		client.setBatchLookupAttribute("entryDN-unknown");
+		client.setMembershipCacheTimeToLive(0);
+		assertEquals(expectedGroups(), new HashSet<String>(client.searchRecursivelyViaAttributes(USER, BASE_DN, "memberOf")));
+		assertEquals("after the first batch the groups are searched one by one", 9, searches.get());
+
+		searches.set(0);
+		assertEquals(expectedGroups(), new HashSet<String>(client.searchRecursivelyViaAttributes(USER, BASE_DN, "memberOf")));
+		assertEquals("the next request must try a batch lookup again", 9, searches.get());
+	}
+
+	@Test
+	public void testEmptyBatchDoesNotDisableBatchLookupsOfOtherRequests() throws Exception {
+		// groups without the batch lookup attribute
+		server.add("dn: " + group("h1"), "objectClass: top");
+		server.add("dn: " + group("h2"), "objectClass: top");
+		String user2 = "cn=user2,ou=users," + BASE_DN;
+		addEntry(user2, "h1", "h2");
+		LdapClient client = createClient();
+		client.setMembershipCacheTimeToLive(0);
+		assertEquals(new HashSet<String>(Arrays.asList(group("h1"), group("h2"))), new HashSet<String>(client.searchRecursivelyViaAttributes(user2, BASE_DN, "memberOf")));
+
+		searches.set(0);
+		assertEquals(expectedGroups(), new HashSet<String>(client.searchRecursivelyViaAttributes(USER, BASE_DN, "memberOf")));
+		assertEquals("one search for the user and for each nesting level", 5, searches.get());
+	}
+
+	@Test
+	public void testBatchResultsMatchedOnDn() throws Exception {
+		String user3 = "cn=user3,ou=users," + BASE_DN;
+		String upperCaseGroup = "CN=G4,OU=Groups,DC=ibissource,DC=org";
+		server.add("dn: " + user3, "objectClass: top", "distinguishedName: " + user3, "memberOf: " + upperCaseGroup, "memberOf: " + group("g5"));
+		LdapClient client = createClient();
+		client.setMembershipCacheTimeToLive(0);
+		Set<String> expected = new HashSet<String>(Arrays.asList(upperCaseGroup, group("g5"), group("g6"), group("g7")));
+		assertEquals(expected, new HashSet<String>(client.searchRecursivelyViaAttributes(user3, BASE_DN, "memberOf")));
+		assertEquals("groups must be found by the batch, and not be searched again one by one", 4, searches.get());
+	}
+
+	@Test
+	public void testParallelLookups() throws Exception {
+		LdapClient client = createClient();
+		client.setBatchSize(1);
+		client.setTaskExecutor(new SimpleAsyncTaskExecutor());
+		assertEquals(expectedGroups(), new HashSet<String>(client.searchRecursivelyViaAttributes(USER, BASE_DN, "memberOf")));
+	}
+
+	@Test
+	public void testEscapeFilterValue() {
+		assertEquals("cn=a\\28b\\29\\2a\\5c,ou=x", LdapClient.escapeFilterValue("cn=a(b)*\\,ou=x"));
+	}
+}
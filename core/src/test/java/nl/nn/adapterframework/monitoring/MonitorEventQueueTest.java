@@ -0,0 +1,214 @@
+package nl.nn.adapterframework.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.core.IAdapter;
+
+public class MonitorEventQueueTest {
+
+	private class Source implements EventThrowing {
+		private String name;
+
+		Source(String name) {
+			this.name = name;
+		}
+		@Override
+		public String getEventSourceName() {
+			return name;
+		}
+		@Override
+		public IAdapter getAdapter() {
+			return null;
+		}
+	}
+
+	private class RecordingDispatcher implements MonitorEventQueue.EventDispatcher {
+		List<String> events = new ArrayList<String>();
+
+		@Override
+		public synchronized void dispatchEvent(EventThrowing source, String eventCode, int occurrences) {
+			events.add(source.getEventSourceName()+":"+eventCode+"x"+occurrences);
+		}
+	}
+
+	/**
+	 * Records the state changes of its triggers, without registering them at the MonitorManager.
+	 */
+	private class RecordingMonitor extends Monitor {
+		int stateChanges = 0;
+
+		@Override
+		public void registerEventNotificationListener(Trigger trigger, List<String> eventCodes, Map<String, AdapterFilter> adapterFilters, boolean filterOnLowerLevelObjects, boolean filterExclusive) {
+			// not registered
+		}
+		@Override
+		public void changeState(Date date, boolean alarm, SeverityEnum severity, EventThrowing source, String details, Throwable t) {
+			stateChanges++;
+		}
+	}
+
+	@Test
+	public void testCoalesceDuplicateEvents() {
+		RecordingDispatcher dispatcher = new RecordingDispatcher();
+		MonitorEventQueue queue = new MonitorEventQueue(dispatcher, 10);
+		Source source1 = new Source("s1");
+		Source source2 = new Source("s2");
+		queue.add(source1, "error");
+		queue.add(source2, "error");
+		queue.add(source1, "error");
+		queue.add(source1, "timeout");
+		queue.add(source1, "error");
+		assertEquals(3, queue.getDepth());
+		assertEquals(2, queue.getEventsCoalesced());
+
+		assertEquals(3, queue.dispatchPendingEvents());
+		assertEquals("[s1:errorx3, s2:errorx1, s1:timeoutx1]", dispatcher.events.toString());
+		assertEquals(0, queue.getDepth());
+
+		queue.add(source1, "error");
+		queue.dispatchPendingEvents();
+		assertEquals("event must not be coalesced with an already dispatched event", "s1:errorx1", dispatcher.events.get(3));
+	}
+
+	@Test
+	public void testDropEventsWhenFull() {
+		RecordingDispatcher dispatcher = new RecordingDispatcher();
+		MonitorEventQueue queue = new MonitorEventQueue(dispatcher, 2);
+		assertTrue(queue.add(new Source("s1"), "error"));
+		assertTrue(queue.add(new Source("s2"), "error"));
+		assertFalse(queue.add(new Source("s3"), "error"));
+		assertEquals(1, queue.getEventsDropped());
+		assertEquals(2, queue.dispatchPendingEvents());
+		assertTrue(queue.add(new Source("s4"), "error"));
+	}
+
+	@Test
+	public void testDispatcherThread() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1000);
+		MonitorEventQueue queue = new MonitorEventQueue(new MonitorEventQueue.EventDispatcher() {
+			@Override
+			public void dispatchEvent(EventThrowing source, String eventCode, int occurrences) {
+				for (int i=0; i<occurrences; i++) {
+					latch.countDown();
+				}
+			}
+		}, 100);
+		queue.start();
+		try {
+			Source source = new Source("s1");
+			for (int i=0; i<1000; i++) {
+				queue.add(source, "error");
+			}
+			assertTrue("all occurrences must be dispatched", latch.await(10, TimeUnit.SECONDS));
+			assertEquals(0, queue.getEventsDropped());
+		} finally {
+			queue.stop();
+		}
+	}
+
+	@Test
+	public void testStopDispatchesQueuedEvents() throws Exception {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<String> events = new ArrayList<String>();
+		MonitorEventQueue queue = new MonitorEventQueue(new MonitorEventQueue.EventDispatcher() {
+			@Override
+			public synchronized void dispatchEvent(EventThrowing source, String eventCode, int occurrences) {
+				events.add(source.getEventSourceName()+":"+eventCode+"x"+occurrences);
+				if (events.size()==1) {
+					blocked.countDown();
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}, 10);
+		queue.start();
+		queue.add(new Source("s1"), "error");
+		assertTrue(blocked.await(10, TimeUnit.SECONDS));
+		// the dispatcher thread is busy, these events stay queued
+		queue.add(new Source("s2"), "error");
+		queue.add(new Source("s3"), "error");
+		release.countDown();
+		queue.stop();
+		assertEquals(0, queue.getDepth());
+		assertEquals(3, events.size());
+
+		queue.add(new Source("s4"), "error");
+		assertEquals("events added after stop must be dispatched directly", 4, events.size());
+	}
+
+	@Test
+	public void testStopEndsDispatcherThread() throws Exception {
+		MonitorEventQueue queue = new MonitorEventQueue(new RecordingDispatcher(), 10);
+		queue.start();
+		Thread dispatcherThread = null;
+		for (Thread thread: Thread.getAllStackTraces().keySet()) {
+			if ("MonitorEventDispatcher".equals(thread.getName()) && thread.isAlive()) {
+				dispatcherThread = thread;
+			}
+		}
+		assertTrue(dispatcherThread!=null);
+		queue.stop();
+		dispatcherThread.join(10000);
+		assertFalse(dispatcherThread.isAlive());
+	}
+
+	@Test
+	public void testTriggerThreshold() throws Exception {
+		RecordingMonitor monitor = new RecordingMonitor();
+		Trigger trigger = new Trigger();
+		trigger.setOwner(monitor);
+		trigger.setEventCode("error");
+		trigger.setThreshold(3);
+		trigger.setPeriod(60);
+		trigger.configure();
+		Source source = new Source("s1");
+
+		trigger.evaluateEvent(source, "error");
+		trigger.evaluateEvent(source, "error");
+		assertEquals(0, monitor.stateChanges);
+		trigger.evaluateEvent(source, "error");
+		assertEquals(1, monitor.stateChanges);
+		trigger.evaluateEvent(source, "error");
+		assertEquals(2, monitor.stateChanges);
+
+		trigger.notificationOfReverseTrigger(source);
+		trigger.evaluateEvent(source, "error", 2);
+		assertEquals(2, monitor.stateChanges);
+		trigger.evaluateEvent(source, "error", 5);
+		assertEquals(3, monitor.stateChanges);
+	}
+
+	@Test
+	public void testTriggerPeriod() throws Exception {
+		RecordingMonitor monitor = new RecordingMonitor();
+		Trigger trigger = new Trigger();
+		trigger.setOwner(monitor);
+		trigger.setEventCode("error");
+		trigger.setThreshold(2);
+		trigger.setPeriod(0);
+		trigger.configure();
+		Source source = new Source("s1");
+
+		trigger.evaluateEvent(source, "error");
+		Thread.sleep(5);
+		trigger.evaluateEvent(source, "error");
+		assertEquals("events outside the period must not be counted", 0, monitor.stateChanges);
+		trigger.evaluateEvent(source, "error", 2);
+		assertEquals(1, monitor.stateChanges);
+	}
+}
@@ -20,6 +20,7 @@ import org.xml.sax.SAXException;
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.ISender;
+import nl.nn.adapterframework.core.PipeForward;
 import nl.nn.adapterframework.core.PipeLineSessionBase;
 import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
@@ -28,6 +29,7 @@ import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.senders.EchoSender;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.xml.FullXmlFilter;
 
 public class ForEachChildElementPipeTest extends PipeTestBase<ForEachChildElementPipe> {
@@ -106,6 +108,54 @@ public class ForEachChildElementPipeTest extends PipeTestBase<ForEachChildElemen
         assertEquals(expectedBasicNoNS, actual);
     }
 
+    @Test
+    public void testBasicSpilledResults() throws Exception {
+    	pipe.setSender(getElementRenderer(null));
+    	pipe.setSpillThreshold(20);
+    	configurePipe();
+    	pipe.start();
+
+        PipeRunResult prr = pipe.doPipe(messageBasicNoNS, session);
+        assertTrue("result should be spilled to a file", prr.getResult() instanceof Message);
+        Message result = (Message)prr.getResult();
+        assertEquals(expectedBasicNoNS, result.asString());
+        result.close();
+    }
+
+    @Test
+    public void testSpilledResultsCheckedAndRetriedOnContent() throws Exception {
+    	pipe.setSender(getElementRenderer(null));
+    	pipe.setSpillThreshold(20);
+    	pipe.setCheckXmlWellFormed(true);
+    	pipe.setCheckRootTag("results");
+    	pipe.setMaxRetries(1);
+    	pipe.setRetryXPath("count(/results/result)!=2");
+    	pipe.registerForward(new PipeForward("illegalResult", null));
+    	configurePipe();
+    	pipe.start();
+
+        PipeRunResult prr = pipe.doPipe(messageBasicNoNS, session);
+        assertEquals("spilled result must be checked on its content", "success", prr.getPipeForward().getName());
+        assertTrue("result should be spilled to a file", prr.getResult() instanceof Message);
+        Message result = (Message)prr.getResult();
+        assertEquals(expectedBasicNoNS, result.asString());
+        result.close();
+    }
+
+    @Test
+    public void testRemoveDuplicates() throws Exception {
+    	pipe.setSender(getElementRenderer(null));
+    	pipe.setRemoveDuplicates(true);
+    	pipe.setMaxDuplicateCheckItemsInMemory(1);
+    	configurePipe();
+    	pipe.start();
+
+        PipeRunResult prr = pipe.doPipe("<root><sub>a</sub><sub>b</sub><sub>a</sub><sub>c</sub><sub>b</sub></root>", session);
+        String actual=prr.getResult().toString();
+
+        assertEquals("<results>\n<result item=\"1\">\n<sub>a</sub>\n</result>\n<result item=\"2\">\n<sub>b</sub>\n</result>\n<result item=\"3\">\n<sub>c</sub>\n</result>\n</results>", actual);
+    }
+
     @Test
     public void testError() throws PipeRunException, ConfigurationException, PipeStartException {
     	pipe.setSender(getElementRenderer(null));
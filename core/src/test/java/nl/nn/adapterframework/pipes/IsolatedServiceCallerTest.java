@@ -0,0 +1,92 @@
+package nl.nn.adapterframework.pipes;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import nl.nn.adapterframework.core.ListenerException;
+import nl.nn.adapterframework.util.PooledTaskExecutor;
+
+public class IsolatedServiceCallerTest {
+
+	private PooledTaskExecutor executor;
+	private IsolatedServiceCaller caller;
+	private CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws Exception {
+		executor = new PooledTaskExecutor();
+		executor.setBeanName("isolatedTestPool");
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize(1);
+		executor.setQueueCapacity(0);
+		executor.setRejectionPolicy(PooledTaskExecutor.REJECTION_POLICY_ABORT);
+		executor.afterPropertiesSet();
+		caller = new IsolatedServiceCaller();
+		caller.setTaskExecutor(executor);
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		executor.destroy();
+	}
+
+	private void occupyPool() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		long timeout = System.currentTimeMillis() + 10000;
+		while (true) {
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						started.countDown();
+						try {
+							release.await(10, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+				break;
+			} catch (TaskRejectedException e) {
+				// the prestarted worker has not yet started to take tasks
+				if (System.currentTimeMillis() > timeout) {
+					throw e;
+				}
+				Thread.sleep(10);
+			}
+		}
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testIsolatedCallFailsWhenNoThreadAvailable() throws Exception {
+		occupyPool();
+		try {
+			caller.callServiceIsolated("service", "cid", "message", new HashMap(), false);
+			fail("isolated call must not run in the thread of the caller");
+		} catch (ListenerException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("no thread available"));
+		}
+	}
+
+	@Test
+	public void testAsynchronousCallFailsWhenNoThreadAvailable() throws Exception {
+		occupyPool();
+		try {
+			caller.callServiceAsynchronous("service", "cid", "message", new HashMap(), false);
+			fail("asynchronous call must not run in the thread of the caller");
+		} catch (ListenerException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("no thread available"));
+		}
+	}
+}
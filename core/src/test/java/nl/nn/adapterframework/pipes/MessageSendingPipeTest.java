@@ -0,0 +1,82 @@
+package nl.nn.adapterframework.pipes;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.core.IMessageSender;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.core.PipeRunResult;
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.core.SenderWithParametersBase;
+import nl.nn.adapterframework.core.TimeOutException;
+import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.stream.Message;
+import nl.nn.adapterframework.util.StreamUtil;
+
+public class MessageSendingPipeTest extends PipeTestBase<MessageSendingPipe> {
+
+	private static final String INPUT = "<request>message</request>";
+
+	/**
+	 * Sender that reads the message as a stream, and fails the first attempts.
+	 */
+	private class FailingStreamReadingSender extends SenderWithParametersBase implements IMessageSender {
+		private int failures;
+		private List<String> received = new ArrayList<String>();
+
+		FailingStreamReadingSender(int failures) {
+			this.failures = failures;
+		}
+
+		@Override
+		public String sendMessage(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+			try {
+				received.add(StreamUtil.streamToString(message.asInputStream(), null, "UTF-8"));
+			} catch (IOException e) {
+				throw new SenderException(e);
+			}
+			if (failures-- > 0) {
+				throw new SenderException("failure requested");
+			}
+			return "<reply/>";
+		}
+
+		@Override
+		public String sendMessage(String correlationID, String message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+			return sendMessage(correlationID, new Message(message), prc);
+		}
+
+		@Override
+		public boolean isSynchronous() {
+			return true;
+		}
+	}
+
+	@Override
+	public MessageSendingPipe createPipe() {
+		return new MessageSendingPipe();
+	}
+
+	@Test
+	public void testRetrySendsStreamedMessageAgain() throws Exception {
+		FailingStreamReadingSender sender = new FailingStreamReadingSender(1);
+		pipe.setSender(sender);
+		pipe.setMaxRetries(1);
+		configurePipe();
+		pipe.start();
+
+		Message message = new Message(new ByteArrayInputStream(INPUT.getBytes("UTF-8")));
+		PipeRunResult result = doPipe(pipe, message, new PipeLineSessionBase());
+
+		assertEquals("<reply/>", result.getResult().toString());
+		assertEquals(2, sender.received.size());
+		assertEquals(INPUT, sender.received.get(0));
+		assertEquals("the retry must send the complete message again", INPUT, sender.received.get(1));
+	}
+}
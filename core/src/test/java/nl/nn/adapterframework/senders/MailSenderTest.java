@@ -0,0 +1,175 @@
+package nl.nn.adapterframework.senders;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MailSenderTest extends SenderTestBase<MailSender> {
+
+	private SmtpServer server;
+
+	private String email = "<email><recipients><recipient type=\"to\">to@example.com</recipient></recipients>"
+			+ "<from>from@example.com</from><subject>subject</subject><message>message</message></email>";
+
+	/**
+	 * Minimal in-process SMTP server, that counts the connections and messages it receives.
+	 */
+	private class SmtpServer implements Runnable {
+		private ServerSocket serverSocket;
+		private AtomicInteger connections = new AtomicInteger();
+		private AtomicInteger messages = new AtomicInteger();
+		private boolean closeAfterMessage;
+
+		SmtpServer() throws IOException {
+			serverSocket = new ServerSocket(0);
+			Thread thread = new Thread(this, "SmtpServer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			while (!serverSocket.isClosed()) {
+				try {
+					final Socket socket = serverSocket.accept();
+					connections.incrementAndGet();
+					Thread handler = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							handle(socket);
+						}
+					});
+					handler.setDaemon(true);
+					handler.start();
+				} catch (IOException e) {
+					// server closed
+				}
+			}
+		}
+
+		private void handle(Socket socket) {
+			try (Socket s = socket) {
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "US-ASCII"));
+				OutputStream out = s.getOutputStream();
+				reply(out, "220 localhost ESMTP");
+				String line;
+				while ((line = in.readLine()) != null) {
+					String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+					if (command.equals("DATA")) {
+						reply(out, "354 end data with <CR><LF>.<CR><LF>");
+						while (!".".equals(in.readLine())) {
+							// skip message contents
+						}
+						messages.incrementAndGet();
+						reply(out, "250 OK");
+						if (closeAfterMessage) {
+							return;
+						}
+					} else if (command.equals("QUIT")) {
+						reply(out, "221 bye");
+						return;
+					} else if (command.equals("EHLO") || command.equals("HELO")) {
+						reply(out, "250 localhost");
+					} else {
+						reply(out, "250 OK");
+					}
+				}
+			} catch (IOException e) {
+				// connection closed by client
+			}
+		}
+
+		private void reply(OutputStream out, String reply) throws IOException {
+			out.write((reply + "\r\n").getBytes("US-ASCII"));
+			out.flush();
+		}
+
+		void close() throws IOException {
+			serverSocket.close();
+		}
+	}
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		server = new SmtpServer();
+		super.setUp();
+	}
+
+	@After
+	public void stopServer() throws Exception {
+		server.close();
+	}
+
+	@Override
+	public MailSender createSender() {
+		MailSender mailSender = new MailSender();
+		mailSender.setName("mailSender");
+		mailSender.setSmtpHost("localhost");
+		mailSender.setSmtpPort(server.serverSocket.getLocalPort());
+		return mailSender;
+	}
+
+	private void sendMessages(int count) throws Exception {
+		sender.configure();
+		sender.open();
+		for (int i = 0; i < count; i++) {
+			sender.sendMessage(null, email);
+		}
+	}
+
+	@Test
+	public void testConnectionReused() throws Exception {
+		sendMessages(5);
+		assertEquals(5, server.messages.get());
+		assertEquals(1, server.connections.get());
+		assertEquals(1, sender.getConnectionsOpened());
+		assertEquals(4, sender.getConnectionsReused());
+	}
+
+	@Test
+	public void testConnectionPerMessage() throws Exception {
+		sender.setMaxIdleConnections(0);
+		sendMessages(5);
+		assertEquals(5, server.messages.get());
+		assertEquals(5, server.connections.get());
+	}
+
+	@Test
+	public void testMaxMessagesPerConnection() throws Exception {
+		sender.setMaxMessagesPerConnection(2);
+		sendMessages(5);
+		assertEquals(5, server.messages.get());
+		assertEquals(3, server.connections.get());
+	}
+
+	@Test
+	public void testRetryWhenServerClosedConnection() throws Exception {
+		server.closeAfterMessage = true;
+		sendMessages(3);
+		assertEquals(3, server.messages.get());
+		assertEquals(3, server.connections.get());
+	}
+
+	@Test
+	public void testPortOfMailSession() throws Exception {
+		sender.setSmtpPort(-1);
+		System.setProperty("mail.smtp.port", Integer.toString(server.serverSocket.getLocalPort()));
+		try {
+			sendMessages(1);
+		} finally {
+			System.clearProperty("mail.smtp.port");
+		}
+		assertEquals("mail.smtp.port must be used when smtpPort is not set", 1, server.messages.get());
+	}
+}
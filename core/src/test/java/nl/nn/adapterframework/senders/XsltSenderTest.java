@@ -2,6 +2,7 @@ package nl.nn.adapterframework.senders;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
@@ -11,6 +12,7 @@ import nl.nn.adapterframework.core.PipeStartException;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.testutil.TestFileUtils;
 
 import org.junit.Rule;
@@ -85,6 +87,33 @@ public class XsltSenderTest extends SenderTestBase<XsltSender> {
 		assertEquals("dummy", result);
 	}
 
+	@Test
+	public void testXpathOnStreamedMessage() throws SenderException, TimeOutException, ConfigurationException, IOException {
+		sender.setXpathExpression("result");
+		sender.configure();
+		sender.open();
+
+		Message message = new Message(new ByteArrayInputStream("<result>dummy</result>".getBytes("UTF-8")));
+		ParameterResolutionContext prc = new ParameterResolutionContext((String)null, session);
+		String result = sender.sendMessage(null, message, prc);
+
+		assertEquals("dummy", result);
+	}
+
+	@Test
+	public void testStreamedMessageWithoutParameterResolutionContext() throws SenderException, TimeOutException, ConfigurationException, IOException {
+		sender.setStyleSheetName("/Xslt/dynamicStylesheet/correctDummy.xsl");
+		sender.setStyleSheetNameSessionKey("stylesheetName");
+		sender.configure();
+		sender.open();
+
+		String input = TestFileUtils.getTestFile("/Xslt/dynamicStylesheet/in.xml");
+		String expected = TestFileUtils.getTestFile("/Xslt/dynamicStylesheet/out.txt");
+		Message message = new Message(new ByteArrayInputStream(input.getBytes("UTF-8")));
+
+		assertEquals(expected, sender.sendMessage(null, message, null, null));
+	}
+
 	//This xPath only runs on xslt version 1
 	@Test
 	public void testComplexXslt1Xpath() throws SenderException, TimeOutException, ConfigurationException, IOException {
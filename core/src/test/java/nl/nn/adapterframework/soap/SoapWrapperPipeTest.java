@@ -0,0 +1,52 @@
+package nl.nn.adapterframework.soap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.core.PipeRunException;
+import nl.nn.adapterframework.pipes.PipeTestBase;
+
+public class SoapWrapperPipeTest extends PipeTestBase<SoapWrapperPipe> {
+
+	private static final String MESSAGE = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+			+ "<soapenv:Header><h>header</h></soapenv:Header><soapenv:Body><b>body</b></soapenv:Body></soapenv:Envelope>";
+	private static final String FAULT = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+			+ "<soapenv:Body><soapenv:Fault><faultcode>soapenv:Server</faultcode><faultstring>error</faultstring></soapenv:Fault></soapenv:Body></soapenv:Envelope>";
+
+	private IPipeLineSession session = new PipeLineSessionBase();
+
+	@Override
+	public SoapWrapperPipe createPipe() {
+		return new SoapWrapperPipe() {
+			@Override
+			protected String unwrapMessage(String messageText) {
+				return "<unwrapped/>";
+			}
+		};
+	}
+
+	@Test
+	public void testUnwrapUsesOverriddenUnwrapMessage() throws Exception {
+		pipe.setDirection("unwrap");
+		pipe.setSoapHeaderSessionKey("soapHeader");
+		configurePipe();
+		assertEquals("<unwrapped/>", doPipe(pipe, MESSAGE, session).getResult());
+		assertEquals("<h xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">header</h>", session.get("soapHeader"));
+	}
+
+	@Test
+	public void testUnwrapFault() throws Exception {
+		pipe.setDirection("unwrap");
+		configurePipe();
+		try {
+			doPipe(pipe, FAULT, session);
+			fail("expected PipeRunException");
+		} catch (PipeRunException e) {
+			// the SOAP Fault is detected, although the body is taken from unwrapMessage()
+		}
+	}
+}
@@ -1,15 +1,24 @@
 package nl.nn.adapterframework.soap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.TransformerPool;
+import nl.nn.adapterframework.util.XmlUtils;
 
 /**
  * @author Peter Leeuwenburgh
  */
 public class SoapWrapperTest {
+	private Logger log = LogUtil.getLogger(this);
 
 	@Test
 	public void getBody11() throws ConfigurationException {
@@ -46,4 +55,108 @@ public class SoapWrapperTest {
 				+ "<Status>OK</Status></Result></FindDocuments_Response>";
 		assertEquals(expectedSoapBody, soapBody);
 	}
+
+	private static final String SOAP11 = "soapenv=http://schemas.xmlsoap.org/soap/envelope/";
+	private static final String SOAP12 = "soapenv=http://www.w3.org/2003/05/soap-envelope";
+
+	private static final String[] MESSAGES = {
+		"<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:a=\"urn:a\">\n"
+				+ "  <soapenv:Header>\n    <a:h1>header <!-- comment --> text</a:h1>\n    <h2 xmlns=\"urn:h\"> <x>  </x> </h2>\n  </soapenv:Header>\n"
+				+ "  <soapenv:Body xmlns:b=\"urn:b\">\n    <b:req attr=\"&quot;&lt;&amp;\"><![CDATA[<cdata> & text]]>&#233; &gt;<empty/></b:req>\n    <second xmlns=\"\"/>\n  </soapenv:Body>\n"
+				+ "</soapenv:Envelope>",
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?><s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body><s:Fault>"
+				+ "<faultcode>s:Server</faultcode><faultstring>  something <b>went</b> wrong  </faultstring><detail><faultcode>not this one</faultcode></detail>"
+				+ "</s:Fault></s:Body></s:Envelope>",
+		"<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body><soapenv:Fault><faultcode>c1</faultcode><faultstring>s1</faultstring></soapenv:Fault>"
+				+ "<soapenv:Fault><faultcode>c2</faultcode></soapenv:Fault></soapenv:Body></soapenv:Envelope>",
+		"<env:Envelope xmlns:env=\"http://www.w3.org/2003/05/soap-envelope\"><env:Body><m:resp xmlns:m=\"urn:m\">text</m:resp></env:Body></env:Envelope>",
+		"<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns=\"urn:default\"><soapenv:Body><a><b xmlns=\"\"><c xmlns=\"urn:c\"/><d/></b>"
+				+ "<soapenv:x xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"/><p:y xmlns:p=\"urn:p\"><p:z xmlns:p=\"urn:p2\"/></p:y></a><?pi data?></soapenv:Body></soapenv:Envelope>",
+		"<notSoap><Body><x/></Body></notSoap>",
+		"<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>only text</soapenv:Body></soapenv:Envelope>",
+	};
+
+	private String xpath(String namespaceDefs, String xpath, String outputMethod, boolean stripSpace, String message) throws Exception {
+		TransformerPool tp = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource(namespaceDefs, xpath, outputMethod, false, null, stripSpace));
+		return tp.transform(message, null, true);
+	}
+
+	private String xpathBody(String message) throws Exception {
+		String result = xpath(SOAP11, "/soapenv:Envelope/soapenv:Body/*", "xml", false, message);
+		return result.length() > 0 ? result : xpath(SOAP12, "/soapenv:Envelope/soapenv:Body/*", "xml", false, message);
+	}
+
+	@Test
+	public void splitEqualsXPathResults() throws Exception {
+		SoapWrapper soapWrapper = SoapWrapper.getInstance();
+		for (String message : MESSAGES) {
+			SoapEnvelopeParts parts = soapWrapper.split(message);
+			assertEquals(message, xpathBody(message), parts.getBody());
+			assertEquals(message, xpath(SOAP11, "/soapenv:Envelope/soapenv:Header/*", "xml", true, message), parts.getHeader());
+			assertEquals(message, Integer.parseInt(xpath(SOAP11, "count(/soapenv:Envelope/soapenv:Body/soapenv:Fault)", "text", true, message)), parts.getFaultCount());
+			assertEquals(message, xpath(SOAP11, "/soapenv:Envelope/soapenv:Body/soapenv:Fault/faultcode", "text", true, message), soapWrapper.getFaultCode(message));
+			assertEquals(message, xpath(SOAP11, "/soapenv:Envelope/soapenv:Body/soapenv:Fault/faultstring", "text", true, message), soapWrapper.getFaultString(message));
+		}
+	}
+
+	@Test
+	public void splitSoap12Fault() throws Exception {
+		String message = "<env:Envelope xmlns:env=\"http://www.w3.org/2003/05/soap-envelope\">"
+				+ "<env:Header><h xmlns=\"urn:h\">1</h></env:Header>"
+				+ "<env:Body><env:Fault><env:Code><env:Value>env:Sender</env:Value><env:Subcode><env:Value>m:Invalid</env:Value></env:Subcode></env:Code>"
+				+ "<env:Reason><env:Text xml:lang=\"en\">invalid request</env:Text></env:Reason></env:Fault></env:Body></env:Envelope>";
+		SoapEnvelopeParts parts = SoapWrapper.getInstance().split(message);
+		assertEquals("http://www.w3.org/2003/05/soap-envelope", parts.getSoapNamespace());
+		assertEquals("<h xmlns=\"urn:h\" xmlns:env=\"http://www.w3.org/2003/05/soap-envelope\">1</h>", parts.getHeader());
+		assertEquals(1, parts.getFaultCount());
+		assertEquals("env:Sender", parts.getFaultCode());
+		assertEquals("invalid request", parts.getFaultString());
+		try {
+			SoapWrapper.getInstance().checkForSoapFault(message, null);
+			fail("expected SenderException");
+		} catch (SenderException e) {
+			assertEquals("SOAP fault [env:Sender]: invalid request", e.getMessage());
+		}
+	}
+
+	@Test
+	public void splitNoSoap() throws Exception {
+		SoapEnvelopeParts parts = SoapWrapper.getInstance().split("<a/>");
+		assertNull(parts.getSoapNamespace());
+		assertEquals("", parts.getBody());
+		assertEquals(0, parts.getFaultCount());
+	}
+
+	@Test
+	@Ignore("benchmark, run manually")
+	public void benchmark() throws Exception {
+		SoapWrapper soapWrapper = SoapWrapper.getInstance();
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			body.append("<line number=\"").append(i).append("\">some text &amp; more</line>");
+		}
+		String message = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Header><h>1</h></soapenv:Header>"
+				+ "<soapenv:Body><resp xmlns=\"urn:r\">" + body + "</resp></soapenv:Body></soapenv:Envelope>";
+		TransformerPool extractBody = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource(SOAP11, "/soapenv:Envelope/soapenv:Body/*", "xml", false, null, false));
+		TransformerPool extractHeader = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource(SOAP11, "/soapenv:Envelope/soapenv:Header/*", "xml"));
+		TransformerPool extractFaultCount = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource(SOAP11, "count(/soapenv:Envelope/soapenv:Body/soapenv:Fault)", "text"));
+		int iterations = 2000;
+		for (int pass = 0; pass < 2; pass++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				extractBody.transform(message, null, true);
+				extractFaultCount.transform(message, null, true);
+				extractHeader.transform(message, null, true);
+			}
+			long xpathTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				soapWrapper.split(message);
+			}
+			long splitTime = System.nanoTime() - start;
+			if (pass == 1) {
+				log.info("message [" + message.length() + "] chars: body, fault count and header by xpath [" + xpathTime / iterations / 1000 + "] us, split [" + splitTime / iterations / 1000 + "] us");
+			}
+		}
+	}
 }
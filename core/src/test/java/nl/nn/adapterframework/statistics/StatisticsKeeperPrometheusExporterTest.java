@@ -0,0 +1,91 @@
+package nl.nn.adapterframework.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class StatisticsKeeperPrometheusExporterTest {
+
+	private String export(StatisticsKeeperPrometheusExporter exporter) throws Exception {
+		StringWriter writer = new StringWriter();
+		exporter.write(writer);
+		return writer.toString();
+	}
+
+	@Test
+	public void testHistogram() throws Exception {
+		StatisticsKeeper sk = new StatisticsKeeper("pipe \"one\"");
+		sk.addValue(50);
+		sk.addValue(500);
+		sk.addValue(50000);
+		StatisticsKeeperPrometheusExporter exporter = new StatisticsKeeperPrometheusExporter();
+		Date now = new Date();
+		Object root = exporter.start(now, now, null);
+		Object instance = exporter.openGroup(root, "myInstance", "instance");
+		Object adapter = exporter.openGroup(instance, "adapter1", "adapter");
+		Object pipeline = exporter.openGroup(adapter, null, "pipeline");
+		Object pipeStats = exporter.openGroup(pipeline, null, "pipeStats");
+		exporter.handleStatisticsKeeper(pipeStats, sk);
+		exporter.end(root);
+
+		String result = export(exporter);
+		assertTrue(result, result.startsWith("# TYPE ibis_pipe_stats_milliseconds histogram\n"));
+		String labels = "instance_name=\"myInstance\",adapter=\"adapter1\",name=\"pipe \\\"one\\\"\"";
+		long[] boundaries = sk.getClassBoundaries();
+		long[] counts = sk.getClassCounts();
+		for (int i = 0; i < boundaries.length; i++) {
+			assertTrue(result, result.contains("ibis_pipe_stats_milliseconds_bucket{" + labels + ",le=\"" + boundaries[i] + "\"} " + counts[i] + "\n"));
+		}
+		assertTrue(result, result.contains("ibis_pipe_stats_milliseconds_bucket{" + labels + ",le=\"+Inf\"} 3\n"));
+		assertTrue(result, result.contains("ibis_pipe_stats_milliseconds_sum{" + labels + "} 50550\n"));
+		assertTrue(result, result.contains("ibis_pipe_stats_milliseconds_count{" + labels + "} 3\n"));
+		assertFalse("label instance is reserved for the scrape target", result.contains("instance=\""));
+	}
+
+	@Test
+	public void testScalars() throws Exception {
+		StatisticsKeeperPrometheusExporter exporter = new StatisticsKeeperPrometheusExporter();
+		Date now = new Date(1500000000123L);
+		for (String adapterName : new String[] { "adapter1", "adapter2" }) {
+			Object root = exporter.start(now, now, null);
+			Object adapter = exporter.openGroup(root, adapterName, "adapter");
+			exporter.handleScalar(adapter, "upSince", now);
+			exporter.handleScalar(adapter, "lastMessageDate", (Date)null);
+			exporter.handleScalar(adapter, "messagesInProcess", 2);
+			exporter.handleScalar(adapter, "messagesProcessed", 10);
+			exporter.handleScalar(adapter, "messagesProcessedThisInterval", 5);
+			Object hours = exporter.openGroup(adapter, adapterName, "processing by hour");
+			exporter.handleScalar(hours, "00:00", 7);
+			exporter.closeGroup(hours);
+			Object receivers = exporter.openGroup(adapter, null, "receivers");
+			Object receiver = exporter.openGroup(receivers, "receiver1", "receiver");
+			exporter.handleScalar(receiver, "messagesReceived", 12);
+			exporter.end(root);
+		}
+
+		String result = export(exporter);
+		assertEquals("one type line per metric family", result.indexOf("# TYPE ibis_adapter_messages_processed_total counter"), result.lastIndexOf("# TYPE ibis_adapter_messages_processed_total"));
+		assertTrue(result, result.contains("ibis_adapter_messages_processed_total{adapter=\"adapter1\"} 10\n"));
+		assertTrue(result, result.contains("ibis_adapter_messages_processed_total{adapter=\"adapter2\"} 10\n"));
+		assertTrue(result, result.contains("# TYPE ibis_adapter_messages_in_process gauge\n"));
+		assertTrue(result, result.contains("ibis_adapter_messages_in_process{adapter=\"adapter1\"} 2\n"));
+		assertTrue(result, result.contains("ibis_adapter_up_since_seconds{adapter=\"adapter1\"} 1500000000.123\n"));
+		assertTrue(result, result.contains("ibis_adapter_messages_by_hour_total{adapter=\"adapter1\",hour=\"00:00\"} 7\n"));
+		assertTrue(result, result.contains("ibis_receiver_messages_received_total{adapter=\"adapter1\",receiver=\"receiver1\"} 12\n"));
+		assertFalse(result, result.contains("interval"));
+		assertFalse(result, result.contains("last_message_date"));
+	}
+
+	@Test
+	public void testToSnakeCase() {
+		assertEquals("pipe_stats", StatisticsKeeperPrometheusExporter.toSnakeCase("pipeStats"));
+		assertEquals("cache_hits", StatisticsKeeperPrometheusExporter.toSnakeCase("CacheHits"));
+		assertEquals("processing_by_hour", StatisticsKeeperPrometheusExporter.toSnakeCase("processing by hour"));
+		assertEquals("write_behind", StatisticsKeeperPrometheusExporter.toSnakeCase("writeBehind"));
+	}
+}
@@ -0,0 +1,93 @@
+package nl.nn.adapterframework.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.DecimalFormat;
+
+import org.junit.Test;
+
+public class StatisticsKeeperSnapshotTest {
+
+	private void assertSameValues(StatisticsKeeper sk, StatisticsKeeperSnapshot snapshot) {
+		assertEquals(sk.getItemCount(), snapshot.getItemCount());
+		for (int i = 0; i < sk.getItemCount(); i++) {
+			String name = sk.getItemName(i);
+			assertEquals(name, snapshot.getItemName(i));
+			assertEquals(name, sk.getItemType(i), snapshot.getItemType(i));
+			Object value = sk.getItemValue(i);
+			if (value == null) {
+				assertNull(name, snapshot.getItemValue(i));
+				assertTrue(name, Double.isNaN(snapshot.getItemDouble(i)));
+			} else {
+				assertEquals(name, ((Number)value).doubleValue(), snapshot.getItemDouble(i), 0.0001);
+				assertEquals(name, ((Number)value).longValue(), snapshot.getItemLong(i));
+			}
+		}
+		for (int i = 0; i < sk.getIntervalItemCount(); i++) {
+			Object value = sk.getIntervalItemValue(i);
+			if (value == null) {
+				assertTrue(sk.getIntervalItemName(i), Double.isNaN(snapshot.getIntervalItemDouble(i)));
+			} else {
+				assertEquals(sk.getIntervalItemName(i), ((Number)value).doubleValue(), snapshot.getIntervalItemDouble(i), 0.0001);
+			}
+		}
+	}
+
+	@Test
+	public void testValues() {
+		StatisticsKeeper sk = new StatisticsKeeper("test");
+		assertSameValues(sk, sk.getSnapshot());
+		for (int i = 1; i <= 20; i++) {
+			sk.addValue(i * 150);
+		}
+		assertSameValues(sk, sk.getSnapshot());
+		sk.performAction(HasStatistics.STATISTICS_ACTION_MARK_FULL);
+		sk.addValue(10);
+		assertSameValues(sk, sk.getSnapshot());
+	}
+
+	@Test
+	public void testSizeStatistics() {
+		StatisticsKeeper sk = new SizeStatisticsKeeper("size");
+		sk.addValue(50000);
+		sk.addValue(5000000);
+		assertSameValues(sk, sk.getSnapshot());
+	}
+
+	@Test
+	public void testSnapshotReusedWhileUnchanged() {
+		StatisticsKeeper sk = new StatisticsKeeper("test");
+		sk.addValue(100);
+		StatisticsKeeperSnapshot snapshot = sk.getSnapshot();
+		assertSame(snapshot, sk.getSnapshot());
+		sk.performAction(HasStatistics.STATISTICS_ACTION_FULL);
+		assertSame(snapshot, sk.getSnapshot());
+
+		sk.addValue(200);
+		StatisticsKeeperSnapshot next = sk.getSnapshot();
+		assertNotSame(snapshot, next);
+		assertEquals(1, snapshot.getItemLong(0));
+		assertEquals(2, next.getItemLong(0));
+
+		sk.performAction(HasStatistics.STATISTICS_ACTION_MARK_FULL);
+		assertNotSame(next, sk.getSnapshot());
+		assertEquals(0, sk.getSnapshot().getIntervalItemLong(0));
+		sk.clear();
+		assertEquals(0, sk.getSnapshot().getItemLong(0));
+	}
+
+	@Test
+	public void testFormatting() {
+		StatisticsKeeper sk = new StatisticsKeeper("test");
+		sk.addValue(100);
+		String xml = ItemUtil.toXml(sk.getSnapshot(), "stat", "test", new DecimalFormat(ItemList.PRINT_FORMAT_TIME), new DecimalFormat(ItemList.PRINT_FORMAT_PERC)).toXML();
+		assertTrue(xml, xml.contains("<item name=\"count\" value=\"1\" />"));
+		assertTrue(xml, xml.contains("<item name=\"min\" value=\"100\" />"));
+		assertTrue("stdDev of a single value", xml.contains("<item name=\"stdDev\" value=\"-\" />"));
+		assertTrue(xml, xml.contains("<item name=\"&lt; 100ms\" value=\"0.0%\" />"));
+	}
+}
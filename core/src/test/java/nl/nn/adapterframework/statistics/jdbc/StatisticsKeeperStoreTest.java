@@ -0,0 +1,192 @@
+package nl.nn.adapterframework.statistics.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+
+public class StatisticsKeeperStoreTest {
+
+	// keys are cached for the lifetime of the JVM, so the database must outlive the test
+	private static final String URL = "jdbc:h2:mem:statistics;DB_CLOSE_DELAY=-1";
+	private static final String DATASOURCE_NAME = "jdbc/statistics";
+
+	private Connection connection;
+	private Map<String, Object> dataSources = new HashMap<String, Object>();
+
+	@Before
+	public void setUp() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl(URL);
+		dataSources.put(DATASOURCE_NAME, dataSource);
+		connection = dataSource.getConnection();
+		for (String table : new String[] { "ibisinstance", "ibishost", "ibisstatname" }) {
+			execute("CREATE TABLE IF NOT EXISTS " + table + " (" + table.substring(4) + "key INT PRIMARY KEY, name VARCHAR(100))");
+			execute("CREATE SEQUENCE IF NOT EXISTS seq_" + table);
+		}
+		execute("CREATE TABLE IF NOT EXISTS ibisgroup (groupkey INT PRIMARY KEY, parentgroup INT, instancekey INT, name VARCHAR(100), type VARCHAR(100))");
+		execute("CREATE SEQUENCE IF NOT EXISTS seq_ibisgroup");
+		execute("CREATE TABLE IF NOT EXISTS ibisevent (eventkey INT PRIMARY KEY, instancekey INT, hostkey INT, heapSize BIGINT, totalMemory BIGINT, timestamp TIMESTAMP, intervalstart TIMESTAMP, "
+				+ "shour VARCHAR(10), sdatehour VARCHAR(20), sday VARCHAR(10), sdate VARCHAR(20), sweekday VARCHAR(10), sweek VARCHAR(10), syearweek VARCHAR(10), smonth VARCHAR(10), syearmonth VARCHAR(10), syear VARCHAR(10))");
+		execute("CREATE SEQUENCE IF NOT EXISTS seq_ibisevent");
+		execute("CREATE TABLE IF NOT EXISTS ibisstatinfo (eventkey INT, groupkey INT, statnamekey INT, count BIGINT, min BIGINT, max BIGINT, avg DOUBLE, stddev DOUBLE, sum BIGINT, sumsq BIGINT)");
+		execute("CREATE TABLE IF NOT EXISTS ibisnuminfo (eventkey INT, groupkey INT, statnamekey INT, value BIGINT)");
+		execute("CREATE TABLE IF NOT EXISTS ibisdateinfo (eventkey INT, groupkey INT, statnamekey INT, value TIMESTAMP)");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		connection.close();
+	}
+
+	private void execute(String query) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.execute(query);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private String query(String query) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery(query);
+			StringBuilder result = new StringBuilder();
+			while (rs.next()) {
+				for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+					result.append(i > 1 ? "," : result.length() > 0 ? ";" : "").append(rs.getString(i));
+				}
+			}
+			return result.toString();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private StatisticsKeeperStore createStore() throws Exception {
+		StatisticsKeeperStore store = new StatisticsKeeperStore();
+		store.setProxiedDataSources(dataSources);
+		store.setDatasourceName(DATASOURCE_NAME);
+		store.setBatchSize(2);
+		return store;
+	}
+
+	private int dump(StatisticsKeeperStore store, StatisticsKeeper... keepers) throws Exception {
+		Date now = new Date();
+		Object root = store.start(now, new Date(now.getTime() - 1000), null);
+		Object adapter = store.openGroup(root, "adapter1", "adapter");
+		store.handleScalar(adapter, "messagesProcessed", 5);
+		store.handleScalar(adapter, "upSince", now);
+		Object pipeStats = store.openGroup(adapter, null, "pipeStats");
+		for (StatisticsKeeper sk : keepers) {
+			store.handleStatisticsKeeper(pipeStats, sk);
+		}
+		store.closeGroup(pipeStats);
+		store.closeGroup(adapter);
+		store.end(root);
+		return Integer.parseInt(query("SELECT MAX(eventkey) FROM ibisevent"));
+	}
+
+	private String getStatInfo(int eventKey) throws Exception {
+		return query("SELECT n.name, s.count, s.min, s.max, s.sum FROM ibisstatinfo s JOIN ibisstatname n ON n.statnamekey=s.statnamekey WHERE s.eventkey=" + eventKey + " ORDER BY n.name");
+	}
+
+	@Test
+	public void testBatchedDump() throws Exception {
+		StatisticsKeeperStore store = createStore();
+		store.configure();
+		StatisticsKeeper[] keepers = new StatisticsKeeper[3];
+		for (int i = 0; i < keepers.length; i++) {
+			keepers[i] = new StatisticsKeeper("pipe" + i);
+			keepers[i].addValue(10 * (i + 1));
+		}
+		int eventKey = dump(store, keepers);
+		assertEquals("pipe0,1,10,10,10;pipe1,1,20,20,20;pipe2,1,30,30,30", getStatInfo(eventKey));
+		assertEquals("1", query("SELECT COUNT(*) FROM ibisnuminfo WHERE eventkey=" + eventKey));
+		assertEquals("1", query("SELECT COUNT(*) FROM ibisdateinfo WHERE eventkey=" + eventKey));
+
+		keepers[0].addValue(30);
+		int secondEventKey = dump(store, keepers);
+		assertEquals("cumulative values", "pipe0,2,10,30,40;pipe1,1,20,20,20;pipe2,1,30,30,30", getStatInfo(secondEventKey));
+		assertEquals("groups are reused", query("SELECT groupkey FROM ibisstatinfo WHERE eventkey=" + eventKey + " ORDER BY statnamekey"),
+				query("SELECT groupkey FROM ibisstatinfo WHERE eventkey=" + secondEventKey + " ORDER BY statnamekey"));
+	}
+
+	@Test
+	public void testIntervalValuesOfActiveKeepers() throws Exception {
+		StatisticsKeeperStore store = createStore();
+		store.setStoreIntervalValues(true);
+		store.setSkipInactiveKeepers(true);
+		store.configure();
+		StatisticsKeeper active = new StatisticsKeeper("active");
+		StatisticsKeeper inactive = new StatisticsKeeper("inactive");
+		active.addValue(10);
+		active.addValue(20);
+		int eventKey = dump(store, active, inactive);
+		assertEquals("active,2,null,null,30", getStatInfo(eventKey));
+
+		active.addValue(40);
+		eventKey = dump(store, active, inactive);
+		assertEquals("active,1,null,null,40", getStatInfo(eventKey));
+
+		eventKey = dump(store, active, inactive);
+		assertEquals("", getStatInfo(eventKey));
+
+		active.clear();
+		active.addValue(50);
+		eventKey = dump(store, active, inactive);
+		assertEquals("keeper has been reset", "active,1,null,null,50", getStatInfo(eventKey));
+	}
+
+	@Test
+	public void testIntervalStdDevOfLargeValues() throws Exception {
+		StatisticsKeeperStore store = createStore();
+		store.setStoreIntervalValues(true);
+		store.configure();
+		StatisticsKeeper sk = new StatisticsKeeper("large");
+		// the square of the sum of these values exceeds the range of a long
+		sk.addValue(1000000000L);
+		sk.addValue(1000000000L);
+		sk.addValue(2000000000L);
+		int eventKey = dump(store, sk);
+		String[] result = query("SELECT s.avg, s.stddev FROM ibisstatinfo s JOIN ibisstatname n ON n.statnamekey=s.statnamekey WHERE n.name='large' AND s.eventkey=" + eventKey).split(",");
+		assertEquals(4000000000.0/3, Double.parseDouble(result[0]), 1);
+		assertEquals(Math.sqrt(1e18/3), Double.parseDouble(result[1]), 1);
+	}
+
+	@Test
+	public void testPreviousValuesNotAdvancedWhenBatchFails() throws Exception {
+		StatisticsKeeperStore store = createStore();
+		store.setStoreIntervalValues(true);
+		store.configure();
+		StatisticsKeeper sk = new StatisticsKeeper("failing");
+		sk.addValue(999);
+		execute("ALTER TABLE ibisstatinfo ADD CONSTRAINT chk_failing CHECK (sum <> 999)");
+		try {
+			dump(store, sk);
+			fail("dump must fail");
+		} catch (SenderException e) {
+			// expected
+		} finally {
+			execute("ALTER TABLE ibisstatinfo DROP CONSTRAINT chk_failing");
+		}
+		sk.addValue(1);
+		int eventKey = dump(store, sk);
+		assertEquals("values of the failed dump must be included in the next interval", "failing,2,null,null,1000", getStatInfo(eventKey));
+	}
+}
@@ -0,0 +1,208 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+
+import org.apache.log4j.Logger;
+import org.hamcrest.core.StringContains;
+import org.junit.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+public class ContentHandlerOutputStreamTest {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private String testString="<root xmlns=\"urn:default\" xmlns:p=\"urn:prefixed\"><p:sub p:attr=\"x&amp;y\" attr=\"z\">abc&amp;&lt;&gt;</p:sub><!--comment--><sub><![CDATA[<a>a&amp;b</a>]]></sub><?pi data?><empty/></root>";
+
+	private interface StreamFactory {
+		OutputStream create(ContentHandler handler) throws StreamingException;
+	}
+
+	private StreamFactory pushParserFactory = new StreamFactory() {
+		@Override
+		public OutputStream create(ContentHandler handler) throws StreamingException {
+			return new ContentHandlerOutputStream(handler);
+		}
+	};
+
+	private StreamFactory pipedFactory = new StreamFactory() {
+		@Override
+		public OutputStream create(ContentHandler handler) throws StreamingException {
+			return new PipedContentHandlerOutputStream(handler);
+		}
+	};
+
+	private String parse(StreamFactory factory, byte[] input, int chunkSize) throws Exception {
+		XmlWriter target = new XmlWriter();
+		try (OutputStream stream = factory.create(target)) {
+			for (int i=0; i<input.length; i+=chunkSize) {
+				stream.write(input, i, Math.min(chunkSize, input.length-i));
+			}
+		}
+		return target.toString();
+	}
+
+	@Test
+	public void testWriteAtOnce() throws Exception {
+		byte[] input = testString.getBytes("UTF-8");
+		assertEquals(parse(pipedFactory, input, input.length), parse(pushParserFactory, input, input.length));
+	}
+
+	@Test
+	public void testWriteByteByByte() throws Exception {
+		byte[] input = testString.getBytes("UTF-8");
+		assertEquals(parse(pipedFactory, input, input.length), parse(pushParserFactory, input, 1));
+	}
+
+	@Test
+	public void testMultiByteCharactersSplitOverWrites() throws Exception {
+		String message = "<root>é€中</root>";
+		byte[] input = message.getBytes("UTF-8");
+		assertEquals(message, parse(pushParserFactory, input, 1));
+	}
+
+	@Test
+	public void testSupportedEncodingInDeclaration() throws Exception {
+		String message = "<root>abc</root>";
+		byte[] input = ("<?xml version=\"1.0\" encoding=\"US-ASCII\"?>"+message).getBytes("US-ASCII");
+		assertEquals(message, parse(pushParserFactory, input, 1));
+	}
+
+	@Test
+	public void testUnsupportedEncodingInDeclaration() throws Exception {
+		String message = "<root>é€</root>";
+		byte[] input = ("<?xml version=\"1.0\" encoding=\"windows-1252\"?>"+message).getBytes("windows-1252");
+		assertEquals(message, parse(pushParserFactory, input, 1));
+		assertEquals(message, parse(pushParserFactory, input, input.length));
+		message = "<root>é</root>";
+		input = ("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"+message).getBytes("ISO-8859-1");
+		assertEquals(message, parse(pushParserFactory, input, 1));
+	}
+
+	@Test
+	public void testUtf16() throws Exception {
+		String message = "<root>é€中</root>";
+		byte[] input = message.getBytes("UTF-16");
+		assertEquals(message, parse(pushParserFactory, input, 3));
+	}
+
+	@Test
+	public void testGetEncoding() throws Exception {
+		assertNull(ContentHandlerOutputStream.getEncoding("<?x".getBytes("UTF-8"), false));
+		assertEquals("UTF-8", ContentHandlerOutputStream.getEncoding("<?x".getBytes("UTF-8"), true));
+		assertNull(ContentHandlerOutputStream.getEncoding("<?xml version='1.0' enc".getBytes("UTF-8"), false));
+		assertEquals("UTF-8", ContentHandlerOutputStream.getEncoding("<root/>".getBytes("UTF-8"), false));
+		assertEquals("UTF-8", ContentHandlerOutputStream.getEncoding("<?xml version=\"1.0\"?><root/>".getBytes("UTF-8"), false));
+		assertEquals("windows-1252", ContentHandlerOutputStream.getEncoding("<?xml version='1.0' encoding='windows-1252'?>".getBytes("UTF-8"), false));
+		assertEquals("ISO-8859-1", ContentHandlerOutputStream.getEncoding("\uFEFF<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>".getBytes("UTF-8"), false));
+		assertEquals("UTF-16", ContentHandlerOutputStream.getEncoding("<root/>".getBytes("UTF-16LE"), false));
+	}
+
+	@Test
+	public void testEventsInCallingThread() throws Exception {
+		final Thread caller = Thread.currentThread();
+		final StringBuilder seen = new StringBuilder();
+		ContentHandler handler = new DefaultHandler() {
+			@Override
+			public void startElement(String uri, String localName, String qName, org.xml.sax.Attributes attributes) throws SAXException {
+				seen.append(Thread.currentThread()==caller ? localName : "otherThread");
+			}
+		};
+		OutputStream stream = new ContentHandlerOutputStream(handler);
+		stream.write("<root><sub>".getBytes("UTF-8"));
+		assertEquals("rootsub", seen.toString());
+		stream.write("</sub></root>".getBytes("UTF-8"));
+		stream.close();
+	}
+
+	@Test
+	public void testInvalidXml() throws Exception {
+		try {
+			parse(pushParserFactory, "<root><sub></root>".getBytes("UTF-8"), 4);
+			fail("exception should be thrown");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testHandlerError() throws Exception {
+		ContentHandler handler = new DefaultHandler() {
+			@Override
+			public void endElement(String uri, String localName, String qName) throws SAXException {
+				throw new SAXException("fakeFailure");
+			}
+		};
+		try (OutputStream stream = new ContentHandlerOutputStream(handler)) {
+			stream.write(testString.getBytes("UTF-8"));
+			fail("exception should be thrown");
+		} catch (IOException e) {
+			assertThat(e.getMessage(), StringContains.containsString("fakeFailure"));
+		}
+	}
+
+	/*
+	 * Compares the push parser to the piped implementation, that needs a thread per stream.
+	 */
+	@Test
+	public void testStaxImplementationNotChanged() throws Exception {
+		String aalto = "com.fasterxml.aalto.";
+		assertFalse(XMLInputFactory.newInstance().getClass().getName().startsWith(aalto));
+		assertFalse(XMLOutputFactory.newInstance().getClass().getName().startsWith(aalto));
+		assertFalse(XMLEventFactory.newInstance().getClass().getName().startsWith(aalto));
+	}
+
+	@Test
+	public void testBenchmark() throws Exception {
+		StringBuilder message = new StringBuilder("<root>");
+		for (int i=0; i<200; i++) {
+			message.append("<item id=\"").append(i).append("\">value ").append(i).append("</item>");
+		}
+		message.append("</root>");
+		byte[] input = message.toString().getBytes("UTF-8");
+		int repeats = 200;
+
+		parse(pipedFactory, input, 512);
+		parse(pushParserFactory, input, 512);
+
+		long start = System.nanoTime();
+		for (int i=0; i<repeats; i++) {
+			parse(pipedFactory, input, 512);
+		}
+		long piped = System.nanoTime()-start;
+		start = System.nanoTime();
+		for (int i=0; i<repeats; i++) {
+			parse(pushParserFactory, input, 512);
+		}
+		long pushed = System.nanoTime()-start;
+		log.info("parsing "+repeats+" messages of "+input.length+" bytes: piped ["+piped/1000000+"] ms, push parser ["+pushed/1000000+"] ms");
+	}
+}
@@ -0,0 +1,206 @@
+/*
+   Copyright 2019 Integration Partners
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import nl.nn.adapterframework.util.StreamUtil;
+import nl.nn.adapterframework.util.XmlUtils;
+
+public class MessageTest {
+
+	protected String testString="<root><sub>abc&amp;&lt;&gt;</sub><sub><![CDATA[<a>a&amp;b</a>]]></sub><sub>éè€</sub></root>";
+
+	protected void testAsStream(Message message) throws IOException {
+		InputStream result = message.asInputStream();
+		String actual = StreamUtil.streamToString(result, null, "UTF-8");
+		assertEquals(testString, actual);
+	}
+
+	protected void testAsReader(Message message) throws IOException {
+		Reader result = message.asReader();
+		String actual = StreamUtil.readerToString(result, null);
+		assertEquals(testString, actual);
+	}
+
+	protected void testAsInputSource(Message message) throws IOException, SAXException {
+		InputSource result = message.asInputSource();
+		XmlWriter sink =  new XmlWriter();
+		XmlUtils.parseXml(sink, result);
+		assertEquals(testString, sink.toString());
+	}
+
+	protected void testAsString(Message message) throws IOException {
+		assertEquals(testString, message.asString());
+	}
+
+	protected void testAsByteArray(Message message) throws IOException {
+		assertArrayEquals(testString.getBytes("UTF-8"), message.asByteArray());
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		testAsStream(new Message(new ByteArrayInputStream(testString.getBytes("UTF-8"))));
+		testAsReader(new Message(new ByteArrayInputStream(testString.getBytes("UTF-8"))));
+		testAsInputSource(new Message(new ByteArrayInputStream(testString.getBytes("UTF-8"))));
+		testAsString(new Message(new ByteArrayInputStream(testString.getBytes("UTF-8"))));
+		testAsByteArray(new Message(new ByteArrayInputStream(testString.getBytes("UTF-8"))));
+	}
+
+	@Test
+	public void testReader() throws Exception {
+		testAsStream(new Message(new StringReader(testString)));
+		testAsReader(new Message(new StringReader(testString)));
+		testAsInputSource(new Message(new StringReader(testString)));
+		testAsString(new Message(new StringReader(testString)));
+		testAsByteArray(new Message(new StringReader(testString)));
+	}
+
+	@Test
+	public void testString() throws Exception {
+		Message message = new Message(testString);
+		testAsStream(message);
+		testAsReader(message);
+		testAsInputSource(message);
+		testAsString(message);
+		testAsByteArray(message);
+		assertSame(testString, message.asString());
+		assertEquals(testString, message.toString());
+	}
+
+	@Test
+	public void testByteArray() throws Exception {
+		Message message = new Message(testString.getBytes("UTF-8"));
+		testAsStream(message);
+		testAsReader(message);
+		testAsInputSource(message);
+		testAsString(message);
+		testAsByteArray(message);
+	}
+
+	@Test
+	public void testStreamConvertedOnlyOnce() throws Exception {
+		Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+		assertFalse(message.isRepeatable());
+		String first = message.asString();
+		assertTrue(message.isRepeatable());
+		assertSame(first, message.asString());
+		testAsByteArray(message);
+		testAsReader(message);
+	}
+
+	@Test
+	public void testPreserveInMemory() throws Exception {
+		Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+		message.preserve(1000);
+		assertTrue(message.asObject() instanceof byte[]);
+		testAsStream(message);
+		testAsStream(message);
+	}
+
+	@Test
+	public void testPreserveStreamSpillsToFile() throws Exception {
+		Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+		message.preserve(10);
+		assertTrue(message.asObject() instanceof File);
+		File file = (File)message.asObject();
+		assertTrue(file.exists());
+		testAsStream(message);
+		testAsInputSource(message);
+		testAsString(message);
+		message.close();
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testPreserveReaderSpillsToFile() throws Exception {
+		Message message = new Message(new StringReader(testString));
+		message.preserve(10);
+		assertTrue(message.asObject() instanceof File);
+		testAsReader(message);
+		testAsReader(message);
+		assertEquals(testString.getBytes("UTF-8").length, message.size());
+		message.close();
+	}
+
+	@Test
+	public void testAsMessage() throws Exception {
+		Message message = new Message(testString);
+		assertSame(message, Message.asMessage(message));
+		assertTrue(Message.asMessage(null).isNull());
+	}
+
+	@Test
+	public void testToStringDoesNotConsumeStream() throws Exception {
+		Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+		assertFalse(testString.equals(message.toString()));
+		assertFalse(message.isRepeatable());
+		assertEquals(testString, message.asString());
+		assertEquals(testString, message.toString());
+	}
+
+	@Test
+	public void testCopyKeepsConvertedValues() throws Exception {
+		Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+		String converted = message.asString();
+		Message copy = new Message(message);
+		assertTrue(copy.isRepeatable());
+		assertSame(converted, copy.asString());
+		testAsByteArray(copy);
+	}
+
+	@Test
+	public void testCopySharesSpillFile() throws Exception {
+		Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+		message.preserve(10);
+		File file = (File)message.asObject();
+		Message copy = new Message(message);
+		copy.close();
+		copy.close();
+		assertTrue("closing a copy must not remove the file of the original", file.exists());
+		testAsString(message);
+		message.close();
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testSpillFileRemovedWhenLastCopyIsClosed() throws Exception {
+		Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+		message.preserve(10);
+		File file = (File)message.asObject();
+		Message copy = new Message(message, "UTF-8");
+		message.close();
+		assertTrue("closing the original must not remove the file of a copy", file.exists());
+		testAsStream(copy);
+		copy.close();
+		assertFalse(file.exists());
+	}
+}
@@ -0,0 +1,39 @@
+package nl.nn.adapterframework.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class SpillingMessageWriterTest {
+
+	@Test
+	public void testInMemory() throws Exception {
+		SpillingMessageWriter writer = new SpillingMessageWriter(100);
+		writer.write("<results>");
+		writer.write("</results>");
+		assertFalse(writer.isSpilled());
+		assertEquals("<results></results>", writer.getResult());
+	}
+
+	@Test
+	public void testSpilled() throws Exception {
+		SpillingMessageWriter writer = new SpillingMessageWriter(10);
+		StringBuilder expected = new StringBuilder();
+		for (int i=0; i<100; i++) {
+			String item = "<item>€"+i+"</item>";
+			writer.write(item);
+			expected.append(item);
+		}
+		assertTrue(writer.isSpilled());
+		Message result = (Message)writer.getResult();
+		File file = (File)result.asObject();
+		assertTrue(file.exists());
+		assertEquals(expected.toString(), result.asString());
+		result.close();
+		assertFalse("spill file should be removed", file.exists());
+	}
+}
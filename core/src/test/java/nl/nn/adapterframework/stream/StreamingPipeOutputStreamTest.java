@@ -0,0 +1,110 @@
+package nl.nn.adapterframework.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeForward;
+import nl.nn.adapterframework.core.PipeLine;
+import nl.nn.adapterframework.core.PipeLineExit;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.core.PipeRunException;
+import nl.nn.adapterframework.core.PipeRunResult;
+import nl.nn.adapterframework.pipes.EchoPipe;
+
+public class StreamingPipeOutputStreamTest {
+
+	private PipeLine pipeline;
+	private IPipeLineSession session;
+	private ByteArrayOutputStream responseStream;
+
+	/**
+	 * Writes its input to the outputstream, when there is one. As a stream target it passes its input through.
+	 */
+	private class WritingPipe extends StreamingPipe {
+		@Override
+		public MessageOutputStream provideOutputStream(String correlationID, IPipeLineSession session, MessageOutputStream target) throws StreamingException {
+			return target;
+		}
+
+		@Override
+		public PipeRunResult doPipe(Object input, IPipeLineSession session, MessageOutputStream outputStream) throws PipeRunException {
+			if (outputStream == null) {
+				return new PipeRunResult(getForward(), input);
+			}
+			try (Writer writer = outputStream.asWriter()) {
+				writer.write((String)input);
+			} catch (IOException | StreamingException e) {
+				throw new PipeRunException(this, "cannot write output", e);
+			}
+			return new PipeRunResult(getForward(), outputStream.getResponse());
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		pipeline = new PipeLine();
+		PipeLineExit exit = new PipeLineExit();
+		exit.setPath("EXIT");
+		exit.setState("success");
+		pipeline.registerPipeLineExit(exit);
+		session = new PipeLineSessionBase();
+		responseStream = new ByteArrayOutputStream();
+		session.put(IPipeLineSession.PIPELINE_OUTPUT_STREAM_KEY, new MessageOutputStream(responseStream, null));
+	}
+
+	private WritingPipe createPipe(String name, String forwardPath) throws Exception {
+		WritingPipe pipe = new WritingPipe();
+		pipe.setName(name);
+		pipe.setStreamingActive(true);
+		pipe.registerForward(new PipeForward("success", forwardPath));
+		pipeline.addPipe(pipe);
+		pipe.configure(pipeline);
+		return pipe;
+	}
+
+	@Test
+	public void testStreamToPipeLineOutputStream() throws Exception {
+		WritingPipe pipe = createPipe("writer", "EXIT");
+		PipeRunResult prr = pipe.doPipe("<message/>", session);
+		assertNull(prr.getResult());
+		assertEquals("<message/>", responseStream.toString("UTF-8"));
+	}
+
+	@Test
+	public void testNoStreamToPipeLineOutputStreamWhenNotLastPipe() throws Exception {
+		WritingPipe pipe = createPipe("writer", "echo");
+		EchoPipe echo = new EchoPipe();
+		echo.setName("echo");
+		echo.registerForward(new PipeForward("success", "EXIT"));
+		pipeline.addPipe(echo);
+		PipeRunResult prr = pipe.doPipe("<message/>", session);
+		assertEquals("<message/>", prr.getResult());
+		assertEquals(0, responseStream.size());
+	}
+
+	@Test
+	public void testStreamThroughNextPipeToPipeLineOutputStream() throws Exception {
+		WritingPipe first = createPipe("first", "second");
+		createPipe("second", "EXIT");
+		PipeRunResult prr = first.doPipe("<message/>", session);
+		assertNull(prr.getResult());
+		assertEquals("<message/>", responseStream.toString("UTF-8"));
+	}
+
+	@Test
+	public void testNoStreamToPipeLineOutputStreamWhenStoringResult() throws Exception {
+		WritingPipe pipe = createPipe("writer", "EXIT");
+		pipe.setStoreResultInSessionKey("result");
+		PipeRunResult prr = pipe.doPipe("<message/>", session);
+		assertEquals("<message/>", prr.getResult());
+		assertEquals(0, responseStream.size());
+	}
+}
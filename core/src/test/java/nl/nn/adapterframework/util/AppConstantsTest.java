@@ -0,0 +1,106 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AppConstantsTest {
+
+	private AppConstants appConstants = AppConstants.getInstance();
+
+	@After
+	public void tearDown() {
+		appConstants.remove("appConstantsTest.base");
+		appConstants.remove("appConstantsTest.derived");
+		appConstants.remove("appConstantsTest.number");
+		System.clearProperty("appConstantsTest.system");
+		appConstants.refresh();
+	}
+
+	@Test
+	public void testResolvedValueFollowsModifications() {
+		appConstants.setProperty("appConstantsTest.base", "a");
+		appConstants.setProperty("appConstantsTest.derived", "${appConstantsTest.base}/b");
+		assertEquals("a/b", appConstants.getResolvedProperty("appConstantsTest.derived"));
+
+		appConstants.setProperty("appConstantsTest.base", "c");
+		assertEquals("c/b", appConstants.getProperty("appConstantsTest.derived"));
+		assertEquals("${appConstantsTest.base}/b", appConstants.getUnresolvedProperty("appConstantsTest.derived"));
+
+		appConstants.remove("appConstantsTest.derived");
+		assertNull(appConstants.getResolvedProperty("appConstantsTest.derived"));
+		assertEquals("dflt", appConstants.getString("appConstantsTest.derived", "dflt"));
+	}
+
+	@Test
+	public void testTypedValues() {
+		appConstants.setProperty("appConstantsTest.number", "42");
+		assertEquals(42, appConstants.getInt("appConstantsTest.number", 0));
+		assertEquals(42L, appConstants.getLong("appConstantsTest.number", 0L));
+		assertEquals(42.0, appConstants.getDouble("appConstantsTest.number", 0.0), 0.0);
+		assertEquals(42, appConstants.getInt("appConstantsTest.number", 0));
+
+		appConstants.setProperty("appConstantsTest.number", "43");
+		assertEquals(43, appConstants.getInt("appConstantsTest.number", 0));
+		assertEquals(7, appConstants.getInt("appConstantsTest.absent", 7));
+		assertTrue(appConstants.getBoolean("appConstantsTest.absent", true));
+	}
+
+	@Test(expected=NumberFormatException.class)
+	public void testIllegalNumber() {
+		appConstants.setProperty("appConstantsTest.number", "fortytwo");
+		appConstants.getInt("appConstantsTest.number", 0);
+	}
+
+	@Test
+	public void testSystemPropertyOverridesAfterRefresh() {
+		appConstants.setProperty("appConstantsTest.base", "fromAppConstants");
+		assertEquals("fromAppConstants", appConstants.getResolvedProperty("appConstantsTest.base"));
+
+		System.setProperty("appConstantsTest.base", "fromSystem");
+		try {
+			appConstants.refresh();
+			assertEquals("fromSystem", appConstants.getResolvedProperty("appConstantsTest.base"));
+		} finally {
+			System.clearProperty("appConstantsTest.base");
+		}
+
+		System.setProperty("appConstantsTest.system", "system");
+		appConstants.refresh();
+		assertEquals("system", appConstants.getResolvedProperty("appConstantsTest.system"));
+	}
+
+	@Test
+	public void testInstancePerClassLoader() throws Exception {
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[0], AppConstantsTest.class.getClassLoader())) {
+			AppConstants instance = AppConstants.getInstance(classLoader);
+			assertSame(instance, AppConstants.getInstance(classLoader));
+			assertEquals(appConstants.getResolvedProperty("application.name"), instance.getResolvedProperty("application.name"));
+
+			AppConstants.removeInstance(classLoader);
+			assertNotSame(instance, AppConstants.getInstance(classLoader));
+			AppConstants.removeInstance(classLoader);
+		}
+	}
+
+	@Test
+	public void testRefreshInvalidatesAllInstances() throws Exception {
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[0], AppConstantsTest.class.getClassLoader())) {
+			AppConstants instance = AppConstants.getInstance(classLoader);
+			assertNull(instance.getResolvedProperty("appConstantsTest.system"));
+
+			System.setProperty("appConstantsTest.system", "system");
+			appConstants.refresh();
+			assertEquals("system", instance.getResolvedProperty("appConstantsTest.system"));
+			AppConstants.removeInstance(classLoader);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CounterTest {
+
+	private void runConcurrently(int threads, final int iterations, final Runnable action) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						for (int i = 0; i < iterations; i++) {
+							action.run();
+						}
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Void> future : futures) {
+				future.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testConcurrentIncreaseAndDecrease() throws Exception {
+		final Counter counter = new Counter(5);
+		runConcurrently(8, 10000, new Runnable() {
+			@Override
+			public void run() {
+				counter.increase();
+				counter.increase(3);
+				counter.decrease();
+				counter.decrease(3);
+			}
+		});
+		assertEquals("increases and decreases must cancel out", 5, counter.getValue());
+	}
+
+	@Test
+	public void testConcurrentIncrease() throws Exception {
+		final Counter counter = new Counter(0);
+		runConcurrently(8, 10000, new Runnable() {
+			@Override
+			public void run() {
+				counter.increase();
+			}
+		});
+		assertEquals(80000, counter.getValue());
+	}
+
+	@Test
+	public void testCounterStatisticConcurrentIncrease() throws Exception {
+		final CounterStatistic counter = new CounterStatistic(0);
+		runConcurrently(8, 10000, new Runnable() {
+			@Override
+			public void run() {
+				counter.increase();
+			}
+		});
+		assertEquals(80000, counter.getValue());
+	}
+
+	@Test
+	public void testClearAndSetValue() {
+		Counter counter = new Counter(3);
+		assertEquals(4, counter.increase());
+		assertEquals(2, counter.decrease(2));
+		counter.clear();
+		assertEquals(0, counter.getValue());
+		counter.setValue(10);
+		assertEquals(9, counter.decrease());
+	}
+}
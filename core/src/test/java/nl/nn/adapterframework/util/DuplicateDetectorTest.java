@@ -0,0 +1,72 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DuplicateDetectorTest {
+
+	@Test
+	public void testInMemory() throws Exception {
+		DuplicateDetector detector = new DuplicateDetector(10);
+		assertFalse(detector.isDuplicate("a"));
+		assertFalse(detector.isDuplicate("b"));
+		assertTrue(detector.isDuplicate("a"));
+		assertFalse(detector.isSpilled());
+		detector.close();
+	}
+
+	@Test
+	public void testSpilledToDisk() throws Exception {
+		DuplicateDetector detector = new DuplicateDetector(100);
+		for (int i=0; i<1000; i++) {
+			assertFalse("item "+i, detector.isDuplicate("item "+i));
+		}
+		assertTrue(detector.isSpilled());
+		for (int i=0; i<1000; i+=7) {
+			assertTrue("item "+i, detector.isDuplicate("item "+i));
+		}
+		assertFalse(detector.isDuplicate("item 1000"));
+		assertTrue(detector.isDuplicate("item 1000"));
+		assertFalse(detector.isDuplicate("multi\nline € item"));
+		assertTrue(detector.isDuplicate("multi\nline € item"));
+		detector.close();
+	}
+
+	@Test
+	public void testSpilledDuplicateReadsOnlyMatchingItem() throws Exception {
+		DuplicateDetector detector = new DuplicateDetector(10);
+		for (int i=0; i<10000; i++) {
+			assertFalse("item "+i, detector.isDuplicate("item "+i));
+		}
+		assertTrue(detector.isSpilled());
+		assertEquals(0, detector.getItemsRead());
+		for (int i=0; i<10000; i++) {
+			assertTrue("item "+i, detector.isDuplicate("item "+i));
+		}
+		assertEquals("each duplicate must be found without scanning the other items", 10000, detector.getItemsRead());
+		detector.close();
+	}
+
+	@Test
+	public void testSpilledWithHashCollisions() throws Exception {
+		DuplicateDetector detector = new DuplicateDetector(2) {
+			@Override
+			long hash(String item) {
+				return item.length();
+			}
+		};
+		assertFalse(detector.isDuplicate("a"));
+		assertFalse(detector.isDuplicate("b"));
+		assertFalse(detector.isDuplicate("c"));
+		assertTrue(detector.isSpilled());
+		assertFalse(detector.isDuplicate("d"));
+		assertTrue(detector.isDuplicate("b"));
+		assertTrue(detector.isDuplicate("d"));
+		assertFalse(detector.isDuplicate("ab"));
+		assertTrue(detector.isDuplicate("ab"));
+		detector.close();
+	}
+}
@@ -9,10 +9,12 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 
 import org.junit.Before;
@@ -384,6 +386,50 @@ public abstract class FileHandlerTestBase {
 		testDelete("smiley.txt",false);
 	}
 	
+	@Test
+	public void testReadEncodeStreamed() throws Exception {
+		handler.setActions("read,encode");
+		handler.setCharset(charset);
+		handler.setFileName(getURL("smiley.json").getPath());
+		handler.setOutputType("stream");
+		handler.configure();
+
+		InputStream result = (InputStream) handler.handle(null,session,null);
+		assertFalse("file must not be read into memory", result instanceof ByteArrayInputStream);
+		String actualContents = Misc.streamToString(result, charset);
+		assertEquals("file contents", removeNewlines(getTestFile("smiley.json.b64", charset)), removeNewlines(actualContents));
+	}
+
+	@Test
+	public void testReadDeleteDecodeStreamed() throws Exception {
+		String filepath=getURL("smiley.json.b64").getPath()+".tmp";
+		FileOutputStream fout =new FileOutputStream(filepath);
+		fout.write(getTestFile("smiley.json.b64", charset).getBytes(charset));
+		fout.close();
+
+		handler.setActions("read_delete,decode");
+		handler.setCharset(charset);
+		handler.setFileName(filepath);
+		handler.setOutputType("stream");
+		handler.configure();
+
+		InputStream result = (InputStream) handler.handle(null,session,null);
+		assertFalse("file must not be read into memory", result instanceof ByteArrayInputStream);
+		String actualContents = Misc.streamToString(result, charset);
+		assertEquals("file contents", removeNewlines(getTestFile("smiley.json", charset)), removeNewlines(actualContents));
+		assertFalse("file ["+filepath+"] should have been deleted after it was read", new File(filepath).exists());
+	}
+
+	@Test
+	public void testEncodeStreamInputToString() throws Exception {
+		handler.setActions("encode");
+		handler.setCharset(charset);
+		handler.configure();
+
+		String result = (String) handler.handle(new ByteArrayInputStream("abc".getBytes(charset)),session,null);
+		assertEquals("YWJj", result);
+	}
+
 //	Nog te testen:
 //		read_delete
 
@@ -0,0 +1,288 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import nl.nn.adapterframework.jdbc.JdbcException;
+
+public class LockerTest {
+
+	private static final String URL = "jdbc:h2:mem:locker;LOCK_MODE=0";
+	private static final String DATASOURCE_NAME = "jdbc/locker";
+
+	private Connection connection;
+	private Map<String, Object> dataSources = new HashMap<String, Object>();
+
+	@Before
+	public void setUp() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl(URL);
+		dataSources.put(DATASOURCE_NAME, dataSource);
+		// keeps the in-memory database alive during the test
+		connection = dataSource.getConnection();
+		execute("CREATE TABLE ibisLock (objectId VARCHAR(100) PRIMARY KEY, type CHAR(1), host VARCHAR(100), creationDate TIMESTAMP, expiryDate TIMESTAMP, fencingToken BIGINT)");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		execute("DROP TABLE IF EXISTS ibisLock");
+		connection.close();
+	}
+
+	private void execute(String query) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.execute(query);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private void insertLock(String objectId, long creationDate, long expiryDate, long fencingToken) throws Exception {
+		PreparedStatement stmt = connection.prepareStatement("INSERT INTO ibisLock (objectId, type, host, creationDate, expiryDate, fencingToken) VALUES (?, 'T', 'otherHost', ?, ?, ?)");
+		try {
+			stmt.setString(1, objectId);
+			stmt.setTimestamp(2, new Timestamp(creationDate));
+			stmt.setTimestamp(3, new Timestamp(expiryDate));
+			stmt.setLong(4, fencingToken);
+			stmt.executeUpdate();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private Timestamp getExpiryDate(String objectId) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT expiryDate FROM ibisLock WHERE objectId='" + objectId + "'");
+			return rs.next() ? rs.getTimestamp(1) : null;
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private Locker createLocker(String objectId) throws Exception {
+		return createLocker(objectId, DATASOURCE_NAME);
+	}
+
+	private Locker createLocker(String objectId, String datasourceName) throws Exception {
+		Locker locker = new Locker();
+		locker.setName("Locker of [" + objectId + "]");
+		locker.setProxiedDataSources(dataSources);
+		locker.setDatasourceName(datasourceName);
+		locker.setObjectId(objectId);
+		locker.setFirstDelay(0);
+		locker.configure();
+		return locker;
+	}
+
+	@Test
+	public void testSameNodeWaitsInMemory() throws Exception {
+		final Locker locker = createLocker("memory");
+		locker.setLocalLocking(true);
+		locker.setNumRetries(1);
+		locker.setRetryDelay(10000);
+		String objectId = locker.lock();
+		assertEquals("memory", objectId);
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicReference<Object> result = new AtomicReference<Object>();
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					result.set(locker.lock());
+					locker.unlock((String)result.get());
+				} catch (Exception e) {
+					result.set(e);
+				}
+			}
+		};
+		waiter.start();
+		started.await();
+		Thread.sleep(200);
+		long released = System.currentTimeMillis();
+		locker.unlock(objectId);
+		waiter.join(5000);
+		assertTrue("waiter must be notified instead of sleeping retryDelay", System.currentTimeMillis() - released < 5000);
+		assertEquals("memory", result.get());
+		assertEquals(2, locker.getLocksAcquired());
+		assertEquals(0, locker.getDatabaseContentions());
+		assertEquals(null, getExpiryDate("memory"));
+	}
+
+	@Test
+	public void testLockHeldByOtherThreadWithoutRetries() throws Exception {
+		final Locker locker = createLocker("noRetries");
+		locker.setLocalLocking(true);
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread holder = new Thread() {
+			@Override
+			public void run() {
+				try {
+					String objectId = locker.lock();
+					locked.countDown();
+					done.await();
+					locker.unlock(objectId);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		holder.start();
+		locked.await();
+		try {
+			locker.lock();
+			fail("expected LockNotAcquiredException");
+		} catch (LockNotAcquiredException e) {
+			assertEquals(1, locker.getLocalContentions());
+		} finally {
+			done.countDown();
+			holder.join();
+		}
+		assertNotNull(locker.lock());
+	}
+
+	@Test(expected = SQLException.class)
+	public void testLockHeldByOtherNode() throws Exception {
+		long now = System.currentTimeMillis();
+		insertLock("otherNode", now, now + 60000, now * 1000);
+		createLocker("otherNode").lock();
+	}
+
+	@Test
+	public void testExpiredLeaseTakenOver() throws Exception {
+		long now = System.currentTimeMillis();
+		// a token ahead of the clock, the next holder must still get a higher one
+		long previousToken = (now + 60000) * 1000;
+		insertLock("lease", now - 20000, now - 10000, previousToken);
+		Locker locker = createLocker("lease");
+		locker.setLeaseDuration(60000);
+		String objectId = locker.lock();
+		assertEquals("lease", objectId);
+		assertEquals(1, locker.getLeasesTakenOver());
+		assertEquals("fencing token must be higher than that of the previous holder", previousToken + 1, locker.getFencingToken(objectId));
+		locker.unlock(objectId);
+		assertEquals(null, getExpiryDate("lease"));
+	}
+
+	@Test
+	public void testFencingTokenHigherAfterLeaseRemoved() throws Exception {
+		Locker locker = createLocker("removed");
+		locker.setLeaseDuration(60000);
+		String objectId = locker.lock();
+		long firstToken = locker.getFencingToken(objectId);
+		// the lease expires, and is removed by the cleanup of the database before another node wants the lock
+		execute("UPDATE ibisLock SET expiryDate=DATEADD('SECOND', -1, CURRENT_TIMESTAMP) WHERE objectId='removed'");
+		execute("DELETE FROM ibisLock WHERE expiryDate<CURRENT_TIMESTAMP");
+		assertEquals(null, getExpiryDate("removed"));
+
+		Locker otherLocker = createLocker("removed");
+		otherLocker.setLeaseDuration(60000);
+		String otherObjectId = otherLocker.lock();
+		assertEquals(0, otherLocker.getLeasesTakenOver());
+		assertEquals("fencing token must be higher than that of the removed lease", firstToken + 1, otherLocker.getFencingToken(otherObjectId));
+		otherLocker.unlock(otherObjectId);
+		try {
+			locker.unlock(objectId);
+			fail("expected JdbcException");
+		} catch (JdbcException e) {
+			assertEquals(1, locker.getLeasesLost());
+		}
+	}
+
+	@Test
+	public void testLeaseRenewed() throws Exception {
+		Locker locker = createLocker("renew");
+		locker.setLeaseDuration(300);
+		String objectId = locker.lock();
+		long firstExpiry = getExpiryDate("renew").getTime();
+		Thread.sleep(500);
+		assertTrue(getExpiryDate("renew").getTime() > firstExpiry);
+		locker.unlock(objectId);
+		assertEquals(null, getExpiryDate("renew"));
+		assertEquals(0, locker.getLeasesLost());
+	}
+
+	@Test
+	public void testLostLease() throws Exception {
+		Locker locker = createLocker("lost");
+		locker.setLeaseDuration(60000);
+		String objectId = locker.lock();
+		// another node takes over the lease
+		execute("UPDATE ibisLock SET fencingToken=fencingToken+1");
+		try {
+			locker.unlock(objectId);
+			fail("expected JdbcException");
+		} catch (JdbcException e) {
+			assertEquals(1, locker.getLeasesLost());
+		}
+		assertNotNull("lock of the other node must not be removed", getExpiryDate("lost"));
+	}
+
+	@Test
+	public void testLocalLocksOfOtherDatasourceDoNotBlock() throws Exception {
+		DriverManagerDataSource otherDataSource = new DriverManagerDataSource();
+		otherDataSource.setDriverClassName("org.h2.Driver");
+		otherDataSource.setUrl("jdbc:h2:mem:locker2;LOCK_MODE=0");
+		dataSources.put("jdbc/locker2", otherDataSource);
+		Connection otherConnection = otherDataSource.getConnection();
+		try {
+			Statement stmt = otherConnection.createStatement();
+			try {
+				stmt.execute("CREATE TABLE ibisLock (objectId VARCHAR(100) PRIMARY KEY, type CHAR(1), host VARCHAR(100), creationDate TIMESTAMP, expiryDate TIMESTAMP, fencingToken BIGINT)");
+			} finally {
+				stmt.close();
+			}
+			Locker locker = createLocker("datasource");
+			locker.setLocalLocking(true);
+			Locker otherLocker = createLocker("datasource", "jdbc/locker2");
+			otherLocker.setLocalLocking(true);
+			String objectId = locker.lock();
+			String otherObjectId = otherLocker.lock();
+			assertEquals("datasource", otherObjectId);
+			assertEquals(0, otherLocker.getLocalContentions());
+			otherLocker.unlock(otherObjectId);
+			locker.unlock(objectId);
+		} finally {
+			otherConnection.close();
+		}
+	}
+
+	@Test
+	public void testRenewalTimerStoppedWithoutLeases() throws Exception {
+		Locker locker = createLocker("timer");
+		locker.setLeaseDuration(60000);
+		Locker otherLocker = createLocker("timer2");
+		otherLocker.setLeaseDuration(60000);
+		String objectId = locker.lock();
+		String otherObjectId = otherLocker.lock();
+		assertTrue(Locker.isLeaseRenewalTimerActive());
+		locker.unlock(objectId);
+		assertTrue("timer must be kept while a lease is held", Locker.isLeaseRenewalTimerActive());
+		otherLocker.unlock(otherObjectId);
+		assertFalse(Locker.isLeaseRenewalTimerActive());
+	}
+}
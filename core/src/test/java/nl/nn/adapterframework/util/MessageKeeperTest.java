@@ -0,0 +1,100 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class MessageKeeperTest {
+
+	private String texts(List<MessageKeeperMessage> messages) {
+		StringBuilder result = new StringBuilder();
+		for (MessageKeeperMessage message : messages) {
+			result.append(message.getMessageText());
+		}
+		return result.toString();
+	}
+
+	@Test
+	public void testKeepsLastMessages() {
+		MessageKeeper messageKeeper = new MessageKeeper(3);
+		assertTrue(messageKeeper.isEmpty());
+		messageKeeper.add("a");
+		messageKeeper.add("b", MessageKeeperMessage.WARN_LEVEL);
+		assertEquals(2, messageKeeper.size());
+		assertEquals("ab", texts(messageKeeper.getMessages()));
+
+		messageKeeper.add("c", MessageKeeperMessage.ERROR_LEVEL);
+		messageKeeper.add("d", MessageKeeperMessage.ERROR_LEVEL);
+		messageKeeper.add("e");
+		assertEquals(3, messageKeeper.size());
+		assertEquals("cde", texts(messageKeeper.getMessages()));
+		assertEquals("c", messageKeeper.getMessage(0).getMessageText());
+		assertEquals("e", messageKeeper.getMessage(2).getMessageText());
+
+		assertEquals(2, messageKeeper.getErrorCount());
+		assertEquals(1, messageKeeper.getWarnCount());
+		assertEquals(2, messageKeeper.getInfoCount());
+	}
+
+	@Test(expected=ArrayIndexOutOfBoundsException.class)
+	public void testGetMessageOutOfBounds() {
+		MessageKeeper messageKeeper = new MessageKeeper(3);
+		messageKeeper.add("a");
+		messageKeeper.getMessage(1);
+	}
+
+	@Test
+	public void testSetMaxSize() {
+		MessageKeeper messageKeeper = new MessageKeeper();
+		for (int i = 0; i < 10; i++) {
+			messageKeeper.add(Integer.toString(i));
+		}
+		messageKeeper.setMaxSize(4);
+		assertEquals(4, messageKeeper.getMaxSize());
+		assertEquals("6789", texts(messageKeeper.getMessages()));
+		messageKeeper.add("a");
+		assertEquals("789a", texts(messageKeeper.getMessages()));
+
+		messageKeeper.setMaxSize(6);
+		messageKeeper.add("b");
+		assertEquals("789ab", texts(messageKeeper.getMessages()));
+	}
+
+	@Test
+	public void testConcurrentAdds() throws Exception {
+		final MessageKeeper messageKeeper = new MessageKeeper(100);
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 10000; i++) {
+						messageKeeper.add("message", i % 10 == 0 ? MessageKeeperMessage.ERROR_LEVEL : MessageKeeperMessage.INFO_LEVEL);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		while (threads[0].isAlive()) {
+			List<MessageKeeperMessage> snapshot = messageKeeper.getMessages();
+			assertTrue(snapshot.size() <= 100);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(100, messageKeeper.getMessages().size());
+		assertEquals(4000, messageKeeper.getErrorCount());
+		assertEquals(36000, messageKeeper.getInfoCount());
+	}
+}
@@ -4,14 +4,50 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class MiscTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File createFile(String contents) throws IOException {
+		File file = folder.newFile();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(contents.getBytes("UTF-8"));
+		}
+		return file;
+	}
+
+	@Test
+	public void testStreamToStreamFileToFile() throws IOException {
+		File source = createFile("0123456789");
+		File target = folder.newFile();
+		try (FileInputStream in = new FileInputStream(source); FileOutputStream out = new FileOutputStream(target)) {
+			assertEquals('0', in.read());
+			Misc.streamToStream(in, out, false, 4);
+			assertEquals(-1, in.read());
+		}
+		assertEquals("123456789", Misc.fileToString(target.getPath()));
+	}
+
+	@Test
+	public void testStreamToStreamSmallBuffer() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Misc.streamToStream(new ByteArrayInputStream("0123456789".getBytes()), out, true, 3);
+		assertEquals("0123456789", out.toString());
+	}
+
 	@Test
 	public void testStreamToString() throws IOException {
 		String tekst = "dit is een string";
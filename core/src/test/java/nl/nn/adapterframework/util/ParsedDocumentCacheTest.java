@@ -0,0 +1,105 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.transform.dom.DOMSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.parameters.Parameter;
+import nl.nn.adapterframework.parameters.ParameterList;
+import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+
+public class ParsedDocumentCacheTest {
+
+	private static final String MESSAGE = "<root xmlns=\"urn:test\"><a>1</a><b>2</b></root>";
+
+	private IPipeLineSession session;
+	private ParsedDocumentCache cache;
+
+	@Before
+	public void setUp() {
+		session = new PipeLineSessionBase();
+		cache = new ParsedDocumentCache();
+		session.put(ParsedDocumentCache.SESSION_KEY, cache);
+	}
+
+	private Document getDocument(ParameterResolutionContext prc) throws Exception {
+		return (Document)((DOMSource)prc.getInputSource(true)).getNode();
+	}
+
+	@Test
+	public void testDocumentSharedBetweenContexts() throws Exception {
+		Document document = getDocument(new ParameterResolutionContext(MESSAGE, session));
+		// an equal message, that is not the same object
+		assertSame(document, getDocument(new ParameterResolutionContext(new String(MESSAGE), session)));
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+
+		assertNotSame(document, getDocument(new ParameterResolutionContext("<other/>", session)));
+		assertNotSame(document, getDocument(new ParameterResolutionContext(MESSAGE, session)));
+		assertEquals(3, cache.getMisses());
+	}
+
+	@Test
+	public void testNamespaceAwareAndUnawareDocuments() throws Exception {
+		Document namespaceAware = cache.getDocument(MESSAGE, true);
+		Document namespaceUnaware = cache.getDocument(MESSAGE, false);
+		assertNotSame(namespaceAware, namespaceUnaware);
+		assertSame(namespaceAware, cache.getDocument(MESSAGE, true));
+		assertSame(namespaceUnaware, cache.getDocument(MESSAGE, false));
+	}
+
+	@Test
+	public void testDocumentNotSharedWithOtherThread() throws Exception {
+		final Document document = cache.getDocument(MESSAGE, true);
+		final AtomicReference<Document> otherThreadDocument = new AtomicReference<Document>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					otherThreadDocument.set(cache.getDocument(MESSAGE, true));
+				} catch (DomBuilderException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		assertNotSame(document, otherThreadDocument.get());
+		assertSame("document of owner must not be evicted", document, cache.getDocument(MESSAGE, true));
+	}
+
+	@Test
+	public void testParametersUseCachedDocument() throws Exception {
+		ParameterList params = new ParameterList();
+		for (String name : new String[] { "a", "b" }) {
+			Parameter param = new Parameter();
+			param.setName(name);
+			param.setXpathExpression("*/*[local-name()='" + name + "']");
+			param.configure();
+			params.add(param);
+		}
+		ParameterResolutionContext prc = new ParameterResolutionContext(MESSAGE, session);
+		assertEquals("{a=1, b=2}", prc.getValueMap(params).toString());
+		new ParameterResolutionContext(MESSAGE, session).getValueMap(params);
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testWithoutCache() throws Exception {
+		session.remove(ParsedDocumentCache.SESSION_KEY);
+		assertFalse(ParsedDocumentCache.getSourceForSingleUse(session, MESSAGE, true) instanceof DOMSource);
+		assertNotSame(getDocument(new ParameterResolutionContext(MESSAGE, session)), getDocument(new ParameterResolutionContext(MESSAGE, session)));
+		assertFalse(session.containsKey(ParsedDocumentCache.SESSION_KEY));
+	}
+}
@@ -0,0 +1,171 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+public class PooledTaskExecutorTest {
+
+	private PooledTaskExecutor executor;
+
+	private PooledTaskExecutor createExecutor(int corePoolSize, int maxPoolSize, int queueCapacity, String rejectionPolicy) {
+		return createExecutor(corePoolSize, maxPoolSize, queueCapacity, rejectionPolicy, true);
+	}
+
+	private PooledTaskExecutor createExecutor(int corePoolSize, int maxPoolSize, int queueCapacity, String rejectionPolicy, boolean prestartCoreThreads) {
+		return createExecutor(new PooledTaskExecutor(), corePoolSize, maxPoolSize, queueCapacity, rejectionPolicy, prestartCoreThreads);
+	}
+
+	private PooledTaskExecutor createExecutor(PooledTaskExecutor pool, int corePoolSize, int maxPoolSize, int queueCapacity, String rejectionPolicy, boolean prestartCoreThreads) {
+		pool.setBeanName("testPool");
+		pool.setCorePoolSize(corePoolSize);
+		pool.setMaxPoolSize(maxPoolSize);
+		pool.setQueueCapacity(queueCapacity);
+		pool.setRejectionPolicy(rejectionPolicy);
+		pool.setPrestartCoreThreads(prestartCoreThreads);
+		pool.afterPropertiesSet();
+		executor = pool;
+		return executor;
+	}
+
+	@After
+	public void tearDown() {
+		if (executor!=null) {
+			executor.destroy();
+		}
+	}
+
+	private Runnable blockingTask(final CountDownLatch started, final CountDownLatch release) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+
+	@Test
+	public void testCoreThreadsPrestartedAndNamed() throws Exception {
+		// prestarted threads can only take a task from the handoff queue once they are waiting on it
+		final CountDownLatch idleWorkers = new CountDownLatch(3);
+		PooledTaskExecutor pool = new PooledTaskExecutor() {
+			@Override
+			protected BlockingQueue<Runnable> createQueue(int queueCapacity) {
+				return new SynchronousQueue<Runnable>() {
+					@Override
+					public Runnable take() throws InterruptedException {
+						idleWorkers.countDown();
+						return super.take();
+					}
+				};
+			}
+		};
+		createExecutor(pool, 3, 3, 0, "callerRuns", true);
+		assertEquals(3, executor.getPoolSize());
+		assertTrue(idleWorkers.await(10, TimeUnit.SECONDS));
+
+		final AtomicReference<String> threadName = new AtomicReference<String>();
+		final CountDownLatch done = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				threadName.set(Thread.currentThread().getName());
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertTrue("thread name ["+threadName.get()+"]", threadName.get().startsWith("testPool-"));
+		assertEquals(3, executor.getPoolSize());
+	}
+
+	@Test
+	public void testCallerRunsWhenSaturated() throws Exception {
+		// no prestarted threads, to make sure the first task is handed to a thread
+		createExecutor(1, 1, 0, "callerRuns", false);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(blockingTask(started, release));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		final AtomicReference<Thread> executingThread = new AtomicReference<Thread>();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				executingThread.set(Thread.currentThread());
+			}
+		});
+		assertSame(Thread.currentThread(), executingThread.get());
+		assertEquals(1, executor.getRejectedTaskCount());
+		release.countDown();
+	}
+
+	@Test
+	public void testAbortWhenSaturated() throws Exception {
+		createExecutor(1, 1, 0, "abort", false);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(blockingTask(started, release));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		try {
+			executor.execute(blockingTask(new CountDownLatch(1), release));
+			fail("task should have been rejected");
+		} catch (TaskRejectedException e) {
+			// expected
+		}
+		assertEquals(1, executor.getRejectedTaskCount());
+		assertEquals(1, executor.getActiveCount());
+		release.countDown();
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testIllegalRejectionPolicy() throws Exception {
+		createExecutor(1, 1, 0, "discardAll");
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws Exception {
+		createExecutor(10, 10, 0, "callerRuns");
+		ConcurrencyLimitedTaskExecutor limited = new ConcurrencyLimitedTaskExecutor(executor, 2);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(20);
+		for (int i=0; i<20; i++) {
+			limited.execute(new Runnable() {
+				@Override
+				public void run() {
+					int current = running.incrementAndGet();
+					synchronized (maxRunning) {
+						maxRunning.set(Math.max(maxRunning.get(), current));
+					}
+					try {
+						Thread.sleep(5);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					running.decrementAndGet();
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertTrue("max running ["+maxRunning.get()+"]", maxRunning.get()<=2);
+		assertEquals(10, executor.getPoolSize());
+	}
+}
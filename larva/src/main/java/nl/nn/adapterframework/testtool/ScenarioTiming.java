@@ -0,0 +1,87 @@
+package nl.nn.adapterframework.testtool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.nn.adapterframework.util.XmlBuilder;
+
+/**
+ * Timing information of a single scenario and its steps, used to write the
+ * machine readable timing report of a Larva run.
+ */
+public class ScenarioTiming {
+	private String name;
+	private String description;
+	private String result;
+	private String thread;
+	private long startTime;
+	private long duration;
+	private List<StepTiming> steps = new ArrayList<StepTiming>();
+
+	public ScenarioTiming(String name) {
+		this.name = name;
+	}
+
+	public void start() {
+		thread = Thread.currentThread().getName();
+		startTime = System.currentTimeMillis();
+	}
+
+	public void stop(String result) {
+		this.result = result;
+		duration = System.currentTimeMillis() - startTime;
+	}
+
+	public void addStep(String step, String result, long duration) {
+		steps.add(new StepTiming(step, result, duration));
+	}
+
+	public XmlBuilder toXml() {
+		XmlBuilder scenario = new XmlBuilder("scenario");
+		scenario.addAttribute("name", name);
+		scenario.addAttribute("description", description);
+		scenario.addAttribute("result", result);
+		scenario.addAttribute("thread", thread);
+		scenario.addAttribute("startTime", startTime);
+		scenario.addAttribute("duration", duration);
+		for (StepTiming stepTiming : steps) {
+			XmlBuilder step = new XmlBuilder("step");
+			step.addAttribute("name", stepTiming.step);
+			step.addAttribute("result", stepTiming.result);
+			step.addAttribute("duration", stepTiming.duration);
+			scenario.addSubElement(step);
+		}
+		return scenario;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+	public String getDescription() {
+		return description;
+	}
+
+	public String getResult() {
+		return result;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	private static class StepTiming {
+		private String step;
+		private String result;
+		private long duration;
+
+		StepTiming(String step, String result, long duration) {
+			this.step = step;
+			this.result = result;
+			this.duration = duration;
+		}
+	}
+}
@@ -33,6 +33,14 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.ZipInputStream;
 
 import javax.jms.Message;
@@ -86,6 +94,7 @@ import nl.nn.adapterframework.util.FileUtils;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.ProcessUtil;
 import nl.nn.adapterframework.util.StringResolver;
+import nl.nn.adapterframework.util.XmlBuilder;
 import nl.nn.adapterframework.util.XmlUtils;
 import nl.nn.adapterframework.webcontrol.ConfigurationServlet;
 
@@ -104,8 +113,6 @@ public class TestTool {
 	private static final int RESULT_ERROR = 0;
 	private static final int RESULT_OK = 1;
 	private static final int RESULT_AUTOSAVED = 2;
-	// dirty solution by Marco de Reus:
-	private static String zeefVijlNeem = "";
 	private static Writer silentOut = null;
 	private static boolean autoSaveDiffs = false;
 	
@@ -183,8 +190,8 @@ public class TestTool {
 			writers.put("autoscroll", autoScroll);
 			writers.put("usehtmlbuffer", "false");
 			writers.put("uselogbuffer", "true");
-			writers.put("messagecounter", new Integer(0));
-			writers.put("scenariocounter", new Integer(1));
+			writers.put("messagecounter", new AtomicInteger(0));
+			writers.put("scenariocounter", new AtomicInteger(1));
 		} else {
 			silentOut = out;
 		}
@@ -264,120 +271,98 @@ public class TestTool {
 					debugMessage("Read all scenarios from directory '" + paramExecute + "'", writers);
 					scenarioFiles = readScenarioFiles(appConstants, paramExecute, writers);
 				}
-				boolean evenStep = false;
 				debugMessage("Initialize statistics variables", writers);
 				int scenariosPassed = 0;
 				int scenariosAutosaved = 0;
+				int threads = appConstants.getInt("larva.parallel.threads", 1);
+				List<ScenarioTiming> scenarioTimings = new ArrayList<ScenarioTiming>();
+				List<Map<String, Object>> scenarioWritersList = new ArrayList<Map<String, Object>>();
+				List<Future<Integer>> scenarioFutures = new ArrayList<Future<Integer>>();
+				ExecutorService executor = null;
 				long startTime = System.currentTimeMillis();
-				debugMessage("Execute scenario('s)", writers);
-				Iterator<File> scenarioFilesIterator = scenarioFiles.iterator();
-				while (scenarioFilesIterator.hasNext()) {
-					int scenarioPassed = RESULT_ERROR;
-					File scenarioFile = (File)scenarioFilesIterator.next();
-			
-					String scenarioDirectory = scenarioFile.getParentFile().getAbsolutePath() + File.separator;
-					String longName = scenarioFile.getAbsolutePath();
-					String shortName = longName.substring(currentScenariosRootDirectory.length() - 1, longName.length() - ".properties".length());
-
-					if (writers!=null) {
-						if (LOG_LEVEL_ORDER.indexOf("[" + (String)writers.get("loglevel") + "]") < LOG_LEVEL_ORDER.indexOf("[scenario passed/failed]")) {
-							writeHtml("<br/>", writers, false);
-							writeHtml("<br/>", writers, false);
-							writeHtml("<div class='scenario'>", writers, false);
+				try {
+					if (threads > 1 && scenarioFiles.size() > 1) {
+						debugMessage("Execute scenario('s) in parallel using " + threads + " threads", writers);
+						executor = Executors.newFixedThreadPool(threads);
+						Map<String, Lock> resourceLocks = new HashMap<String, Lock>();
+						for (File scenarioFile : scenarioFiles) {
+							ScenarioTiming scenarioTiming = new ScenarioTiming(getScenarioShortName(scenarioFile, currentScenariosRootDirectory));
+							Map<String, Object> scenarioWriters = createScenarioWriters(writers);
+							scenarioTimings.add(scenarioTiming);
+							scenarioWritersList.add(scenarioWriters);
+							scenarioFutures.add(executor.submit(new ScenarioCallable(scenarioFile, scenarioTiming, ibisContext, appConstants, waitBeforeCleanUp, resourceLocks, scenarioWriters)));
 						}
+					} else {
+						debugMessage("Execute scenario('s)", writers);
 					}
-					debugMessage("Read property file " + scenarioFile.getName(), writers);
-					Properties properties = readProperties(appConstants, scenarioFile, writers);
-					List<String> steps = null;
-
-					if (properties != null) {
-						debugMessage("Read steps from property file", writers);
-						steps = getSteps(properties, writers);
-						if (steps != null) {
-							synchronized(STEP_SYNCHRONIZER) {
-								debugMessage("Open queues", writers);
-								Map<String, Map<String, Object>> queues = openQueues(scenarioDirectory, steps, properties, ibisContext, appConstants, writers);
-								if (queues != null) {
-									debugMessage("Execute steps", writers);
-									boolean allStepsPassed = true;
-									boolean autoSaved = false;
-									Iterator<String> iterator = steps.iterator();
-									while (allStepsPassed && iterator.hasNext()) {
-										if (evenStep) {
-											writeHtml("<div class='even'>", writers, false);
-											evenStep = false;
-										} else {
-											writeHtml("<div class='odd'>", writers, false);
-											evenStep = true;
-										}
-										String step = (String)iterator.next();
-										String stepDisplayName = shortName + " - " + step + " - " + properties.get(step);
-										debugMessage("Execute step '" + stepDisplayName + "'", writers);
-										int stepPassed = executeStep(step, properties, stepDisplayName, queues, writers);
-										if (stepPassed==RESULT_OK) {
-											stepPassedMessage("Step '" + stepDisplayName + "' passed", writers);
-										} else if (stepPassed==RESULT_AUTOSAVED) {
-											stepAutosavedMessage("Step '" + stepDisplayName + "' passed after autosave", writers);
-											autoSaved = true;
-										} else {
-											stepFailedMessage("Step '" + stepDisplayName + "' failed", writers);
-											allStepsPassed = false;
-										}
-										writeHtml("</div>", writers, false);
-									}
-									if (allStepsPassed) {
-										if (autoSaved) {
-											scenarioPassed = RESULT_AUTOSAVED;
-										} else {
-											scenarioPassed = RESULT_OK;
-										}
+					// Scenarios running in parallel don't synchronize on the step
+					// synchronizer themselves, hold it while waiting for them to
+					// prevent another run from executing steps at the same time
+					Object runSynchronizer = executor == null ? new Object() : STEP_SYNCHRONIZER;
+					synchronized(runSynchronizer) {
+						for (int scenarioIndex = 0; scenarioIndex < scenarioFiles.size(); scenarioIndex++) {
+							File scenarioFile = scenarioFiles.get(scenarioIndex);
+							String shortName = getScenarioShortName(scenarioFile, currentScenariosRootDirectory);
+							ScenarioTiming scenarioTiming;
+							int scenarioPassed = RESULT_ERROR;
+							if (executor == null) {
+								scenarioTiming = new ScenarioTiming(shortName);
+								scenarioTimings.add(scenarioTiming);
+								scenarioPassed = executeScenario(scenarioFile, scenarioTiming, ibisContext, appConstants, waitBeforeCleanUp, null, writers);
+							} else {
+								scenarioTiming = scenarioTimings.get(scenarioIndex);
+								try {
+									scenarioPassed = scenarioFutures.get(scenarioIndex).get();
+								} catch(InterruptedException e) {
+									errorMessage("Interrupted while waiting for scenario '" + shortName + "'", e, writers);
+									Thread.currentThread().interrupt();
+								} catch(ExecutionException e) {
+									errorMessage("Could not execute scenario '" + shortName + "': " + e.getMessage(), e, writers);
+								}
+								Map<String, Object> scenarioWriters = scenarioWritersList.get(scenarioIndex);
+								if (scenarioWriters != null) {
+									writeHtml(((StringWriter)scenarioWriters.get("out")).toString(), writers, true);
+								}
+							}
+							String description = scenarioTiming.getDescription();
+
+							if (scenarioPassed==RESULT_OK) {
+								scenariosPassed++;
+								scenarioPassedMessage("Scenario '" + shortName + " - " + description + "' passed (" + scenariosFailed + "/" + scenariosPassed + "/" + scenarioFiles.size() + ")", writers);
+								if (silent) {
+									try {
+										out.write("Scenario '" + shortName + " - " + description + "' passed");
+									} catch (IOException e) {
 									}
-									debugMessage("Wait " + waitBeforeCleanUp + " ms before clean up", writers);
+								}
+							} else if (scenarioPassed==RESULT_AUTOSAVED) {
+								scenariosAutosaved++;
+								scenarioAutosavedMessage("Scenario '" + shortName + " - " + description + "' passed after autosave", writers);
+								if (silent) {
 									try {
-										Thread.sleep(waitBeforeCleanUp);
-									} catch(InterruptedException e) {
+										out.write("Scenario '" + shortName + " - " + description + "' passed after autosave");
+									} catch (IOException e) {
 									}
-									debugMessage("Close queues", writers);
-									boolean remainingMessagesFound = closeQueues(queues, properties, writers);
-									if (remainingMessagesFound) {
-										stepFailedMessage("Found one or more messages on queues or in database after scenario executed", writers);
-										scenarioPassed = RESULT_ERROR;
+								}
+							} else {
+								scenariosFailed++;
+								scenarioFailedMessage("Scenario '" + shortName + " - " + description + "' failed (" + scenariosFailed + "/" + scenariosPassed + "/" + scenarioFiles.size() + ")", writers);
+								if (silent) {
+									try {
+										out.write("Scenario '" + shortName + " - " + description + "' failed");
+									} catch (IOException e) {
 									}
 								}
 							}
+						
+							writeHtml("</div>", writers, false);
 						}
 					}
-
-					if (scenarioPassed==RESULT_OK) {
-						scenariosPassed++;
-						scenarioPassedMessage("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed (" + scenariosFailed + "/" + scenariosPassed + "/" + scenarioFiles.size() + ")", writers);
-						if (silent) {
-							try {
-								out.write("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed");
-							} catch (IOException e) {
-							}
-						}
-					} else if (scenarioPassed==RESULT_AUTOSAVED) {
-						scenariosAutosaved++;
-						scenarioAutosavedMessage("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed after autosave", writers);
-						if (silent) {
-							try {
-								out.write("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed after autosave");
-							} catch (IOException e) {
-							}
-						}
-					} else {
-						scenariosFailed++;
-						scenarioFailedMessage("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' failed (" + scenariosFailed + "/" + scenariosPassed + "/" + scenarioFiles.size() + ")", writers);
-						if (silent) {
-							try {
-								out.write("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' failed");
-							} catch (IOException e) {
-							}
-						}
+				} finally {
+					if (executor != null) {
+						// scenarios that have not been waited for, because of an unexpected exception, are interrupted
+						executor.shutdownNow();
 					}
-					
-					writeHtml("</div>", writers, false);
 				}
 				long executeTime = System.currentTimeMillis() - startTime;
 				debugMessage("Print statistics information", writers);
@@ -429,6 +414,10 @@ public class TestTool {
 						}
 					}
 				}
+				String timingReportFileName = appConstants.getResolvedProperty("larva.timingreport.file");
+				if (StringUtils.isNotEmpty(timingReportFileName)) {
+					writeTimingReport(timingReportFileName, scenarioTimings, executeTime, threads, writers);
+				}
 				debugMessage("Start logging to htmlbuffer until form is written", writers);
 				if (writers!=null) {
 					writers.put("usehtmlbuffer", "start");
@@ -446,6 +435,224 @@ public class TestTool {
 		return scenariosFailed;
 	}
 
+	private static String getScenarioShortName(File scenarioFile, String scenariosRootDirectory) {
+		String longName = scenarioFile.getAbsolutePath();
+		return longName.substring(scenariosRootDirectory.length() - 1, longName.length() - ".properties".length());
+	}
+
+	/**
+	 * Create writers for a scenario that is executed in parallel with other
+	 * scenarios. Output is written to a buffer which is copied to the writers
+	 * of the run once the scenario has finished so output of scenarios isn't
+	 * mixed. The counters used to generate unique html id's are shared.
+	 */
+	static Map<String, Object> createScenarioWriters(Map<String, Object> writers) {
+		if (writers == null) {
+			return null;
+		}
+		Map<String, Object> scenarioWriters = new HashMap<String, Object>();
+		scenarioWriters.put("out", new StringWriter());
+		scenarioWriters.put("htmlbuffer", new StringWriter());
+		scenarioWriters.put("logbuffer", new StringWriter());
+		scenarioWriters.put("loglevel", writers.get("loglevel"));
+		scenarioWriters.put("autoscroll", "false");
+		scenarioWriters.put("usehtmlbuffer", "false");
+		scenarioWriters.put("uselogbuffer", "false");
+		scenarioWriters.put("messagecounter", writers.get("messagecounter"));
+		scenarioWriters.put("scenariocounter", writers.get("scenariocounter"));
+		return scenarioWriters;
+	}
+
+	static class ScenarioCallable implements Callable<Integer> {
+		private File scenarioFile;
+		private ScenarioTiming scenarioTiming;
+		private IbisContext ibisContext;
+		private AppConstants appConstants;
+		private int waitBeforeCleanUp;
+		private Map<String, Lock> resourceLocks;
+		private Map<String, Object> writers;
+
+		ScenarioCallable(File scenarioFile, ScenarioTiming scenarioTiming, IbisContext ibisContext, AppConstants appConstants, int waitBeforeCleanUp, Map<String, Lock> resourceLocks, Map<String, Object> writers) {
+			this.scenarioFile = scenarioFile;
+			this.scenarioTiming = scenarioTiming;
+			this.ibisContext = ibisContext;
+			this.appConstants = appConstants;
+			this.waitBeforeCleanUp = waitBeforeCleanUp;
+			this.resourceLocks = resourceLocks;
+			this.writers = writers;
+		}
+
+		@Override
+		public Integer call() {
+			return executeScenario(scenarioFile, scenarioTiming, ibisContext, appConstants, waitBeforeCleanUp, resourceLocks, writers);
+		}
+	}
+
+	/**
+	 * Execute a scenario. When resourceLocks is null the steps are executed
+	 * while holding the step synchronizer, otherwise the scenario is running
+	 * in parallel with other scenarios and only the locks of the resources
+	 * listed in property scenario.resources are held.
+	 */
+	private static int executeScenario(File scenarioFile, ScenarioTiming scenarioTiming, IbisContext ibisContext, AppConstants appConstants, int waitBeforeCleanUp, Map<String, Lock> resourceLocks, Map<String, Object> writers) {
+		int scenarioPassed = RESULT_ERROR;
+		scenarioTiming.start();
+		String scenarioDirectory = scenarioFile.getParentFile().getAbsolutePath() + File.separator;
+
+		if (writers!=null) {
+			if (LOG_LEVEL_ORDER.indexOf("[" + (String)writers.get("loglevel") + "]") < LOG_LEVEL_ORDER.indexOf("[scenario passed/failed]")) {
+				writeHtml("<br/>", writers, false);
+				writeHtml("<br/>", writers, false);
+				writeHtml("<div class='scenario'>", writers, false);
+			}
+		}
+		debugMessage("Read property file " + scenarioFile.getName(), writers);
+		Properties properties = readProperties(appConstants, scenarioFile, writers);
+		List<String> steps = null;
+
+		if (properties != null) {
+			scenarioTiming.setDescription(properties.getProperty("scenario.description"));
+			debugMessage("Read steps from property file", writers);
+			steps = getSteps(properties, writers);
+			if (steps != null) {
+				if (resourceLocks == null) {
+					synchronized(STEP_SYNCHRONIZER) {
+						scenarioPassed = executeSteps(scenarioDirectory, scenarioTiming, steps, properties, ibisContext, appConstants, waitBeforeCleanUp, writers);
+					}
+				} else {
+					List<Lock> locks = getResourceLocks(properties, resourceLocks);
+					for (Lock lock : locks) {
+						lock.lock();
+					}
+					try {
+						scenarioPassed = executeSteps(scenarioDirectory, scenarioTiming, steps, properties, ibisContext, appConstants, waitBeforeCleanUp, writers);
+					} finally {
+						for (int i = locks.size() - 1; i >= 0; i--) {
+							locks.get(i).unlock();
+						}
+					}
+				}
+			}
+		}
+		scenarioTiming.stop(getResultName(scenarioPassed));
+		return scenarioPassed;
+	}
+
+	/**
+	 * Get the locks for the comma separated list of resources in property
+	 * scenario.resources (e.g. queues, tables or adapters that cannot be used
+	 * by more than one scenario at a time). Locks are returned in a fixed
+	 * order to prevent deadlocks between scenarios sharing more than one
+	 * resource.
+	 */
+	static List<Lock> getResourceLocks(Properties properties, Map<String, Lock> resourceLocks) {
+		List<Lock> locks = new ArrayList<Lock>();
+		String resources = properties.getProperty("scenario.resources");
+		if (StringUtils.isNotEmpty(resources)) {
+			Set<String> resourceNames = new TreeSet<String>();
+			StringTokenizer tokenizer = new StringTokenizer(resources, ",");
+			while (tokenizer.hasMoreTokens()) {
+				String resourceName = tokenizer.nextToken().trim();
+				if (resourceName.length() > 0) {
+					resourceNames.add(resourceName);
+				}
+			}
+			synchronized(resourceLocks) {
+				for (String resourceName : resourceNames) {
+					Lock lock = resourceLocks.get(resourceName);
+					if (lock == null) {
+						lock = new ReentrantLock();
+						resourceLocks.put(resourceName, lock);
+					}
+					locks.add(lock);
+				}
+			}
+		}
+		return locks;
+	}
+
+	private static int executeSteps(String scenarioDirectory, ScenarioTiming scenarioTiming, List<String> steps, Properties properties, IbisContext ibisContext, AppConstants appConstants, int waitBeforeCleanUp, Map<String, Object> writers) {
+		int scenarioPassed = RESULT_ERROR;
+		boolean evenStep = false;
+		debugMessage("Open queues", writers);
+		Map<String, Map<String, Object>> queues = openQueues(scenarioDirectory, steps, properties, ibisContext, appConstants, writers);
+		if (queues != null) {
+			debugMessage("Execute steps", writers);
+			boolean allStepsPassed = true;
+			boolean autoSaved = false;
+			Iterator<String> iterator = steps.iterator();
+			while (allStepsPassed && iterator.hasNext()) {
+				if (evenStep) {
+					writeHtml("<div class='even'>", writers, false);
+					evenStep = false;
+				} else {
+					writeHtml("<div class='odd'>", writers, false);
+					evenStep = true;
+				}
+				String step = (String)iterator.next();
+				String stepDisplayName = scenarioTiming.getName() + " - " + step + " - " + properties.get(step);
+				debugMessage("Execute step '" + stepDisplayName + "'", writers);
+				long stepStartTime = System.currentTimeMillis();
+				int stepPassed = executeStep(step, properties, stepDisplayName, queues, writers);
+				scenarioTiming.addStep(step, getResultName(stepPassed), System.currentTimeMillis() - stepStartTime);
+				if (stepPassed==RESULT_OK) {
+					stepPassedMessage("Step '" + stepDisplayName + "' passed", writers);
+				} else if (stepPassed==RESULT_AUTOSAVED) {
+					stepAutosavedMessage("Step '" + stepDisplayName + "' passed after autosave", writers);
+					autoSaved = true;
+				} else {
+					stepFailedMessage("Step '" + stepDisplayName + "' failed", writers);
+					allStepsPassed = false;
+				}
+				writeHtml("</div>", writers, false);
+			}
+			if (allStepsPassed) {
+				if (autoSaved) {
+					scenarioPassed = RESULT_AUTOSAVED;
+				} else {
+					scenarioPassed = RESULT_OK;
+				}
+			}
+			debugMessage("Wait " + waitBeforeCleanUp + " ms before clean up", writers);
+			try {
+				Thread.sleep(waitBeforeCleanUp);
+			} catch(InterruptedException e) {
+			}
+			debugMessage("Close queues", writers);
+			boolean remainingMessagesFound = closeQueues(queues, properties, writers);
+			if (remainingMessagesFound) {
+				stepFailedMessage("Found one or more messages on queues or in database after scenario executed", writers);
+				scenarioPassed = RESULT_ERROR;
+			}
+		}
+		return scenarioPassed;
+	}
+
+	private static String getResultName(int result) {
+		if (result==RESULT_OK) {
+			return "passed";
+		} else if (result==RESULT_AUTOSAVED) {
+			return "autosaved";
+		}
+		return "failed";
+	}
+
+	public static void writeTimingReport(String fileName, List<ScenarioTiming> scenarioTimings, long executeTime, int threads, Map<String, Object> writers) {
+		debugMessage("Write timing report to file '" + fileName + "'", writers);
+		XmlBuilder timingReport = new XmlBuilder("timingReport");
+		timingReport.addAttribute("timestamp", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS").format(new Date()));
+		timingReport.addAttribute("threads", threads);
+		timingReport.addAttribute("duration", executeTime);
+		for (ScenarioTiming scenarioTiming : scenarioTimings) {
+			timingReport.addSubElement(scenarioTiming.toXml());
+		}
+		try {
+			writeFile(fileName, timingReport.toXML(true));
+		} catch(IOException e) {
+			errorMessage("Could not write timing report to file '" + fileName + "': " + e.getMessage(), e, writers);
+		}
+	}
+
 	public static void printHtmlForm(List<String> scenariosRootDirectories, List<String> scenariosRootDescriptions, String scenariosRootDirectory, AppConstants appConstants, List<File> scenarioFiles, int waitBeforeCleanUp, String paramExecute, String autoScroll, Map<String, Object> writers) {
 		if (writers!=null) {
 			writeHtml("<form action=\"index.jsp\" method=\"post\">", writers, false);
@@ -658,8 +865,7 @@ public class TestTool {
 	public static void debugPipelineMessage(String stepDisplayName, String message, String pipelineMessage, Map<String, Object> writers) {
 		if (writers!=null) {
 			String method = "pipeline messages";
-			int messageCounter = ((Integer)writers.get("messagecounter")).intValue();
-			messageCounter ++;
+			int messageCounter = ((AtomicInteger)writers.get("messagecounter")).incrementAndGet();
 			
 			writeLog("<div class='message container'>", method, writers, false);
 			writeLog("<h4>Step '" + stepDisplayName + "'</h4>", method, writers, false);
@@ -667,16 +873,13 @@ public class TestTool {
 			writeLog("<h5>" + XmlUtils.encodeChars(message) + "</h5>", method, writers, false);
 			writeLog("<textarea cols='100' rows='10' id='messagebox" + messageCounter + "'>" + XmlUtils.encodeChars(XmlUtils.replaceNonValidXmlCharacters(pipelineMessage)) + "</textarea>", method, writers, false);
 			writeLog("</div>", method, writers, false);
-			
-			writers.put("messagecounter", new Integer(messageCounter));
 		}
 	}
 
 	public static void debugPipelineMessagePreparedForDiff(String stepDisplayName, String message, String pipelineMessage, Map<String, Object> writers) {
 		if (writers!=null) {
 			String method = "pipeline messages prepared for diff";
-			int messageCounter = ((Integer)writers.get("messagecounter")).intValue();
-			messageCounter ++;
+			int messageCounter = ((AtomicInteger)writers.get("messagecounter")).incrementAndGet();
 
 			writeLog("<div class='message container'>", method, writers, false);
 			writeLog("<h4>Step '" + stepDisplayName + "'</h4>", method, writers, false);
@@ -684,31 +887,50 @@ public class TestTool {
 			writeLog("<h5>" + XmlUtils.encodeChars(message) + "</h5>", method, writers, false);
 			writeLog("<textarea cols='100' rows='10' id='messagebox" + messageCounter + "'>" + XmlUtils.encodeChars(pipelineMessage) + "</textarea>", method, writers, false);
 			writeLog("</div>", method, writers, false);
-
-			writers.put("messagecounter", new Integer(messageCounter));
 		}
 	}
 
 	public static void wrongPipelineMessage(String message, String pipelineMessage, Map<String, Object> writers) {
 		if (writers!=null) {
 			String method = "wrong pipeline messages";
-			int messageCounter = ((Integer)writers.get("messagecounter")).intValue();
-			messageCounter ++;
+			int messageCounter = ((AtomicInteger)writers.get("messagecounter")).incrementAndGet();
 			
 			writeLog("<div class='message container'>", method, writers, false);
 			writeLog(writeCommands("messagebox" + messageCounter, true, null), method, writers, false);
 			writeLog("<h5>" + XmlUtils.encodeChars(message) + "</h5>", method, writers, false);
 			writeLog("<textarea cols='100' rows='10' id='messagebox" + messageCounter + "'>" + XmlUtils.encodeChars(XmlUtils.replaceNonValidXmlCharacters(pipelineMessage)) + "</textarea>", method, writers, false);
 			writeLog("</div>", method, writers, false);
+		}
+	}
 
-			writers.put("messagecounter", new Integer(messageCounter));
+	/**
+	 * Returns a number for the forms of a wrong pipeline message, that is unique within the run, also when scenarios
+	 * are executed in parallel.
+	 */
+	private static int nextScenarioCounter(Map<String, Object> writers) {
+		if (writers == null) {
+			return 0;
 		}
+		return ((AtomicInteger)writers.get("scenariocounter")).getAndIncrement();
+	}
+
+	/**
+	 * Writes the raw and the prepared for diff versions of a wrong pipeline message, with form names that belong
+	 * to each other.
+	 */
+	static void wrongPipelineMessages(String stepDisplayName, String message, String pipelineMessage, String pipelineMessageExpected, String pipelineMessagePreparedForDiff, String pipelineMessageExpectedPreparedForDiff, Map<String, Object> writers) {
+		int scenarioCounter = nextScenarioCounter(writers);
+		wrongPipelineMessage(stepDisplayName, message, pipelineMessage, pipelineMessageExpected, scenarioCounter, writers);
+		wrongPipelineMessagePreparedForDiff(stepDisplayName, pipelineMessagePreparedForDiff, pipelineMessageExpectedPreparedForDiff, scenarioCounter, writers);
 	}
 
 	public static void wrongPipelineMessage(String stepDisplayName, String message, String pipelineMessage, String pipelineMessageExpected, Map<String, Object> writers) {
+		wrongPipelineMessage(stepDisplayName, message, pipelineMessage, pipelineMessageExpected, nextScenarioCounter(writers), writers);
+	}
+
+	private static void wrongPipelineMessage(String stepDisplayName, String message, String pipelineMessage, String pipelineMessageExpected, int scenarioCounter, Map<String, Object> writers) {
 		if (writers!=null) {
 			String method = "wrong pipeline messages";
-			int scenarioCounter = ((Integer)writers.get("scenariocounter")).intValue();
 			String formName = "scenario" + scenarioCounter + "Wpm";
 			String resultBoxId = formName + "ResultBox";
 			String expectedBoxId = formName + "ExpectedBox";
@@ -729,7 +951,7 @@ public class TestTool {
 
 			writeLog("<div class='expectedContainer'>", method, writers, false);
 			writeLog(writeCommands(expectedBoxId, true, null), method, writers, true);
-			writeLog("<input type='hidden' name='expectedFileName' value='"+zeefVijlNeem+"' />", method, writers, false);
+			writeLog("<input type='hidden' name='expectedFileName' value='"+writers.get("expectedfilename")+"' />", method, writers, false);
 			writeLog("<input type='hidden' name='cmd' />", method, writers, false);
 			writeLog("<h5>Expected (raw):</h5>", method, writers, false);
 			writeLog("<textarea name='expectedBox' id='"+expectedBoxId+"'>" + XmlUtils.encodeChars(pipelineMessageExpected) + "</textarea>", method, writers, false);
@@ -763,9 +985,6 @@ public class TestTool {
 				writeLog("</form>", method, writers, false);
 				writeLog("</div>", method, writers, false);
 			}
-			
-			scenarioCounter++;
-			writers.put("scenariocounter", new Integer(scenarioCounter));
 		} else {
 			if (silentOut!=null) {
 				try {
@@ -777,10 +996,12 @@ public class TestTool {
 	}
 
 	public static void wrongPipelineMessagePreparedForDiff(String stepDisplayName, String pipelineMessagePreparedForDiff, String pipelineMessageExpectedPreparedForDiff, Map<String, Object> writers) {
+		wrongPipelineMessagePreparedForDiff(stepDisplayName, pipelineMessagePreparedForDiff, pipelineMessageExpectedPreparedForDiff, nextScenarioCounter(writers), writers);
+	}
+
+	private static void wrongPipelineMessagePreparedForDiff(String stepDisplayName, String pipelineMessagePreparedForDiff, String pipelineMessageExpectedPreparedForDiff, int scenarioCounter, Map<String, Object> writers) {
 		if (writers!=null) {
 			String method = "wrong pipeline messages prepared for diff";
-			int scenarioCounter = ((Integer)writers.get("scenariocounter")).intValue();
-			int messageCounter = ((Integer)writers.get("messagecounter")).intValue();
 			String formName = "scenario" + scenarioCounter + "Wpmpfd";
 			String resultBoxId = formName + "ResultBox";
 			String expectedBoxId = formName + "ExpectedBox";
@@ -790,7 +1011,6 @@ public class TestTool {
 			writeLog("<form name='"+formName+"' action='saveResultToFile.jsp' method='post' target='saveResultWindow' accept-charset='UTF-8'>", method, writers, false);
 			writeLog("<input type='hidden' name='iehack' value='&#9760;' />", method, writers, false); // http://stackoverflow.com/questions/153527/setting-the-character-encoding-in-form-submit-for-internet-explorer
 			writeLog("<h4>Step '" + stepDisplayName + "'</h4>", method, writers, false);
-			messageCounter ++;
 			
 			writeLog("<hr/>", method, writers, false);
 			
@@ -800,10 +1020,9 @@ public class TestTool {
 			writeLog("<textarea name='resultBox' id='"+resultBoxId+"'>" + XmlUtils.encodeChars(pipelineMessagePreparedForDiff) + "</textarea>", method, writers, false);
 			writeLog("</div>", method, writers, false);		
 			
-			messageCounter++;
 			writeLog("<div class='expectedContainer'>", method, writers, false);
 			writeLog(writeCommands(expectedBoxId, true, null), method, writers, false);
-			writeLog("<input type='hidden' name='expectedFileName' value='"+zeefVijlNeem+"' />", method, writers, false);
+			writeLog("<input type='hidden' name='expectedFileName' value='"+writers.get("expectedfilename")+"' />", method, writers, false);
 			writeLog("<input type='hidden' name='cmd' />", method, writers, false);
 			writeLog("<h5>Expected (prepared for diff):</h5>", method, writers, false);
 			writeLog("<textarea name='expectedBox' id='" + expectedBoxId + "'>" + XmlUtils.encodeChars(pipelineMessageExpectedPreparedForDiff) + "</textarea>", method, writers, false);
@@ -811,7 +1030,6 @@ public class TestTool {
 			
 			writeLog("<hr/>", method, writers, false);
 
-			messageCounter++;
 			writeLog("<div class='differenceContainer'>", method, writers, false);
 
 			String btn1 = "<a class=\"['"+resultBoxId+"','"+expectedBoxId+"']|indentCompare|"+diffBoxId+"\" href=\"javascript:void(0)\">compare</a>";
@@ -823,8 +1041,6 @@ public class TestTool {
 			
 			writeLog("</form>", method, writers, false);
 			writeLog("</div>", method, writers, false);
-
-			writers.put("messagecounter", new Integer(messageCounter));
 		}
 	}
 	
@@ -946,14 +1162,12 @@ public class TestTool {
 				PrintWriter printWriter = new PrintWriter(stringWriter);
 				throwable.printStackTrace(printWriter);
 				printWriter.close();
-				int messageCounter = ((Integer)writers.get("messagecounter")).intValue();
-				messageCounter++;
+				int messageCounter = ((AtomicInteger)writers.get("messagecounter")).incrementAndGet();
 				writeLog("<div class='container'>", method, writers, false);
 				writeLog(writeCommands("messagebox" + messageCounter, true, null), method, writers, false);
 				writeLog("<h5>Stack trace:</h5>", method, writers, false);
 				writeLog("<textarea cols='100' rows='10' id='messagebox" + messageCounter + "'>" + XmlUtils.encodeChars(XmlUtils.replaceNonValidXmlCharacters(stringWriter.toString())) + "</textarea>", method, writers, false);
 				writeLog("</div>", method, writers, false);
-				writers.put("messagecounter", new Integer(messageCounter));
 				throwable = throwable.getCause();
 			}
 		}
@@ -2848,8 +3062,9 @@ public class TestTool {
 		int i = step.indexOf('.');
 		String queueName;
 		String fileContent;
-		// vul globale var
-		zeefVijlNeem = fileNameAbsolutePath;
+		if (writers!=null) {
+			writers.put("expectedfilename", fileNameAbsolutePath);
+		}
 		
 		//inlezen file voor deze stap
 		if ("".equals(fileName)) {
@@ -3333,8 +3548,7 @@ public class TestTool {
 					message = "Exception during XML diff: " + diffException.getMessage();
 					errorMessage("Exception during XML diff: ", diffException, writers);
 				}
-				wrongPipelineMessage(stepDisplayName, message, printableActualResult, printableExpectedResult, writers);
-				wrongPipelineMessagePreparedForDiff(stepDisplayName, preparedActualResult, preparedExpectedResult, writers);
+				wrongPipelineMessages(stepDisplayName, message, printableActualResult, printableExpectedResult, preparedActualResult, preparedExpectedResult, writers);
 				if (autoSaveDiffs) {
 					String filenameAbsolutePath = (String)properties.get(step + ".absolutepath");
 					debugMessage("Copy actual result to ["+filenameAbsolutePath+"]", writers);
@@ -3386,8 +3600,7 @@ public class TestTool {
 					diffExcpected.append(" ...");
 				}
 				message = message + " actual result is '" + diffActual + "' and expected result is '" + diffExcpected + "'";
-				wrongPipelineMessage(stepDisplayName, message, printableActualResult, printableExpectedResult, writers);
-				wrongPipelineMessagePreparedForDiff(stepDisplayName, preparedActualResult, preparedExpectedResult, writers);
+				wrongPipelineMessages(stepDisplayName, message, printableActualResult, printableExpectedResult, preparedActualResult, preparedExpectedResult, writers);
 				if (autoSaveDiffs) {
 					String filenameAbsolutePath = (String)properties.get(step + ".absolutepath");
 					debugMessage("Copy actual result to ["+filenameAbsolutePath+"]", writers);
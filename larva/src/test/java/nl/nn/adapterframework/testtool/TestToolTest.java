@@ -0,0 +1,181 @@
+package nl.nn.adapterframework.testtool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.nn.adapterframework.util.AppConstants;
+
+public class TestToolTest {
+
+	private static final long DELAY_TIME = 500;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Map<String, Object> createWriters() {
+		Map<String, Object> writers = new HashMap<String, Object>();
+		writers.put("out", new StringWriter());
+		writers.put("htmlbuffer", new StringWriter());
+		writers.put("logbuffer", new StringWriter());
+		writers.put("loglevel", "debug");
+		writers.put("autoscroll", "false");
+		writers.put("usehtmlbuffer", "false");
+		writers.put("uselogbuffer", "false");
+		writers.put("messagecounter", new AtomicInteger(0));
+		writers.put("scenariocounter", new AtomicInteger(1));
+		return writers;
+	}
+
+	private List<String> getFormNumbers(String output, String suffix) {
+		List<String> result = new ArrayList<String>();
+		Matcher matcher = Pattern.compile("<form name='scenario(\\d+)" + suffix + "'").matcher(output);
+		while (matcher.find()) {
+			result.add(matcher.group(1));
+		}
+		return result;
+	}
+
+	private File createScenario(String name, String resources) throws IOException {
+		File directory = folder.newFolder(name);
+		FileUtils.writeStringToFile(new File(directory, "message.txt"), "<message/>", "UTF-8");
+		File scenarioFile = new File(directory, "scenario01.properties");
+		StringBuilder properties = new StringBuilder();
+		properties.append("scenario.description=").append(name).append("\n");
+		if (resources != null) {
+			properties.append("scenario.resources=").append(resources).append("\n");
+		}
+		properties.append("test.delay.className=nl.nn.adapterframework.senders.DelaySender\n");
+		properties.append("test.delay.delayTime=").append(DELAY_TIME).append("\n");
+		properties.append("step1.test.delay.write=message.txt\n");
+		FileUtils.writeStringToFile(scenarioFile, properties.toString(), "UTF-8");
+		return scenarioFile;
+	}
+
+	private long executeInParallel(List<File> scenarioFiles, List<ScenarioTiming> scenarioTimings) throws Exception {
+		Map<String, Lock> resourceLocks = new HashMap<String, Lock>();
+		ExecutorService executor = Executors.newFixedThreadPool(scenarioFiles.size());
+		try {
+			long startTime = System.currentTimeMillis();
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (File scenarioFile : scenarioFiles) {
+				ScenarioTiming scenarioTiming = new ScenarioTiming(scenarioFile.getParentFile().getName());
+				scenarioTimings.add(scenarioTiming);
+				futures.add(executor.submit(new TestTool.ScenarioCallable(scenarioFile, scenarioTiming, null, AppConstants.getInstance(), 0, resourceLocks, null)));
+			}
+			for (Future<Integer> future : futures) {
+				future.get(30, TimeUnit.SECONDS);
+			}
+			return System.currentTimeMillis() - startTime;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testWrongPipelineMessageFormsOfParallelScenarios() throws Exception {
+		final Map<String, Object> writers = createWriters();
+		int threads = 4;
+		final int messagesPerScenario = 25;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						Map<String, Object> scenarioWriters = TestTool.createScenarioWriters(writers);
+						start.await();
+						for (int j = 0; j < messagesPerScenario; j++) {
+							TestTool.wrongPipelineMessages("step1", "different", "<a/>", "<b/>", "<a/>", "<b/>", scenarioWriters);
+						}
+						return scenarioWriters.get("out").toString();
+					}
+				}));
+			}
+			start.countDown();
+			Set<String> formNumbers = new HashSet<String>();
+			for (Future<String> future : futures) {
+				String output = future.get(30, TimeUnit.SECONDS);
+				List<String> wpm = getFormNumbers(output, "Wpm");
+				List<String> wpmpfd = getFormNumbers(output, "Wpmpfd");
+				assertEquals(messagesPerScenario, wpm.size());
+				assertEquals("forms of the raw and prepared for diff messages must have the same number", wpm, wpmpfd);
+				formNumbers.addAll(wpm);
+			}
+			assertEquals("form numbers must be unique over all scenarios", threads * messagesPerScenario, formNumbers.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testResourceLocks() {
+		Map<String, Lock> resourceLocks = new HashMap<String, Lock>();
+		Properties properties1 = new Properties();
+		properties1.setProperty("scenario.resources", "queue2, queue1,,queue2");
+		Properties properties2 = new Properties();
+		properties2.setProperty("scenario.resources", "queue1,queue2");
+
+		List<Lock> locks1 = TestTool.getResourceLocks(properties1, resourceLocks);
+		List<Lock> locks2 = TestTool.getResourceLocks(properties2, resourceLocks);
+		assertEquals(2, locks1.size());
+		assertEquals("locks must be taken in the same order to prevent deadlocks", locks1, locks2);
+		assertTrue(locks1.get(0) == resourceLocks.get("queue1"));
+		assertTrue(TestTool.getResourceLocks(new Properties(), resourceLocks).isEmpty());
+	}
+
+	@Test
+	public void testParallelScenariosWithoutSharedResources() throws Exception {
+		List<File> scenarioFiles = new ArrayList<File>();
+		scenarioFiles.add(createScenario("independent1", "queue1"));
+		scenarioFiles.add(createScenario("independent2", "queue2"));
+		List<ScenarioTiming> scenarioTimings = new ArrayList<ScenarioTiming>();
+
+		long duration = executeInParallel(scenarioFiles, scenarioTimings);
+		for (ScenarioTiming scenarioTiming : scenarioTimings) {
+			assertEquals(scenarioTiming.getName(), "passed", scenarioTiming.getResult());
+		}
+		assertTrue("scenarios must run in parallel, duration [" + duration + "]", duration < 2 * DELAY_TIME);
+	}
+
+	@Test
+	public void testParallelScenariosWithSharedResource() throws Exception {
+		List<File> scenarioFiles = new ArrayList<File>();
+		scenarioFiles.add(createScenario("shared1", "queue1,queue2"));
+		scenarioFiles.add(createScenario("shared2", "queue2"));
+		List<ScenarioTiming> scenarioTimings = new ArrayList<ScenarioTiming>();
+
+		long duration = executeInParallel(scenarioFiles, scenarioTimings);
+		for (ScenarioTiming scenarioTiming : scenarioTimings) {
+			assertEquals(scenarioTiming.getName(), "passed", scenarioTiming.getResult());
+		}
+		assertTrue("scenarios sharing a resource must not overlap, duration [" + duration + "]", duration >= 2 * DELAY_TIME);
+	}
+}
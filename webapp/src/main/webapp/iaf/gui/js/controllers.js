@@ -944,12 +944,24 @@ angular.module('iaf.beheerconsole')
 	//TODO
 	$scope.messages = [];
 	var base_url = "adapters/"+$scope.adapterName+"/receivers/"+$scope.receiverName+"/errorstorage";
-	function getErrorStoreMessages() {
-		Api.Get(base_url, function(data) {
+	var url = base_url;
+	$scope.continuation = null;
+	$scope.loadMessages = function() {
+		var uri = url;
+		if($scope.continuation)
+			uri += "?continuation="+encodeURIComponent($scope.continuation);
+		Api.Get(uri, function(data) {
+			var messages = data.messages || [];
+			for(x in messages) {
+				messages[x].pos += $scope.messages.length;
+			}
+			messages = $scope.messages.concat(messages);
 			$.extend($scope, data);
+			$scope.messages = messages;
+			$scope.continuation = data.continuation || null;
 		});
-	}
-	getErrorStoreMessages();
+	};
+	$scope.loadMessages();
 
 	$scope.deleteMessage = function(message) {
 		message.deleting = true;
@@ -994,9 +1006,23 @@ angular.module('iaf.beheerconsole')
 	//TODO
 	$scope.messages = [];
 	var url = "adapters/"+$scope.adapterName+"/receivers/"+$scope.receiverName+"/messagelog";
-	Api.Get(url, function(data) {
-		$.extend($scope, data);
-	});
+	$scope.continuation = null;
+	$scope.loadMessages = function() {
+		var uri = url;
+		if($scope.continuation)
+			uri += "?continuation="+encodeURIComponent($scope.continuation);
+		Api.Get(uri, function(data) {
+			var messages = data.messages || [];
+			for(x in messages) {
+				messages[x].pos += $scope.messages.length;
+			}
+			messages = $scope.messages.concat(messages);
+			$.extend($scope, data);
+			$scope.messages = messages;
+			$scope.continuation = data.continuation || null;
+		});
+	};
+	$scope.loadMessages();
 }])
 
 .controller('PipeMessageLogCtrl', ['$scope', 'Api', '$stateParams', 'SweetAlert', function($scope, Api, $stateParams, SweetAlert) {
@@ -1011,9 +1037,23 @@ angular.module('iaf.beheerconsole')
 	//TODO
 	$scope.messages = [];
 	var url = "adapters/"+$scope.adapterName+"/pipes/"+$scope.pipeName+"/messagelog";
-	Api.Get(url, function(data) {
-		$.extend($scope, data);
-	});
+	$scope.continuation = null;
+	$scope.loadMessages = function() {
+		var uri = url;
+		if($scope.continuation)
+			uri += "?continuation="+encodeURIComponent($scope.continuation);
+		Api.Get(uri, function(data) {
+			var messages = data.messages || [];
+			for(x in messages) {
+				messages[x].pos += $scope.messages.length;
+			}
+			messages = $scope.messages.concat(messages);
+			$.extend($scope, data);
+			$scope.messages = messages;
+			$scope.continuation = data.continuation || null;
+		});
+	};
+	$scope.loadMessages();
 }])
 
 .controller('WebservicesCtrl', ['$scope', 'Api', 'Misc', function($scope, Api, Misc) {